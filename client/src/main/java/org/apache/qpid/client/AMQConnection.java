@@ -41,8 +41,10 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.WeakHashMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
@@ -83,6 +85,7 @@ import org.apache.qpid.QpidException;
 import org.apache.qpid.client.failover.ConnectionRedirectException;
 import org.apache.qpid.client.failover.FailoverException;
 import org.apache.qpid.client.failover.FailoverProtectedOperation;
+import org.apache.qpid.client.message.MessageEncryptionHelper;
 import org.apache.qpid.client.security.CallbackHandlerRegistry;
 import org.apache.qpid.client.state.AMQState;
 import org.apache.qpid.client.state.AMQStateManager;
@@ -98,6 +101,7 @@ import org.apache.qpid.jms.FailoverPolicy;
 import org.apache.qpid.jms.Session;
 import org.apache.qpid.jndi.ObjectFactory;
 import org.apache.qpid.protocol.ErrorCodes;
+import org.apache.qpid.thread.Threading;
 import org.apache.qpid.transport.ConnectionSettings;
 import org.apache.qpid.url.URLSyntaxException;
 
@@ -121,6 +125,8 @@ public class AMQConnection extends Closeable implements CommonConnection, Refere
 
     private final List<String> _whiteListedClassHierarchies;
     private final List<String> _blackListedClassHierarchies;
+    /** Whether each class deserialized from an ObjectMessage is trusted, held without keeping the classes loaded. */
+    private final Map<Class<?>, Boolean> _trustedClasses = Collections.synchronizedMap(new WeakHashMap<Class<?>, Boolean>());
 
     /**
      * This is the "root" mutex that must be held when doing anything that could be impacted by failover. This must be
@@ -250,6 +256,39 @@ public class AMQConnection extends Closeable implements CommonConnection, Refere
 
     private boolean _compressMessages;
     private int _messageCompressionThresholdSize;
+    private int _encryptionKeyReuseCount;
+    private long _encryptionKeyReuseInterval;
+    private String _messageEncryptionCipherName;
+    private int _producerPipelineThreads;
+    private int _producerPipelineDepth;
+
+    /**
+     * Thread Pool shared by the producers of this connection for compressing, encrypting and writing pipelined
+     * messages. Created on first use.
+     */
+    private ExecutorService _producerPipelineExecutor;
+    private final Object _producerPipelineLock = new Object();
+
+    private int _dispatcherThreads;
+
+    private boolean _adaptivePrefetch;
+    private int _minPrefetch;
+
+    private long _maxPrefetchBytes;
+    private long _maxConsumerPrefetchBytes;
+
+    private int _listenerThreads;
+    private String _listenerOrderingKey;
+
+    private boolean _dropExpired;
+    private final AtomicLong _expiredMessagesDropped = new AtomicLong();
+
+    /**
+     * Thread Pool shared by the sessions of this connection for dispatching messages when dispatcherThreads is set.
+     * Created on first use.
+     */
+    private ExecutorService _dispatcherExecutor;
+    private final Object _dispatcherLock = new Object();
 
     private final Map<String, String> _virtualHostProperties = new HashMap<>();
     private volatile boolean _virtualHostPropertiesPopulated;
@@ -459,6 +498,146 @@ public class AMQConnection extends Closeable implements CommonConnection, Refere
                 _messageCompressionThresholdSize = Integer.MAX_VALUE;
             }
 
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_ENCRYPTION_KEY_REUSE_COUNT) != null)
+            {
+                _encryptionKeyReuseCount = Integer.parseInt(connectionURL.getOption(ConnectionURL.OPTIONS_ENCRYPTION_KEY_REUSE_COUNT));
+            }
+            else
+            {
+                _encryptionKeyReuseCount = Integer.getInteger(ClientProperties.CONNECTION_OPTION_ENCRYPTION_KEY_REUSE_COUNT,
+                                                              ClientProperties.DEFAULT_ENCRYPTION_KEY_REUSE_COUNT);
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_ENCRYPTION_KEY_REUSE_INTERVAL) != null)
+            {
+                _encryptionKeyReuseInterval = Long.parseLong(connectionURL.getOption(ConnectionURL.OPTIONS_ENCRYPTION_KEY_REUSE_INTERVAL));
+            }
+            else
+            {
+                _encryptionKeyReuseInterval = Long.getLong(ClientProperties.CONNECTION_OPTION_ENCRYPTION_KEY_REUSE_INTERVAL,
+                                                           ClientProperties.DEFAULT_ENCRYPTION_KEY_REUSE_INTERVAL);
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_MESSAGE_ENCRYPTION_CIPHER_NAME) != null)
+            {
+                _messageEncryptionCipherName = connectionURL.getOption(ConnectionURL.OPTIONS_MESSAGE_ENCRYPTION_CIPHER_NAME);
+            }
+            else
+            {
+                _messageEncryptionCipherName = System.getProperty(ClientProperties.CONNECTION_OPTION_MESSAGE_ENCRYPTION_CIPHER_NAME,
+                                                                  MessageEncryptionHelper.DEFAULT_MESSAGE_ENCRYPTION_CIPHER_NAME);
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_PRODUCER_PIPELINE_THREADS) != null)
+            {
+                _producerPipelineThreads = Integer.parseInt(connectionURL.getOption(ConnectionURL.OPTIONS_PRODUCER_PIPELINE_THREADS));
+            }
+            else
+            {
+                _producerPipelineThreads = Integer.getInteger(ClientProperties.CONNECTION_OPTION_PRODUCER_PIPELINE_THREADS,
+                                                              ClientProperties.DEFAULT_PRODUCER_PIPELINE_THREADS);
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_PRODUCER_PIPELINE_DEPTH) != null)
+            {
+                _producerPipelineDepth = Integer.parseInt(connectionURL.getOption(ConnectionURL.OPTIONS_PRODUCER_PIPELINE_DEPTH));
+            }
+            else
+            {
+                _producerPipelineDepth = Integer.getInteger(ClientProperties.CONNECTION_OPTION_PRODUCER_PIPELINE_DEPTH,
+                                                            ClientProperties.DEFAULT_PRODUCER_PIPELINE_DEPTH);
+            }
+            if(_producerPipelineDepth <= 0)
+            {
+                _producerPipelineDepth = 1;
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_DISPATCHER_THREADS) != null)
+            {
+                _dispatcherThreads = Integer.parseInt(connectionURL.getOption(ConnectionURL.OPTIONS_DISPATCHER_THREADS));
+            }
+            else
+            {
+                _dispatcherThreads = Integer.getInteger(ClientProperties.CONNECTION_OPTION_DISPATCHER_THREADS,
+                                                        ClientProperties.DEFAULT_DISPATCHER_THREADS);
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_ADAPTIVE_PREFETCH) != null)
+            {
+                _adaptivePrefetch = Boolean.parseBoolean(connectionURL.getOption(ConnectionURL.OPTIONS_ADAPTIVE_PREFETCH));
+            }
+            else
+            {
+                _adaptivePrefetch =
+                        Boolean.parseBoolean(System.getProperty(ClientProperties.CONNECTION_OPTION_ADAPTIVE_PREFETCH,
+                                                                String.valueOf(ClientProperties.DEFAULT_ADAPTIVE_PREFETCH)));
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_MIN_PREFETCH) != null)
+            {
+                _minPrefetch = Integer.parseInt(connectionURL.getOption(ConnectionURL.OPTIONS_MIN_PREFETCH));
+            }
+            else
+            {
+                _minPrefetch = Integer.getInteger(ClientProperties.CONNECTION_OPTION_MIN_PREFETCH,
+                                                  ClientProperties.DEFAULT_MIN_PREFETCH);
+            }
+            if(_minPrefetch <= 0)
+            {
+                _minPrefetch = 1;
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_MAX_PREFETCH_BYTES) != null)
+            {
+                _maxPrefetchBytes = Long.parseLong(connectionURL.getOption(ConnectionURL.OPTIONS_MAX_PREFETCH_BYTES));
+            }
+            else
+            {
+                _maxPrefetchBytes = Long.getLong(ClientProperties.CONNECTION_OPTION_MAX_PREFETCH_BYTES,
+                                                 ClientProperties.DEFAULT_MAX_PREFETCH_BYTES);
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_MAX_CONSUMER_PREFETCH_BYTES) != null)
+            {
+                _maxConsumerPrefetchBytes =
+                        Long.parseLong(connectionURL.getOption(ConnectionURL.OPTIONS_MAX_CONSUMER_PREFETCH_BYTES));
+            }
+            else
+            {
+                _maxConsumerPrefetchBytes = Long.getLong(ClientProperties.CONNECTION_OPTION_MAX_CONSUMER_PREFETCH_BYTES,
+                                                         ClientProperties.DEFAULT_MAX_CONSUMER_PREFETCH_BYTES);
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_LISTENER_THREADS) != null)
+            {
+                _listenerThreads = Integer.parseInt(connectionURL.getOption(ConnectionURL.OPTIONS_LISTENER_THREADS));
+            }
+            else
+            {
+                _listenerThreads = Integer.getInteger(ClientProperties.CONNECTION_OPTION_LISTENER_THREADS,
+                                                      ClientProperties.DEFAULT_LISTENER_THREADS);
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_LISTENER_ORDERING_KEY) != null)
+            {
+                _listenerOrderingKey = connectionURL.getOption(ConnectionURL.OPTIONS_LISTENER_ORDERING_KEY);
+            }
+            else
+            {
+                _listenerOrderingKey = System.getProperty(ClientProperties.CONNECTION_OPTION_LISTENER_ORDERING_KEY,
+                                                          ClientProperties.DEFAULT_LISTENER_ORDERING_KEY);
+            }
+
+            if(connectionURL.getOption(ConnectionURL.OPTIONS_DROP_EXPIRED) != null)
+            {
+                _dropExpired = Boolean.parseBoolean(connectionURL.getOption(ConnectionURL.OPTIONS_DROP_EXPIRED));
+            }
+            else
+            {
+                _dropExpired = Boolean.parseBoolean(System.getProperty(ClientProperties.CONNECTION_OPTION_DROP_EXPIRED,
+                                                                       String.valueOf(ClientProperties.DEFAULT_DROP_EXPIRED)));
+            }
+
             String amqpVersion = System.getProperty((ClientProperties.AMQP_VERSION), "0-10");
             if (_logger.isDebugEnabled())
             {
@@ -1287,6 +1466,20 @@ public class AMQConnection extends Closeable implements CommonConnection, Refere
     private void shutdownTaskPool()
     {
         _taskPool.shutdown();
+        synchronized (_producerPipelineLock)
+        {
+            if (_producerPipelineExecutor != null)
+            {
+                _producerPipelineExecutor.shutdown();
+            }
+        }
+        synchronized (_dispatcherLock)
+        {
+            if (_dispatcherExecutor != null)
+            {
+                _dispatcherExecutor.shutdown();
+            }
+        }
     }
 
     /**
@@ -1985,6 +2178,174 @@ public class AMQConnection extends Closeable implements CommonConnection, Refere
         return _messageCompressionThresholdSize;
     }
 
+    public int getEncryptionKeyReuseCount()
+    {
+        return _encryptionKeyReuseCount;
+    }
+
+    public long getEncryptionKeyReuseInterval()
+    {
+        return _encryptionKeyReuseInterval;
+    }
+
+    public String getMessageEncryptionCipherName()
+    {
+        return _messageEncryptionCipherName;
+    }
+
+    public int getProducerPipelineThreads()
+    {
+        return _producerPipelineThreads;
+    }
+
+    public int getProducerPipelineDepth()
+    {
+        return _producerPipelineDepth;
+    }
+
+    ExecutorService getProducerPipelineExecutor()
+    {
+        synchronized (_producerPipelineLock)
+        {
+            if (_producerPipelineExecutor == null)
+            {
+                _producerPipelineExecutor = Executors.newFixedThreadPool(_producerPipelineThreads, new ThreadFactory()
+                {
+                    private final AtomicLong _threadNumber = new AtomicLong();
+
+                    @Override
+                    public Thread newThread(final Runnable r)
+                    {
+                        final String name = "Connection_" + AMQConnection.this._connectionNumber
+                                            + "_producer_pipeline_" + _threadNumber.incrementAndGet();
+                        _logger.debug("Creating producer pipeline thread '{}'", name);
+                        Thread thread = new Thread(r, name);
+                        if (!thread.isDaemon())
+                        {
+                            thread.setDaemon(true);
+                        }
+                        return thread;
+                    }
+                });
+            }
+            return _producerPipelineExecutor;
+        }
+    }
+
+    public int getDispatcherThreads()
+    {
+        return _dispatcherThreads;
+    }
+
+    public boolean isAdaptivePrefetch()
+    {
+        return _adaptivePrefetch;
+    }
+
+    public int getMinPrefetch()
+    {
+        return _minPrefetch;
+    }
+
+    public long getMaxPrefetchBytes()
+    {
+        return _maxPrefetchBytes;
+    }
+
+    /**
+     * @return the maximum message body bytes a session holds for any one consumer, or zero for no limit. On AMQP 0-10
+     * only the credit of that consumer is stopped when it is reached, whereas AMQP 0-8..0-9-1 can only stop the flow
+     * of the whole channel, so the other consumers of the session are stopped as well.
+     */
+    public long getMaxConsumerPrefetchBytes()
+    {
+        return _maxConsumerPrefetchBytes;
+    }
+
+    public int getListenerThreads()
+    {
+        return _listenerThreads;
+    }
+
+    public String getListenerOrderingKey()
+    {
+        return _listenerOrderingKey;
+    }
+
+    public boolean isDropExpired()
+    {
+        return _dropExpired;
+    }
+
+    /**
+     * @return the bytes of the messages received by the sessions of this connection but not yet delivered to the
+     * application, counting only the sessions with a byte limit or governed by the process wide memory limit
+     */
+    public long getPrefetchedBytes()
+    {
+        long bytes = 0L;
+        for (AMQSession session : _sessions.values())
+        {
+            bytes += Math.max(0L, session.getPrefetchedBytes());
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the number of expired messages the sessions of this connection have discarded, when dropExpired is set
+     */
+    public long getExpiredMessagesDropped()
+    {
+        return _expiredMessagesDropped.get();
+    }
+
+    void expiredMessagesDropped(final int count)
+    {
+        _expiredMessagesDropped.addAndGet(count);
+    }
+
+    /**
+     * @return the pool shared by the session dispatchers of this connection, or null if each session is to use its
+     * own dispatcher thread
+     */
+    ExecutorService getDispatcherExecutor()
+    {
+        if (_dispatcherThreads <= 0)
+        {
+            return null;
+        }
+        synchronized (_dispatcherLock)
+        {
+            if (_dispatcherExecutor == null)
+            {
+                final boolean daemon = Boolean.getBoolean(ClientProperties.DAEMON_DISPATCHER);
+                _dispatcherExecutor = Executors.newFixedThreadPool(_dispatcherThreads, new ThreadFactory()
+                {
+                    private final AtomicLong _threadNumber = new AtomicLong();
+
+                    @Override
+                    public Thread newThread(final Runnable r)
+                    {
+                        final Thread thread;
+                        try
+                        {
+                            thread = Threading.getThreadFactory().createThread(r);
+                        }
+                        catch (Exception e)
+                        {
+                            throw new Error("Error creating Dispatcher thread", e);
+                        }
+                        thread.setName("Dispatcher-Conn-" + _connectionNumber + "-" + _threadNumber.incrementAndGet());
+                        thread.setDaemon(daemon);
+                        _logger.debug("Created shared dispatcher thread '{}'", thread.getName());
+                        return thread;
+                    }
+                });
+            }
+            return _dispatcherExecutor;
+        }
+    }
+
     void doWithAllLocks(Runnable r)
     {
         doWithAllLocks(r, _sessions.values());
@@ -2057,6 +2418,17 @@ public class AMQConnection extends Closeable implements CommonConnection, Refere
 
     @Override
     public boolean isTrusted(Class<?> clazz)
+    {
+        Boolean trusted = _trustedClasses.get(clazz);
+        if (trusted == null)
+        {
+            trusted = isTrustedClass(clazz);
+            _trustedClasses.put(clazz, trusted);
+        }
+        return trusted;
+    }
+
+    private boolean isTrustedClass(Class<?> clazz)
     {
         while (clazz.isArray())
         {
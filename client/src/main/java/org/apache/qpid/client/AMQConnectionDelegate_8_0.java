@@ -281,7 +281,7 @@ public class AMQConnectionDelegate_8_0 implements AMQConnectionDelegate
                         try
                         {
                             createChannelOverWire(channelId, transacted);
-                            session.setPrefetchLimits(prefetchHigh, 0);
+                            session.setPrefetchLimits(prefetchHigh, session.getQosPrefetchSize());
                             success = true;
                         }
                         catch (QpidException e)
@@ -375,7 +375,7 @@ public class AMQConnectionDelegate_8_0 implements AMQConnectionDelegate
             // that's why we need to reset the flow control flag
             s.setFlowControl(true);
             reopenChannel(s.getChannelId(), s.getDefaultPrefetchHigh(), s.getDefaultPrefetchLow(), s.isTransacted());
-            s.setPrefetchLimits(s.getDefaultPrefetchHigh(), 0);
+            s.setPrefetchLimits(s.getPrefetch(), s.getQosPrefetchSize());
             s.resubscribe();
         }
     }
@@ -472,6 +472,27 @@ public class AMQConnectionDelegate_8_0 implements AMQConnectionDelegate
     public boolean supportsIsBound()
     {
         //Rough check whether the 'isBound' AMQP extension method is supported, by trying to determine if we are connected to Qpid.
+        boolean connectedToQpid = isConnectedToQpid();
+
+        if(_logger.isDebugEnabled())
+        {
+            _logger.debug("supportsIsBound: " + connectedToQpid);
+        }
+
+        return connectedToQpid;
+    }
+
+    /**
+     * The prefetch-size of basic.qos is honoured by the Qpid Broker-J, whereas some other brokers close the channel
+     * when it is not zero.
+     */
+    public boolean isPrefetchSizeSupported()
+    {
+        return isConnectedToQpid();
+    }
+
+    private boolean isConnectedToQpid()
+    {
         //As older versions of the Qpid broker did not send properties, the value will be assumed true if no server properties
         //are found, or the 'product' entry isn't present, and will only be false if it is present but doesn't match expectation.
         boolean connectedToQpid = true;
@@ -488,12 +509,6 @@ public class AMQConnectionDelegate_8_0 implements AMQConnectionDelegate
                 connectedToQpid = product.contains("qpid") || product.equals("unknown");
             }
         }
-
-        if(_logger.isDebugEnabled())
-        {
-            _logger.debug("supportsIsBound: " + connectedToQpid);
-        }
-
         return connectedToQpid;
     }
 
@@ -38,8 +38,11 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -81,8 +84,11 @@ import org.apache.qpid.client.message.MessageFactoryRegistry;
 import org.apache.qpid.client.message.UnprocessedMessage;
 import org.apache.qpid.client.messaging.address.Link;
 import org.apache.qpid.client.messaging.address.Node;
+import org.apache.qpid.client.util.DeliveryTagTracker;
 import org.apache.qpid.client.util.FlowControllingBlockingQueue;
 import org.apache.qpid.client.util.JMSExceptionHelper;
+import org.apache.qpid.client.util.KeyOrderedExecutor;
+import org.apache.qpid.client.util.PrefetchByteBudget;
 import org.apache.qpid.common.AMQPFilterTypes;
 import org.apache.qpid.configuration.ClientProperties;
 import org.apache.qpid.exchange.ExchangeDefaults;
@@ -176,6 +182,35 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
     /** Holds the low mark for prefetched messages, below which the session is resumed. */
     private final int _prefetchLowMark;
 
+    /** Sizes the prefetch window between bounds when the connection uses adaptive prefetch, otherwise null. */
+    private final AdaptivePrefetch _adaptivePrefetch;
+    private ScheduledFuture<?> _prefetchTunerFuture;
+
+    /**
+     * The bytes of the messages received but not yet delivered to the application, when a byte limit or the process
+     * wide memory limit is configured, otherwise null. The flow of messages is stopped whilst the budget is exceeded
+     * or the session is throttled by the {@link PrefetchMemoryGovernor}.
+     */
+    private final PrefetchByteBudget _prefetchByteBudget;
+    private final PrefetchMemoryGovernor.Usage _prefetchMemoryUsage;
+    /** Whether the flow last sent was blocked for prefetched bytes, guarded by the suspension lock. */
+    private boolean _prefetchFlowBlocked;
+
+    /**
+     * The expired messages discarded, when the connection sets dropExpired, but not yet acknowledged. Acknowledging
+     * them is guarded by the queue.
+     */
+    private final ConcurrentLinkedQueue<UnprocessedMessage> _droppedExpiredMessages = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean _expiredAcknowledgementScheduled = new AtomicBoolean();
+    private final AtomicLong _expiredMessagesDropped = new AtomicLong();
+
+    /**
+     * Runs the message listeners of the consumers concurrently when the connection sets listenerThreads. Created on
+     * first use.
+     */
+    private KeyOrderedExecutor _listenerExecutor;
+    private final Object _listenerExecutorLock = new Object();
+
     /** Holds the message listener, if any, which is attached to this session. */
     private MessageListener _messageListener = null;
 
@@ -195,11 +230,11 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
     private final AtomicLong _highestDeliveryTag = new AtomicLong(-1);
     private final AtomicLong _rollbackMark = new AtomicLong(-1);
 
-    private ConcurrentLinkedQueue<Long> _prefetchedMessageTags = new ConcurrentLinkedQueue<Long>();
+    private final DeliveryTagTracker _prefetchedMessageTags = new DeliveryTagTracker();
 
-    private ConcurrentLinkedQueue<Long> _unacknowledgedMessageTags = new ConcurrentLinkedQueue<Long>();
+    private final DeliveryTagTracker _unacknowledgedMessageTags = new DeliveryTagTracker();
 
-    private ConcurrentLinkedQueue<Long> _deliveredMessageTags = new ConcurrentLinkedQueue<Long>();
+    private final DeliveryTagTracker _deliveredMessageTags = new DeliveryTagTracker();
 
     private volatile Dispatcher _dispatcher;
 
@@ -276,19 +311,19 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
     }
 
     /** Pre-fetched message tags */
-    protected ConcurrentLinkedQueue<Long> getPrefetchedMessageTags()
+    protected DeliveryTagTracker getPrefetchedMessageTags()
     {
         return _prefetchedMessageTags;
     }
 
     /** All the not yet acknowledged message tags */
-    protected ConcurrentLinkedQueue<Long> getUnacknowledgedMessageTags()
+    protected DeliveryTagTracker getUnacknowledgedMessageTags()
     {
         return _unacknowledgedMessageTags;
     }
 
     /** All the delivered message tags */
-    protected ConcurrentLinkedQueue<Long> getDeliveredMessageTags()
+    protected DeliveryTagTracker getDeliveredMessageTags()
     {
         return _deliveredMessageTags;
     }
@@ -320,6 +355,11 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
         return new ArrayList<>(_consumers.values());
     }
 
+    protected C getConsumer(String consumerTag)
+    {
+        return _consumers.get(consumerTag);
+    }
+
     protected void setUsingDispatcherForCleanup(boolean usingDispatcherForCleanup)
     {
         _usingDispatcherForCleanup = usingDispatcherForCleanup;
@@ -372,6 +412,10 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
             _acknowledgeMode = acknowledgeMode;
         }
         _messageEncryptionHelper = new MessageEncryptionHelper(this);
+        if (con != null && con.getMessageEncryptionCipherName() != null)
+        {
+            _messageEncryptionHelper.setMessageEncryptionCipherName(con.getMessageEncryptionCipherName());
+        }
         _channelId = channelId;
         _messageFactoryRegistry = MessageFactoryRegistry.newDefaultRegistry(this);
 
@@ -455,6 +499,49 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
             _queue = new FlowControllingBlockingQueue<>(_prefetchHighMark, null);
         }
 
+        if (con != null && con.isAdaptivePrefetch() && _prefetchHighMark > 0 && _acknowledgeMode != NO_ACKNOWLEDGE)
+        {
+            _adaptivePrefetch = new AdaptivePrefetch(Math.min(con.getMinPrefetch(), _prefetchHighMark),
+                                                     _prefetchHighMark);
+            long interval = Long.getLong(ClientProperties.ADAPTIVE_PREFETCH_INTERVAL,
+                                         ClientProperties.DEFAULT_ADAPTIVE_PREFETCH_INTERVAL);
+            PrefetchTuner tuner = new PrefetchTuner(this);
+            _prefetchTunerFuture = con.scheduleTask(tuner, interval, interval, TimeUnit.MILLISECONDS);
+            tuner.setFuture(_prefetchTunerFuture);
+        }
+        else
+        {
+            _adaptivePrefetch = null;
+        }
+
+        final PrefetchMemoryGovernor governor = PrefetchMemoryGovernor.getInstance();
+        if (con != null && governor.isEnabled())
+        {
+            _prefetchMemoryUsage = governor.register(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    updateFlowForPrefetchBytes();
+                }
+            });
+        }
+        else
+        {
+            _prefetchMemoryUsage = null;
+        }
+        if (con != null
+            && (con.getMaxPrefetchBytes() > 0 || con.getMaxConsumerPrefetchBytes() > 0 || _prefetchMemoryUsage != null))
+        {
+            _prefetchByteBudget = new PrefetchByteBudget(con.getMaxPrefetchBytes(),
+                                                         con.getMaxConsumerPrefetchBytes(),
+                                                         _prefetchMemoryUsage);
+        }
+        else
+        {
+            _prefetchByteBudget = null;
+        }
+
         // Add creation logging to tie in with the existing close logging
         if (_logger.isDebugEnabled())
         {
@@ -711,6 +798,19 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
      */
     public abstract void acknowledgeMessage(long deliveryTag, boolean multiple);
 
+    /**
+     * Acknowledges a batch of messages delivered to the application together.
+     *
+     * @param deliveryTags the tags of the messages, which need not be contiguous
+     */
+    public void acknowledgeMessages(long[] deliveryTags)
+    {
+        for (long deliveryTag : deliveryTags)
+        {
+            acknowledgeMessage(deliveryTag, false);
+        }
+    }
+
     /**
      * Binds the named queue, with the specified routing key, to the named exchange.
      * <p>
@@ -838,6 +938,9 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
             finally
             {
                 shutdownFlowControlNoAckTaskPool();
+                shutdownListenerExecutor();
+                cancelPrefetchTuner();
+                closePrefetchMemoryUsage();
                 _connection.deregisterSession(_channelId);
             }
         }
@@ -886,13 +989,17 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
             _connection.deregisterSession(_channelId);
             closeProducersAndConsumers(amqe);
             shutdownFlowControlNoAckTaskPool();
+            shutdownListenerExecutor();
+            cancelPrefetchTuner();
+            closePrefetchMemoryUsage();
         }
 
     }
 
     protected void stopDispatcherThread()
     {
-        if (_dispatcherThread != null)
+        final Dispatcher dispatcher = _dispatcher;
+        if (_dispatcherThread != null && (dispatcher == null || !dispatcher.isPooled()))
         {
             _dispatcherThread.interrupt();
         }
@@ -992,7 +1099,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
                     }
                     else
                     {
-                        _queue.add(new CloseConsumerMessage(consumer));
+                        addToDispatchQueue(new CloseConsumerMessage(consumer));
                     }
                 }
             }
@@ -1710,9 +1817,325 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
         return _prefetchLowMark;
     }
 
+    /**
+     * @return the number of messages the Broker may currently send ahead of the application, which varies over time
+     * when the connection uses adaptive prefetch
+     */
     public int getPrefetch()
     {
-        return _prefetchHighMark;
+        return _adaptivePrefetch == null ? _prefetchHighMark : _adaptivePrefetch.getWindow();
+    }
+
+    public boolean isAdaptivePrefetch()
+    {
+        return _adaptivePrefetch != null;
+    }
+
+    /**
+     * @return the measurements and current window of the adaptive prefetch, or null if the session uses a fixed
+     * prefetch
+     */
+    public AdaptivePrefetch getAdaptivePrefetch()
+    {
+        return _adaptivePrefetch;
+    }
+
+    void messageProcessed(final long processingNanos)
+    {
+        if (_adaptivePrefetch != null)
+        {
+            _adaptivePrefetch.messageProcessed(processingNanos);
+        }
+    }
+
+    void roundTripMeasured(final long roundTripNanos)
+    {
+        if (_adaptivePrefetch != null)
+        {
+            _adaptivePrefetch.roundTripMeasured(roundTripNanos);
+        }
+    }
+
+    /**
+     * Re-evaluates the adaptive prefetch window and, if it has changed, passes the change on to the Broker.
+     */
+    void updatePrefetchWindow() throws QpidException
+    {
+        if (_adaptivePrefetch == null || isClosed() || isClosing())
+        {
+            return;
+        }
+        synchronized (_suspensionLock)
+        {
+            int previous = _adaptivePrefetch.getWindow();
+            int window = _adaptivePrefetch.evaluate();
+            if (window != previous)
+            {
+                _logger.debug("Changing prefetch window of session {} from {} to {}", _channelId, previous, window);
+                applyPrefetchWindow(previous, window);
+            }
+        }
+    }
+
+    /**
+     * Tells the Broker about a change to the adaptive prefetch window.
+     *
+     * @param previous the window previously in effect
+     * @param window   the new window
+     */
+    protected abstract void applyPrefetchWindow(int previous, int window) throws QpidException;
+
+    private void cancelPrefetchTuner()
+    {
+        if (_prefetchTunerFuture != null)
+        {
+            _prefetchTunerFuture.cancel(false);
+        }
+    }
+
+    private void closePrefetchMemoryUsage()
+    {
+        if (_prefetchMemoryUsage != null)
+        {
+            _prefetchMemoryUsage.close();
+        }
+    }
+
+    /**
+     * @return the number of expired messages this session has discarded, when the connection sets dropExpired
+     */
+    public long getExpiredMessagesDropped()
+    {
+        return _expiredMessagesDropped.get();
+    }
+
+    /**
+     * @return true if the message is to be discarded because it has expired, judged from its header alone. This is
+     * only done when the connection sets dropExpired, and never for browsers as they do not consume.
+     */
+    private boolean isExpiredForDrop(final UnprocessedMessage message)
+    {
+        final long expiration = message.getExpiration();
+        if (expiration == 0L
+            || expiration > System.currentTimeMillis()
+            || _connection == null
+            || !_connection.isDropExpired())
+        {
+            return false;
+        }
+        final C consumer = _consumers.get(message.getConsumerTag());
+        return consumer != null && !consumer.isBrowseOnly();
+    }
+
+    /**
+     * Discards an expired message in place of delivering it. Its acknowledgement is left to a connection task, so
+     * that the expired messages received in the meantime are acknowledged together and the I/O thread never sends it.
+     */
+    private void dropExpiredMessage(final UnprocessedMessage message)
+    {
+        if (_logger.isDebugEnabled())
+        {
+            _logger.debug("Dropping expired message with delivery tag " + message.getDeliveryTag()
+                          + " for consumer " + message.getConsumerTag());
+        }
+        _expiredMessagesDropped.incrementAndGet();
+        _connection.expiredMessagesDropped(1);
+        _droppedExpiredMessages.add(message);
+        if (_expiredAcknowledgementScheduled.compareAndSet(false, true))
+        {
+            _connection.performConnectionTask(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    _expiredAcknowledgementScheduled.set(false);
+                    acknowledgeDroppedExpiredMessages();
+                }
+            });
+        }
+    }
+
+    /**
+     * Forgets the expired messages discarded but not yet acknowledged, as their delivery tags are meaningless once
+     * the session has failed over.
+     */
+    private void clearDroppedExpiredMessages()
+    {
+        synchronized (_droppedExpiredMessages)
+        {
+            _droppedExpiredMessages.clear();
+        }
+    }
+
+    /**
+     * Acknowledges the expired messages discarded since it was last called. Called before a recover or rollback, as
+     * well as by a connection task, so that no acknowledgement is sent for a message the Broker has since requeued.
+     */
+    void acknowledgeDroppedExpiredMessages()
+    {
+        synchronized (_droppedExpiredMessages)
+        {
+            final List<UnprocessedMessage> dropped = new ArrayList<>();
+            UnprocessedMessage message;
+            while ((message = _droppedExpiredMessages.poll()) != null)
+            {
+                dropped.add(message);
+            }
+            if (dropped.isEmpty() || isClosed() || isClosing())
+            {
+                return;
+            }
+
+            final long[] deliveryTags = new long[dropped.size()];
+            for (int i = 0; i < deliveryTags.length; i++)
+            {
+                deliveryTags[i] = dropped.get(i).getDeliveryTag();
+            }
+            releasePrefetchedBytes(deliveryTags);
+            try
+            {
+                acknowledgeExpiredMessages(deliveryTags);
+                for (UnprocessedMessage droppedMessage : dropped)
+                {
+                    final C consumer = _consumers.get(droppedMessage.getConsumerTag());
+                    if (consumer != null)
+                    {
+                        consumer.expiredMessageDropped();
+                    }
+                }
+            }
+            catch (RuntimeException e)
+            {
+                _logger.warn("Unable to acknowledge " + deliveryTags.length + " expired messages on session "
+                             + AMQSession.this, e);
+            }
+        }
+    }
+
+    /**
+     * Acknowledges expired messages which were discarded without being delivered.
+     */
+    protected void acknowledgeExpiredMessages(final long[] deliveryTags)
+    {
+        acknowledgeMessages(deliveryTags);
+    }
+
+    /**
+     * @return the bytes of the messages received but not yet delivered to the application, or -1 if the session
+     * neither has a byte limit nor is governed by the process wide memory limit
+     */
+    public long getPrefetchedBytes()
+    {
+        return _prefetchByteBudget == null ? -1L : _prefetchByteBudget.getBytes();
+    }
+
+    /**
+     * @return the byte limit on the messages the session holds, or zero if there is none
+     */
+    long getPrefetchByteLimit()
+    {
+        return _prefetchByteBudget == null ? 0L : _prefetchByteBudget.getSessionLimit();
+    }
+
+    /**
+     * @return true if the flow of messages to the whole session must be stopped because the session holds too many
+     * message bytes
+     */
+    protected boolean isPrefetchFlowBlocked()
+    {
+        return (_prefetchByteBudget != null && _prefetchByteBudget.isSessionExceeded())
+               || (_prefetchMemoryUsage != null && _prefetchMemoryUsage.isThrottled());
+    }
+
+    /**
+     * @return true if any consumer holds too many message bytes
+     */
+    protected boolean isAnyConsumerPrefetchFlowBlocked()
+    {
+        return _prefetchByteBudget != null && _prefetchByteBudget.isAnyConsumerExceeded();
+    }
+
+    /**
+     * @return true if the flow of messages to the given consumer must be stopped because too many message bytes are
+     * held for it
+     */
+    protected boolean isConsumerPrefetchFlowBlocked(final String consumerTag)
+    {
+        return _prefetchByteBudget != null && _prefetchByteBudget.isExceeded(consumerTag);
+    }
+
+    /**
+     * Stops or restarts the flow to individual consumers for the bytes held for them, where the protocol allows it.
+     * Called whilst holding the suspension lock.
+     */
+    protected void updateConsumerFlowForPrefetchBytes() throws QpidException
+    {
+    }
+
+    void releasePrefetchedBytes(final long deliveryTag)
+    {
+        if (_prefetchByteBudget != null && _prefetchByteBudget.release(deliveryTag))
+        {
+            updateFlowForPrefetchBytes();
+        }
+    }
+
+    void releasePrefetchedBytes(final long[] deliveryTags)
+    {
+        if (_prefetchByteBudget != null && _prefetchByteBudget.release(deliveryTags))
+        {
+            updateFlowForPrefetchBytes();
+        }
+    }
+
+    void releasePrefetchedBytes(final String consumerTag)
+    {
+        if (_prefetchByteBudget != null && _prefetchByteBudget.releaseConsumer(consumerTag))
+        {
+            updateFlowForPrefetchBytes();
+        }
+    }
+
+    void clearPrefetchedBytes()
+    {
+        if (_prefetchByteBudget != null && _prefetchByteBudget.clear())
+        {
+            updateFlowForPrefetchBytes();
+        }
+    }
+
+    /**
+     * Sends the flow again on the connection task thread, as the budget may change on the thread receiving frames,
+     * which must not wait for the Broker to reply.
+     */
+    private void updateFlowForPrefetchBytes()
+    {
+        getAMQConnection().performConnectionTask(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                synchronized (_suspensionLock)
+                {
+                    try
+                    {
+                        if (_prefetchFlowBlocked != isPrefetchFlowBlocked())
+                        {
+                            refreshSuspension();
+                        }
+                        if (!(isClosed() || isClosing()))
+                        {
+                            updateConsumerFlowForPrefetchBytes();
+                        }
+                    }
+                    catch (QpidException e)
+                    {
+                        _logger.warn("Unable to change the flow of session " + AMQSession.this
+                                     + " for its prefetched bytes", e);
+                    }
+                }
+            }
+        });
     }
 
     public String getDefaultQueueExchangeName()
@@ -1808,7 +2231,17 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
             _logger.debug("Message[" + message.toString() + "] received in session");
         }
         _highestDeliveryTag.set(message.getDeliveryTag());
-        _queue.add(message);
+        if (isExpiredForDrop(message))
+        {
+            dropExpiredMessage(message);
+            return;
+        }
+        if (_prefetchByteBudget != null
+            && _prefetchByteBudget.add(message.getDeliveryTag(), message.getConsumerTag(), message.getBodySize()))
+        {
+            updateFlowForPrefetchBytes();
+        }
+        addToDispatchQueue(message);
     }
 
     public void declareAndBind(AMQDestination amqd)
@@ -1889,6 +2322,8 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
             _usingDispatcherForCleanup = true;
 
             syncDispatchQueue(false);
+            awaitConcurrentListeners();
+            acknowledgeDroppedExpiredMessages();
 
             // Set to false before sending the recover as 0-8/9/9-1 will
             //send messages back before the recover completes, and we
@@ -1985,6 +2420,8 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
                 _dispatcher.rollback();
 
+                acknowledgeDroppedExpiredMessages();
+
                 releaseForRollback();
 
                 sendRollback();
@@ -2217,6 +2654,8 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
     {
         if (_consumers.remove(consumer.getConsumerTag()) != null)
         {
+            releasePrefetchedBytes(consumer.getConsumerTag());
+
             _subscriberAccess.lock();
             try
             {
@@ -2328,9 +2767,16 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
         {
             startDispatcherIfNecessary();
 
+            // A thread of the shared pool waiting for another dispatcher to run could be waiting for itself
+            final Dispatcher dispatcher = _dispatcher;
+            if (dispatcher != null && dispatcher.isPooled() && isPooledDispatcherThread() && dispatcher.dispatchInline())
+            {
+                return;
+            }
+
             final CountDownLatch signal = new CountDownLatch(1);
 
-            _queue.add(new DispatchableControl()
+            addToDispatchQueue(new DispatchableControl()
             {
                 public void dispatch(AMQSession ssn)
                 {
@@ -2382,7 +2828,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
             final CountDownLatch signal = new CountDownLatch(1);
 
-            _queue.add(new DispatchableControl()
+            addToDispatchQueue(new DispatchableControl()
             {
                 public void dispatch(AMQSession ssn)
                 {
@@ -2421,6 +2867,8 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
         _unacknowledgedMessageTags.clear();
         _prefetchedMessageTags.clear();
+        clearPrefetchedBytes();
+        clearDroppedExpiredMessages();
 
         clearResolvedDestinations();
         resubscribeProducers();
@@ -2502,7 +2950,18 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
     synchronized void startDispatcherIfNecessary(boolean initiallyStopped)
     {
-        if (_dispatcher == null)
+        final ExecutorService dispatcherExecutor;
+        if (_dispatcher == null && (dispatcherExecutor = _connection.getDispatcherExecutor()) != null)
+        {
+            _dispatcher = new Dispatcher(dispatcherExecutor);
+            _dispatcher.setConnectionStopped(initiallyStopped);
+            _dispatcher.wakeUp();
+            if (_dispatcherLogger.isDebugEnabled())
+            {
+                _dispatcherLogger.debug("Dispatcher for channel " + _channelId + " created on the shared pool");
+            }
+        }
+        else if (_dispatcher == null)
         {
             _dispatcher = new Dispatcher();
             try
@@ -2537,6 +2996,75 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
         // Stop the server delivering messages to this session.
         suspendChannelIfNotClosing();
         stopExistingDispatcher();
+        awaitConcurrentListeners();
+    }
+
+    /**
+     * @return true if the message listeners of the consumers are to be run concurrently, which the connection option
+     * listenerThreads asks for and is only done for sessions whose acknowledgements can follow the listeners
+     */
+    boolean isConcurrentListenerDelivery()
+    {
+        return _connection != null
+               && _connection.getListenerThreads() > 0
+               && !_transacted
+               && _acknowledgeMode != org.apache.qpid.jms.Session.PRE_ACKNOWLEDGE;
+    }
+
+    KeyOrderedExecutor getListenerExecutor()
+    {
+        synchronized (_listenerExecutorLock)
+        {
+            if (_listenerExecutor == null)
+            {
+                final boolean daemon = Boolean.getBoolean(ClientProperties.DAEMON_DISPATCHER);
+                _listenerExecutor = new KeyOrderedExecutor(_connection.getListenerThreads(), new ThreadFactory()
+                {
+                    private final AtomicInteger _threadNumber = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable r)
+                    {
+                        final Thread thread;
+                        try
+                        {
+                            thread = Threading.getThreadFactory().createThread(r);
+                        }
+                        catch (Exception e)
+                        {
+                            throw new Error("Error creating Listener thread", e);
+                        }
+                        thread.setName("Listener-" + _channelId + "-Conn-" + _connection.getConnectionNumber()
+                                       + "-" + _threadNumber.incrementAndGet());
+                        thread.setDaemon(daemon);
+                        return thread;
+                    }
+                });
+            }
+            return _listenerExecutor;
+        }
+    }
+
+    /**
+     * Waits for the message listeners running concurrently to finish with the messages given to them.
+     */
+    private void awaitConcurrentListeners()
+    {
+        for (C consumer : getConsumers())
+        {
+            consumer.awaitConcurrentListeners();
+        }
+    }
+
+    private void shutdownListenerExecutor()
+    {
+        synchronized (_listenerExecutorLock)
+        {
+            if (_listenerExecutor != null)
+            {
+                _listenerExecutor.shutdown();
+            }
+        }
     }
 
     private void checkNotTransacted() throws JMSException
@@ -3281,6 +3809,7 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
                 }
 
                 _suspended = suspend;
+                _prefetchFlowBlocked = isPrefetchFlowBlocked();
                 sendSuspendChannel(suspend);
             }
             catch (FailoverException e)
@@ -3296,6 +3825,21 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
     public abstract void sendSuspendChannel(boolean suspend) throws QpidException, FailoverException;
 
+    /**
+     * Sends the current suspension state of the channel again, for use when the flow a subclass sends for it depends
+     * on more than whether the session is suspended.
+     */
+    protected void refreshSuspension() throws QpidException
+    {
+        synchronized (_suspensionLock)
+        {
+            if (!(isClosed() || isClosing()))
+            {
+                suspendChannel(_suspended);
+            }
+        }
+    }
+
     boolean tryLockMessageDelivery()
     {
         try
@@ -3389,6 +3933,16 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
     {
     }
 
+    void addToDispatchQueue(final Dispatchable dispatchable)
+    {
+        _queue.add(dispatchable);
+        final Dispatcher dispatcher = _dispatcher;
+        if (dispatcher != null)
+        {
+            dispatcher.wakeUp();
+        }
+    }
+
     public void dispatch(UnprocessedMessage message)
     {
         if (_dispatcher == null)
@@ -3402,9 +3956,31 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
     /** Used for debugging in the dispatcher. */
     private static final Logger _dispatcherLogger = LoggerFactory.getLogger("org.apache.qpid.client.AMQSession.Dispatcher");
 
-    /** Responsible for decoding a message fragment and passing it to the appropriate message consumer. */
+    /** Marks the threads of the shared dispatcher pools */
+    private static final ThreadLocal<Boolean> POOLED_DISPATCHER_THREAD = new ThreadLocal<>();
+
+    static boolean isPooledDispatcherThread()
+    {
+        return POOLED_DISPATCHER_THREAD.get() != null;
+    }
+
+    /**
+     * Responsible for decoding a message fragment and passing it to the appropriate message consumer.
+     * <p>
+     * The dispatcher either runs on a thread of its own, or, when the connection has a shared dispatcher pool,
+     * is run on the pool whenever its queue has work. In the latter case the dispatcher runs on at most one pool thread
+     * at a time, which is recorded as the dispatcher thread while it does so, and gives up the pool thread after
+     * {@link #POOLED_DISPATCH_BATCH_SIZE} items so that other sessions get a turn. A thread of the pool which needs a
+     * pooled dispatcher that is not running, for instance to sync or close another session from within onMessage,
+     * claims it and runs it inline rather than waiting for a pool thread that may never become free.
+     */
     class Dispatcher implements Runnable
     {
+        private static final int POOLED_DISPATCH_BATCH_SIZE = 64;
+
+        private static final int IDLE = 0;
+        private static final int QUEUED = 1;
+        private static final int RUNNING = 2;
 
         /** Track the 'stopped' state of the dispatcher, a session starts in the stopped state. */
         private final AtomicBoolean _closed = new AtomicBoolean(false);
@@ -3413,15 +3989,95 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
         private final Object _lock = new Object();
         private final String dispatcherID = "" + System.identityHashCode(this);
 
+        /** The shared pool the dispatcher runs on, or null if it has a thread of its own */
+        private final Executor _executor;
+        /** Whether the dispatcher is idle, queued on the shared pool, or running */
+        private final AtomicInteger _state = new AtomicInteger(IDLE);
+
         public Dispatcher()
         {
+            this(null);
+        }
+
+        Dispatcher(final Executor executor)
+        {
+            _executor = executor;
+        }
+
+        boolean isPooled()
+        {
+            return _executor != null;
+        }
+
+        /**
+         * Ensures a pooled dispatcher is scheduled to run if it may have work to do.
+         */
+        void wakeUp()
+        {
+            if (_executor != null && _state.compareAndSet(IDLE, QUEUED))
+            {
+                try
+                {
+                    _executor.execute(this);
+                }
+                catch (RejectedExecutionException e)
+                {
+                    _state.compareAndSet(QUEUED, IDLE);
+                    _closeCompleted.countDown();
+                    _dispatcherLogger.debug("Shared dispatcher pool has been shut down", e);
+                }
+            }
+        }
+
+        /**
+         * Claims a pooled dispatcher which is not running so that the calling thread may run it.
+         *
+         * @return false if the dispatcher is already running
+         */
+        private boolean claim()
+        {
+            while (true)
+            {
+                final int state = _state.get();
+                if (state == RUNNING)
+                {
+                    return false;
+                }
+                if (_state.compareAndSet(state, RUNNING))
+                {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Dispatches the queued items on the calling thread if the pooled dispatcher is not running elsewhere.
+         *
+         * @return false if the dispatcher is running on another thread
+         */
+        boolean dispatchInline()
+        {
+            if (!claim())
+            {
+                return false;
+            }
+            dispatchPending(Integer.MAX_VALUE);
+            return true;
         }
 
         public void close()
         {
             _closed.set(true);
             _queue.close();
-            _dispatcherThread.interrupt();
+            if (_executor == null)
+            {
+                _dispatcherThread.interrupt();
+            }
+            else if (claim())
+            {
+                // not running, so there is nothing to wait for; the claim is kept so it is never scheduled again
+                _closeCompleted.countDown();
+            }
 
             // If we are not the dispatcherThread we need to await the exiting of the Dispatcher#run(). See QPID-6672.
             if (Thread.currentThread() != _dispatcherThread)
@@ -3509,6 +4165,17 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
 
         public void run()
         {
+            if (_executor != null)
+            {
+                POOLED_DISPATCHER_THREAD.set(Boolean.TRUE);
+                // a pool thread may have claimed the dispatcher inline since it was queued
+                if (_state.compareAndSet(QUEUED, RUNNING))
+                {
+                    dispatchPending(POOLED_DISPATCH_BATCH_SIZE);
+                }
+                return;
+            }
+
             try
             {
                 if (_dispatcherLogger.isDebugEnabled())
@@ -3565,6 +4232,65 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
             }
         }
 
+        /**
+         * Dispatches up to the given number of queued items on the calling thread, which must have claimed the
+         * dispatcher, then reschedules the dispatcher if there is more work. Messages are left queued while the
+         * dispatcher is stopped; control items are still processed.
+         */
+        private void dispatchPending(final int maxItems)
+        {
+            final Thread previousDispatcherThread = _dispatcherThread;
+            _dispatcherThread = Thread.currentThread();
+            try
+            {
+                for (int i = 0; i < maxItems && !_closed.get(); i++)
+                {
+                    synchronized (_lock)
+                    {
+                        if (!canDispatch())
+                        {
+                            break;
+                        }
+                        final Dispatchable disp = _queue.nonBlockingTake();
+                        if (disp instanceof DispatchableControl || (!isClosed() && !isClosing() && !_closed.get()))
+                        {
+                            if (disp != null)
+                            {
+                                disp.dispatch(AMQSession.this);
+                            }
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // not expected as nonBlockingTake does not wait
+                _dispatcherLogger.debug("Interrupted whilst dispatching", e);
+            }
+            finally
+            {
+                _dispatcherThread = previousDispatcherThread;
+                _state.set(IDLE);
+                if (_closed.get())
+                {
+                    _closeCompleted.countDown();
+                }
+                else if (canDispatch())
+                {
+                    wakeUp();
+                }
+            }
+        }
+
+        private boolean canDispatch()
+        {
+            final Dispatchable next = _queue.peek();
+            return next != null
+                   && (next instanceof DispatchableControl
+                       || !connectionStopped()
+                       || getAMQConnection().isFailingOver());
+        }
+
         // only call while holding lock
         final boolean connectionStopped()
         {
@@ -3580,6 +4306,10 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
                 {
                     _connectionStopped.set(connectionStopped);
                     _lock.notifyAll();
+                    if (!connectionStopped)
+                    {
+                        wakeUp();
+                    }
 
                     if (_dispatcherLogger.isDebugEnabled())
                     {
@@ -3702,8 +4432,35 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
             }
             else
             {
-                consumer.notifyMessage(message);
+                if (isExpiredForDrop(message))
+                {
+                    dropExpiredMessage(message);
+                }
+                else
+                {
+                    consumer.notifyMessage(message);
+                }
+                if (!isNextQueuedFor(consumer.getConsumerTag()))
+                {
+                    consumer.deliverPendingBatch();
+                }
+            }
+        }
+
+        /**
+         * @return true if the next item queued is a message which will be given to the consumer with the given tag
+         */
+        private boolean isNextQueuedFor(final String consumerTag)
+        {
+            final Dispatchable next = _queue.peek();
+            if (next instanceof UnprocessedMessage && !(next instanceof CloseConsumerMessage))
+            {
+                final UnprocessedMessage message = (UnprocessedMessage) next;
+                return consumerTag.equals(message.getConsumerTag())
+                       && !tagLE(message.getDeliveryTag(), _rollbackMark.get())
+                       && !_usingDispatcherForCleanup;
             }
+            return false;
         }
     }
 
@@ -3878,6 +4635,45 @@ public abstract class AMQSession<C extends BasicMessageConsumer, P extends Basic
         }
     }
 
+    private static class PrefetchTuner implements Runnable
+    {
+        private final WeakReference<AMQSession<?, ?>> _session;
+        private ScheduledFuture<?> _future;
+
+        public PrefetchTuner(AMQSession<?, ?> session)
+        {
+            _session = new WeakReference<AMQSession<?, ?>>(session);
+        }
+
+        public void setFuture(final ScheduledFuture<?> future)
+        {
+            _future = future;
+        }
+
+        public void run()
+        {
+            AMQSession<?, ?> ssn = _session.get();
+            if (ssn == null || ssn.isClosed())
+            {
+                if (_future != null)
+                {
+                    _future.cancel(false);
+                }
+            }
+            else
+            {
+                try
+                {
+                    ssn.updatePrefetchWindow();
+                }
+                catch (Exception e)
+                {
+                    _logger.warn("Error changing the prefetch window of session " + ssn.getChannelId(), e);
+                }
+            }
+        }
+    }
+
     private void shutdownFlowControlNoAckTaskPool()
     {
         if (_flowControlNoAckTaskPool != null)
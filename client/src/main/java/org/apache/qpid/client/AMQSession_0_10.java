@@ -30,7 +30,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -53,6 +54,7 @@ import org.apache.qpid.client.messaging.address.AddressHelper;
 import org.apache.qpid.client.messaging.address.Link;
 import org.apache.qpid.client.messaging.address.Link.SubscriptionQueue;
 import org.apache.qpid.client.messaging.address.Node;
+import org.apache.qpid.client.util.DeliveryTagTracker;
 import org.apache.qpid.common.AMQPFilterTypes;
 import org.apache.qpid.protocol.ErrorCodes;
 import org.apache.qpid.transport.*;
@@ -119,6 +121,13 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
      */
     private Session _qpidSession;
 
+    /**
+     * When the session uses adaptive prefetch, the consumer of each transfer not yet completed, by command id, for the
+     * consumers whose window follows the session.
+     */
+    private final ConcurrentSkipListMap<Integer, BasicMessageConsumer_0_10> _incompleteTransfers =
+            new ConcurrentSkipListMap<>();
+
     /**
      * The latest qpid Exception that has been raised.
      */
@@ -221,6 +230,11 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
     {
         syncDispatchQueue(true);
         clearUnacked();
+        _incompleteTransfers.clear();
+        for (BasicMessageConsumer_0_10 consumer : getConsumers())
+        {
+            consumer.resetWindow();
+        }
     }
 
     /**
@@ -240,13 +254,9 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
         // acknowledge this message
         if (multiple)
         {
-            for (Long messageTag : getUnacknowledgedMessageTags())
+            for (long messageTag : getUnacknowledgedMessageTags().removeUpTo(deliveryTag))
             {
-                if( messageTag <= deliveryTag )
-                {
-                    addUnacked(messageTag.intValue());
-                    getUnacknowledgedMessageTags().remove(messageTag);
-                }
+                addUnacked((int) messageTag);
             }
             //empty the list of unack messages
 
@@ -257,6 +267,34 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
             getUnacknowledgedMessageTags().remove(deliveryTag);
         }
 
+        flushAcknowledgmentsIfNecessary();
+    }
+
+    @Override
+    public void acknowledgeMessages(final long[] deliveryTags)
+    {
+        for (long deliveryTag : deliveryTags)
+        {
+            addUnacked((int) deliveryTag);
+            getUnacknowledgedMessageTags().remove(deliveryTag);
+        }
+
+        flushAcknowledgmentsIfNecessary();
+    }
+
+    @Override
+    protected void acknowledgeExpiredMessages(final long[] deliveryTags)
+    {
+        final RangeSet ranges = RangeSetFactory.createRangeSet();
+        for (long deliveryTag : deliveryTags)
+        {
+            ranges.add((int) deliveryTag);
+        }
+        messageAcknowledge(ranges, getAcknowledgeMode() != org.apache.qpid.jms.Session.NO_ACKNOWLEDGE);
+    }
+
+    private void flushAcknowledgmentsIfNecessary()
+    {
         long prefetch = getAMQConnection().getMaxPrefetch();
 
         if (unackedCount >= prefetch/2 || maxAckDelay <= 0 || getAcknowledgeMode() == javax.jms.Session.AUTO_ACKNOWLEDGE)
@@ -311,6 +349,67 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
             ssn.processed(range);
         }
         ssn.flushProcessed(batch ? BATCH : NONE);
+        if (!_incompleteTransfers.isEmpty())
+        {
+            transfersCompleted(ranges);
+        }
+    }
+
+    /**
+     * Accounts for completed transfers to consumers whose window follows the session. When a window has shrunk below
+     * the transfers that were outstanding, the credit the Broker restores for their completion is cancelled by
+     * stopping the consumer again, until the consumer holds no more than its window.
+     */
+    private void transfersCompleted(final RangeSet ranges)
+    {
+        final Map<BasicMessageConsumer_0_10, int[]> cancelled = new HashMap<>();
+        for (final Range range : ranges)
+        {
+            if (range.getLower() <= range.getUpper())
+            {
+                transfersCompleted(_incompleteTransfers.subMap(range.getLower(), true, range.getUpper(), true),
+                                   cancelled);
+            }
+            else
+            {
+                // the command ids have wrapped around
+                transfersCompleted(_incompleteTransfers.tailMap(range.getLower(), true), cancelled);
+                transfersCompleted(_incompleteTransfers.headMap(range.getUpper(), true), cancelled);
+            }
+        }
+
+        for (Map.Entry<BasicMessageConsumer_0_10, int[]> entry : cancelled.entrySet())
+        {
+            final int[] counts = entry.getValue();
+            if (counts[0] > 0)
+            {
+                final String consumerTag = entry.getKey().getConsumerTag();
+                getQpidSession().messageStop(consumerTag, UNRELIABLE);
+                getQpidSession().messageFlow(consumerTag, MessageCreditUnit.BYTE, 0xFFFFFFFF, UNRELIABLE);
+                if (counts[1] > 0 && !isSuspended())
+                {
+                    getQpidSession().messageFlow(consumerTag, MessageCreditUnit.MESSAGE, counts[1], UNRELIABLE);
+                }
+            }
+        }
+    }
+
+    private void transfersCompleted(final ConcurrentNavigableMap<Integer, BasicMessageConsumer_0_10> completed,
+                                    final Map<BasicMessageConsumer_0_10, int[]> cancelled)
+    {
+        Map.Entry<Integer, BasicMessageConsumer_0_10> entry;
+        while ((entry = completed.pollFirstEntry()) != null)
+        {
+            final BasicMessageConsumer_0_10 consumer = entry.getValue();
+            int[] counts = cancelled.get(consumer);
+            if (counts == null)
+            {
+                counts = new int[2];
+                cancelled.put(consumer, counts);
+            }
+            // the stop cancels all of the restored credit, so that which is not to be cancelled is reissued
+            counts[consumer.transferCompleted() ? 0 : 1]++;
+        }
     }
 
     /**
@@ -475,23 +574,18 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
         flushProcessed(all, false);
         getQpidSession().messageRelease(delivered, Option.SET_REDELIVERED);
         getQpidSession().messageRelease(prefetched);
+        clearPrefetchedBytes();
 
         // We need to sync so that we get notify of an error.
         sync();
     }
 
-    private RangeSet gatherRangeSet(ConcurrentLinkedQueue<Long> messageTags)
+    private RangeSet gatherRangeSet(DeliveryTagTracker messageTags)
     {
         RangeSet ranges = RangeSetFactory.createRangeSet();
-        while (true)
+        for (long tag : messageTags.drain())
         {
-            Long tag = messageTags.poll();
-            if (tag == null)
-            {
-                break;
-            }
-
-            ranges.add(tag.intValue());
+            ranges.add((int) tag);
         }
 
         return ranges;
@@ -517,6 +611,7 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
     public void rejectMessage(long deliveryTag, boolean requeue)
     {
         // The value of requeue is always true
+        releasePrefetchedBytes(deliveryTag);
         RangeSet ranges = RangeSetFactory.createRangeSet();
         ranges.add((int) deliveryTag);
         flushProcessed(ranges, false);
@@ -606,6 +701,56 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
         return isQueueBound(exchangeName, amqQueueName, routingKey);
     }
 
+    @Override
+    protected void applyPrefetchWindow(final int previous, final int window) throws QpidException
+    {
+        boolean flowing = getDispatcher() != null && (isStarted() || isImmediatePrefetch()) && !isSuspended();
+        List<BasicMessageConsumer_0_10> stopped = new ArrayList<>();
+        for (BasicMessageConsumer_0_10 consumer : getConsumers())
+        {
+            if (consumer.isCapacityFromSession())
+            {
+                consumer.setCapacity(window);
+                if (flowing && !consumer.isPrefetchFlowBlocked())
+                {
+                    String consumerTag = consumer.getConsumerTag();
+                    if (window > previous)
+                    {
+                        int credit = consumer.windowGrown(window - previous);
+                        if (credit > 0)
+                        {
+                            getQpidSession().messageFlow(consumerTag, MessageCreditUnit.MESSAGE, credit,
+                                                         Option.UNRELIABLE);
+                        }
+                    }
+                    else
+                    {
+                        // credit cannot be withdrawn in window mode, so stop the consumer and reissue the window
+                        consumer.windowStopped();
+                        getQpidSession().messageStop(consumerTag, Option.UNRELIABLE);
+                        stopped.add(consumer);
+                    }
+                }
+            }
+        }
+        long start = System.nanoTime();
+        sync();
+        roundTripMeasured(System.nanoTime() - start);
+
+        // The transfers sent before the stop have now been received. The Broker restores credit as each of those
+        // still outstanding is completed, even after the stop, so only the remainder of the window is issued.
+        for (BasicMessageConsumer_0_10 consumer : stopped)
+        {
+            String consumerTag = consumer.getConsumerTag();
+            getQpidSession().messageFlow(consumerTag, MessageCreditUnit.BYTE, 0xFFFFFFFF, Option.UNRELIABLE);
+            int credit = consumer.windowShrunk(window);
+            if (credit > 0)
+            {
+                getQpidSession().messageFlow(consumerTag, MessageCreditUnit.MESSAGE, credit, Option.UNRELIABLE);
+            }
+        }
+    }
+
     /**
      * This method is invoked when a consumer is created
      * Registers the consumer with the broker
@@ -658,7 +803,9 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
                                          capacity,
                                          Option.UNRELIABLE);
         }
+        long start = System.nanoTime();
         sync();
+        roundTripMeasured(System.nanoTime() - start);
     }
 
     /**
@@ -810,7 +957,8 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
      */
     public void sendSuspendChannel(boolean suspend) throws QpidException, FailoverException
     {
-        if (suspend)
+        // credit is withheld whilst the session holds too many prefetched bytes
+        if (suspend || isPrefetchFlowBlocked())
         {
             for (BasicMessageConsumer consumer : getConsumers())
             {
@@ -823,46 +971,88 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
         {
             for (BasicMessageConsumer_0_10 consumer : getConsumers())
             {
-                String consumerTag = consumer.getConsumerTag();
-                //only set if msg list is null
-                try
+                // a consumer holding too many prefetched bytes is restarted once enough have been delivered
+                if (!consumer.isPrefetchFlowBlocked())
                 {
-                    long capacity = consumer.getCapacity();
+                    issueCredit(consumer);
+                }
+            }
+        }
+        // We need to sync so that we get notify of an error.
+        sync();
+    }
 
-                    if (capacity == 0)
-                    {
-                        if (consumer.getMessageListener() != null)
-                        {
-                            getQpidSession().messageFlow(consumerTag,
-                                                         MessageCreditUnit.MESSAGE, 1,
-                                                         Option.UNRELIABLE);
-                        }
-                    }
-                    else
-                    {
-                        getQpidSession()
-                            .messageFlow(consumerTag, MessageCreditUnit.MESSAGE,
-                                         capacity,
-                                         Option.UNRELIABLE);
-                    }
-                    getQpidSession()
-                        .messageFlow(consumerTag, MessageCreditUnit.BYTE, 0xFFFFFFFF,
-                                     Option.UNRELIABLE);
+    private void issueCredit(final BasicMessageConsumer_0_10 consumer) throws AMQException
+    {
+        String consumerTag = consumer.getConsumerTag();
+        //only set if msg list is null
+        try
+        {
+            long capacity = consumer.getCapacity();
+
+            if (capacity == 0)
+            {
+                if (consumer.getMessageListener() != null)
+                {
+                    getQpidSession().messageFlow(consumerTag,
+                                                 MessageCreditUnit.MESSAGE, 1,
+                                                 Option.UNRELIABLE);
                 }
-                catch (Exception e)
+            }
+            else
+            {
+                getQpidSession()
+                    .messageFlow(consumerTag, MessageCreditUnit.MESSAGE,
+                                 capacity,
+                                 Option.UNRELIABLE);
+            }
+            getQpidSession()
+                .messageFlow(consumerTag, MessageCreditUnit.BYTE, 0xFFFFFFFF,
+                             Option.UNRELIABLE);
+        }
+        catch (Exception e)
+        {
+            throw new AMQException(ErrorCodes.INTERNAL_ERROR, "Error while trying to get the listener", e);
+        }
+    }
+
+    /**
+     * Stops the credit of each consumer holding more than its share of prefetched bytes, leaving the other consumers
+     * of the session flowing, and reissues it once the consumer has fallen to half of its limit.
+     */
+    @Override
+    protected void updateConsumerFlowForPrefetchBytes() throws QpidException
+    {
+        boolean changed = false;
+        for (BasicMessageConsumer_0_10 consumer : getConsumers())
+        {
+            boolean blocked = isConsumerPrefetchFlowBlocked(consumer.getConsumerTag());
+            if (blocked != consumer.isPrefetchFlowBlocked())
+            {
+                consumer.setPrefetchFlowBlocked(blocked);
+                if (blocked)
                 {
-                    throw new AMQException(ErrorCodes.INTERNAL_ERROR, "Error while trying to get the listener", e);
+                    getQpidSession().messageStop(consumer.getConsumerTag(), Option.UNRELIABLE);
                 }
+                else if (!isSuspended() && !isPrefetchFlowBlocked())
+                {
+                    issueCredit(consumer);
+                }
+                changed = true;
             }
         }
-        // We need to sync so that we get notify of an error.
-        sync();
+        if (changed)
+        {
+            // We need to sync so that we get notify of an error.
+            sync();
+        }
     }
 
 
     public void sendRollback() throws QpidException, FailoverException
     {
         getQpidSession().txRollback();
+        clearPrefetchedBytes();
         // We need to sync so that we get notify of an error.
         sync();
     }
@@ -907,6 +1097,15 @@ public class AMQSession_0_10 extends AMQSession<BasicMessageConsumer_0_10, Basic
 
     public void message(Session ssn, MessageTransfer xfr)
     {
+        if (isAdaptivePrefetch())
+        {
+            final BasicMessageConsumer_0_10 consumer = getConsumer(xfr.getDestination());
+            if (consumer != null && consumer.isCapacityFromSession())
+            {
+                consumer.transferReceived();
+                _incompleteTransfers.put(xfr.getId(), consumer);
+            }
+        }
         messageReceived(new UnprocessedMessage_0_10(xfr));
     }
 
@@ -26,12 +26,16 @@ import static org.apache.qpid.configuration.ClientProperties.DEFAULT_FLOW_CONTRO
 import static org.apache.qpid.configuration.ClientProperties.QPID_FLOW_CONTROL_WAIT_FAILURE;
 import static org.apache.qpid.configuration.ClientProperties.QPID_FLOW_CONTROL_WAIT_NOTIFY_PERIOD;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -58,6 +62,7 @@ import org.apache.qpid.client.messaging.address.Node;
 import org.apache.qpid.client.state.AMQState;
 import org.apache.qpid.client.state.AMQStateManager;
 import org.apache.qpid.client.state.listener.SpecificMethodFrameListener;
+import org.apache.qpid.client.util.DeliveryTagTracker;
 import org.apache.qpid.client.util.JMSExceptionHelper;
 import org.apache.qpid.common.AMQPFilterTypes;
 import org.apache.qpid.configuration.ClientProperties;
@@ -94,6 +99,60 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
     private FlowControlIndicator _flowControl = new FlowControlIndicator();
     private final AtomicBoolean _creditChanged = new AtomicBoolean();
 
+    /**
+     * Delivery tags of the messages received on this channel which the broker expects to be acknowledged or rejected.
+     * A run of acknowledgements covering every outstanding tag up to some tag is sent as a single multiple ack.
+     */
+    private final DeliveryTagTracker _outstandingDeliveryTags = new DeliveryTagTracker();
+
+    private final int _dupsOkAckBatchSize = Integer.getInteger(ClientProperties.DUPS_OK_ACK_BATCH_SIZE,
+                                                               ClientProperties.DEFAULT_DUPS_OK_ACK_BATCH_SIZE);
+    private final long _dupsOkAckMaxDelay = Long.getLong(ClientProperties.DUPS_OK_ACK_MAX_DELAY,
+                                                         ClientProperties.DEFAULT_DUPS_OK_ACK_MAX_DELAY);
+
+    /** Acknowledgements deferred by a DUPS_OK_ACKNOWLEDGE session, guarded by itself. */
+    private final List<Long> _pendingDupsOkAcks = new ArrayList<>();
+    private ScheduledFuture<?> _flushTaskFuture;
+
+    private static class Flusher implements Runnable
+    {
+        private final WeakReference<AMQSession_0_8> _session;
+        private ScheduledFuture<?> _future;
+
+        public Flusher(AMQSession_0_8 session)
+        {
+            _session = new WeakReference<>(session);
+        }
+
+        public void setFuture(final ScheduledFuture<?> future)
+        {
+            _future = future;
+        }
+
+        public void run()
+        {
+            AMQSession_0_8 ssn = _session.get();
+            if (ssn == null || ssn.isClosed())
+            {
+                if (_future != null)
+                {
+                    _future.cancel(false);
+                }
+            }
+            else
+            {
+                try
+                {
+                    ssn.flushAcknowledgments();
+                }
+                catch (Exception e)
+                {
+                    _logger.error("error flushing acks", e);
+                }
+            }
+        }
+    }
+
     /**
      * Creates a new session on a connection.
      * @param con                     The connection on which to create the session.
@@ -113,6 +172,13 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
 
         super(con,channelId,transacted,acknowledgeMode, defaultPrefetchHighMark,defaultPrefetchLowMark);
         _unacknowledgedMessages.set(0);
+
+        if (isLazyDupsOkAcknowledgement() && _dupsOkAckMaxDelay > 0)
+        {
+            Flusher flusher = new Flusher(this);
+            _flushTaskFuture = con.scheduleTask(flusher, _dupsOkAckMaxDelay, _dupsOkAckMaxDelay, TimeUnit.MILLISECONDS);
+            flusher.setFuture(_flushTaskFuture);
+        }
     }
 
 
@@ -133,17 +199,8 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
             throw JMSExceptionHelper.chainJMSException(new JMSException("Session.reduceCreditToOriginalSize failed"),
                                                        e);
         }
-        while (true)
-        {
-            Long tag = getUnacknowledgedMessageTags().poll();
-            if (tag == null)
-            {
-                break;
-            }
-
-            acknowledgeMessage(tag, false);
-            syncRequired = true;
-        }
+        flushAcknowledgments();
+        syncRequired = acknowledgeDeliveryTags(getUnacknowledgedMessageTags().drain());
         _unacknowledgedMessages.set(0);
         try
         {
@@ -159,6 +216,52 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
     }
 
     public void acknowledgeMessage(long deliveryTag, boolean multiple)
+    {
+        if (!multiple && isLazyDupsOkAcknowledgement())
+        {
+            deferAcknowledgement(deliveryTag);
+        }
+        else
+        {
+            writeAcknowledgement(deliveryTag, multiple);
+        }
+        getUnacknowledgedMessageTags().remove(deliveryTag);
+    }
+
+    @Override
+    public void acknowledgeMessages(final long[] deliveryTags)
+    {
+        if (isLazyDupsOkAcknowledgement())
+        {
+            super.acknowledgeMessages(deliveryTags);
+        }
+        else
+        {
+            acknowledgeDeliveryTags(deliveryTags.clone());
+            for (long deliveryTag : deliveryTags)
+            {
+                getUnacknowledgedMessageTags().remove(deliveryTag);
+            }
+        }
+    }
+
+    @Override
+    protected void acknowledgeExpiredMessages(final long[] deliveryTags)
+    {
+        // messages for no-ack consumers are not outstanding, and must not be acknowledged
+        final long[] outstandingTags = new long[deliveryTags.length];
+        int outstanding = 0;
+        for (long deliveryTag : deliveryTags)
+        {
+            if (_outstandingDeliveryTags.contains(deliveryTag))
+            {
+                outstandingTags[outstanding++] = deliveryTag;
+            }
+        }
+        acknowledgeDeliveryTags(Arrays.copyOf(outstandingTags, outstanding));
+    }
+
+    private void writeAcknowledgement(long deliveryTag, boolean multiple)
     {
         BasicAckBody body = getMethodRegistry().createBasicAckBody(deliveryTag, multiple);
 
@@ -166,11 +269,80 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
 
         if (_logger.isDebugEnabled())
         {
-            _logger.debug("Sending ack for delivery tag " + deliveryTag + " on channel " + getChannelId());
+            _logger.debug("Sending ack for delivery tag " + deliveryTag + (multiple ? " (multiple)" : "")
+                          + " on channel " + getChannelId());
         }
 
         getProtocolHandler().writeFrame(ackFrame, !isTransacted());
-        getUnacknowledgedMessageTags().remove(deliveryTag);
+        if (multiple)
+        {
+            releasePrefetchedBytes(_outstandingDeliveryTags.removeUpTo(deliveryTag));
+        }
+        else
+        {
+            _outstandingDeliveryTags.remove(deliveryTag);
+            releasePrefetchedBytes(deliveryTag);
+        }
+    }
+
+    /**
+     * Acknowledges the given delivery tags. Where the tags include every outstanding delivery tag up to some tag
+     * that prefix is acknowledged with a single multiple ack, which also covers any given tags below it that are no
+     * longer outstanding; the tags above it are acknowledged individually.
+     *
+     * @return true if any acknowledgement was sent
+     */
+    private boolean acknowledgeDeliveryTags(final long[] tags)
+    {
+        if (tags.length == 0)
+        {
+            return false;
+        }
+        Arrays.sort(tags);
+
+        final long multipleAckTag = _outstandingDeliveryTags.lastOfLeadingRun(tags);
+
+        if (tags.length < 2 || multipleAckTag < tags[1])
+        {
+            for (long tag : tags)
+            {
+                writeAcknowledgement(tag, false);
+            }
+        }
+        else
+        {
+            // tags at or below the multiple ack which are not outstanding were acknowledged before, or are unknown
+            // to the Broker, which would close the channel were they acknowledged again
+            writeAcknowledgement(multipleAckTag, true);
+            for (long tag : tags)
+            {
+                if (tag > multipleAckTag)
+                {
+                    writeAcknowledgement(tag, false);
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean isLazyDupsOkAcknowledgement()
+    {
+        return getAcknowledgeMode() == DUPS_OK_ACKNOWLEDGE && _dupsOkAckBatchSize > 1;
+    }
+
+    private void deferAcknowledgement(final long deliveryTag)
+    {
+        final boolean flush;
+        synchronized (_pendingDupsOkAcks)
+        {
+            _pendingDupsOkAcks.add(deliveryTag);
+            // never hold back more than half the prefetch, or the broker could stop delivering
+            flush = _pendingDupsOkAcks.size() >= Math.min(_dupsOkAckBatchSize, Math.max(1, getPrefetch() / 2));
+        }
+        if (flush)
+        {
+            flushAcknowledgments();
+        }
     }
 
     @Override
@@ -188,6 +360,11 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
         }
 
         getDeliveredMessageTags().clear();
+        _outstandingDeliveryTags.clear();
+        synchronized (_pendingDupsOkAcks)
+        {
+            _pendingDupsOkAcks.clear();
+        }
         super.resubscribe();
     }
 
@@ -248,7 +425,8 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
         if (!(getProtocolHandler().getStateManager().getCurrentState().equals(AMQState.CONNECTION_CLOSED)
             || getProtocolHandler().getStateManager().getCurrentState().equals(AMQState.CONNECTION_CLOSING)))
         {
-
+            flushAcknowledgments();
+            cancelTimerTask();
             getProtocolHandler().closeSession(this);
             getProtocolHandler().syncWrite(getProtocolHandler().getMethodRegistry()
                                                    .createChannelCloseBody(ErrorCodes.REPLY_SUCCESS,
@@ -259,21 +437,25 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
             // When control resumes at this point, a reply will have been received that
             // indicates the broker has closed the channel successfully.
         }
+        else
+        {
+            cancelTimerTask();
+        }
     }
 
-    public void commitImpl() throws QpidException, FailoverException, TransportException
+    private void cancelTimerTask()
     {
-        // Acknowledge all delivered messages
-        while (true)
+        if (_flushTaskFuture != null)
         {
-            Long tag = getDeliveredMessageTags().poll();
-            if (tag == null)
-            {
-                break;
-            }
-
-            acknowledgeMessage(tag, false);
+            _flushTaskFuture.cancel(false);
+            _flushTaskFuture = null;
         }
+    }
+
+    public void commitImpl() throws QpidException, FailoverException, TransportException
+    {
+        // Acknowledge all delivered messages
+        acknowledgeDeliveryTags(getDeliveredMessageTags().drain());
 
         final AMQProtocolHandler handler = getProtocolHandler();
         reduceCreditToOriginalSize();
@@ -293,6 +475,8 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
         enforceRejectBehaviourDuringRecover();
         getPrefetchedMessageTags().clear();
         getUnacknowledgedMessageTags().clear();
+        // every message delivered so far will be redelivered with a new delivery tag
+        final long highestDeliveryTag = getHighestDeliveryTag().get();
 
         if (isStrictAMQP())
         {
@@ -317,7 +501,9 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
                 getAMQConnection().getProtocolHandler().syncWrite(body.generateFrame(getChannelId()), BasicRecoverSyncOkBody.class);
             }
         }
+        _outstandingDeliveryTags.removeUpTo(highestDeliveryTag);
         _unacknowledgedMessages.set(0);
+        clearPrefetchedBytes();
     }
 
     private void enforceRejectBehaviourDuringRecover()
@@ -352,7 +538,7 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
                         break;
                     }
                 case Session.CLIENT_ACKNOWLEDGE:
-                    for(Long tag : getUnacknowledgedMessageTags())
+                    for(long tag : getUnacknowledgedMessageTags().toArray())
                     {
                         rejectMessage(tag, false);
                     }
@@ -380,20 +566,15 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
             }
         }
 
-        while (true)
+        for (long tag : getDeliveredMessageTags().drain())
         {
-            Long tag = getDeliveredMessageTags().poll();
-            if (tag == null)
-            {
-                break;
-            }
-
             rejectMessage(tag, normalRejectBehaviour);
         }
     }
 
     public void rejectMessage(long deliveryTag, boolean requeue)
     {
+        releasePrefetchedBytes(deliveryTag);
         if ((getAcknowledgeMode() == CLIENT_ACKNOWLEDGE) || (getAcknowledgeMode() == SESSION_TRANSACTED)||
                 ((getAcknowledgeMode() == AUTO_ACKNOWLEDGE || getAcknowledgeMode() == DUPS_OK_ACKNOWLEDGE ) && hasMessageListeners()))
         {
@@ -406,6 +587,7 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
             AMQFrame frame = body.generateFrame(getChannelId());
 
             getAMQConnection().getProtocolHandler().writeFrame(frame);
+            _outstandingDeliveryTags.remove(deliveryTag);
         }
     }
 
@@ -719,9 +901,22 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
         getProtocolHandler().syncWrite(queueDeleteFrame, QueueDeleteOkBody.class);
     }
 
+    /**
+     * AMQP 0-8..0-9-1 has no flow control for a single consumer, so the channel flow is also stopped whilst any one
+     * consumer holds more than {@link AMQConnection#getMaxConsumerPrefetchBytes()}, which stops the other consumers of
+     * the session as well.
+     */
+    @Override
+    protected boolean isPrefetchFlowBlocked()
+    {
+        return super.isPrefetchFlowBlocked() || isAnyConsumerPrefetchFlowBlocked();
+    }
+
     public void sendSuspendChannel(boolean suspend) throws QpidException, FailoverException
     {
-        ChannelFlowBody body = getMethodRegistry().createChannelFlowBody(!suspend);
+        // the channel is kept suspended whilst the prefetched bytes exceed their limit
+        boolean flow = !suspend && !isPrefetchFlowBlocked();
+        ChannelFlowBody body = getMethodRegistry().createChannelFlowBody(flow);
         AMQFrame channelFlowFrame = body.generateFrame(getChannelId());
         getAMQConnection().getProtocolHandler().syncWrite(channelFlowFrame, ChannelFlowOkBody.class);
     }
@@ -761,6 +956,12 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
         }
         else
         {
+            final BasicMessageConsumer_0_8 consumer = getConsumer(message.getConsumerTag());
+            if (consumer == null
+                || (consumer.getAcknowledgeMode() != NO_ACKNOWLEDGE && !consumer.isBrowseOnly()))
+            {
+                _outstandingDeliveryTags.add(message.getDeliveryTag());
+            }
             super.messageReceived(message);
         }
     }
@@ -819,6 +1020,7 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
         AMQFrame frame = body.generateFrame(getChannelId());
         getProtocolHandler().syncWrite(frame, TxRollbackOkBody.class);
         _unacknowledgedMessages.set(0);
+        clearPrefetchedBytes();
     }
 
     public void setPrefetchLimits(final int messagePrefetch, final long sizePrefetch)
@@ -830,12 +1032,54 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
             BasicQosBody basicQosBody =
                     getProtocolHandler().getMethodRegistry().createBasicQosBody(sizePrefetch, messagePrefetch, false);
 
+            long start = System.nanoTime();
             getProtocolHandler().syncWrite(basicQosBody.generateFrame(getChannelId()), BasicQosOkBody.class);
+            roundTripMeasured(System.nanoTime() - start);
         }
     }
 
 
 
+    @Override
+    protected void applyPrefetchWindow(final int previous, final int window) throws QpidException
+    {
+        // whilst credit has been raised to let a receive proceed the new window is applied when the credit is reduced
+        if (!_creditChanged.get())
+        {
+            new FailoverNoopSupport<>(
+                    new FailoverProtectedOperation<Void, QpidException>()
+                    {
+                        public Void execute() throws QpidException, FailoverException
+                        {
+                            BasicQosBody basicQosBody = getProtocolHandler().getMethodRegistry()
+                                    .createBasicQosBody(getQosPrefetchSize(), window, false);
+
+                            long start = System.nanoTime();
+                            getProtocolHandler().syncWrite(basicQosBody.generateFrame(getChannelId()),
+                                                           BasicQosOkBody.class);
+                            roundTripMeasured(System.nanoTime() - start);
+                            return null;
+                        }
+                    }, getProtocolHandler().getConnection()).execute();
+        }
+    }
+
+    /**
+     * @return the prefetch-size to send in basic.qos, which is the byte limit of the session where the Broker honours
+     * it, unless the session raises the message credit to let receive proceed, which a byte limit would defeat
+     */
+    long getQosPrefetchSize()
+    {
+        long limit = getPrefetchByteLimit();
+        if (limit > 0
+            && !isManagingCredit()
+            && ((AMQConnectionDelegate_8_0) getAMQConnection().getDelegate()).isPrefetchSizeSupported())
+        {
+            return Math.min(limit, 0xFFFFFFFFL);
+        }
+        return 0L;
+    }
+
     protected boolean ensureCreditForReceive() throws QpidException
     {
         return new FailoverNoopSupport<>(
@@ -1385,7 +1629,17 @@ public class AMQSession_0_8 extends AMQSession<BasicMessageConsumer_0_8, BasicMe
 
     protected void flushAcknowledgments()
     {
-
+        final long[] tags;
+        synchronized (_pendingDupsOkAcks)
+        {
+            tags = new long[_pendingDupsOkAcks.size()];
+            for (int i = 0; i < tags.length; i++)
+            {
+                tags[i] = _pendingDupsOkAcks.get(i);
+            }
+            _pendingDupsOkAcks.clear();
+        }
+        acknowledgeDeliveryTags(tags);
     }
 
     @Override
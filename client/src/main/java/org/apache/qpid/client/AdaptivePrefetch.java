@@ -0,0 +1,165 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sizes the prefetch window of a session from the rate at which the application processes messages and the round
+ * trip time to the Broker.
+ * <p>
+ * The window needed to keep a consumer busy is the number of messages it can process while a request for more
+ * travels to the Broker and back. The window is set to twice that, to absorb jitter, and kept within the configured
+ * bounds. A slow consumer therefore holds few messages that competing consumers could otherwise process, while a fast
+ * consumer on a high latency link is given enough credit not to starve.
+ */
+public class AdaptivePrefetch
+{
+    /** Weight given to a new sample in the smoothed processing time and round trip time. */
+    private static final double SMOOTHING_FACTOR = 0.25;
+
+    /** The window is only changed when the target differs from it by more than this fraction. */
+    private static final double HYSTERESIS = 0.125;
+
+    private final int _minimum;
+    private final int _maximum;
+    private volatile int _window;
+
+    private final AtomicLong _processedCount = new AtomicLong();
+    private final AtomicLong _processingNanos = new AtomicLong();
+
+    private volatile double _averageProcessingNanos = -1;
+    private volatile double _averageRoundTripNanos = -1;
+
+    public AdaptivePrefetch(final int minimum, final int maximum)
+    {
+        if (minimum <= 0 || minimum > maximum)
+        {
+            throw new IllegalArgumentException("Invalid prefetch bounds [" + minimum + ", " + maximum + "]");
+        }
+        _minimum = minimum;
+        _maximum = maximum;
+        _window = maximum;
+    }
+
+    /**
+     * Records that the application finished processing a message.
+     *
+     * @param processingNanos the time the application spent on the message
+     */
+    void messageProcessed(final long processingNanos)
+    {
+        _processedCount.incrementAndGet();
+        _processingNanos.addAndGet(Math.max(processingNanos, 0L));
+    }
+
+    /**
+     * Records the time taken by a synchronous exchange with the Broker.
+     */
+    void roundTripMeasured(final long roundTripNanos)
+    {
+        _averageRoundTripNanos = smooth(_averageRoundTripNanos, Math.max(roundTripNanos, 1L));
+    }
+
+    /**
+     * Folds the messages processed since the last evaluation into the measurements and works out the window.
+     *
+     * @return the window the session should now use, which is the current window if it need not change
+     */
+    int evaluate()
+    {
+        final long count = _processedCount.getAndSet(0L);
+        final long nanos = _processingNanos.getAndSet(0L);
+        if (count > 0)
+        {
+            _averageProcessingNanos = smooth(_averageProcessingNanos, Math.max((double) nanos / count, 1d));
+        }
+
+        final double processingNanos = _averageProcessingNanos;
+        final double roundTripNanos = _averageRoundTripNanos;
+        if (count == 0 || processingNanos < 0 || roundTripNanos < 0)
+        {
+            return _window;
+        }
+
+        final double target = Math.ceil(2d * roundTripNanos / processingNanos);
+        final int window = (int) Math.max(_minimum, Math.min(_maximum, target));
+        final int current = _window;
+        if (window != current
+            && (window == _minimum || window == _maximum || Math.abs(window - current) > current * HYSTERESIS))
+        {
+            _window = window;
+            return window;
+        }
+        return current;
+    }
+
+    private static double smooth(final double average, final double sample)
+    {
+        return average < 0 ? sample : average + SMOOTHING_FACTOR * (sample - average);
+    }
+
+    /**
+     * @return the number of messages the session currently allows the Broker to send ahead of the application
+     */
+    public int getWindow()
+    {
+        return _window;
+    }
+
+    public int getMinimum()
+    {
+        return _minimum;
+    }
+
+    public int getMaximum()
+    {
+        return _maximum;
+    }
+
+    /**
+     * @return the measured number of messages per second the application can process, or -1 if not yet known
+     */
+    public double getProcessingRate()
+    {
+        final double processingNanos = _averageProcessingNanos;
+        return processingNanos < 0 ? -1d : TimeUnit.SECONDS.toNanos(1) / processingNanos;
+    }
+
+    /**
+     * @return the measured round trip time to the Broker in milliseconds, or -1 if not yet known
+     */
+    public double getRoundTripTime()
+    {
+        final double roundTripNanos = _averageRoundTripNanos;
+        return roundTripNanos < 0 ? -1d : roundTripNanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "AdaptivePrefetch[window=" + _window
+               + ", bounds=[" + _minimum + ", " + _maximum + "]"
+               + ", processingRate=" + getProcessingRate()
+               + ", roundTripTime=" + getRoundTripTime() + "]";
+    }
+}
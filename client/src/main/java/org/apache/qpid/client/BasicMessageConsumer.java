@@ -21,6 +21,7 @@
 package org.apache.qpid.client;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -49,8 +50,10 @@ import org.apache.qpid.client.message.AMQMessageDelegateFactory;
 import org.apache.qpid.client.message.AbstractJMSMessage;
 import org.apache.qpid.client.message.CloseConsumerMessage;
 import org.apache.qpid.client.message.MessageFactoryRegistry;
+import org.apache.qpid.client.message.UnprocessedMessage;
 import org.apache.qpid.client.util.JMSExceptionHelper;
 import org.apache.qpid.common.AMQPFilterTypes;
+import org.apache.qpid.jms.BatchMessageListener;
 import org.apache.qpid.jms.MessageConsumer;
 import org.apache.qpid.jms.Session;
 import org.apache.qpid.transport.TransportException;
@@ -80,7 +83,7 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
 
     private final int _channelId;
 
-    private final BlockingQueue _synchronousQueue;
+    private final BlockingQueue<Object> _synchronousQueue;
 
     private final MessageFactoryRegistry _messageFactory;
 
@@ -118,6 +121,25 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
      */
     private volatile Thread _receivingThread;
 
+    /**
+     * When the session uses adaptive prefetch, the time at which receive last returned a message to the application,
+     * or 0. The time until the next receive is taken as the time the application spent processing that message.
+     */
+    private volatile long _lastReceivedNanos;
+
+    /** The largest batch of messages given to a {@link BatchMessageListener}. */
+    private volatile int _maxBatchSize;
+
+    /**
+     * The messages accumulated for a {@link BatchMessageListener} whilst the dispatcher has further messages queued
+     * for this consumer, guarded by itself.
+     */
+    private final List<Object> _pendingBatch = new ArrayList<>();
+
+    /** Runs the message listener on the listener threads of the session, when it has them. Created on first use. */
+    private ConcurrentListenerDelivery _concurrentDelivery;
+    private final Object _concurrentDeliveryLock = new Object();
+
 
     /**
      * Used to store this consumer queue name
@@ -150,9 +172,10 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
         _session = session;
         _prefetchHigh = prefetchHigh;
         _prefetchLow = prefetchLow;
+        _maxBatchSize = Math.max(1, prefetchHigh);
         _exclusive = exclusive;
         
-        _synchronousQueue = new LinkedBlockingQueue();
+        _synchronousQueue = new LinkedBlockingQueue<>();
         _autoClose = autoClose;
         _browseOnly = browseOnly;
 
@@ -304,9 +327,10 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
                     Object o = _synchronousQueue.poll();
                     while (o != null)
                     {
-                        notifyMessage((AbstractJMSMessage) o);
+                        deliver(o);
                         o = _synchronousQueue.poll();
                     }
+                    deliverPendingBatch();
                 }
             }
         }
@@ -359,6 +383,22 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
         return _arguments;
     }
 
+    @Override
+    public void setMaxBatchSize(final int maxBatchSize)
+    {
+        if (maxBatchSize < 1)
+        {
+            throw new IllegalArgumentException("Maximum batch size must be at least 1, not " + maxBatchSize);
+        }
+        _maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public int getMaxBatchSize()
+    {
+        return _maxBatchSize;
+    }
+
     public int getPrefetch()
     {
         return _prefetchHigh;
@@ -422,6 +462,7 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
     {
 
         checkPreConditions();
+        recordSynchronousProcessing();
 
         try
         {
@@ -447,6 +488,10 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
             {
                 preDeliver(m);
                 postDeliver(m);
+                if (_session.isAdaptivePrefetch())
+                {
+                    _lastReceivedNanos = System.nanoTime();
+                }
             }
             return m;
         }
@@ -469,6 +514,106 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
         }
     }
 
+    @Override
+    public List<Message> receive(final int maxMessages, final long timeout) throws JMSException
+    {
+        if (maxMessages < 1)
+        {
+            throw new IllegalArgumentException("Maximum number of messages must be at least 1, not " + maxMessages);
+        }
+
+        final List<Message> messages = new ArrayList<>();
+        final Message first = receive(timeout);
+        if (first != null)
+        {
+            messages.add(first);
+            if (maxMessages > 1 && isBatchReceiveSupported())
+            {
+                receivePrefetched(messages, maxMessages);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * @return false if messages must be received one at a time, as when the session manages credit for each receive
+     */
+    boolean isBatchReceiveSupported()
+    {
+        return true;
+    }
+
+    /**
+     * Adds to the given messages those already in the synchronous queue, up to the maximum, settling them together.
+     */
+    private void receivePrefetched(final List<Message> messages, final int maxMessages) throws JMSException
+    {
+        try
+        {
+            if (!acquireReceiving(true))
+            {
+                return;
+            }
+        }
+        catch (InterruptedException e)
+        {
+            return;
+        }
+
+        try
+        {
+            final List<AbstractJMSMessage> batch = new ArrayList<>();
+            while (messages.size() + batch.size() < maxMessages)
+            {
+                // errors, close requests and messages which cannot be created are left on the queue for the next
+                // receive
+                final Object o = _synchronousQueue.peek();
+                if (!isMessage(o))
+                {
+                    break;
+                }
+                final AbstractJMSMessage m;
+                try
+                {
+                    m = toJMSMessage(o);
+                }
+                catch (Exception e)
+                {
+                    break;
+                }
+                if (!_synchronousQueue.remove(o))
+                {
+                    break;
+                }
+                preDeliver(m);
+                batch.add(m);
+            }
+            if (!batch.isEmpty())
+            {
+                postDeliver(batch);
+                messages.addAll(batch);
+            }
+        }
+        catch(TransportException e)
+        {
+            throw _session.toJMSException("Exception while receiving:" + e.getMessage(), e);
+        }
+        finally
+        {
+            releaseReceiving();
+        }
+    }
+
+    private void recordSynchronousProcessing()
+    {
+        long lastReceivedNanos = _lastReceivedNanos;
+        if (lastReceivedNanos != 0L)
+        {
+            _lastReceivedNanos = 0L;
+            _session.messageProcessed(System.nanoTime() - lastReceivedNanos);
+        }
+    }
+
     public  Object getMessageFromQueue(long l) throws InterruptedException
     {
          Object o;
@@ -492,6 +637,7 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
     public Message receiveNoWait() throws JMSException
     {
         checkPreConditions();
+        recordSynchronousProcessing();
 
         try
         {
@@ -523,6 +669,10 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
             {
                 preDeliver(m);
                 postDeliver(m);
+                if (_session.isAdaptivePrefetch())
+                {
+                    _lastReceivedNanos = System.nanoTime();
+                }
             }
 
             return m;
@@ -566,9 +716,25 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
             deregisterConsumer();
             return null;
         }
+        else if (o == null)
+        {
+            return null;
+        }
         else
         {
-            return (AbstractJMSMessage) o;
+            try
+            {
+                return toJMSMessage(o);
+            }
+            catch (JMSException | RuntimeException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                throw JMSExceptionHelper.chainJMSException(new JMSException(
+                        "Unable to create received message: " + e.getMessage()), e);
+            }
         }
     }
 
@@ -588,6 +754,16 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
         {
             setClosing(true);
 
+            final ConcurrentListenerDelivery concurrentDelivery;
+            synchronized (_concurrentDeliveryLock)
+            {
+                concurrentDelivery = _concurrentDelivery;
+            }
+            if (concurrentDelivery != null)
+            {
+                concurrentDelivery.close();
+            }
+
             if (sendClose)
             {
 
@@ -721,15 +897,114 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
 
 
 
-        try
+        deliver(messageFrame);
+    }
+
+    public abstract AbstractJMSMessage createJMSMessageFromUnprocessedMessage(AMQMessageDelegateFactory delegateFactory, U messageFrame)
+            throws Exception;
+
+    /**
+     * Creates the JMS message for a received message once it is to be given to the application.
+     *
+     * @param message the unprocessed message, or a JMS message which has already been created
+     * @return the JMS message
+     */
+    @SuppressWarnings("unchecked")
+    private AbstractJMSMessage toJMSMessage(final Object message) throws Exception
+    {
+        if (message instanceof AbstractJMSMessage)
         {
-            AbstractJMSMessage jmsMessage = createJMSMessageFromUnprocessedMessage(_session.getMessageDelegateFactory(), messageFrame);
+            return (AbstractJMSMessage) message;
+        }
+        final AbstractJMSMessage jmsMessage =
+                createJMSMessageFromUnprocessedMessage(_session.getMessageDelegateFactory(), (U) message);
+        if (_logger.isDebugEnabled())
+        {
+            _logger.debug("Message is of type: " + jmsMessage.getClass().getName());
+        }
+        return jmsMessage;
+    }
 
-            if (_logger.isDebugEnabled())
+    /**
+     * @return true if the given item of the synchronous queue is a message, rather than an error or close request
+     */
+    static boolean isMessage(final Object o)
+    {
+        return o instanceof AbstractJMSMessage
+               || (o instanceof UnprocessedMessage && !(o instanceof CloseConsumerMessage));
+    }
+
+    static long getDeliveryTag(final Object message)
+    {
+        return message instanceof AbstractJMSMessage
+                ? ((AbstractJMSMessage) message).getDeliveryTag()
+                : ((UnprocessedMessage) message).getDeliveryTag();
+    }
+
+    /** @param jmsMessage this message has already been processed so can't redo preDeliver */
+    public void notifyMessage(AbstractJMSMessage jmsMessage)
+    {
+        deliver(jmsMessage);
+    }
+
+    /**
+     * Gives a message to the message listener, or queues it for receive. A message received from the Broker is held
+     * unprocessed until it is given to the application, so that no JMS message is created for one released or
+     * rejected before then.
+     *
+     * @param message the unprocessed message, or a JMS message which has already been created
+     */
+    private void deliver(final Object message)
+    {
+        try
+        {
+            final MessageListener messageListener = _messageListener.get();
+            if (messageListener instanceof BatchMessageListener)
+            {
+                final boolean full;
+                synchronized (_pendingBatch)
+                {
+                    _pendingBatch.add(message);
+                    full = _pendingBatch.size() >= _maxBatchSize;
+                }
+                if (full)
+                {
+                    deliverPendingBatch();
+                }
+            }
+            else if (messageListener != null)
+            {
+                final AbstractJMSMessage jmsMessage = toJMSMessage(message);
+                final ConcurrentListenerDelivery concurrentDelivery = getConcurrentDelivery();
+                if (concurrentDelivery != null)
+                {
+                    // registered once a listener thread takes it, settled once it and those before it are processed
+                    jmsMessage.setAMQSession(_session);
+                    _session.releasePrefetchedBytes(jmsMessage.getDeliveryTag());
+                    concurrentDelivery.deliver(jmsMessage, messageListener);
+                }
+                else
+                {
+                    preDeliver(jmsMessage);
+                    if (_session.isAdaptivePrefetch())
+                    {
+                        long start = System.nanoTime();
+                        getMessageListener().onMessage(jmsMessage);
+                        _session.messageProcessed(System.nanoTime() - start);
+                    }
+                    else
+                    {
+                        getMessageListener().onMessage(jmsMessage);
+                    }
+                    postDeliver(jmsMessage);
+                }
+            }
+            else
             {
-                _logger.debug("Message is of type: " + jmsMessage.getClass().getName());
+                // we should not be allowed to add a message is the
+                // consumer is closed
+                _synchronousQueue.put(message);
             }
-            notifyMessage(jmsMessage);
         }
         catch (Exception e)
         {
@@ -744,37 +1019,138 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
         }
     }
 
-    public abstract AbstractJMSMessage createJMSMessageFromUnprocessedMessage(AMQMessageDelegateFactory delegateFactory, U messageFrame)
-            throws Exception;
+    private ConcurrentListenerDelivery getConcurrentDelivery()
+    {
+        synchronized (_concurrentDeliveryLock)
+        {
+            if (_concurrentDelivery == null && _session.isConcurrentListenerDelivery())
+            {
+                _concurrentDelivery = new ConcurrentListenerDelivery(this,
+                                                                     _session.getListenerExecutor(),
+                                                                     _connection.getListenerOrderingKey());
+            }
+            return _concurrentDelivery;
+        }
+    }
 
-    /** @param jmsMessage this message has already been processed so can't redo preDeliver */
-    public void notifyMessage(AbstractJMSMessage jmsMessage)
+    /**
+     * Called once an expired message for this consumer has been discarded and acknowledged in place of being
+     * delivered.
+     */
+    void expiredMessageDropped()
     {
-        try
+    }
+
+    /**
+     * Called on a listener thread of the session just before a concurrent message listener is given the message.
+     */
+    void concurrentDeliveryStarted(final AbstractJMSMessage message)
+    {
+        preDeliver(message);
+    }
+
+    /**
+     * Called on a listener thread of the session when a concurrent message listener has thrown. The message is
+     * returned to the Broker unless the listener acknowledged it first.
+     */
+    void concurrentDeliveryFailed(final AbstractJMSMessage message)
+    {
+        final boolean unacknowledged = _session.getUnacknowledgedMessageTags().remove(message.getDeliveryTag());
+        if (unacknowledged || _acknowledgeMode != Session.CLIENT_ACKNOWLEDGE)
+        {
+            _session.rejectMessage(message, true);
+        }
+    }
+
+    /**
+     * Settles messages whose concurrent message listeners have returned, in the order they were received.
+     */
+    void settleConcurrentDeliveries(final List<AbstractJMSMessage> messages)
+    {
+        postDeliver(messages);
+    }
+
+    /**
+     * Waits for a message listener running on the listener threads of the session to finish with the messages given
+     * to it.
+     */
+    void awaitConcurrentListeners()
+    {
+        final ConcurrentListenerDelivery concurrentDelivery;
+        synchronized (_concurrentDeliveryLock)
+        {
+            concurrentDelivery = _concurrentDelivery;
+        }
+        if (concurrentDelivery != null)
         {
-            if (isMessageListenerSet())
+            concurrentDelivery.awaitIdle();
+        }
+    }
+
+    /**
+     * Gives the messages accumulated for a {@link BatchMessageListener} to it. Called by the dispatcher, whilst
+     * holding the message delivery lock, once it has no further messages queued for this consumer.
+     */
+    void deliverPendingBatch()
+    {
+        final List<Object> pending;
+        synchronized (_pendingBatch)
+        {
+            if (_pendingBatch.isEmpty())
             {
-                preDeliver(jmsMessage);
-                getMessageListener().onMessage(jmsMessage);
-                postDeliver(jmsMessage);
+                return;
             }
-            else
+            pending = new ArrayList<>(_pendingBatch);
+            _pendingBatch.clear();
+        }
+
+        final MessageListener messageListener = _messageListener.get();
+        if (!(messageListener instanceof BatchMessageListener))
+        {
+            // the listener may only be changed whilst the connection is stopped, so hand the messages to receive
+            _synchronousQueue.addAll(pending);
+            return;
+        }
+
+        final List<AbstractJMSMessage> batch = new ArrayList<>(pending.size());
+        for (Object message : pending)
+        {
+            try
             {
-                // we should not be allowed to add a message is the
-                // consumer is closed
-                _synchronousQueue.put(jmsMessage);
+                batch.add(toJMSMessage(message));
+            }
+            catch (Exception e)
+            {
+                _logger.error("Batch delivery : Caught exception (dump follows) - ignoring...", e);
             }
         }
-        catch (Exception e)
+        if (batch.isEmpty())
         {
-            if (e instanceof InterruptedException)
+            return;
+        }
+
+        try
+        {
+            for (AbstractJMSMessage message : batch)
             {
-                _logger.info("reNotification : SynchronousQueue.put interupted. Usually result of connection closing");
+                preDeliver(message);
+            }
+            final List<Message> messages = Collections.<Message>unmodifiableList(batch);
+            if (_session.isAdaptivePrefetch())
+            {
+                long start = System.nanoTime();
+                ((BatchMessageListener) messageListener).onMessages(messages);
+                _session.messageProcessed((System.nanoTime() - start) / batch.size());
             }
             else
             {
-                _logger.error("reNotification : Caught exception (dump follows) - ignoring...", e);
+                ((BatchMessageListener) messageListener).onMessages(messages);
             }
+            postDeliver(batch);
+        }
+        catch (Exception e)
+        {
+            _logger.error("Batch delivery : Caught exception (dump follows) - ignoring...", e);
         }
     }
 
@@ -782,6 +1158,7 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
     {
         _session.setInRecovery(false);
         msg.setAMQSession(_session);
+        _session.releasePrefetchedBytes(msg.getDeliveryTag());
 
         switch (_acknowledgeMode)
         {
@@ -824,6 +1201,34 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
         }
     }
 
+    /**
+     * Settles messages delivered to the application together, as {@link #postDeliver(AbstractJMSMessage)} does for
+     * each, acknowledging them with as few acknowledgements as the session allows.
+     */
+    void postDeliver(List<AbstractJMSMessage> messages)
+    {
+        switch (_acknowledgeMode)
+        {
+            case Session.DUPS_OK_ACKNOWLEDGE:
+            case Session.AUTO_ACKNOWLEDGE:
+                if (!_session.isInRecovery())
+                {
+                    _session.acknowledgeMessages(getDeliveryTags(messages));
+                }
+                break;
+        }
+    }
+
+    static long[] getDeliveryTags(final List<AbstractJMSMessage> messages)
+    {
+        final long[] tags = new long[messages.size()];
+        for (int i = 0; i < tags.length; i++)
+        {
+            tags[i] = messages.get(i).getDeliveryTag();
+        }
+        return tags;
+    }
+
     void notifyError(Throwable cause)
     {
         setClosed();
@@ -891,6 +1296,7 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
 
     void releasePendingMessages()
     {
+        returnPendingBatch();
         if (_synchronousQueue.size() > 0)
         {
             if (_logger.isDebugEnabled())
@@ -908,13 +1314,13 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
             {
 
                 Object o = iterator.next();
-                if (o instanceof AbstractJMSMessage)
+                if (isMessage(o))
                 {
-                    _session.rejectMessage(((AbstractJMSMessage) o), true);
+                    _session.rejectMessage(getDeliveryTag(o), true);
 
                     if (_logger.isDebugEnabled())
                     {
-                        _logger.debug("Rejected message:" + ((AbstractJMSMessage) o).getDeliveryTag());
+                        _logger.debug("Rejected message:" + getDeliveryTag(o));
                     }
 
                     iterator.remove();
@@ -924,7 +1330,7 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
                 else
                 {
                     _logger.error("Queue contained a :" + o.getClass()
-                                  + " unable to reject as it is not an AbstractJMSMessage. Will be cleared");
+                                  + " unable to reject as it is not a message. Will be cleared");
                     iterator.remove();
                     removed = true;
                 }
@@ -946,6 +1352,24 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
         }
     }
 
+    /**
+     * Moves any messages accumulated for a batch, which have not been given to the application, to the head of the
+     * synchronous queue so that they are released with it.
+     */
+    void returnPendingBatch()
+    {
+        synchronized (_pendingBatch)
+        {
+            if (!_pendingBatch.isEmpty())
+            {
+                final List<Object> queued = new ArrayList<>(_pendingBatch);
+                _pendingBatch.clear();
+                _synchronousQueue.drainTo(queued);
+                _synchronousQueue.addAll(queued);
+            }
+        }
+    }
+
     public String debugIdentity()
     {
         return String.valueOf(_consumerTag) + "[" + System.identityHashCode(this) + "]";
@@ -953,20 +1377,25 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
 
     public void clearReceiveQueue()
     {        
+        synchronized (_pendingBatch)
+        {
+            _pendingBatch.clear();
+        }
         _synchronousQueue.clear();
     }
     
     
     public List<Long> drainReceiverQueueAndRetrieveDeliveryTags()
     {       
-        Iterator<AbstractJMSMessage> iterator = _synchronousQueue.iterator();
+        returnPendingBatch();
+        Iterator<?> iterator = _synchronousQueue.iterator();
         List<Long> tags = new ArrayList<Long>(_synchronousQueue.size());
 
         while (iterator.hasNext())
         {
 
-            AbstractJMSMessage msg = iterator.next();
-            tags.add(msg.getDeliveryTag()); 
+            Object msg = iterator.next();
+            tags.add(getDeliveryTag(msg)); 
             iterator.remove();
         }
         return tags;    
@@ -1019,7 +1448,7 @@ public abstract class BasicMessageConsumer<U> extends Closeable implements Messa
      * <p>
      * Argument true indicates we want strict FIFO semantics
      */
-    protected BlockingQueue getSynchronousQueue()
+    protected BlockingQueue<Object> getSynchronousQueue()
     {
         return _synchronousQueue;
     }
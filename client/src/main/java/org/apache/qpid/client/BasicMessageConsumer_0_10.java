@@ -18,6 +18,7 @@
 package org.apache.qpid.client;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -75,7 +76,26 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
      */
     private final AtomicBoolean _syncReceive = new AtomicBoolean(false);
 
-    private final long _capacity;
+    private volatile long _capacity;
+
+    /** Whether the capacity is the prefetch of the session, rather than given by the link of the destination. */
+    private final boolean _capacityFromSession;
+
+    /**
+     * When the capacity follows an adaptive session prefetch, the transfers to this consumer not yet completed, for
+     * which the Broker will restore credit on completion.
+     */
+    private int _incompleteTransfers;
+    /** The completions whose restored credit is yet to be cancelled since the window shrank below the incomplete. */
+    private int _windowExcess;
+    /** Whether the consumer has been stopped to shrink its window, and the credit is yet to be reissued. */
+    private boolean _windowStopped;
+    /** The completions since the consumer was stopped to shrink its window, whose credit the Broker has restored. */
+    private int _completedSinceStop;
+    private final Object _windowLock = new Object();
+
+    /** Whether the credit of this consumer is stopped for the message bytes held for it, guarded by the suspension lock. */
+    private boolean _prefetchFlowBlocked;
 
     /** Flag indicating if the server supports message selectors */
     private final boolean _serverJmsSelectorSupport;
@@ -95,6 +115,8 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
         _preAcquire = evaluatePreAcquire(browseOnly, destination, _serverJmsSelectorSupport);
 
         _capacity = evaluateCapacity(destination);
+        _capacityFromSession = _capacity > 0
+                               && (destination.getLink() == null || destination.getLink().getConsumerCapacity() < 0);
 
         // This is due to the Destination carrying the temporary subscription name which is incorrect.
         if (_0_10session.isResolved(destination) && AMQDestination.TOPIC_TYPE == destination.getAddressType())
@@ -118,17 +140,25 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
      * @param jmsMessage this message has already been processed so can't redo preDeliver
      */
     @Override public void notifyMessage(AbstractJMSMessage jmsMessage)
+    {
+        if (isDeliverable(jmsMessage))
+        {
+            super.notifyMessage(jmsMessage);
+        }
+    }
+
+    private boolean isDeliverable(Object message)
     {
         try
         {
-            if (checkPreConditions(jmsMessage))
+            if (checkPreConditions(message))
             {
                 if (isMessageListenerSet() && _capacity == 0)
                 {
                     messageFlow();
                 }
                 _logger.debug("messageOk, trying to notify");
-                super.notifyMessage(jmsMessage);
+                return true;
             }
             else
             {
@@ -145,6 +175,7 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
             _logger.error("Received an Exception when receiving message", e);
             getSession().getAMQConnection().closed(e);
         }
+        return false;
     }
 
     /**
@@ -172,9 +203,16 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
         }
     }
 
+    /**
+     * Checks the message against the selector from its headers alone, so that the JMS message is only created if
+     * it is to be given to the application.
+     */
     @Override void notifyMessage(UnprocessedMessage_0_10 messageFrame)
     {
-        super.notifyMessage(messageFrame);
+        if (isDeliverable(messageFrame))
+        {
+            super.notifyMessage(messageFrame);
+        }
     }
 
     @Override
@@ -197,24 +235,24 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
             AMQMessageDelegateFactory delegateFactory, UnprocessedMessage_0_10 msg) throws Exception
     {
         AMQMessageDelegate_0_10.updateExchangeTypeMapping(msg.getMessageTransfer().getHeader(), ((AMQSession_0_10)getSession()).getQpidSession());
-        return getMessageFactory().createMessage(msg.getMessageTransfer());
+        return getMessageFactory().createMessage(msg);
     }
 
     /**
      * Check whether a message can be delivered to this consumer.
      *
-     * @param message The message to be checked.
+     * @param message The message to be checked, either a JMS message or the unprocessed message.
      * @return true if the message matches the selector and can be acquired, false otherwise.
      * @throws QpidException If the message preConditions cannot be checked due to some internal error.
      */
-    private boolean checkPreConditions(AbstractJMSMessage message) throws QpidException
+    private boolean checkPreConditions(Object message) throws QpidException
     {
         boolean messageOk = true;
         try
         {
             if (!_serverJmsSelectorSupport && getMessageSelectorFilter() != null)
             {
-                messageOk = getMessageSelectorFilter().matches(message);
+                messageOk = matchesSelector(message);
             }
         }
         catch (Exception e)
@@ -265,16 +303,29 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
     }
 
 
+    private boolean matchesSelector(Object message)
+    {
+        if (message instanceof AbstractJMSMessage)
+        {
+            return getMessageSelectorFilter().matches((AbstractJMSMessage) message);
+        }
+        final UnprocessedMessage_0_10 messageFrame = (UnprocessedMessage_0_10) message;
+        // the exchange types are needed to resolve the reply-to destination, as when creating the message
+        AMQMessageDelegate_0_10.updateExchangeTypeMapping(messageFrame.getMessageTransfer().getHeader(),
+                                                          _0_10session.getQpidSession());
+        return getMessageSelectorFilter().matches(messageFrame.getHeaders(), messageFrame.isRedelivered());
+    }
+
     /**
      * Acknowledge a message
      *
      * @param message The message to be acknowledged
      * @throws QpidException If the message cannot be acquired due to some internal error.
      */
-    private void acknowledgeMessage(final AbstractJMSMessage message) throws QpidException
+    private void acknowledgeMessage(final Object message) throws QpidException
     {
         _0_10session.messageAcknowledge
-            (Range.newInstance((int) message.getDeliveryTag()),
+            (Range.newInstance((int) getDeliveryTag(message)),
              getAcknowledgeMode() != org.apache.qpid.jms.Session.NO_ACKNOWLEDGE);
 
         final QpidException amqe = _0_10session.getCurrentException();
@@ -291,9 +342,9 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
      * @param message The unwanted message to be flushed
      * @throws QpidException If the unwanted message cannot be flushed due to some internal error.
      */
-    private void flushUnwantedMessage(final AbstractJMSMessage message) throws QpidException
+    private void flushUnwantedMessage(final Object message) throws QpidException
     {
-        _0_10session.flushProcessed(Range.newInstance((int) message.getDeliveryTag()),false);
+        _0_10session.flushProcessed(Range.newInstance((int) getDeliveryTag(message)),false);
 
         final QpidException amqe = _0_10session.getCurrentException();
         if (amqe != null)
@@ -309,11 +360,11 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
      * @return true if the message has been acquired, false otherwise.
      * @throws QpidException If the message cannot be acquired due to some internal error.
      */
-    private boolean acquireMessage(final AbstractJMSMessage message) throws QpidException
+    private boolean acquireMessage(final Object message) throws QpidException
     {
         boolean result = false;
 
-        final Acquired acq = _0_10session.getQpidSession().messageAcquire(Range.newInstance((int)message.getDeliveryTag())).get();
+        final Acquired acq = _0_10session.getQpidSession().messageAcquire(Range.newInstance((int)getDeliveryTag(message))).get();
 
         final RangeSet acquired = acq.getTransfers();
         if (acquired != null && acquired.size() > 0)
@@ -323,6 +374,16 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
         return result;
     }
 
+    @Override
+    void expiredMessageDropped()
+    {
+        // the credit for the discarded message is given back, as for a message not matching the selector
+        if (_capacity == 0)
+        {
+            messageFlow();
+        }
+    }
+
     private void messageFlow()
     {
         _0_10session.getQpidSession().messageFlow(getConsumerTag(),
@@ -344,9 +405,9 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
                 Iterator messages= getSynchronousQueue().iterator();
                 while (messages.hasNext())
                 {
-                    AbstractJMSMessage message=(AbstractJMSMessage) messages.next();
+                    Object message = messages.next();
                     messages.remove();
-                    getSession().rejectMessage(message, true);
+                    getSession().rejectMessage(getDeliveryTag(message), true);
                 }
             }
         }
@@ -415,7 +476,22 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
     void postDeliver(AbstractJMSMessage msg)
     {
         super.postDeliver(msg);
+        completeDelivery(new long[] { msg.getDeliveryTag() });
+    }
 
+    @Override
+    void postDeliver(List<AbstractJMSMessage> messages)
+    {
+        super.postDeliver(messages);
+        completeDelivery(getDeliveryTags(messages));
+    }
+
+    /**
+     * Completes the delivery of messages to the application as 0-10 requires, once the acknowledgements common to
+     * all protocols have been made.
+     */
+    private void completeDelivery(final long[] deliveryTags)
+    {
         switch (getAcknowledgeMode())
         {
             case Session.SESSION_TRANSACTED:
@@ -424,7 +500,7 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
             case Session.NO_ACKNOWLEDGE:
                 if (!getSession().isInRecovery())
                 {
-                  getSession().acknowledgeMessage(msg.getDeliveryTag(), false);
+                    getSession().acknowledgeMessages(deliveryTags);
                 }
                 break;
             case Session.AUTO_ACKNOWLEDGE:
@@ -434,7 +510,6 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
                 }
                 break;
         }
-        
     }
 
     Message receiveBrowse() throws JMSException
@@ -444,6 +519,7 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
 
     @Override void releasePendingMessages()
     {
+        returnPendingBatch();
         if (getSynchronousQueue().size() > 0)
         {
             RangeSet ranges = RangeSetFactory.createRangeSet();
@@ -452,15 +528,15 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
             {
 
                 Object o = iterator.next();
-                if (o instanceof AbstractJMSMessage)
+                if (isMessage(o))
                 {
-                    ranges.add((int) ((AbstractJMSMessage) o).getDeliveryTag());
+                    ranges.add((int) getDeliveryTag(o));
                     iterator.remove();
                 }
                 else
                 {
                     _logger.error("Queue contained a :" + o.getClass()
-                                  + " unable to reject as it is not an AbstractJMSMessage. Will be cleared");
+                                  + " unable to reject as it is not a message. Will be cleared");
                     iterator.remove();
                 }
             }
@@ -496,6 +572,112 @@ public class BasicMessageConsumer_0_10 extends BasicMessageConsumer<UnprocessedM
         return _capacity;
     }
 
+    boolean isCapacityFromSession()
+    {
+        return _capacityFromSession;
+    }
+
+    void setCapacity(final long capacity)
+    {
+        _capacity = capacity;
+    }
+
+    boolean isPrefetchFlowBlocked()
+    {
+        return _prefetchFlowBlocked;
+    }
+
+    void setPrefetchFlowBlocked(final boolean prefetchFlowBlocked)
+    {
+        _prefetchFlowBlocked = prefetchFlowBlocked;
+    }
+
+    void transferReceived()
+    {
+        synchronized (_windowLock)
+        {
+            _incompleteTransfers++;
+        }
+    }
+
+    /**
+     * @return true if the credit the Broker restores for the completed transfer is to be cancelled, because the
+     * window has shrunk below the transfers that were outstanding
+     */
+    boolean transferCompleted()
+    {
+        synchronized (_windowLock)
+        {
+            _incompleteTransfers--;
+            if (_windowStopped)
+            {
+                _completedSinceStop++;
+            }
+            else if (_windowExcess > 0)
+            {
+                _windowExcess--;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Called as the consumer is stopped to shrink its window, which cancels all of its credit.
+     */
+    void windowStopped()
+    {
+        synchronized (_windowLock)
+        {
+            _windowStopped = true;
+            _windowExcess = 0;
+            _completedSinceStop = 0;
+        }
+    }
+
+    /**
+     * Called once the transfers sent before the consumer was stopped have been received.
+     *
+     * @param window the new window
+     * @return the message credit to issue so that the credit restored by completing the outstanding transfers does
+     * not take the consumer beyond the window
+     */
+    int windowShrunk(final int window)
+    {
+        synchronized (_windowLock)
+        {
+            _windowStopped = false;
+            final int credit = window - _incompleteTransfers - _completedSinceStop;
+            _windowExcess = Math.max(0, -credit);
+            return Math.max(0, credit);
+        }
+    }
+
+    /**
+     * @param increase the increase in the window
+     * @return the message credit to issue, after cancelling out any excess left from shrinking the window
+     */
+    int windowGrown(final int increase)
+    {
+        synchronized (_windowLock)
+        {
+            final int absorbed = Math.min(_windowExcess, increase);
+            _windowExcess -= absorbed;
+            return increase - absorbed;
+        }
+    }
+
+    void resetWindow()
+    {
+        synchronized (_windowLock)
+        {
+            _incompleteTransfers = 0;
+            _windowExcess = 0;
+            _windowStopped = false;
+            _completedSinceStop = 0;
+        }
+    }
+
     boolean isPreAcquire()
     {
         return _preAcquire;
@@ -20,6 +20,7 @@
  */
 package org.apache.qpid.client;
 
+import java.util.List;
 import java.util.Map;
 
 import javax.jms.JMSException;
@@ -246,4 +247,18 @@ public class BasicMessageConsumer_0_8 extends BasicMessageConsumer<UnprocessedMe
         getSession().stopFlowIfNeccessary();
         super.postDeliver(msg);
     }
+
+    @Override
+    void postDeliver(List<AbstractJMSMessage> messages)
+    {
+        getSession().stopFlowIfNeccessary();
+        super.postDeliver(messages);
+    }
+
+    @Override
+    boolean isBatchReceiveSupported()
+    {
+        // credit is managed for one message at a time
+        return !getSession().isManagingCredit();
+    }
 }
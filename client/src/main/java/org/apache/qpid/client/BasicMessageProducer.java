@@ -20,6 +20,8 @@
  */
 package org.apache.qpid.client;
 
+import java.nio.ByteBuffer;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.jms.BytesMessage;
@@ -40,6 +42,7 @@ import org.apache.qpid.QpidException;
 import org.apache.qpid.client.message.AbstractJMSMessage;
 import org.apache.qpid.client.message.MessageConverter;
 import org.apache.qpid.client.util.JMSExceptionHelper;
+import org.apache.qpid.jms.MessageTemplate;
 import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.util.UUIDGen;
 import org.apache.qpid.util.UUIDs;
@@ -127,6 +130,12 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
 
     private PublishMode _publishMode = PublishMode.ASYNC_PUBLISH_ALL;
 
+    /**
+     * Pipeline used to compress, encrypt and write messages off the sending thread, or null if the connection
+     * has no producer pipeline threads configured.
+     */
+    private final ProducerPipeline _pipeline;
+
     protected BasicMessageProducer(Logger logger,AMQConnection connection, AMQDestination destination, boolean transacted, int channelId,
                                    AMQSession session, long producerId, Boolean immediate, Boolean mandatory) throws
                                                                                                               QpidException
@@ -158,6 +167,11 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
             _deliveryDelay = destination.getDeliveryDelay();
         }
         setPublishMode();
+
+        _pipeline = connection.getProducerPipelineThreads() > 0
+                ? new ProducerPipeline(connection.getProducerPipelineExecutor(), connection.getProducerPipelineDepth(),
+                                       connection.getFailoverMutex())
+                : null;
     }
 
     protected AMQConnection getConnection()
@@ -300,6 +314,18 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
 
     public void close() throws JMSException
     {
+        JMSException pipelineFailure = null;
+        if (_pipeline != null && !isClosed())
+        {
+            try
+            {
+                _pipeline.await();
+            }
+            catch (JMSException e)
+            {
+                pipelineFailure = e;
+            }
+        }
         setClosed();
         _session.deregisterProducer(_producerId);
         AMQDestination dest = getAMQDestination();
@@ -325,6 +351,10 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
                                                                             + e.getMessage()), e);
             }
         }
+        if (pipelineFailure != null)
+        {
+            throw pipelineFailure;
+        }
     }
 
     public void send(Message message) throws JMSException
@@ -439,6 +469,54 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
         }
     }
 
+    public MessageTemplate createMessageTemplate(Message prototype) throws JMSException
+    {
+        checkPreConditions();
+        checkInitialDestination();
+
+        synchronized (_connection.getFailoverMutex())
+        {
+            return createMessageTemplate(_destination, _mandatory, _immediate,
+                                         BasicMessageTemplate.getPrototypeProperties(prototype));
+        }
+    }
+
+    public MessageTemplate createMessageTemplate(Destination destination, Message prototype) throws JMSException
+    {
+        checkPreConditions();
+        checkDestination(destination);
+        synchronized (_connection.getFailoverMutex())
+        {
+            validateDestination(destination);
+            return createMessageTemplate((AMQDestination) destination,
+                                         _mandatory == null
+                                                 ? destination instanceof Topic
+                                                     ? _defaultMandatoryTopicValue
+                                                     : _defaultMandatoryValue
+                                                 : _mandatory,
+                                         _immediate,
+                                         BasicMessageTemplate.getPrototypeProperties(prototype));
+        }
+    }
+
+    public void send(MessageTemplate template, Message message) throws JMSException
+    {
+        checkPreConditions();
+        if (!(template instanceof BasicMessageTemplate) || ((BasicMessageTemplate) template).getProducer() != this)
+        {
+            throw new JMSException("The message template was not created by this producer");
+        }
+        BasicMessageTemplate basicTemplate = (BasicMessageTemplate) template;
+        AMQDestination amqDestination = basicTemplate.getAMQDestination();
+        synchronized (_connection.getFailoverMutex())
+        {
+            sendImpl(amqDestination, message, _deliveryMode, _messagePriority, _timeToLive,
+                     basicTemplate.isMandatory(), basicTemplate.isImmediate(),
+                     amqDestination.getDeliveryDelay() != 0L ? amqDestination.getDeliveryDelay() : _deliveryDelay,
+                     basicTemplate);
+        }
+    }
+
     private AbstractJMSMessage convertToNativeMessage(Message message) throws JMSException
     {
         if (message instanceof AbstractJMSMessage)
@@ -533,6 +611,29 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
                             boolean immediate,
                             long deliveryDelay) throws JMSException
     {
+        sendImpl(destination, origMessage, deliveryMode, priority, timeToLive, mandatory, immediate, deliveryDelay,
+                 null);
+    }
+
+    /**
+     * The caller of this method must hold the failover mutex.
+     *
+     * @param template the template whose pre-encoded properties are sent with the message, or null
+     */
+    protected void sendImpl(AMQDestination destination,
+                            Message origMessage,
+                            int deliveryMode,
+                            int priority,
+                            long timeToLive,
+                            boolean mandatory,
+                            boolean immediate,
+                            long deliveryDelay,
+                            BasicMessageTemplate template) throws JMSException
+    {
+        if (_pipeline != null)
+        {
+            _pipeline.checkFailure();
+        }
         checkTemporaryDestination(destination);
         origMessage.setJMSDestination(destination);
 
@@ -552,7 +653,7 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
         try
         {
             sendMessage(destination, origMessage, message, messageId, deliveryMode, priority, timeToLive, mandatory, immediate,
-                        deliveryDelay);
+                        deliveryDelay, template);
         }
         catch (TransportException e)
         {
@@ -580,7 +681,66 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
 
     abstract void sendMessage(AMQDestination destination, Message origMessage, AbstractJMSMessage message,
                               UUID messageId, int deliveryMode, int priority, long timeToLive, boolean mandatory,
-                              boolean immediate, final long deliveryDelay) throws JMSException;
+                              boolean immediate, final long deliveryDelay, BasicMessageTemplate template)
+            throws JMSException;
+
+    abstract BasicMessageTemplate createMessageTemplate(AMQDestination destination, boolean mandatory,
+                                                        boolean immediate, Map<String, Object> properties)
+            throws JMSException;
+
+    /**
+     * Returns true if the expensive part of a send may be handed to the producer pipeline. Only sends which do not
+     * wait for the broker, outside of a transaction, are pipelined, so that nothing the application may observe
+     * depends on a pipelined send having completed.
+     *
+     * @param synchronous whether the protocol send waits for the broker
+     */
+    protected boolean isPipelined(boolean synchronous)
+    {
+        return _pipeline != null && !_transacted && !synchronous;
+    }
+
+    /**
+     * Hands a send to the pipeline, which writes it holding the failover mutex. If the pipeline is full the caller
+     * waits for space, releasing the failover mutex meanwhile. Anything which may block, such as waiting for flow
+     * control, must be done by the caller beforehand so that it never stalls the shared pipeline threads.
+     */
+    protected void sendPipelined(ProducerPipeline.PipelinedSend send) throws JMSException
+    {
+        _pipeline.submit(send);
+    }
+
+    /**
+     * Waits for previously pipelined sends to be written so that a message sent directly is not overtaken. The
+     * failover mutex is released while waiting.
+     */
+    protected void awaitPipelinedSends() throws JMSException
+    {
+        if (_pipeline != null)
+        {
+            _pipeline.await();
+        }
+    }
+
+    protected boolean isCompressionCandidate(int size, boolean encoded)
+    {
+        return size > _connection.getMessageCompressionThresholdSize()
+               && _connection.getDelegate().isMessageCompressionSupported()
+               && _connection.isMessageCompressionDesired()
+               && !encoded;
+    }
+
+    protected static ByteBuffer copyPayload(ByteBuffer payload)
+    {
+        if (payload == null)
+        {
+            return null;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(payload.remaining());
+        copy.put(payload.duplicate());
+        copy.flip();
+        return copy;
+    }
 
     private void checkTemporaryDestination(AMQDestination destination) throws InvalidDestinationException
     {
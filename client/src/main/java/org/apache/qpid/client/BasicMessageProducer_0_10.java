@@ -56,8 +56,10 @@ import org.apache.qpid.transport.MessageAcquireMode;
 import org.apache.qpid.transport.MessageDeliveryMode;
 import org.apache.qpid.transport.MessageDeliveryPriority;
 import org.apache.qpid.transport.MessageProperties;
+import org.apache.qpid.transport.MessageTransfer;
 import org.apache.qpid.transport.Option;
 import org.apache.qpid.transport.codec.BBEncoder;
+import org.apache.qpid.transport.codec.PreEncodedMap;
 import org.apache.qpid.util.GZIPUtils;
 import org.apache.qpid.util.Strings;
 
@@ -112,7 +114,7 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
      */
     void sendMessage(AMQDestination destination, Message origMessage, AbstractJMSMessage message,
                      UUID messageId, int deliveryMode, int priority, long timeToLive, boolean mandatory,
-                     boolean immediate, final long deliveryDelay) throws JMSException
+                     boolean immediate, final long deliveryDelay, BasicMessageTemplate template) throws JMSException
     {
         message.prepareForSending();
 
@@ -189,6 +191,14 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
             deliveryProp.setRoutingKey(routingKey);
         }
         
+        if (template != null)
+        {
+            // send a copy of the properties so that the pre-encoded template headers are not added to the message
+            messageProps = new MessageProperties(messageProps);
+            messageProps.setApplicationHeaders(((MessageTemplate_0_10) template).createApplicationHeaders(
+                    messageProps.getApplicationHeaders()));
+        }
+
         Map<String,Object> appProps = messageProps.getApplicationHeaders();
 
         if (destination.getDestSyntax() == AMQDestination.DestSyntax.ADDR &&
@@ -229,81 +239,139 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
 
         ByteBuffer data = message.getData();
         boolean encrypt = message.getBooleanProperty(MessageEncryptionHelper.ENCRYPT_HEADER) || destination.sendEncrypted();
+        List<String> recipients = null;
+        String unencryptedProperties = null;
         if(encrypt)
         {
-            MessageEncryptionHelper encryptionHelper = getSession().getMessageEncryptionHelper();
-            try
+            final Map<String, Object> origApplicationHeaders = messageProps.getApplicationHeaders();
+            if(origApplicationHeaders != null)
             {
-                MessageProperties origMessageProps = messageProps;
-                DeliveryProperties origDeliveryProps = deliveryProp;
-                messageProps = new MessageProperties(messageProps);
-                deliveryProp = new DeliveryProperties(deliveryProp);
-                SecretKeySpec secretKey = encryptionHelper.createSecretKey();
+                origApplicationHeaders.remove(MessageEncryptionHelper.ENCRYPT_HEADER);
+            }
 
-                final Map<String, Object> origApplicationHeaders = origMessageProps.getApplicationHeaders();
-                if(origApplicationHeaders != null)
-                {
-                    origApplicationHeaders.remove(MessageEncryptionHelper.ENCRYPT_HEADER);
-                }
+            String recipientString = message.getStringProperty(MessageEncryptionHelper.ENCRYPT_RECIPIENTS_HEADER);
+            if(recipientString == null)
+            {
+                recipientString = destination.getEncryptedRecipients();
+            }
+            if(origApplicationHeaders != null)
+            {
+                origApplicationHeaders.remove(MessageEncryptionHelper.ENCRYPT_RECIPIENTS_HEADER);
+            }
+
+            if (recipientString == null)
+            {
+                throw new JMSException("When sending an encrypted message, recipients must be supplied");
+            }
+            recipients = Arrays.asList(recipientString.split(";"));
+
+            unencryptedProperties = message.getStringProperty(MessageEncryptionHelper.UNENCRYPTED_PROPERTIES_HEADER);
+            if(origApplicationHeaders != null)
+            {
+                origApplicationHeaders.remove(MessageEncryptionHelper.UNENCRYPTED_PROPERTIES_HEADER);
+            }
+        }
+
+        // if true, we need to sync the delivery of this message
+        final boolean sync = ( (getPublishMode() == PublishMode.SYNC_PUBLISH_ALL) ||
+                               (getPublishMode() == PublishMode.SYNC_PUBLISH_PERSISTENT &&
+                                   deliveryMode == DeliveryMode.PERSISTENT)
+                             );
+
+        if (isPipelined(sync)
+            && (encrypt || (data != null && isCompressionCandidate(data.remaining(), messageProps.getContentEncoding() != null))))
+        {
+            // the application may reuse the message as soon as send returns, so the pipeline works on a copy
+            final DeliveryProperties pipelinedDeliveryProps = new DeliveryProperties(deliveryProp);
+            final MessageProperties pipelinedMessageProps = new MessageProperties(messageProps);
+            final ByteBuffer pipelinedData = copyPayload(data);
+            final boolean pipelinedEncrypt = encrypt;
+            final List<String> pipelinedRecipients = recipients;
+            final String pipelinedUnencryptedProperties = unencryptedProperties;
+            // wait for flow control here rather than on the shared pipeline threads
+            final boolean creditAcquired = acquireMessageCredit();
+            sendPipelined(new ProducerPipeline.PipelinedSend()
+            {
+                private Header _header;
+                private ByteBuffer _body;
 
-                String recipientString = message.getStringProperty(MessageEncryptionHelper.ENCRYPT_RECIPIENTS_HEADER);
-                if(recipientString == null)
+                @Override
+                void encode() throws JMSException
                 {
-                    recipientString = destination.getEncryptedRecipients();
+                    _body = encodeMessage(pipelinedDeliveryProps, pipelinedMessageProps, pipelinedData,
+                                          pipelinedEncrypt, pipelinedRecipients, pipelinedUnencryptedProperties);
+                    _header = new Header(pipelinedDeliveryProps, pipelinedMessageProps);
                 }
-                if(origApplicationHeaders != null)
+
+                @Override
+                void write() throws JMSException
                 {
-                    origApplicationHeaders.remove(MessageEncryptionHelper.ENCRYPT_RECIPIENTS_HEADER);
+                    transferMessage(destination, _header, _body, false, creditAcquired);
                 }
 
-                String unencryptedProperties = message.getStringProperty(MessageEncryptionHelper.UNENCRYPTED_PROPERTIES_HEADER);
-                if(origApplicationHeaders != null)
+                @Override
+                void discard()
                 {
-                    origApplicationHeaders.remove(MessageEncryptionHelper.UNENCRYPTED_PROPERTIES_HEADER);
+                    if (creditAcquired)
+                    {
+                        getQpidSession().releaseMessageCredit();
+                    }
                 }
+            });
+        }
+        else
+        {
+            awaitPipelinedSends();
+            if (encrypt)
+            {
+                // the encrypted message is sent with its own properties, leaving those of the message untouched
+                deliveryProp = new DeliveryProperties(deliveryProp);
+                messageProps = new MessageProperties(messageProps);
+            }
+            data = encodeMessage(deliveryProp, messageProps, data, encrypt, recipients, unencryptedProperties);
+            transferMessage(destination, new Header(deliveryProp, messageProps), data, sync, false);
+        }
+    }
 
-                BBEncoder encoder = new BBEncoder(1024);
-                encoder.writeStruct32(origDeliveryProps);
-                encoder.writeStruct32(origMessageProps);
-                ByteBuffer buf = encoder.buffer();
-
-                final int headerLength = buf.remaining();
-                byte[] unencryptedBytes = new byte[headerLength + (data == null ? 0 : data.remaining())];
+    /**
+     * Encrypts or compresses the message body as required. The supplied properties are updated to describe the
+     * returned body.
+     */
+    private ByteBuffer encodeMessage(DeliveryProperties deliveryProp,
+                                     MessageProperties messageProps,
+                                     ByteBuffer data,
+                                     final boolean encrypt,
+                                     final List<String> recipients,
+                                     final String unencryptedProperties) throws JMSException
+    {
+        if(encrypt)
+        {
+            MessageEncryptionHelper encryptionHelper = getSession().getMessageEncryptionHelper();
+            try
+            {
+                final Map<String, Object> origApplicationHeaders = messageProps.getApplicationHeaders();
 
-                buf.get(unencryptedBytes, 0, headerLength);
+                MessageEncryptionHelper.ContentEncryptionKey contentEncryptionKey =
+                        encryptionHelper.getContentEncryptionKey(recipients);
+                SecretKeySpec secretKey = contentEncryptionKey.getSecretKey();
 
-                if (data != null)
-                {
-                    data.get(unencryptedBytes, headerLength, data.remaining());
-                }
+                BBEncoder encoder = new BBEncoder(1024);
+                encoder.writeStruct32(deliveryProp);
+                encoder.writeStruct32(messageProps);
+                ByteBuffer buf = encoder.buffer();
 
                 byte[] ivbytes = encryptionHelper.getInitialisationVector();
 
-                byte[] encryptedBytes = encryptionHelper.encrypt(secretKey, unencryptedBytes, ivbytes);
-                data = ByteBuffer.wrap(encryptedBytes);
+                data = encryptionHelper.encrypt(secretKey, buf, data, ivbytes);
 
-                if (recipientString == null)
-                {
-                    throw new JMSException("When sending an encrypted message, recipients must be supplied");
-                }
-                String[] recipients = recipientString.split(";");
                 List<List<Object>> encryptedKeys = new ArrayList<>();
-                for(MessageEncryptionHelper.KeyTransportRecipientInfo info : encryptionHelper.getKeyTransportRecipientInfo(
-                        Arrays.asList(recipients), secretKey))
+                for(MessageEncryptionHelper.KeyTransportRecipientInfo info : contentEncryptionKey.getKeyTransportRecipientInfo())
                 {
                     encryptedKeys.add(info.asList());
                 }
 
-                Map<String,Object>  newHeaders = messageProps.getApplicationHeaders();
-                if(newHeaders != null)
-                {
-                    newHeaders.clear();
-                }
-                else
-                {
-                    newHeaders = new LinkedHashMap<>();
-                    messageProps.setApplicationHeaders(newHeaders);
-                }
+                Map<String,Object>  newHeaders = new LinkedHashMap<>();
+                messageProps.setApplicationHeaders(newHeaders);
 
                 if(unencryptedProperties != null)
                 {
@@ -333,10 +401,7 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
         else
         {
             if (data != null
-                && data.remaining() > getConnection().getMessageCompressionThresholdSize()
-                && getConnection().getDelegate().isMessageCompressionSupported()
-                && getConnection().isMessageCompressionDesired()
-                && messageProps.getContentEncoding() == null)
+                && isCompressionCandidate(data.remaining(), messageProps.getContentEncoding() != null))
             {
                 byte[] compressed = GZIPUtils.compressBufferToArray(data);
                 if (compressed != null)
@@ -348,32 +413,63 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
         }
 
         messageProps.setContentLength(data == null ? 0 : data.remaining());
+        return data;
+    }
 
-        // send the message
+    private org.apache.qpid.transport.Session getQpidSession()
+    {
+        return ((AMQSession_0_10) getSession()).getQpidSession();
+    }
+
+    private boolean acquireMessageCredit() throws JMSException
+    {
         try
         {
-            org.apache.qpid.transport.Session ssn = (org.apache.qpid.transport.Session)
-                ((AMQSession_0_10) getSession()).getQpidSession();
+            return getQpidSession().acquireMessageCredit();
+        }
+        catch (Exception e)
+        {
+            throw JMSExceptionHelper.chainJMSException(new JMSException("Exception when sending message:"
+                                                                        + e.getMessage()), e);
+        }
+    }
 
-            // if true, we need to sync the delivery of this message
-            boolean sync = false;
+    private void transferMessage(final AMQDestination destination,
+                                 final Header header,
+                                 final ByteBuffer data,
+                                 final boolean sync,
+                                 final boolean creditAcquired) throws JMSException
+    {
+        // send the message
+        try
+        {
+            org.apache.qpid.transport.Session ssn = getQpidSession();
 
-            sync = ( (getPublishMode() == PublishMode.SYNC_PUBLISH_ALL) ||
-                     (getPublishMode() == PublishMode.SYNC_PUBLISH_PERSISTENT &&
-                         deliveryMode == DeliveryMode.PERSISTENT)
-                   );  
-            
             boolean unreliable = (destination.getDestSyntax() == DestSyntax.ADDR) &&
                                  (destination.getLink().getReliability() == Reliability.UNRELIABLE);
             
 
             ByteBuffer buffer = data == null ? ByteBuffer.allocate(0) : data.slice();
             
-            ssn.messageTransfer(destination.getExchangeName() == null ? "" : destination.getExchangeName(),
-                                MessageAcceptMode.NONE,
-                                MessageAcquireMode.PRE_ACQUIRED,
-                                new Header(deliveryProp, messageProps),
-                    buffer, sync ? SYNC : NONE, unreliable ? UNRELIABLE : NONE);
+            String exchangeName = destination.getExchangeName() == null ? "" : destination.getExchangeName();
+            if (creditAcquired)
+            {
+                ssn.invokeWithAcquiredCredit(new MessageTransfer(exchangeName,
+                                                                 MessageAcceptMode.NONE,
+                                                                 MessageAcquireMode.PRE_ACQUIRED,
+                                                                 header,
+                                                                 buffer,
+                                                                 sync ? SYNC : NONE,
+                                                                 unreliable ? UNRELIABLE : NONE));
+            }
+            else
+            {
+                ssn.messageTransfer(exchangeName,
+                                    MessageAcceptMode.NONE,
+                                    MessageAcquireMode.PRE_ACQUIRED,
+                                    header,
+                        buffer, sync ? SYNC : NONE, unreliable ? UNRELIABLE : NONE);
+            }
             if (sync)
             {
                 ssn.sync();
@@ -388,6 +484,15 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
         }
     }
 
+    @Override
+    BasicMessageTemplate createMessageTemplate(final AMQDestination destination,
+                                               final boolean mandatory,
+                                               final boolean immediate,
+                                               final Map<String, Object> properties) throws JMSException
+    {
+        return new MessageTemplate_0_10(this, destination, mandatory, immediate, properties);
+    }
+
     @Override
     public boolean isBound(AMQDestination destination) throws JMSException
     {
@@ -402,5 +507,34 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
         super.close();
     }
 
-}
 
+    /**
+     * Holds the encoded form of the constant application headers of messages sent to a destination.
+     */
+    static final class MessageTemplate_0_10 extends BasicMessageTemplate
+    {
+        private final PreEncodedMap _applicationHeaders;
+
+        MessageTemplate_0_10(final BasicMessageProducer_0_10 producer,
+                             final AMQDestination destination,
+                             final boolean mandatory,
+                             final boolean immediate,
+                             final Map<String, Object> properties)
+        {
+            super(producer, destination, mandatory, immediate, properties);
+            Map<String, Object> applicationHeaders = new LinkedHashMap<>(properties);
+            if (destination.getDestSyntax() == AMQDestination.DestSyntax.ADDR
+                && destination.getSubject() != null
+                && !applicationHeaders.containsKey(QpidMessageProperties.QPID_SUBJECT))
+            {
+                applicationHeaders.put(QpidMessageProperties.QPID_SUBJECT, destination.getSubject());
+            }
+            _applicationHeaders = new PreEncodedMap(applicationHeaders);
+        }
+
+        Map<String, Object> createApplicationHeaders(final Map<String, Object> messageHeaders)
+        {
+            return _applicationHeaders.withEntries(messageHeaders);
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import javax.crypto.spec.SecretKeySpec;
@@ -48,6 +49,7 @@ import org.apache.qpid.client.protocol.BlockingMethodFrameListener;
 import org.apache.qpid.client.util.JMSExceptionHelper;
 import org.apache.qpid.configuration.ClientProperties;
 import org.apache.qpid.framing.AMQFrame;
+import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.AMQMethodBody;
 import org.apache.qpid.framing.BasicAckBody;
 import org.apache.qpid.framing.BasicContentHeaderProperties;
@@ -107,68 +109,75 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
         }
     }
 
+    @Override
+    BasicMessageTemplate createMessageTemplate(final AMQDestination destination,
+                                               final boolean mandatory,
+                                               final boolean immediate,
+                                               final Map<String, Object> properties) throws JMSException
+    {
+        return new MessageTemplate_0_8(this, destination, mandatory, immediate, properties);
+    }
+
     void sendMessage(AMQDestination destination, Message origMessage, AbstractJMSMessage message,
                      UUID messageId, int deliveryMode, int priority, long timeToLive, boolean mandatory,
-                     boolean immediate, final long deliveryDelay) throws JMSException
+                     boolean immediate, final long deliveryDelay, BasicMessageTemplate template) throws JMSException
     {
 
 
         AMQMessageDelegate_0_8 delegate = (AMQMessageDelegate_0_8) message.getDelegate();
         BasicContentHeaderProperties contentHeaderProperties = delegate.getContentHeaderProperties();
-
-        String routingKey = destination.getRoutingKey();
+        MessageTemplate_0_8 template_0_8 = (MessageTemplate_0_8) template;
 
         FieldTable headers = delegate.getContentHeaderProperties().getHeaders();
 
-        if (destination.getDestSyntax() == AMQDestination.DestSyntax.ADDR &&
-            (destination.getSubject() != null
-             || (headers != null && headers.get(QpidMessageProperties.QPID_SUBJECT) != null)))
+        AMQFrame publishFrame;
+        if (template_0_8 != null && headers.get(QpidMessageProperties.QPID_SUBJECT) == null)
         {
+            publishFrame = template_0_8.getPublishFrame();
+        }
+        else
+        {
+            String routingKey = destination.getRoutingKey();
 
-            if (headers.get(QpidMessageProperties.QPID_SUBJECT) == null)
+            if (destination.getDestSyntax() == AMQDestination.DestSyntax.ADDR &&
+                (destination.getSubject() != null
+                 || (headers != null && headers.get(QpidMessageProperties.QPID_SUBJECT) != null)))
             {
-                // use default subject in address string
-                headers.setString(QpidMessageProperties.QPID_SUBJECT, destination.getSubject());
-            }
 
-            if (destination.getAddressType() == AMQDestination.TOPIC_TYPE)
-            {
-                routingKey = headers.getString(QpidMessageProperties.QPID_SUBJECT);
+                if (headers.get(QpidMessageProperties.QPID_SUBJECT) == null)
+                {
+                    // use default subject in address string
+                    headers.setString(QpidMessageProperties.QPID_SUBJECT, destination.getSubject());
+                }
+
+                if (destination.getAddressType() == AMQDestination.TOPIC_TYPE)
+                {
+                    routingKey = headers.getString(QpidMessageProperties.QPID_SUBJECT);
+                }
             }
-        }
 
-        BasicPublishBody body = getSession().getMethodRegistry().createBasicPublishBody(getSession().getTicket(),
-                                                                                        destination.getExchangeName(),
-                                                                                        routingKey,
-                                                                                        mandatory,
-                                                                                        immediate);
+            BasicPublishBody body = getSession().getMethodRegistry().createBasicPublishBody(getSession().getTicket(),
+                                                                                            destination.getExchangeName(),
+                                                                                            routingKey,
+                                                                                            mandatory,
+                                                                                            immediate);
 
-        AMQFrame publishFrame = body.generateFrame(getChannelId());
+            publishFrame = body.generateFrame(getChannelId());
+        }
 
         message.prepareForSending();
         ByteBuffer payload = message.getData();
 
         contentHeaderProperties.setUserId(getUserID());
 
-        //Set the JMS_QPID_DESTTYPE for 0-8/9 messages
-        int type;
-        if (destination instanceof Topic)
+        if (template_0_8 == null)
         {
-            type = AMQDestination.TOPIC_TYPE;
+            //Set JMS_QPID_DESTTYPE for 0-8/9 messages, templates carry it in their pre-encoded headers
+            delegate.getContentHeaderProperties()
+                    .getHeaders()
+                    .setInteger(CustomJMSXProperty.JMS_QPID_DESTTYPE.getShortStringName(),
+                                getDestinationType(destination));
         }
-        else if (destination instanceof Queue)
-        {
-            type = AMQDestination.QUEUE_TYPE;
-        }
-        else
-        {
-            type = AMQDestination.UNKNOWN_TYPE;
-        }
-
-        //Set JMS_QPID_DESTTYPE
-        delegate.getContentHeaderProperties()
-                .getHeaders()
-                .setInteger(CustomJMSXProperty.JMS_QPID_DESTTYPE.getShortStringName(), type);
 
         long currentTime;
         if (!isDisableTimestamps())
@@ -213,52 +222,123 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
         contentHeaderProperties.setDeliveryMode((byte) deliveryMode);
         contentHeaderProperties.setPriority((byte) priority);
 
-        int size = (payload != null) ? payload.remaining() : 0;
-        AMQFrame contentHeaderFrame;
-        final AMQFrame[] frames;
         boolean encrypt = message.getBooleanProperty(MessageEncryptionHelper.ENCRYPT_HEADER) || destination.sendEncrypted();
+        List<String> recipients = null;
+        String unencryptedProperties = null;
         if(encrypt)
         {
-            MessageEncryptionHelper encryptionHelper = getSession().getMessageEncryptionHelper();
-            try
+            contentHeaderProperties.getHeaders().remove(MessageEncryptionHelper.ENCRYPT_HEADER);
+
+            String recipientString = message.getStringProperty(MessageEncryptionHelper.ENCRYPT_RECIPIENTS_HEADER);
+            if(recipientString == null)
             {
-                SecretKeySpec secretKey = encryptionHelper.createSecretKey();
+                recipientString = destination.getEncryptedRecipients();
+            }
+            contentHeaderProperties.getHeaders().remove(MessageEncryptionHelper.ENCRYPT_RECIPIENTS_HEADER);
 
-                contentHeaderProperties.getHeaders().remove(MessageEncryptionHelper.ENCRYPT_HEADER);
+            if (recipientString == null)
+            {
+                throw new JMSException("When sending an encrypted message, recipients must be supplied");
+            }
+            recipients = Arrays.asList(recipientString.split(";"));
 
-                String recipientString = message.getStringProperty(MessageEncryptionHelper.ENCRYPT_RECIPIENTS_HEADER);
-                if(recipientString == null)
-                {
-                    recipientString = destination.getEncryptedRecipients();
-                }
-                contentHeaderProperties.getHeaders().remove(MessageEncryptionHelper.ENCRYPT_RECIPIENTS_HEADER);
+            unencryptedProperties = message.getStringProperty(MessageEncryptionHelper.UNENCRYPTED_PROPERTIES_HEADER);
+            contentHeaderProperties.getHeaders().remove(MessageEncryptionHelper.UNENCRYPTED_PROPERTIES_HEADER);
+        }
 
-                String unencryptedProperties = message.getStringProperty(MessageEncryptionHelper.UNENCRYPTED_PROPERTIES_HEADER);
-                contentHeaderProperties.getHeaders().remove(MessageEncryptionHelper.UNENCRYPTED_PROPERTIES_HEADER);
+        if (template_0_8 != null)
+        {
+            // send a copy of the properties so that the pre-encoded template headers are not added to the message
+            contentHeaderProperties = new BasicContentHeaderProperties(contentHeaderProperties);
+            contentHeaderProperties.setHeaders(template_0_8.createHeaders(contentHeaderProperties.getHeaders()));
+        }
 
-                final int headerLength = contentHeaderProperties.getPropertyListSize() + 2;
-                byte[] unencryptedBytes = new byte[headerLength + size];
-                ByteBuffer output = ByteBuffer.wrap(unencryptedBytes);
-                output.putShort((short) (contentHeaderProperties.getPropertyFlags() & 0xffff));
-                contentHeaderProperties.writePropertyListPayload(output);
+        AMQConnectionDelegate_8_0 connectionDelegate80 = (AMQConnectionDelegate_8_0) (getConnection().getDelegate());
+
+        final boolean useConfirms = getPublishMode() == PublishMode.SYNC_PUBLISH_ALL
+                              && (connectionDelegate80.isConfirmedPublishSupported()
+                               || (!getSession().isTransacted() && connectionDelegate80.isConfirmedPublishNonTransactionalSupported()));
 
-                if (size != 0)
+        try
+        {
+            getSession().checkFlowControl();
+        }
+        catch (InterruptedException e)
+        {
+            throw JMSExceptionHelper.chainJMSException(new JMSException(
+                    "Interrupted while waiting for flow control to be removed"), e);
+        }
+
+        int size = (payload != null) ? payload.remaining() : 0;
+        if (isPipelined(useConfirms)
+            && (encrypt || isCompressionCandidate(size, contentHeaderProperties.getEncoding() != null)))
+        {
+            // the application may reuse the message as soon as send returns, so the pipeline works on a copy
+            final BasicContentHeaderProperties pipelinedProperties = new BasicContentHeaderProperties(contentHeaderProperties);
+            final ByteBuffer pipelinedPayload = copyPayload(payload);
+            final boolean pipelinedEncrypt = encrypt;
+            final List<String> pipelinedRecipients = recipients;
+            final String pipelinedUnencryptedProperties = unencryptedProperties;
+            sendPipelined(new ProducerPipeline.PipelinedSend()
+            {
+                private CompositeAMQDataBlock _compositeFrame;
+
+                @Override
+                void encode() throws JMSException
                 {
-                    payload.get(unencryptedBytes, headerLength, payload.remaining());
+                    _compositeFrame = createCompositeFrame(destination, publishFrame, pipelinedProperties,
+                                                           pipelinedPayload, pipelinedEncrypt, pipelinedRecipients,
+                                                           pipelinedUnencryptedProperties);
                 }
 
+                @Override
+                void write() throws JMSException
+                {
+                    writeCompositeFrame(_compositeFrame, false);
+                }
+            });
+        }
+        else
+        {
+            awaitPipelinedSends();
+            writeCompositeFrame(createCompositeFrame(destination, publishFrame, contentHeaderProperties, payload,
+                                                     encrypt, recipients, unencryptedProperties),
+                                useConfirms);
+        }
+    }
+
+    private CompositeAMQDataBlock createCompositeFrame(final AMQDestination destination,
+                                                       final AMQFrame publishFrame,
+                                                       BasicContentHeaderProperties contentHeaderProperties,
+                                                       ByteBuffer payload,
+                                                       final boolean encrypt,
+                                                       final List<String> recipients,
+                                                       final String unencryptedProperties) throws JMSException
+    {
+        int size = (payload != null) ? payload.remaining() : 0;
+        AMQFrame contentHeaderFrame;
+        final AMQFrame[] frames;
+        if(encrypt)
+        {
+            MessageEncryptionHelper encryptionHelper = getSession().getMessageEncryptionHelper();
+            try
+            {
+                MessageEncryptionHelper.ContentEncryptionKey contentEncryptionKey =
+                        encryptionHelper.getContentEncryptionKey(recipients);
+                SecretKeySpec secretKey = contentEncryptionKey.getSecretKey();
+
+                final int headerLength = contentHeaderProperties.getPropertyListSize() + 2;
+                ByteBuffer header = ByteBuffer.allocate(headerLength);
+                header.putShort((short) (contentHeaderProperties.getPropertyFlags() & 0xffff));
+                contentHeaderProperties.writePropertyListPayload(header);
+                header.flip();
+
                 byte[] ivbytes = encryptionHelper.getInitialisationVector();
 
-                byte[] encryptedBytes = encryptionHelper.encrypt(secretKey, unencryptedBytes, ivbytes);
-                payload = ByteBuffer.wrap(encryptedBytes);
+                payload = encryptionHelper.encrypt(secretKey, header, size == 0 ? null : payload, ivbytes);
 
-                if (recipientString == null)
-                {
-                    throw new JMSException("When sending an encrypted message, recipients must be supplied");
-                }
-                String[] recipients = recipientString.split(";");
                 List<List<Object>> encryptedKeys = new ArrayList<>();
-                for(MessageEncryptionHelper.KeyTransportRecipientInfo info : encryptionHelper.getKeyTransportRecipientInfo(Arrays.asList(recipients), secretKey))
+                for(MessageEncryptionHelper.KeyTransportRecipientInfo info : contentEncryptionKey.getKeyTransportRecipientInfo())
                 {
                     encryptedKeys.add(info.asList());
                 }
@@ -286,7 +366,7 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
                                      encryptionHelper.getMessageEncryptionCipherName());
                 newHeaders.setBytes(MessageEncryptionHelper.KEY_INIT_VECTOR_PROPERTY, ivbytes);
                 contentHeaderProperties.setContentType(Encrypted091MessageFactory.ENCRYPTED_0_9_1_CONTENT_TYPE);
-                size = encryptedBytes.length;
+                size = payload.remaining();
 
             }
             catch (GeneralSecurityException | IOException e)
@@ -298,10 +378,7 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
         else
         {
             byte[] compressed;
-            if (size > getConnection().getMessageCompressionThresholdSize()
-                && getConnection().getDelegate().isMessageCompressionSupported()
-                && getConnection().isMessageCompressionDesired()
-                && contentHeaderProperties.getEncoding() == null
+            if (isCompressionCandidate(size, contentHeaderProperties.getEncoding() != null)
                 && (compressed = GZIPUtils.compressBufferToArray(payload)) != null)
             {
                 contentHeaderProperties.setEncoding("gzip");
@@ -344,24 +421,12 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
 
         frames[0] = publishFrame;
         frames[1] = contentHeaderFrame;
-        final CompositeAMQDataBlock compositeFrame = new CompositeAMQDataBlock(frames);
-
-        try
-        {
-            getSession().checkFlowControl();
-        }
-        catch (InterruptedException e)
-        {
-            throw JMSExceptionHelper.chainJMSException(new JMSException(
-                    "Interrupted while waiting for flow control to be removed"), e);
-        }
-
-        AMQConnectionDelegate_8_0 connectionDelegate80 = (AMQConnectionDelegate_8_0) (getConnection().getDelegate());
-
-        boolean useConfirms = getPublishMode() == PublishMode.SYNC_PUBLISH_ALL
-                              && (connectionDelegate80.isConfirmedPublishSupported()
-                               || (!getSession().isTransacted() && connectionDelegate80.isConfirmedPublishNonTransactionalSupported()));
+        return new CompositeAMQDataBlock(frames);
+    }
 
+    private void writeCompositeFrame(final CompositeAMQDataBlock compositeFrame, final boolean useConfirms)
+            throws JMSException
+    {
         AMQProtocolHandler protocolHandler = getConnection().getProtocolHandler();
         if(!useConfirms)
         {
@@ -395,6 +460,22 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
         }
     }
 
+    private static int getDestinationType(final AMQDestination destination)
+    {
+        if (destination instanceof Topic)
+        {
+            return AMQDestination.TOPIC_TYPE;
+        }
+        else if (destination instanceof Queue)
+        {
+            return AMQDestination.QUEUE_TYPE;
+        }
+        else
+        {
+            return AMQDestination.UNKNOWN_TYPE;
+        }
+    }
+
     /**
      * Create content bodies. This will split a large message into numerous bodies depending on the negotiated
      * maximum frame size.
@@ -498,4 +579,87 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
             return _rejected;
         }
     }
+
+    /**
+     * Holds the publish frame and the encoded form of the constant headers of messages sent to a destination.
+     * The headers of each message sent with the template are encoded after the template headers, unless the
+     * message redefines one of them, in which case the headers are merged and encoded in full.
+     */
+    static final class MessageTemplate_0_8 extends BasicMessageTemplate
+    {
+        private final AMQFrame _publishFrame;
+        private final FieldTable _headers;
+        private final ByteBuffer _encodedHeaders;
+
+        MessageTemplate_0_8(final BasicMessageProducer_0_8 producer,
+                            final AMQDestination destination,
+                            final boolean mandatory,
+                            final boolean immediate,
+                            final Map<String, Object> properties) throws JMSException
+        {
+            super(producer, destination, mandatory, immediate, properties);
+
+            _headers = new FieldTable();
+            for (Map.Entry<String, Object> property : properties.entrySet())
+            {
+                _headers.setObject(property.getKey(), property.getValue());
+            }
+
+            String routingKey = destination.getRoutingKey();
+            if (destination.getDestSyntax() == AMQDestination.DestSyntax.ADDR
+                && (destination.getSubject() != null || _headers.containsKey(QpidMessageProperties.QPID_SUBJECT)))
+            {
+                if (!_headers.containsKey(QpidMessageProperties.QPID_SUBJECT))
+                {
+                    _headers.setString(QpidMessageProperties.QPID_SUBJECT, destination.getSubject());
+                }
+                if (destination.getAddressType() == AMQDestination.TOPIC_TYPE)
+                {
+                    routingKey = _headers.getString(QpidMessageProperties.QPID_SUBJECT);
+                }
+            }
+            _headers.setInteger(CustomJMSXProperty.JMS_QPID_DESTTYPE.getShortStringName(),
+                                getDestinationType(destination));
+            _encodedHeaders = ByteBuffer.wrap(_headers.getDataAsBytes());
+
+            final AMQSession_0_8 session = producer.getSession();
+            BasicPublishBody body = session.getMethodRegistry().createBasicPublishBody(session.getTicket(),
+                                                                                       destination.getExchangeName(),
+                                                                                       routingKey,
+                                                                                       mandatory,
+                                                                                       immediate);
+            _publishFrame = body.generateFrame(producer.getChannelId());
+        }
+
+        AMQFrame getPublishFrame()
+        {
+            return _publishFrame;
+        }
+
+        FieldTable createHeaders(final FieldTable messageHeaders)
+        {
+            if (messageHeaders == null || messageHeaders.isEmpty())
+            {
+                return new FieldTable(_encodedHeaders);
+            }
+
+            for (AMQShortString name : _headers.keySet())
+            {
+                if (messageHeaders.containsKey(name))
+                {
+                    FieldTable mergedHeaders = new FieldTable(_headers);
+                    mergedHeaders.addAll(messageHeaders);
+                    return mergedHeaders;
+                }
+            }
+
+            final byte[] encodedMessageHeaders = messageHeaders.getDataAsBytes();
+            final ByteBuffer encodedHeaders = ByteBuffer.allocate(_encodedHeaders.remaining()
+                                                                  + encodedMessageHeaders.length);
+            encodedHeaders.put(_encodedHeaders.duplicate());
+            encodedHeaders.put(encodedMessageHeaders);
+            encodedHeaders.flip();
+            return new FieldTable(encodedHeaders);
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.apache.qpid.client.message.MessageEncryptionHelper;
+import org.apache.qpid.jms.MessageTemplate;
+
+/**
+ * Base class for the protocol specific message templates. A template belongs to the producer that created it and
+ * holds the application properties of the prototype message, which the subclasses pre-encode.
+ */
+public abstract class BasicMessageTemplate implements MessageTemplate
+{
+    private final BasicMessageProducer _producer;
+    private final AMQDestination _destination;
+    private final boolean _mandatory;
+    private final boolean _immediate;
+    private final Map<String, Object> _properties;
+
+    protected BasicMessageTemplate(final BasicMessageProducer producer,
+                                   final AMQDestination destination,
+                                   final boolean mandatory,
+                                   final boolean immediate,
+                                   final Map<String, Object> properties)
+    {
+        _producer = producer;
+        _destination = destination;
+        _mandatory = mandatory;
+        _immediate = immediate;
+        _properties = Collections.unmodifiableMap(properties);
+    }
+
+    @Override
+    public Destination getDestination()
+    {
+        return _destination;
+    }
+
+    AMQDestination getAMQDestination()
+    {
+        return _destination;
+    }
+
+    BasicMessageProducer getProducer()
+    {
+        return _producer;
+    }
+
+    boolean isMandatory()
+    {
+        return _mandatory;
+    }
+
+    boolean isImmediate()
+    {
+        return _immediate;
+    }
+
+    protected Map<String, Object> getProperties()
+    {
+        return _properties;
+    }
+
+    /**
+     * Returns the application properties of the given prototype message in the order they are enumerated. The
+     * properties which control message encryption are rejected, as they must be supplied with each message.
+     */
+    static Map<String, Object> getPrototypeProperties(final Message prototype) throws JMSException
+    {
+        final Map<String, Object> properties = new LinkedHashMap<>();
+        if (prototype != null)
+        {
+            final Enumeration propertyNames = prototype.getPropertyNames();
+            while (propertyNames.hasMoreElements())
+            {
+                final String name = (String) propertyNames.nextElement();
+                if (MessageEncryptionHelper.ENCRYPT_HEADER.equals(name)
+                    || MessageEncryptionHelper.ENCRYPT_RECIPIENTS_HEADER.equals(name)
+                    || MessageEncryptionHelper.UNENCRYPTED_PROPERTIES_HEADER.equals(name))
+                {
+                    throw new JMSException("The encryption property '" + name
+                                           + "' must be set on the message rather than the message template");
+                }
+                if (!name.equals(CustomJMSXProperty.JMS_QPID_DESTTYPE.toString()))
+                {
+                    properties.put(name, prototype.getObjectProperty(name));
+                }
+            }
+        }
+        return properties;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + "[destination=" + _destination + ", properties=" + _properties + "]";
+    }
+}
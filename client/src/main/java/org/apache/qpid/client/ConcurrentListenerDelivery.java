@@ -0,0 +1,239 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.jms.JMSException;
+import javax.jms.MessageListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.client.message.AbstractJMSMessage;
+import org.apache.qpid.client.util.KeyOrderedExecutor;
+
+/**
+ * Gives the messages of a consumer to its message listener on the listener threads of its session, keeping the
+ * order of the messages with the same value of the ordering key property.
+ * <p>
+ * A message is made available for acknowledgement by {@link javax.jms.Message#acknowledge()} just before its listener
+ * is given it, as when the dispatcher runs the listener, so that the listener can acknowledge it. Messages still
+ * waiting for a listener thread are not, so an acknowledgement from another listener does not cover them. A message
+ * is only acknowledged automatically once its listener has returned and the listeners of all the messages received
+ * before it have too.
+ */
+final class ConcurrentListenerDelivery
+{
+    private static final Logger _logger = LoggerFactory.getLogger(ConcurrentListenerDelivery.class);
+
+    /** The executor whose listener the current thread is running, if any. */
+    private static final ThreadLocal<KeyOrderedExecutor> CURRENT_EXECUTOR = new ThreadLocal<>();
+
+    private final BasicMessageConsumer<?> _consumer;
+    private final KeyOrderedExecutor _executor;
+    private final String _orderingKey;
+
+    /** The messages given to the executor, in the order received, guarded by this. */
+    private final ArrayDeque<Delivery> _inFlight = new ArrayDeque<>();
+    private boolean _closed;
+
+    ConcurrentListenerDelivery(final BasicMessageConsumer<?> consumer,
+                               final KeyOrderedExecutor executor,
+                               final String orderingKey)
+    {
+        _consumer = consumer;
+        _executor = executor;
+        _orderingKey = orderingKey;
+    }
+
+    void deliver(final AbstractJMSMessage message, final MessageListener listener)
+    {
+        final Delivery delivery = new Delivery(message);
+        synchronized (this)
+        {
+            _inFlight.add(delivery);
+        }
+        try
+        {
+            _executor.execute(getOrderingKey(message), new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    process(delivery, listener);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            _logger.debug("Listener threads have been shut down, rejecting message {}", message.getDeliveryTag());
+            reject(delivery);
+        }
+    }
+
+    /**
+     * Waits for the listeners to finish with the messages given to them, unless called from a listener thread of the
+     * same session, which could be needed to finish them.
+     */
+    void awaitIdle()
+    {
+        if (CURRENT_EXECUTOR.get() == _executor)
+        {
+            return;
+        }
+        synchronized (this)
+        {
+            while (!_inFlight.isEmpty())
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Rejects the messages not yet given to the listener, and waits for the listener to finish with the others.
+     */
+    void close()
+    {
+        synchronized (this)
+        {
+            _closed = true;
+        }
+        awaitIdle();
+    }
+
+    private Object getOrderingKey(final AbstractJMSMessage message)
+    {
+        try
+        {
+            return message.getObjectProperty(_orderingKey);
+        }
+        catch (JMSException e)
+        {
+            _logger.debug("Unable to read ordering key {} of message {}", _orderingKey, message.getDeliveryTag(), e);
+            return null;
+        }
+    }
+
+    private void process(final Delivery delivery, final MessageListener listener)
+    {
+        synchronized (this)
+        {
+            if (_closed)
+            {
+                reject(delivery);
+                return;
+            }
+        }
+
+        final AMQSession session = _consumer.getSession();
+        boolean processed = false;
+        CURRENT_EXECUTOR.set(_executor);
+        try
+        {
+            _consumer.concurrentDeliveryStarted(delivery._message);
+            final long start = session.isAdaptivePrefetch() ? System.nanoTime() : 0L;
+            listener.onMessage(delivery._message);
+            if (start != 0L)
+            {
+                // the listeners run side by side, so each message takes up a share of the elapsed time
+                session.messageProcessed((System.nanoTime() - start) / _executor.getLaneCount());
+            }
+            processed = true;
+        }
+        catch (RuntimeException e)
+        {
+            _logger.error("Message listener threw an exception processing message " + delivery._message.getDeliveryTag(), e);
+        }
+        finally
+        {
+            CURRENT_EXECUTOR.remove();
+            if (processed)
+            {
+                complete(delivery, true);
+            }
+            else
+            {
+                // returned to the Broker, so that acknowledging a later message cannot acknowledge it
+                _consumer.concurrentDeliveryFailed(delivery._message);
+                complete(delivery, false);
+            }
+        }
+    }
+
+    private void reject(final Delivery delivery)
+    {
+        _consumer.getSession().rejectMessage(delivery._message, true);
+        complete(delivery, false);
+    }
+
+    private synchronized void complete(final Delivery delivery, final boolean settle)
+    {
+        delivery._done = true;
+        delivery._settle = settle;
+
+        List<AbstractJMSMessage> settled = null;
+        while (!_inFlight.isEmpty() && _inFlight.peekFirst()._done)
+        {
+            final Delivery done = _inFlight.pollFirst();
+            if (done._settle)
+            {
+                if (settled == null)
+                {
+                    settled = new ArrayList<>();
+                }
+                settled.add(done._message);
+            }
+        }
+        if (settled != null)
+        {
+            _consumer.settleConcurrentDeliveries(settled);
+        }
+        if (_inFlight.isEmpty())
+        {
+            notifyAll();
+        }
+    }
+
+    private static final class Delivery
+    {
+        private final AbstractJMSMessage _message;
+        private boolean _done;
+        private boolean _settle;
+
+        private Delivery(final AbstractJMSMessage message)
+        {
+            _message = message;
+        }
+    }
+}
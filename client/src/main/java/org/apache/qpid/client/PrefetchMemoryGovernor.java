@@ -0,0 +1,226 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.client.util.PrefetchByteBudget;
+import org.apache.qpid.configuration.ClientProperties;
+
+/**
+ * Limits the message bytes held by all the sessions of the process between their receipt from the Broker and their
+ * delivery to the application.
+ * <p>
+ * Each session registers a {@link Usage} to which its prefetch byte budget reports. When the total reaches the limit,
+ * a session which receives a message whilst holding at least its fair share (the limit divided by the number of
+ * sessions) is throttled, so that sessions holding little are not stopped by those holding much. A throttled session
+ * stops the flow of messages from the Broker, and resumes once it holds no more than half its fair share. All the
+ * throttled sessions resume once the total has fallen to half the limit, whichever session's messages were released.
+ */
+public class PrefetchMemoryGovernor
+{
+    private static final Logger _logger = LoggerFactory.getLogger(PrefetchMemoryGovernor.class);
+
+    private static final PrefetchMemoryGovernor INSTANCE =
+            new PrefetchMemoryGovernor(Long.getLong(ClientProperties.PREFETCH_MEMORY_LIMIT,
+                                                    ClientProperties.DEFAULT_PREFETCH_MEMORY_LIMIT));
+
+    private final long _limit;
+    private final AtomicLong _bytes = new AtomicLong();
+    private final Set<Usage> _usages = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger _throttledUsages = new AtomicInteger();
+
+    PrefetchMemoryGovernor(final long limit)
+    {
+        _limit = limit;
+    }
+
+    public static PrefetchMemoryGovernor getInstance()
+    {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled()
+    {
+        return _limit > 0L;
+    }
+
+    public long getLimit()
+    {
+        return _limit;
+    }
+
+    /**
+     * @return the message bytes currently held by all sessions
+     */
+    public long getBytes()
+    {
+        return _bytes.get();
+    }
+
+    /**
+     * Registers a session.
+     *
+     * @param throttleListener run whenever the session becomes throttled or stops being throttled
+     */
+    Usage register(final Runnable throttleListener)
+    {
+        Usage usage = new Usage(throttleListener);
+        _usages.add(usage);
+        return usage;
+    }
+
+    private long getFairShare()
+    {
+        return _limit / Math.max(1, _usages.size());
+    }
+
+    /**
+     * Resumes every throttled session if the total has fallen to half the limit.
+     */
+    private void resumeIfBelowLowWater(final long total)
+    {
+        if (total <= _limit / 2 && _throttledUsages.get() > 0)
+        {
+            for (Usage usage : _usages)
+            {
+                usage.resume(total);
+            }
+        }
+    }
+
+    /**
+     * The bytes held by one session.
+     */
+    public final class Usage implements PrefetchByteBudget.Listener
+    {
+        private final Runnable _throttleListener;
+        private final AtomicLong _held = new AtomicLong();
+        private volatile boolean _throttled;
+        private volatile boolean _closed;
+
+        private Usage(final Runnable throttleListener)
+        {
+            _throttleListener = throttleListener;
+        }
+
+        @Override
+        public void bytesChanged(final long delta)
+        {
+            if (_closed)
+            {
+                return;
+            }
+            final long held = _held.addAndGet(delta);
+            final long total = _bytes.addAndGet(delta);
+            if (!isEnabled())
+            {
+                return;
+            }
+
+            if (delta > 0L)
+            {
+                final boolean throttle;
+                synchronized (this)
+                {
+                    throttle = !_throttled && total >= _limit && held >= getFairShare();
+                    if (throttle)
+                    {
+                        _throttled = true;
+                    }
+                }
+                if (throttle)
+                {
+                    _throttledUsages.incrementAndGet();
+                    _logger.debug("Throttling session holding {} of {} prefetched bytes", held, total);
+                    _throttleListener.run();
+                }
+            }
+            else
+            {
+                if (held <= getFairShare() / 2)
+                {
+                    resume(total);
+                }
+                resumeIfBelowLowWater(total);
+            }
+        }
+
+        private void resume(final long total)
+        {
+            final boolean resume;
+            synchronized (this)
+            {
+                resume = _throttled;
+                _throttled = false;
+            }
+            if (resume)
+            {
+                _throttledUsages.decrementAndGet();
+                _logger.debug("Resuming session holding {} of {} prefetched bytes", _held.get(), total);
+                _throttleListener.run();
+            }
+        }
+
+        public boolean isThrottled()
+        {
+            return _throttled;
+        }
+
+        /**
+         * @return the message bytes held by the session
+         */
+        public long getBytes()
+        {
+            return _held.get();
+        }
+
+        /**
+         * Deregisters the session, giving up the bytes it holds.
+         */
+        void close()
+        {
+            _closed = true;
+            if (_usages.remove(this))
+            {
+                synchronized (this)
+                {
+                    if (_throttled)
+                    {
+                        _throttled = false;
+                        _throttledUsages.decrementAndGet();
+                    }
+                }
+                final long total = _bytes.addAndGet(-_held.getAndSet(0L));
+                if (isEnabled())
+                {
+                    resumeIfBelowLowWater(total);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.jms.JMSException;
+
+import org.apache.qpid.client.util.JMSExceptionHelper;
+
+/**
+ * Runs the expensive part of sending a message (compression, encryption, frame creation) on a shared worker pool
+ * while guaranteeing that the messages of a single producer are written to the wire in the order they were sent.
+ * <p>
+ * Each send is split into an encode step, which may run concurrently with the encode steps of other sends, and a
+ * write step, which is only ever performed for the oldest outstanding send once its encode step has completed.
+ * At most {@code depth} sends may be outstanding at any time; further sends block until an earlier send has been
+ * written.
+ * <p>
+ * Writes are performed holding the write lock, which is the connection's failover mutex, so that a pipelined send
+ * is never written while the connection is failing over. The pipeline's own state is guarded by the same lock, and
+ * a thread waiting for the pipeline waits on it, releasing it for the writes and for any failover in the meantime.
+ * <p>
+ * A failure of a pipelined send cannot be reported to the thread that sent the message, so the first failure is
+ * retained and thrown by the next call to {@link #checkFailure()} or {@link #await()}.
+ */
+class ProducerPipeline
+{
+    private final Executor _executor;
+    private final int _depth;
+    private final Object _writeLock;
+    private final Deque<PipelinedSend> _pending = new ArrayDeque<>();
+    private JMSException _failure;
+
+    ProducerPipeline(final Executor executor, final int depth, final Object writeLock)
+    {
+        _executor = executor;
+        _depth = depth;
+        _writeLock = writeLock;
+    }
+
+    void submit(final PipelinedSend send) throws JMSException
+    {
+        synchronized (_writeLock)
+        {
+            try
+            {
+                checkFailure();
+                while (_pending.size() >= _depth)
+                {
+                    _writeLock.wait();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                send.discard();
+                Thread.currentThread().interrupt();
+                throw JMSExceptionHelper.chainJMSException(new JMSException(
+                        "Interrupted while waiting for space in the producer pipeline"), e);
+            }
+            catch (JMSException e)
+            {
+                send.discard();
+                throw e;
+            }
+            _pending.add(send);
+        }
+
+        try
+        {
+            _executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        send.encode();
+                    }
+                    catch (JMSException | RuntimeException e)
+                    {
+                        send._failure = e;
+                    }
+                    finally
+                    {
+                        send._encoded = true;
+                    }
+                    writeEncoded();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            synchronized (_writeLock)
+            {
+                _pending.remove(send);
+                _writeLock.notifyAll();
+            }
+            send.discard();
+            throw JMSExceptionHelper.chainJMSException(new JMSException(
+                    "Unable to send message as the producer pipeline has been shut down"), e);
+        }
+    }
+
+    /**
+     * Writes the encoded sends at the head of the queue, in order. Each send is taken from the queue and written
+     * while holding the write lock, so sends are written one at a time, in the order they were submitted.
+     */
+    private void writeEncoded()
+    {
+        while (true)
+        {
+            synchronized (_writeLock)
+            {
+                final PipelinedSend send = _pending.peek();
+                if (send == null || !send._encoded)
+                {
+                    return;
+                }
+
+                Exception failure = send._failure;
+                if (failure == null)
+                {
+                    try
+                    {
+                        send.write();
+                    }
+                    catch (JMSException | RuntimeException e)
+                    {
+                        failure = e;
+                    }
+                }
+                else
+                {
+                    send.discard();
+                }
+
+                if (failure != null && _failure == null)
+                {
+                    _failure = JMSExceptionHelper.chainJMSException(new JMSException(
+                            "Exception when sending pipelined message: " + failure.getMessage()), failure);
+                }
+                _pending.poll();
+                _writeLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Throws, and clears, the failure of an earlier pipelined send, if any.
+     */
+    void checkFailure() throws JMSException
+    {
+        final JMSException failure;
+        synchronized (_writeLock)
+        {
+            failure = _failure;
+            _failure = null;
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    /**
+     * Waits until every outstanding send has been written, then reports any failure. The write lock is released
+     * while waiting, even if the caller holds it.
+     */
+    void await() throws JMSException
+    {
+        synchronized (_writeLock)
+        {
+            while (!_pending.isEmpty())
+            {
+                try
+                {
+                    _writeLock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw JMSExceptionHelper.chainJMSException(new JMSException(
+                            "Interrupted while waiting for pipelined messages to be sent"), e);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    static abstract class PipelinedSend
+    {
+        private volatile boolean _encoded;
+        private volatile Exception _failure;
+
+        /**
+         * Performs the work which may proceed concurrently with other sends from the same producer.
+         */
+        abstract void encode() throws JMSException;
+
+        /**
+         * Writes the encoded message. Called in send order, holding the write lock.
+         */
+        abstract void write() throws JMSException;
+
+        /**
+         * Called instead of {@link #write()} when the send will not be written, to release anything reserved for it
+         * by the sending thread.
+         */
+        void discard()
+        {
+        }
+    }
+}
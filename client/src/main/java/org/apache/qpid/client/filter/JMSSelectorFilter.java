@@ -21,14 +21,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.qpid.AMQInternalException;
+import org.apache.qpid.client.message.AMQMessageDelegate;
 import org.apache.qpid.client.message.AbstractJMSMessage;
-import org.apache.qpid.filter.FilterableMessage;
-import org.apache.qpid.filter.JMSMessagePropertyExpression;
+import org.apache.qpid.filter.PropertyMapMessage;
 import org.apache.qpid.filter.SelectorParsingException;
 import org.apache.qpid.filter.selector.ParseException;
-import org.apache.qpid.filter.selector.SelectorParser;
 import org.apache.qpid.filter.BooleanExpression;
 import org.apache.qpid.filter.selector.TokenMgrError;
+import org.apache.qpid.transport.codec.PropertyMap;
 
 import javax.jms.DeliveryMode;
 import javax.jms.JMSException;
@@ -38,6 +38,15 @@ public class JMSSelectorFilter implements MessageFilter
 {
     private static final Logger _logger = LoggerFactory.getLogger(JMSSelectorFilter.class);
 
+    private static final ThreadLocal<MessageAdapter> ADAPTER = new ThreadLocal<MessageAdapter>()
+    {
+        @Override
+        protected MessageAdapter initialValue()
+        {
+            return new MessageAdapter();
+        }
+    };
+
     private final String _selector;
     private final BooleanExpression _matcher;
 
@@ -54,9 +63,7 @@ public class JMSSelectorFilter implements MessageFilter
         }
         try
         {
-            SelectorParser<FilterableMessage> selectorParser = new SelectorParser<>();
-            selectorParser.setPropertyExpressionFactory(JMSMessagePropertyExpression.FACTORY);
-            _matcher = selectorParser.parse(selector);
+            _matcher = SelectorCache.getInstance().getExpression(selector);
         }
         catch (ParseException e)
         {
@@ -74,9 +81,32 @@ public class JMSSelectorFilter implements MessageFilter
 
     public boolean matches(AbstractJMSMessage message)
     {
+        final boolean redelivered;
         try
         {
-            boolean match = _matcher.matches(wrap(message));
+            redelivered = message.getJMSRedelivered();
+        }
+        catch (JMSException e)
+        {
+            _logger.warn("Caught exception when evaluating message selector for message  " + message, e);
+            return false;
+        }
+        return matches(message, message.getDelegate(), redelivered);
+    }
+
+    public boolean matches(AMQMessageDelegate headers, boolean redelivered)
+    {
+        return matches(headers, headers, redelivered);
+    }
+
+    private boolean matches(Object message, AMQMessageDelegate headers, boolean redelivered)
+    {
+        final MessageAdapter adapter = ADAPTER.get();
+        adapter._headers = headers;
+        adapter._redelivered = redelivered;
+        try
+        {
+            boolean match = _matcher.matches(adapter);
             if (_logger.isDebugEnabled())
             {
                 _logger.debug(message + " match(" + match + ") selector(" + _selector + "): " + _selector);
@@ -87,130 +117,135 @@ public class JMSSelectorFilter implements MessageFilter
         {
             _logger.warn("Caught exception when evaluating message selector for message  " + message, e);
         }
+        finally
+        {
+            adapter._headers = null;
+        }
         return false;
     }
 
-    private FilterableMessage wrap(final AbstractJMSMessage message)
+    public String getSelector()
     {
-        return new FilterableMessage()
+        return _selector;
+    }
+
+    /**
+     * Presents the headers of a message to the selector, reused by a thread for each message it filters.
+     */
+    private static final class MessageAdapter implements PropertyMapMessage
+    {
+        private AMQMessageDelegate _headers;
+        private boolean _redelivered;
+
+        public boolean isPersistent()
         {
-            public boolean isPersistent()
+            try
             {
-                try
-                {
-                    return message.getJMSDeliveryMode() == DeliveryMode.PERSISTENT;
-                }
-                catch (JMSException e)
-                {
-                    throw new SelectorParsingException(e);
-                }
+                return _headers.getJMSDeliveryMode() == DeliveryMode.PERSISTENT;
             }
-
-            public boolean isRedelivered()
+            catch (JMSException e)
             {
-                try
-                {
-                    return message.getJMSRedelivered();
-                }
-                catch (JMSException e)
-                {
-                    throw new SelectorParsingException(e);
-                }
+                throw new SelectorParsingException(e);
             }
+        }
 
-            public Object getHeader(String name)
+        public boolean isRedelivered()
+        {
+            return _redelivered;
+        }
+
+        public Object getHeader(String name)
+        {
+            try
             {
-                try
-                {
-                    return message.getObjectProperty(name);
-                }
-                catch (JMSException e)
-                {
-                    throw new SelectorParsingException(e);
-                }
+                return _headers.getObjectProperty(name);
             }
-
-            public String getReplyTo()
+            catch (JMSException e)
             {
-                return message.getReplyToString();
+                throw new SelectorParsingException(e);
             }
+        }
 
-            public String getType()
+        public PropertyMap getPropertyMap()
+        {
+            return _headers.getPropertyMap();
+        }
+
+        public String getReplyTo()
+        {
+            return _headers.getReplyToString();
+        }
+
+        public String getType()
+        {
+            try
             {
-                try
-                {
-                    return message.getJMSType();
-                }
-                catch (JMSException e)
-                {
-                    throw new SelectorParsingException(e);
-                }
+                return _headers.getJMSType();
             }
-
-            public byte getPriority()
+            catch (JMSException e)
             {
-                try
-                {
-                    return (byte) message.getJMSPriority();
-                }
-                catch (JMSException e)
-                {
-                    throw new SelectorParsingException(e);
-                }
+                throw new SelectorParsingException(e);
             }
+        }
 
-            public String getMessageId()
+        public byte getPriority()
+        {
+            try
             {
-                try
-                {
-                    return message.getJMSMessageID();
-                }
-                catch (JMSException e)
-                {
-                    throw new SelectorParsingException(e);
-                }
+                return (byte) _headers.getJMSPriority();
             }
+            catch (JMSException e)
+            {
+                throw new SelectorParsingException(e);
+            }
+        }
 
-            public long getTimestamp()
+        public String getMessageId()
+        {
+            try
+            {
+                return _headers.getJMSMessageID();
+            }
+            catch (JMSException e)
             {
-                try
-                {
-                    return message.getJMSTimestamp();
-                }
-                catch (JMSException e)
-                {
-                    throw new SelectorParsingException(e);
-                }
+                throw new SelectorParsingException(e);
             }
+        }
 
-            public String getCorrelationId()
+        public long getTimestamp()
+        {
+            try
             {
-                try
-                {
-                    return message.getJMSCorrelationID();
-                }
-                catch (JMSException e)
-                {
-                    throw new SelectorParsingException(e);
-                }
+                return _headers.getJMSTimestamp();
             }
+            catch (JMSException e)
+            {
+                throw new SelectorParsingException(e);
+            }
+        }
 
-            public long getExpiration()
+        public String getCorrelationId()
+        {
+            try
             {
-                try
-                {
-                    return message.getJMSExpiration();
-                }
-                catch (JMSException e)
-                {
-                    throw new SelectorParsingException(e);
-                }
+                return _headers.getJMSCorrelationID();
             }
-        };
-    }
+            catch (JMSException e)
+            {
+                throw new SelectorParsingException(e);
+            }
+        }
 
-    public String getSelector()
-    {
-        return _selector;
+        public long getExpiration()
+        {
+            try
+            {
+                return _headers.getJMSExpiration();
+            }
+            catch (JMSException e)
+            {
+                throw new SelectorParsingException(e);
+            }
+        }
     }
 }
@@ -17,11 +17,21 @@
  */
 package org.apache.qpid.client.filter;
 
+import org.apache.qpid.client.message.AMQMessageDelegate;
 import org.apache.qpid.client.message.AbstractJMSMessage;
 
 
 public interface MessageFilter
 {
     boolean matches(AbstractJMSMessage message);
+
+    /**
+     * Matches a message which has not yet been created from its headers alone.
+     *
+     * @param headers the delegate holding the headers of the message
+     * @param redelivered whether the message has been delivered before
+     */
+    boolean matches(AMQMessageDelegate headers, boolean redelivered);
+
     String getSelector();
 }
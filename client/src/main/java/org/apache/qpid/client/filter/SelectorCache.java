@@ -0,0 +1,294 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.client.util.ConcurrentCache;
+import org.apache.qpid.configuration.ClientProperties;
+import org.apache.qpid.filter.BooleanExpression;
+import org.apache.qpid.filter.FilterableMessage;
+import org.apache.qpid.filter.JMSMessagePropertyExpression;
+import org.apache.qpid.filter.SelectorCompiler;
+import org.apache.qpid.filter.selector.ParseException;
+import org.apache.qpid.filter.selector.SelectorParser;
+
+/**
+ * Caches the parsed form of message selectors for the whole process, so that consumers and browsers created with the
+ * same selector parse it only once.
+ * <p>
+ * Selectors are keyed by their text with runs of white space collapsed. When selectors are compiled, a string literal
+ * compared for equality (such as the literal of <code>JMSCorrelationID = 'abc'</code>) is also replaced in the key by
+ * a parameter, so that selectors differing only in such literals share one parsed expression, which is then compiled
+ * with the literals of each selector bound to its parameters. Literals of LIKE, IN and BETWEEN, and literals taking
+ * part in arithmetic, are kept in the key, as they are not evaluated as plain constants. Selectors containing comments
+ * are keyed by their text alone.
+ * <p>
+ * The cache holds at most about a fixed number of selectors, discarding those not used recently, and is looked up
+ * without locking. A size of zero disables it. All methods are thread safe.
+ */
+class SelectorCache
+{
+    /** Starts the literals standing for parameters, which a selector is unlikely to contain. */
+    private static final String PARAMETER_PREFIX = "\0";
+
+    private static final SelectorCache INSTANCE =
+            new SelectorCache(Integer.getInteger(ClientProperties.SELECTOR_CACHE_SIZE,
+                                                 ClientProperties.DEFAULT_SELECTOR_CACHE_SIZE),
+                              Boolean.parseBoolean(System.getProperty(ClientProperties.COMPILE_SELECTORS,
+                                                                      String.valueOf(ClientProperties.DEFAULT_COMPILE_SELECTORS))));
+
+    private final boolean _compile;
+    /** The parsed expressions keyed by normalised selector, or null if the cache is disabled. */
+    private final ConcurrentCache<String, BooleanExpression<FilterableMessage>> _expressions;
+
+    SelectorCache(final int size, final boolean compile)
+    {
+        _compile = compile;
+        _expressions = size > 0 ? new ConcurrentCache<String, BooleanExpression<FilterableMessage>>(size) : null;
+    }
+
+    static SelectorCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the expression for the selector, compiled if selectors are compiled
+     * @throws ParseException if the selector is not valid
+     */
+    BooleanExpression<FilterableMessage> getExpression(final String selector) throws ParseException
+    {
+        final Map<String, String> parameters = new HashMap<>();
+        final String key = normalise(selector, _compile ? parameters : null);
+        BooleanExpression<FilterableMessage> expression = _expressions == null ? null : _expressions.get(key);
+        if (expression == null)
+        {
+            // parsed from the key, so that the literals standing for parameters are in the expression
+            final SelectorParser<FilterableMessage> selectorParser = new SelectorParser<>();
+            selectorParser.setPropertyExpressionFactory(JMSMessagePropertyExpression.FACTORY);
+            expression = selectorParser.parse(key);
+            if (_compile && parameters.isEmpty())
+            {
+                expression = SelectorCompiler.compile(expression);
+            }
+            if (_expressions != null)
+            {
+                _expressions.put(key, expression);
+            }
+        }
+        return _compile && !parameters.isEmpty() ? SelectorCompiler.compile(expression, parameters) : expression;
+    }
+
+    int getSize()
+    {
+        return _expressions == null ? 0 : _expressions.size();
+    }
+
+    /**
+     * Collapses the white space of a selector and, if parameters are wanted, replaces the literals which can be bound
+     * as parameters.
+     *
+     * @param parameters receives the value of each parameter, keyed by the literal standing for it, or null
+     * @return the normalised selector
+     */
+    static String normalise(final String selector, final Map<String, String> parameters)
+    {
+        final List<String> tokens = tokenise(selector);
+        if (tokens == null)
+        {
+            return selector;
+        }
+
+        final StringBuilder normalised = new StringBuilder(selector.length());
+        for (int i = 0; i < tokens.size(); i++)
+        {
+            String token = tokens.get(i);
+            if (token == null)
+            {
+                continue;
+            }
+            else if (parameters != null && isParameter(tokens, i))
+            {
+                final String parameter = PARAMETER_PREFIX + parameters.size();
+                parameters.put(parameter, decode(token));
+                token = "'" + parameter + "'";
+            }
+            if (normalised.length() > 0 && isSeparated(tokens, i))
+            {
+                normalised.append(' ');
+            }
+            normalised.append(token);
+        }
+        return normalised.toString();
+    }
+
+    /**
+     * Splits a selector into string literals, quoted identifiers, operators and runs of other characters. Each token
+     * which was preceded by white space is preceded in the list by a null.
+     *
+     * @return the tokens, or null if the selector contains a comment or an unterminated literal
+     */
+    private static List<String> tokenise(final String selector)
+    {
+        final List<String> tokens = new ArrayList<>();
+        final int length = selector.length();
+        int i = 0;
+        while (i < length)
+        {
+            final char c = selector.charAt(i);
+            int end = i + 1;
+            if (Character.isWhitespace(c))
+            {
+                while (end < length && Character.isWhitespace(selector.charAt(end)))
+                {
+                    end++;
+                }
+                if (!tokens.isEmpty())
+                {
+                    tokens.add(null);
+                }
+                i = end;
+                continue;
+            }
+            else if (c == '\'' || c == '"')
+            {
+                while (true)
+                {
+                    end = selector.indexOf(c, end);
+                    if (end < 0)
+                    {
+                        return null;
+                    }
+                    end++;
+                    if (end < length && selector.charAt(end) == c)
+                    {
+                        end++;
+                    }
+                    else
+                    {
+                        break;
+                    }
+                }
+            }
+            else if (selector.startsWith("--", i) || selector.startsWith("/*", i))
+            {
+                return null;
+            }
+            else if (c == '<' || c == '>')
+            {
+                if (end < length && (selector.charAt(end) == '=' || (c == '<' && selector.charAt(end) == '>')))
+                {
+                    end++;
+                }
+            }
+            else if (isWordPart(c))
+            {
+                while (end < length && isWordPart(selector.charAt(end)))
+                {
+                    end++;
+                }
+            }
+            tokens.add(selector.substring(i, end));
+            i = end;
+        }
+        if (!tokens.isEmpty() && tokens.get(tokens.size() - 1) == null)
+        {
+            tokens.remove(tokens.size() - 1);
+        }
+        return tokens;
+    }
+
+    private static boolean isWordPart(final char c)
+    {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$' || c == '.';
+    }
+
+    private static boolean isSeparated(final List<String> tokens, final int index)
+    {
+        return index > 0 && tokens.get(index - 1) == null;
+    }
+
+    /**
+     * @return true if the token is a string literal which is an operand of = or &lt;&gt; and of nothing else
+     */
+    private static boolean isParameter(final List<String> tokens, final int index)
+    {
+        final String token = tokens.get(index);
+        if (token == null || !token.startsWith("'"))
+        {
+            return false;
+        }
+        final String previous = previous(tokens, index);
+        final String next = next(tokens, index);
+        if (isEquality(previous))
+        {
+            return next == null || ")".equals(next) || isLogical(next);
+        }
+        else if (isEquality(next))
+        {
+            return previous == null || "(".equals(previous) || isLogical(previous) || "NOT".equalsIgnoreCase(previous);
+        }
+        return false;
+    }
+
+    private static String previous(final List<String> tokens, final int index)
+    {
+        for (int i = index - 1; i >= 0; i--)
+        {
+            if (tokens.get(i) != null)
+            {
+                return tokens.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static String next(final List<String> tokens, final int index)
+    {
+        for (int i = index + 1; i < tokens.size(); i++)
+        {
+            if (tokens.get(i) != null)
+            {
+                return tokens.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEquality(final String token)
+    {
+        return "=".equals(token) || "<>".equals(token);
+    }
+
+    private static boolean isLogical(final String token)
+    {
+        return "AND".equalsIgnoreCase(token) || "OR".equalsIgnoreCase(token);
+    }
+
+    private static String decode(final String literal)
+    {
+        return literal.substring(1, literal.length() - 1).replace("''", "'");
+    }
+}
@@ -22,6 +22,7 @@
 package org.apache.qpid.client.message;
 
 import org.apache.qpid.client.AMQSession;
+import org.apache.qpid.transport.codec.PropertyMap;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
@@ -94,6 +95,11 @@ public interface AMQMessageDelegate
 
     Enumeration getPropertyNames() throws JMSException;
 
+    /**
+     * @return the properties of the message if they are held in a {@link PropertyMap}, otherwise null
+     */
+    PropertyMap getPropertyMap();
+
     void setBooleanProperty(String string, boolean b) throws JMSException;
 
     void setByteProperty(String string, byte b) throws JMSException;
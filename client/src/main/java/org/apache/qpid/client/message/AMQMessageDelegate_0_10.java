@@ -25,9 +25,7 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,6 +45,7 @@ import org.apache.qpid.AMQPInvalidClassException;
 import org.apache.qpid.client.AMQDestination;
 import org.apache.qpid.client.AMQDestination.DestSyntax;
 import org.apache.qpid.client.CustomJMSXProperty;
+import org.apache.qpid.client.util.ConcurrentCache;
 import org.apache.qpid.client.util.JMSExceptionHelper;
 import org.apache.qpid.jms.Message;
 import org.apache.qpid.transport.DeliveryProperties;
@@ -58,6 +57,7 @@ import org.apache.qpid.transport.MessageDeliveryPriority;
 import org.apache.qpid.transport.MessageProperties;
 import org.apache.qpid.transport.ReplyTo;
 import org.apache.qpid.transport.TransportException;
+import org.apache.qpid.transport.codec.PropertyMap;
 
 /**
  * This extends AbstractAMQMessageDelegate which contains common code between
@@ -68,21 +68,10 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
 {
     private static final Logger _logger = LoggerFactory.getLogger(AMQMessageDelegate_0_10.class);
 
-    private static final float DESTINATION_CACHE_LOAD_FACTOR = 0.75f;
     private static final int DESTINATION_CACHE_SIZE = 500;
-    private static final int DESTINATION_CACHE_CAPACITY = (int) (DESTINATION_CACHE_SIZE / DESTINATION_CACHE_LOAD_FACTOR);
 
-    private static final Map<ReplyTo, Destination> _destinationCache =
-            Collections.synchronizedMap(new LinkedHashMap<ReplyTo,Destination>(DESTINATION_CACHE_CAPACITY,
-                                                                              DESTINATION_CACHE_LOAD_FACTOR,
-                                                                              true)
-    {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<ReplyTo, Destination> eldest)
-        {
-            return size() >= DESTINATION_CACHE_SIZE;
-        }
-    });
+    private static final ConcurrentCache<ReplyTo, Destination> _destinationCache =
+            new ConcurrentCache<>(DESTINATION_CACHE_SIZE);
 
     public static final String JMS_TYPE = "x-jms-type";
 
@@ -90,6 +79,10 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
     private boolean _readableProperties = false;
 
     private Destination _destination;
+    // the destination is resolved from the delivery properties when it is first asked for
+    private boolean _destinationResolved;
+    private DestSyntax _destSyntax;
+    private String _subject;
 
     private MessageProperties _messageProps;
     private DeliveryProperties _deliveryProps;
@@ -113,36 +106,23 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
         _messageProps = messageProps;
         _deliveryProps = deliveryProps;
         _readableProperties = (_messageProps != null);
+        _destSyntax = destSyntax;
 
-        AMQDestination dest;
-
-        if (destSyntax == AMQDestination.DestSyntax.BURL)
+        if (destSyntax != AMQDestination.DestSyntax.BURL
+            && isStrictJMS && messageProps != null && messageProps.getApplicationHeaders() != null)
         {
-            dest = generateDestination(_deliveryProps.getExchange(),
-                                       _deliveryProps.getRoutingKey());
-        }
-        else
-        {
-            String subject = null;
-            if (isStrictJMS && messageProps != null && messageProps.getApplicationHeaders() != null)
+            _subject = (String)messageProps.getApplicationHeaders().get(QpidMessageProperties.QPID_SUBJECT);
+            if (_subject != null)
             {
-                subject = (String)messageProps.getApplicationHeaders().get(QpidMessageProperties.QPID_SUBJECT);
-                if (subject != null)
-                {
-                    messageProps.getApplicationHeaders().remove(QpidMessageProperties.QPID_SUBJECT);
-                    messageProps.getApplicationHeaders().put(QpidMessageProperties.QPID_SUBJECT_JMS_PROPERTY,subject);
-                }
+                messageProps.getApplicationHeaders().remove(QpidMessageProperties.QPID_SUBJECT);
+                messageProps.getApplicationHeaders().put(QpidMessageProperties.QPID_SUBJECT_JMS_PROPERTY,_subject);
             }
-            dest = (AMQDestination) convertToAddressBasedDestination(_deliveryProps.getExchange(),
-                    _deliveryProps.getRoutingKey(), subject, false, AMQDestination.UNKNOWN_TYPE);
         }
 
         if(messageProps != null && messageProps.getApplicationHeaders() != null)
         {
             messageProps.getApplicationHeaders().remove(QpidMessageProperties.QPID_NOT_VALID_BEFORE);
         }
-
-        setJMSDestination(dest);        
     }
 
     /**
@@ -344,12 +324,28 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
 
     public Destination getJMSDestination()
     {
+        if (!_destinationResolved)
+        {
+            if (_destSyntax == AMQDestination.DestSyntax.BURL)
+            {
+                _destination = generateDestination(_deliveryProps.getExchange(),
+                                                   _deliveryProps.getRoutingKey());
+            }
+            else
+            {
+                _destination = convertToAddressBasedDestination(_deliveryProps.getExchange(),
+                                                                _deliveryProps.getRoutingKey(), _subject, false,
+                                                                AMQDestination.UNKNOWN_TYPE);
+            }
+            _destinationResolved = true;
+        }
         return _destination;
     }
 
     public void setJMSDestination(Destination destination)
     {
         _destination = destination;
+        _destinationResolved = true;
     }
 
     public void setContentType(String contentType)
@@ -451,6 +447,38 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
         return map == null ? Collections.EMPTY_MAP : map;
     }
 
+    @Override
+    public PropertyMap getPropertyMap()
+    {
+        Map<String, Object> map = _messageProps.getApplicationHeaders();
+        return map instanceof PropertyMap ? (PropertyMap) map : null;
+    }
+
+    /**
+     * @return the position of the named property in the property map, or -1 if the property is absent or the
+     * properties are not held in a property map
+     */
+    private int indexOfProperty(PropertyMap properties, String propertyName)
+    {
+        return properties == null ? -1 : properties.indexOf(propertyName);
+    }
+
+    /**
+     * @return the property map to which to add properties, creating it if the message has no properties, or null if
+     * the properties are held in some other map
+     */
+    private PropertyMap getWritablePropertyMap()
+    {
+        Map<String, Object> headers = _messageProps.getApplicationHeaders();
+        if (headers == null)
+        {
+            PropertyMap properties = new PropertyMap();
+            _messageProps.setApplicationHeaders(properties);
+            return properties;
+        }
+        return headers instanceof PropertyMap ? (PropertyMap) headers : null;
+    }
+
     public void setJMSType(String type) throws JMSException
     {
         Map<String, Object> headers = _messageProps.getApplicationHeaders();
@@ -465,7 +493,7 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
         {
             if(headers == null)
             {
-                headers = new HashMap<String,Object>();
+                headers = new PropertyMap();
                 _messageProps.setApplicationHeaders(headers);
 
             }
@@ -494,6 +522,13 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
     {
         checkPropertyName(propertyName);
 
+        PropertyMap properties = getPropertyMap();
+        int index = indexOfProperty(properties, propertyName);
+        if (index >= 0 && properties.getType(index) == PropertyMap.BOOLEAN)
+        {
+            return properties.getBoolean(index);
+        }
+
         Object o = getApplicationHeaders().get(propertyName);
 
         if(o instanceof Boolean)
@@ -518,6 +553,13 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
     {
         checkPropertyName(propertyName);
 
+        PropertyMap properties = getPropertyMap();
+        int index = indexOfProperty(properties, propertyName);
+        if (index >= 0 && properties.getType(index) == PropertyMap.BYTE)
+        {
+            return (byte) properties.getLong(index);
+        }
+
         Map<String, Object> propertyMap = getApplicationHeaders();
 
         Object o = propertyMap.get(propertyName);
@@ -544,6 +586,18 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
     {
         checkPropertyName(propertyName);
 
+        PropertyMap properties = getPropertyMap();
+        int index = indexOfProperty(properties, propertyName);
+        if (index >= 0)
+        {
+            switch (properties.getType(index))
+            {
+                case PropertyMap.SHORT:
+                case PropertyMap.BYTE:
+                    return (short) properties.getLong(index);
+            }
+        }
+
         Map<String, Object> propertyMap = getApplicationHeaders();
 
         Object o = propertyMap.get(propertyName);
@@ -575,6 +629,19 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
     {
         checkPropertyName(propertyName);
 
+        PropertyMap properties = getPropertyMap();
+        int index = indexOfProperty(properties, propertyName);
+        if (index >= 0)
+        {
+            switch (properties.getType(index))
+            {
+                case PropertyMap.INT:
+                case PropertyMap.SHORT:
+                case PropertyMap.BYTE:
+                    return (int) properties.getLong(index);
+            }
+        }
+
         Map<String, Object> propertyMap = getApplicationHeaders();
 
         Object o = propertyMap.get(propertyName);
@@ -605,6 +672,20 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
     {
         checkPropertyName(propertyName);
 
+        PropertyMap properties = getPropertyMap();
+        int index = indexOfProperty(properties, propertyName);
+        if (index >= 0)
+        {
+            switch (properties.getType(index))
+            {
+                case PropertyMap.LONG:
+                case PropertyMap.INT:
+                case PropertyMap.SHORT:
+                case PropertyMap.BYTE:
+                    return properties.getLong(index);
+            }
+        }
+
         Map<String, Object> propertyMap = getApplicationHeaders();
 
         Object o = propertyMap.get(propertyName);
@@ -634,6 +715,13 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
     public float getFloatProperty(String propertyName) throws JMSException
     {
         checkPropertyName(propertyName);
+
+        PropertyMap properties = getPropertyMap();
+        int index = indexOfProperty(properties, propertyName);
+        if (index >= 0 && properties.getType(index) == PropertyMap.FLOAT)
+        {
+            return properties.getFloat(index);
+        }
         Map<String, Object> propertyMap = getApplicationHeaders();
 
         Object o = propertyMap.get(propertyName);
@@ -661,6 +749,18 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
     {
         checkPropertyName(propertyName);
 
+        PropertyMap properties = getPropertyMap();
+        int index = indexOfProperty(properties, propertyName);
+        if (index >= 0)
+        {
+            switch (properties.getType(index))
+            {
+                case PropertyMap.DOUBLE:
+                case PropertyMap.FLOAT:
+                    return properties.getDouble(index);
+            }
+        }
+
         Map<String, Object> propertyMap = getApplicationHeaders();
 
         Object o = propertyMap.get(propertyName);
@@ -747,67 +847,141 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
     public Enumeration getPropertyNames() throws JMSException
     {
         List<String> props = new ArrayList<String>();
-        Map<String, Object> propertyMap = getApplicationHeaders();
-        for (String prop: getApplicationHeaders().keySet())
+        PropertyMap properties = getPropertyMap();
+        if (properties != null)
         {
-            Object value = propertyMap.get(prop);
-            if (value instanceof Boolean || value instanceof Number 
-                || value instanceof String)
+            for (int i = 0; i < properties.size(); i++)
             {
-                props.add(prop);
+                byte type = properties.getType(i);
+                if (type == PropertyMap.OBJECT ? isPropertyValue(properties.getValue(i)) : type != PropertyMap.CHAR)
+                {
+                    props.add(properties.getKey(i));
+                }
             }
         }
-        
+        else
+        {
+            Map<String, Object> propertyMap = getApplicationHeaders();
+            for (String prop: getApplicationHeaders().keySet())
+            {
+                if (isPropertyValue(propertyMap.get(prop)))
+                {
+                    props.add(prop);
+                }
+            }
+        }
+
         return java.util.Collections.enumeration(props);        
     }
 
+    private static boolean isPropertyValue(Object value)
+    {
+        return value instanceof Boolean || value instanceof Number || value instanceof String;
+    }
+
     public void setBooleanProperty(String propertyName, boolean b) throws JMSException
     {
         checkPropertyName(propertyName);
         checkWritableProperties();
-        setApplicationHeader(propertyName, b);
+        PropertyMap properties = getWritablePropertyMap();
+        if (properties != null)
+        {
+            properties.putBoolean(propertyName, b);
+        }
+        else
+        {
+            setApplicationHeader(propertyName, b);
+        }
     }
 
     public void setByteProperty(String propertyName, byte b) throws JMSException
     {
         checkPropertyName(propertyName);
         checkWritableProperties();
-        setApplicationHeader(propertyName, b);
+        PropertyMap properties = getWritablePropertyMap();
+        if (properties != null)
+        {
+            properties.putByte(propertyName, b);
+        }
+        else
+        {
+            setApplicationHeader(propertyName, b);
+        }
     }
 
     public void setShortProperty(String propertyName, short i) throws JMSException
     {
         checkPropertyName(propertyName);
         checkWritableProperties();
-        setApplicationHeader(propertyName, i);
+        PropertyMap properties = getWritablePropertyMap();
+        if (properties != null)
+        {
+            properties.putShort(propertyName, i);
+        }
+        else
+        {
+            setApplicationHeader(propertyName, i);
+        }
     }
 
     public void setIntProperty(String propertyName, int i) throws JMSException
     {
         checkPropertyName(propertyName);
         checkWritableProperties();
-        setApplicationHeader(propertyName, i);
+        PropertyMap properties = getWritablePropertyMap();
+        if (properties != null)
+        {
+            properties.putInt(propertyName, i);
+        }
+        else
+        {
+            setApplicationHeader(propertyName, i);
+        }
     }
 
     public void setLongProperty(String propertyName, long l) throws JMSException
     {
         checkPropertyName(propertyName);
         checkWritableProperties();
-        setApplicationHeader(propertyName, l);
+        PropertyMap properties = getWritablePropertyMap();
+        if (properties != null)
+        {
+            properties.putLong(propertyName, l);
+        }
+        else
+        {
+            setApplicationHeader(propertyName, l);
+        }
     }
 
     public void setFloatProperty(String propertyName, float f) throws JMSException
     {
         checkPropertyName(propertyName);
         checkWritableProperties();
-        setApplicationHeader(propertyName, f);
+        PropertyMap properties = getWritablePropertyMap();
+        if (properties != null)
+        {
+            properties.putFloat(propertyName, f);
+        }
+        else
+        {
+            setApplicationHeader(propertyName, f);
+        }
     }
 
     public void setDoubleProperty(String propertyName, double v) throws JMSException
     {
         checkPropertyName(propertyName);
         checkWritableProperties();
-        setApplicationHeader(propertyName, v);
+        PropertyMap properties = getWritablePropertyMap();
+        if (properties != null)
+        {
+            properties.putDouble(propertyName, v);
+        }
+        else
+        {
+            setApplicationHeader(propertyName, v);
+        }
     }
 
     public void setStringProperty(String propertyName, String value) throws JMSException
@@ -859,7 +1033,7 @@ public class AMQMessageDelegate_0_10 extends AbstractAMQMessageDelegate
         Map<String, Object> headers = _messageProps.getApplicationHeaders();
         if(headers == null)
         {
-            headers = new HashMap<String,Object>();
+            headers = new PropertyMap();
             _messageProps.setApplicationHeaders(headers);
         }
         headers.put(propertyName, object);
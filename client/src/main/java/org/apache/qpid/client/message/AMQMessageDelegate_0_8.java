@@ -24,8 +24,6 @@ package org.apache.qpid.client.message;
 import java.net.URISyntaxException;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -42,6 +40,7 @@ import org.apache.qpid.client.AMQSession;
 import org.apache.qpid.client.AMQSession_0_8;
 import org.apache.qpid.client.AMQTopic;
 import org.apache.qpid.client.CustomJMSXProperty;
+import org.apache.qpid.client.util.ConcurrentCache;
 import org.apache.qpid.exchange.ExchangeDefaults;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.BasicContentHeaderProperties;
@@ -52,21 +51,10 @@ import org.apache.qpid.url.BindingURL;
 
 public class AMQMessageDelegate_0_8 extends AbstractAMQMessageDelegate
 {
-    private static final float DESTINATION_CACHE_LOAD_FACTOR = 0.75f;
     private static final int DESTINATION_CACHE_SIZE = 500;
-    private static final int DESTINATION_CACHE_CAPACITY = (int) (DESTINATION_CACHE_SIZE / DESTINATION_CACHE_LOAD_FACTOR);
 
-    private static final Map<String, Destination> _destinationCache =
-            Collections.synchronizedMap(new LinkedHashMap<String,Destination>(DESTINATION_CACHE_CAPACITY,
-                                                                              DESTINATION_CACHE_LOAD_FACTOR,
-                                                                              true)
-    {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<String, Destination> eldest)
-        {
-            return size() >= DESTINATION_CACHE_SIZE;
-        }
-    });
+    private static final ConcurrentCache<String, Destination> _destinationCache =
+            new ConcurrentCache<>(DESTINATION_CACHE_SIZE);
 
     public static final String JMS_TYPE = "x-jms-type";
     public static final boolean STRICT_JMS = Boolean.getBoolean("strict-jms");
@@ -33,7 +33,9 @@ import javax.jms.JMSException;
 import javax.jms.MessageFormatException;
 import javax.jms.MessageEOFException;
 import java.lang.NumberFormatException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.Iterator;
@@ -439,6 +441,26 @@ public class AMQPEncodedListMessage extends JMSStreamMessage implements
         throw new MessageEOFException(MESSAGE_EOF_EXCEPTION + currentIndex);
     }
 
+    @Override
+    public int readBytesInto(ByteBuffer destination) throws JMSException
+    {
+        checkReadable();
+        if (isValidIndex(currentIndex))
+        {
+            byte[] value = getBytesImpl(currentIndex);
+            if (value == null)
+            {
+                currentIndex++;
+                return -1;
+            }
+            destination.put(value);
+            currentIndex++;
+            return value.length;
+        }
+
+        throw new MessageEOFException(MESSAGE_EOF_EXCEPTION + currentIndex);
+    }
+
     @Override
     public char readChar() throws JMSException
     {
@@ -519,6 +541,42 @@ public class AMQPEncodedListMessage extends JMSStreamMessage implements
         throw new MessageEOFException(MESSAGE_EOF_EXCEPTION + currentIndex);
     }
 
+    @Override
+    public int readString(StringBuilder destination) throws JMSException
+    {
+        String value = readString();
+        if (value == null)
+        {
+            return -1;
+        }
+        destination.append(value);
+        return value.length();
+    }
+
+    @Override
+    public int readString(CharBuffer destination) throws JMSException
+    {
+        checkReadable();
+        if (isValidIndex(currentIndex))
+        {
+            String value = getStringImpl(currentIndex);
+            if (value == null)
+            {
+                currentIndex++;
+                return -1;
+            }
+            if (destination.remaining() < value.length())
+            {
+                throw new BufferOverflowException();
+            }
+            destination.put(value);
+            currentIndex++;
+            return value.length();
+        }
+
+        throw new MessageEOFException(MESSAGE_EOF_EXCEPTION + currentIndex);
+    }
+
     @Override
     public void writeBoolean(boolean value) throws JMSException
     {
@@ -882,9 +940,16 @@ public class AMQPEncodedListMessage extends JMSStreamMessage implements
         if (data != null)
         {
             data.rewind();
-            BBDecoder decoder = new BBDecoder();
-            decoder.init(data);
-            _list = decoder.readList();
+            if (LazyDecodedList.isLazilyDecodable(data))
+            {
+                _list = new LazyDecodedList(data);
+            }
+            else
+            {
+                BBDecoder decoder = new BBDecoder();
+                decoder.init(data);
+                _list = decoder.readList();
+            }
         }
         else
         {
@@ -894,6 +959,14 @@ public class AMQPEncodedListMessage extends JMSStreamMessage implements
 
     public ByteBuffer getData() throws JMSException
     {
+        if (_list instanceof LazyDecodedList)
+        {
+            ByteBuffer encoded = ((LazyDecodedList) _list).getEncoded();
+            if (encoded != null)
+            {
+                return encoded;
+            }
+        }
         BBEncoder encoder = new BBEncoder(1024);
         encoder.writeList(_list);
         return encoder.segment();
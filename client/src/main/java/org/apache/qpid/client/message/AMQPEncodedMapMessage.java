@@ -80,6 +80,14 @@ public class AMQPEncodedMapMessage extends JMSMapMessage
     @ Override
     public ByteBuffer getData()
     {
+        if (getMap() instanceof LazyDecodedMap)
+        {
+            ByteBuffer encoded = ((LazyDecodedMap) getMap()).getEncoded();
+            if (encoded != null)
+            {
+                return encoded;
+            }
+        }
         BBEncoder encoder = new BBEncoder(1024);
         encoder.writeMap(getMap());
         return encoder.segment();
@@ -91,9 +99,16 @@ public class AMQPEncodedMapMessage extends JMSMapMessage
         if (data != null)
         {
             data.rewind();
-            BBDecoder decoder = new BBDecoder();
-            decoder.init(data);
-            setMap(decoder.readMap());
+            if (LazyDecodedMap.isLazilyDecodable(data))
+            {
+                setMap(new LazyDecodedMap(data));
+            }
+            else
+            {
+                BBDecoder decoder = new BBDecoder();
+                decoder.init(data);
+                setMap(decoder.readMap());
+            }
         }
         else
         {
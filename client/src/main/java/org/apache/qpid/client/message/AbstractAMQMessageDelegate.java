@@ -20,6 +20,7 @@
  */
 package org.apache.qpid.client.message;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -35,7 +36,9 @@ import org.apache.qpid.client.AMQDestination;
 import org.apache.qpid.client.AMQQueue;
 import org.apache.qpid.client.AMQSession;
 import org.apache.qpid.client.AMQTopic;
+import org.apache.qpid.client.util.ConcurrentCache;
 import org.apache.qpid.exchange.ExchangeDefaults;
+import org.apache.qpid.transport.codec.PropertyMap;
 
 /**
  * This abstract class provides exchange lookup functionality that is shared
@@ -51,8 +54,13 @@ public abstract class AbstractAMQMessageDelegate implements AMQMessageDelegate
 {
     private static final Logger _logger = LoggerFactory.getLogger(AMQMessageDelegate.class);
 
+    private static final int EXCHANGE_MAP_SIZE = 500;
+
     private static Map<String, Integer> _exchangeTypeToDestinationType = new ConcurrentHashMap<String, Integer>();
-    private static Map<String,ExchangeInfo> _exchangeMap = new  ConcurrentHashMap<>();
+    /** The standard exchanges, which are always known. */
+    private static final Map<String,ExchangeInfo> _defaultExchangeMap = new HashMap<>();
+    /** The types of the other exchanges, as learnt from the broker. */
+    private static final ConcurrentCache<String,ExchangeInfo> _exchangeMap = new ConcurrentCache<>(EXCHANGE_MAP_SIZE);
 
     /**
      * Add default Mappings for the Direct, Default, Topic and Fanout exchanges.
@@ -65,27 +73,27 @@ public abstract class AbstractAMQMessageDelegate implements AMQMessageDelegate
         _exchangeTypeToDestinationType.put(ExchangeDefaults.FANOUT_EXCHANGE_CLASS, AMQDestination.TOPIC_TYPE);
         _exchangeTypeToDestinationType.put(ExchangeDefaults.HEADERS_EXCHANGE_CLASS, AMQDestination.QUEUE_TYPE);
 
-        _exchangeMap.put(ExchangeDefaults.DEFAULT_EXCHANGE_NAME,
+        _defaultExchangeMap.put(ExchangeDefaults.DEFAULT_EXCHANGE_NAME,
                          new ExchangeInfo(ExchangeDefaults.DEFAULT_EXCHANGE_NAME,
                                           ExchangeDefaults.DIRECT_EXCHANGE_CLASS,
                                           AMQDestination.QUEUE_TYPE));
 
-        _exchangeMap.put(ExchangeDefaults.DIRECT_EXCHANGE_NAME,
+        _defaultExchangeMap.put(ExchangeDefaults.DIRECT_EXCHANGE_NAME,
                          new ExchangeInfo(ExchangeDefaults.DIRECT_EXCHANGE_NAME,
                                           ExchangeDefaults.DIRECT_EXCHANGE_CLASS,
                                           AMQDestination.QUEUE_TYPE));
 
-        _exchangeMap.put(ExchangeDefaults.TOPIC_EXCHANGE_NAME,
+        _defaultExchangeMap.put(ExchangeDefaults.TOPIC_EXCHANGE_NAME,
                          new ExchangeInfo(ExchangeDefaults.TOPIC_EXCHANGE_NAME,
                                           ExchangeDefaults.TOPIC_EXCHANGE_CLASS,
                                           AMQDestination.TOPIC_TYPE));
 
-        _exchangeMap.put(ExchangeDefaults.FANOUT_EXCHANGE_NAME,
+        _defaultExchangeMap.put(ExchangeDefaults.FANOUT_EXCHANGE_NAME,
                          new ExchangeInfo(ExchangeDefaults.FANOUT_EXCHANGE_NAME,
                                           ExchangeDefaults.FANOUT_EXCHANGE_CLASS,
                                           AMQDestination.TOPIC_TYPE));
 
-        _exchangeMap.put(ExchangeDefaults.HEADERS_EXCHANGE_NAME,
+        _defaultExchangeMap.put(ExchangeDefaults.HEADERS_EXCHANGE_NAME,
                          new ExchangeInfo(ExchangeDefaults.HEADERS_EXCHANGE_NAME,
                                           ExchangeDefaults.HEADERS_EXCHANGE_CLASS,
                                           AMQDestination.QUEUE_TYPE));
@@ -130,7 +138,7 @@ public abstract class AbstractAMQMessageDelegate implements AMQMessageDelegate
         {
             routingKey = "";
         }
-        ExchangeInfo exchangeInfo = _exchangeMap.get(exchange);
+        ExchangeInfo exchangeInfo = getExchangeInfo(exchange);
 
         if (exchangeInfo == null)
         {
@@ -192,7 +200,13 @@ public abstract class AbstractAMQMessageDelegate implements AMQMessageDelegate
      */
     protected static boolean exchangeMapContains(String exchange)
     {
-        return _exchangeMap.containsKey(exchange);
+        return getExchangeInfo(exchange) != null;
+    }
+
+    private static ExchangeInfo getExchangeInfo(String exchange)
+    {
+        ExchangeInfo exchangeInfo = _exchangeMap.get(exchange);
+        return exchangeInfo == null ? _defaultExchangeMap.get(exchange) : exchangeInfo;
     }
 
     public void acknowledgeThis() throws JMSException
@@ -306,6 +320,11 @@ public abstract class AbstractAMQMessageDelegate implements AMQMessageDelegate
         }
     }
 
+    public PropertyMap getPropertyMap()
+    {
+        return null;
+    }
+
     abstract Object getProperty(String name);
     abstract boolean hasProperty(String name);
 }
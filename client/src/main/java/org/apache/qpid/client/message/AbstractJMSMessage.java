@@ -22,6 +22,7 @@ package org.apache.qpid.client.message;
 
 import org.apache.qpid.QpidException;
 import org.apache.qpid.client.AMQSession;
+import org.apache.qpid.transport.codec.PropertyMap;
 
 import javax.jms.Destination;
 import javax.jms.JMSException;
@@ -235,6 +236,14 @@ public abstract class AbstractJMSMessage implements org.apache.qpid.jms.Message
         return _delegate.getPropertyNames();
     }
 
+    /**
+     * @return the properties of the message if they are held in a {@link PropertyMap}, otherwise null
+     */
+    public PropertyMap getPropertyMap()
+    {
+        return _delegate.getPropertyMap();
+    }
+
     public void setBooleanProperty(final String s, final boolean b)
             throws JMSException
     {
@@ -59,9 +59,12 @@ public abstract class AbstractJMSMessageFactory
         final boolean debug = _logger.isDebugEnabled();
 
         byte[] uncompressed;
+        final boolean compressed =
+                GZIPUtils.GZIP_CONTENT_ENCODING.equals(contentHeader.getProperties().getEncodingAsString());
 
-        if(GZIPUtils.GZIP_CONTENT_ENCODING.equals(contentHeader.getProperties().getEncodingAsString())
-                && (uncompressed = GZIPUtils.uncompressStreamToArray(new BodyInputStream(bodies))) != null )
+        if(compressed
+           && !isLazyDecompressionSupported()
+           && (uncompressed = GZIPUtils.uncompressStreamToArray(new BodyInputStream(bodies))) != null )
         {
             contentHeader.getProperties().setEncoding((String)null);
             data = ByteBuffer.wrap(uncompressed);
@@ -117,22 +120,69 @@ public abstract class AbstractJMSMessageFactory
                     .remaining());
         }
 
+        final boolean inflateLazily = compressed && isLazyDecompressionSupported() && hasGzipHeader(data);
+        if (inflateLazily)
+        {
+            contentHeader.getProperties().setEncoding((String)null);
+        }
+
         AMQMessageDelegate_0_8 delegate = new AMQMessageDelegate_0_8(messageNbr,
                                                                      contentHeader.getProperties(),
                                                                      exchange, routingKey, queueDestinationCache,
                                                                      topicDestinationCache, addressType);
 
-        return createMessage(delegate, data);
+        return inflateLazily ? createMessageWithCompressedBody(delegate, data) : createMessage(delegate, data);
     }
 
     protected abstract AbstractJMSMessage createMessage(AbstractAMQMessageDelegate delegate, ByteBuffer data) throws
                                                                                                               QpidException;
 
+    /**
+     * Indicates whether the messages created by this factory can hold a gzip compressed body and inflate it when
+     * the body is first read.  Factories returning true should override
+     * {@link #createMessageWithCompressedBody(AbstractAMQMessageDelegate, ByteBuffer)}.
+     *
+     * @return true if decompression of the body may be deferred until it is accessed by the application
+     */
+    protected boolean isLazyDecompressionSupported()
+    {
+        return false;
+    }
 
-    protected AbstractJMSMessage create010MessageWithBody(long messageNbr, MessageProperties msgProps,
-                                                          DeliveryProperties deliveryProps,
+    /**
+     * Creates a message whose body is still gzip compressed. By default the body is inflated at once and the message
+     * created from it as any other.
+     */
+    protected AbstractJMSMessage createMessageWithCompressedBody(AbstractAMQMessageDelegate delegate,
+                                                                 ByteBuffer compressedData) throws QpidException
+    {
+        final byte[] uncompressed = GZIPUtils.uncompressBufferToArray(compressedData.duplicate());
+        if (uncompressed == null)
+        {
+            throw new QpidException("Unable to uncompress the gzip compressed message body");
+        }
+        return createMessage(delegate, ByteBuffer.wrap(uncompressed));
+    }
+
+    private boolean hasGzipHeader(final ByteBuffer data)
+    {
+        try
+        {
+            GZIPUtils.uncompressingStream(data).close();
+            return true;
+        }
+        catch (IOException e)
+        {
+            _logger.warn("Unexpected IOException when attempting to uncompress with gzip", e);
+            return false;
+        }
+    }
+
+
+    protected AbstractJMSMessage create010MessageWithBody(AMQMessageDelegate_0_10 delegate,
                                                           ByteBuffer body) throws QpidException
     {
+        final MessageProperties msgProps = delegate.getMessageProperties();
         ByteBuffer data;
         final boolean debug = _logger.isDebugEnabled();
 
@@ -153,18 +203,27 @@ public abstract class AbstractJMSMessageFactory
             _logger.debug("Creating message from buffer with position=" + data.position() + " and remaining=" + data
                     .remaining());
         }
+        boolean inflateLazily = false;
         if(GZIPUtils.GZIP_CONTENT_ENCODING.equals(msgProps.getContentEncoding()))
         {
-            byte[] uncompressed = GZIPUtils.uncompressBufferToArray(data);
-            if(uncompressed != null)
+            if (isLazyDecompressionSupported() && hasGzipHeader(data))
             {
                 msgProps.setContentEncoding(null);
-                data = ByteBuffer.wrap(uncompressed);
+                inflateLazily = true;
+            }
+            else
+            {
+                byte[] uncompressed = GZIPUtils.uncompressBufferToArray(data.duplicate());
+                if(uncompressed != null)
+                {
+                    msgProps.setContentEncoding(null);
+                    data = ByteBuffer.wrap(uncompressed);
+                }
             }
         }
-        AMQMessageDelegate_0_10 delegate = new AMQMessageDelegate_0_10(msgProps, deliveryProps, messageNbr);
-
-        AbstractJMSMessage message = createMessage(delegate, data);
+        AbstractJMSMessage message = inflateLazily
+                ? createMessageWithCompressedBody(delegate, data)
+                : createMessage(delegate, data);
         return message;
     }
 
@@ -185,8 +244,16 @@ public abstract class AbstractJMSMessageFactory
                                             DeliveryProperties deliveryProps, ByteBuffer body)
             throws JMSException, QpidException
     {
-        final AbstractJMSMessage msg =
-                create010MessageWithBody(messageNbr,msgProps,deliveryProps, body);
+        return createMessage(new AMQMessageDelegate_0_10(msgProps, deliveryProps, messageNbr), redelivered, body);
+    }
+
+    /**
+     * Creates a received 0-10 message around a delegate already holding its headers.
+     */
+    public AbstractJMSMessage createMessage(AMQMessageDelegate_0_10 delegate, boolean redelivered, ByteBuffer body)
+            throws JMSException, QpidException
+    {
+        final AbstractJMSMessage msg = create010MessageWithBody(delegate, body);
         msg.setJMSRedelivered(redelivered);
         msg.setReceivedFromServer();
         return msg;
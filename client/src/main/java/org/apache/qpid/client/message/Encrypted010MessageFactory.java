@@ -20,18 +20,13 @@
  */
 package org.apache.qpid.client.message;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
-import java.security.PrivateKey;
 import java.util.Collection;
 import java.util.Iterator;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.security.auth.x500.X500Principal;
 
@@ -126,26 +121,10 @@ public class Encrypted010MessageFactory extends AbstractJMSMessageFactory
                                            + "'");
                 }
 
-                Cipher cipher = Cipher.getInstance(algorithm);
-                cipher.init(Cipher.DECRYPT_MODE, secretKeySpec, new IvParameterSpec(initVector));
-                byte[] encryptedData;
-                int offset;
-                int length;
-                if (data.hasArray())
-                {
-                    encryptedData = data.array();
-                    offset = data.arrayOffset() + data.position();
-                    length = data.remaining();
-                }
-                else
-                {
-                    encryptedData = new byte[data.remaining()];
-                    data.duplicate().get(encryptedData);
-                    offset = 0;
-                    length = encryptedData.length;
-                }
-                final byte[] unencryptedBytes = decryptData(cipher, encryptedData, offset, length);
-                ByteBuffer buf = ByteBuffer.wrap(unencryptedBytes);
+                final ByteBuffer unencryptedBuffer = _messageFactoryRegistry.getSession()
+                        .getMessageEncryptionHelper()
+                        .decrypt(algorithm, secretKeySpec, initVector, data);
+                ByteBuffer buf = unencryptedBuffer.duplicate();
 
                 BBDecoder decoder = new BBDecoder();
                 decoder.init(buf);
@@ -154,8 +133,8 @@ public class Encrypted010MessageFactory extends AbstractJMSMessageFactory
 
                 int payloadOffset = buf.position();
 
-                final ByteBuffer unencryptedData =
-                        ByteBuffer.wrap(unencryptedBytes, payloadOffset, unencryptedBytes.length - payloadOffset);
+                final ByteBuffer unencryptedData = unencryptedBuffer.duplicate();
+                unencryptedData.position(payloadOffset);
 
                 final AbstractAMQMessageDelegate newDelegate =
                         new AMQMessageDelegate_0_10(messageProperties, deliveryProperties, delegate.getDeliveryTag());
@@ -181,33 +160,6 @@ public class Encrypted010MessageFactory extends AbstractJMSMessageFactory
         }
     }
 
-    private byte[] decryptData(final Cipher cipher, final byte[] encryptedData, final int offset, final int length)
-            throws IOException
-    {
-        final byte[] unencryptedBytes;
-        try (CipherInputStream cipherInputStream = new CipherInputStream(new ByteArrayInputStream(encryptedData,
-                                                                                                  offset,
-                                                                                                  length), cipher))
-        {
-            byte[] buf = new byte[512];
-            int pos = 0;
-            int read;
-            while ((read = cipherInputStream.read(buf, pos, buf.length - pos)) != -1)
-            {
-                pos += read;
-                if (pos == buf.length)
-                {
-                    byte[] tmp = buf;
-                    buf = new byte[buf.length + 512];
-                    System.arraycopy(tmp, 0, buf, 0, tmp.length);
-                }
-            }
-            unencryptedBytes= new byte[pos];
-            System.arraycopy(buf, 0, unencryptedBytes, 0, pos);
-        }
-        return unencryptedBytes;
-    }
-
     private SecretKeySpec getContentEncryptionKey(final Collection keyInfoObjList,
                                                   final String algorithm,
                                                   final AMQSession<?, ?> session)
@@ -229,13 +181,14 @@ public class Encrypted010MessageFactory extends AbstractJMSMessageFactory
                         BigInteger serialNumber = new BigInteger((String)iter.next());
                         byte[] encryptedKey = (byte[])iter.next();
 
-                        PrivateKey privateKey = getPrivateKey(session, issuer, serialNumber);
-                        if(privateKey != null)
+                        SecretKeySpec keySpec = session.getMessageEncryptionHelper()
+                                .decryptContentEncryptionKey(keyEncryptionAlgorithm,
+                                                             issuer,
+                                                             serialNumber,
+                                                             encryptedKey,
+                                                             algorithm.split("/")[0]);
+                        if(keySpec != null)
                         {
-                            Cipher cipher = Cipher.getInstance(keyEncryptionAlgorithm);
-                            cipher.init(Cipher.DECRYPT_MODE, privateKey);
-                            byte[] decryptedData = decryptData(cipher, encryptedKey, 0, encryptedKey.length);
-                            SecretKeySpec keySpec = new SecretKeySpec(decryptedData, algorithm.split("/")[0]);
                             return keySpec;
                         }
                         break;
@@ -252,12 +205,4 @@ public class Encrypted010MessageFactory extends AbstractJMSMessageFactory
         return null;
     }
 
-    private PrivateKey getPrivateKey(final AMQSession<?, ?> session,
-                                     final X500Principal issuer,
-                                     final BigInteger serialNumber)
-            throws GeneralSecurityException, IOException
-    {
-        return session.getMessageEncryptionHelper().getEncryptionPrivateKey(issuer, serialNumber);
-    }
-
 }
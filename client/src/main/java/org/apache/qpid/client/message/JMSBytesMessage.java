@@ -20,25 +20,42 @@
  */
 package org.apache.qpid.client.message;
 
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.MessageEOFException;
 import javax.jms.MessageFormatException;
 import org.apache.qpid.QpidException;
+import org.apache.qpid.client.util.JMSExceptionHelper;
 import org.apache.qpid.typedmessage.TypedBytesContentReader;
 import org.apache.qpid.typedmessage.TypedBytesContentWriter;
 import org.apache.qpid.typedmessage.TypedBytesFormatException;
+import org.apache.qpid.util.GZIPUtils;
 
 public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesMessage
 {
     public static final String MIME_TYPE = "application/octet-stream";
 
+    private static final int INFLATE_WINDOW_SIZE = 64 * 1024;
 
     private TypedBytesContentReader _typedBytesContentReader;
     private TypedBytesContentWriter _typedBytesContentWriter;
 
+    /*
+     * When a message is received with a gzip compressed body, the compressed data is retained and the body is inflated
+     * incrementally into a fixed size window as the application reads from it.  In this case _typedBytesContentReader
+     * reads from the current window rather than the whole body.
+     */
+    private ByteBuffer _compressedData;
+    private InputStream _inflaterStream;
+    private byte[] _inflateWindow;
+    private int _inflateWindowLimit;
+    private long _inflatedBodyLength = -1L;
+
 
     public JMSBytesMessage(AMQMessageDelegateFactory delegateFactory)
     {
@@ -52,12 +69,26 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
         _typedBytesContentReader = new TypedBytesContentReader(data);
     }
 
+    JMSBytesMessage(AMQMessageDelegate delegate, ByteBuffer compressedData, boolean compressed) throws QpidException
+    {
+        this(delegate, compressed ? ByteBuffer.allocate(0) : compressedData);
+        if (compressed)
+        {
+            _compressedData = compressedData.duplicate();
+        }
+    }
+
 
     public void reset()
     {
         setReadable(true);
 
-        if(_typedBytesContentReader != null)
+        if (_compressedData != null)
+        {
+            closeInflaterStream();
+            _typedBytesContentReader = new TypedBytesContentReader(ByteBuffer.allocate(0));
+        }
+        else if(_typedBytesContentReader != null)
         {
             _typedBytesContentReader.reset();
         }
@@ -71,6 +102,9 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
     public void clearBody() throws JMSException
     {
         super.clearBody();
+        closeInflaterStream();
+        _compressedData = null;
+        _inflateWindow = null;
         _typedBytesContentReader = null;
         _typedBytesContentWriter = new TypedBytesContentWriter();
 
@@ -84,12 +118,38 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
     @Override
     public java.nio.ByteBuffer getData() throws JMSException
     {
+        if (_compressedData != null)
+        {
+            try (InputStream inflaterStream = GZIPUtils.uncompressingStream(_compressedData))
+            {
+                ByteArrayOutputStream inflatedContent = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                int read;
+                while ((read = inflaterStream.read(buf)) != -1)
+                {
+                    inflatedContent.write(buf, 0, read);
+                }
+                return ByteBuffer.wrap(inflatedContent.toByteArray());
+            }
+            catch (IOException e)
+            {
+                throw createInflateException(e);
+            }
+        }
         return _typedBytesContentWriter == null ? _typedBytesContentReader.getData() : _typedBytesContentWriter.getData();
     }
 
     public long getBodyLength() throws JMSException
     {
         checkReadable();
+        if (_compressedData != null)
+        {
+            if (_inflatedBodyLength < 0L)
+            {
+                _inflatedBodyLength = countInflatedBytes();
+            }
+            return _inflatedBodyLength;
+        }
         return _typedBytesContentReader.size();
     }
 
@@ -101,11 +161,12 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
         return _typedBytesContentReader.readBooleanImpl();
     }
 
-    private void checkAvailable(final int i) throws MessageEOFException
+    private void checkAvailable(final int i) throws JMSException
     {
+        inflate(i);
         try
         {
-            _typedBytesContentReader.checkAvailable(1);
+            _typedBytesContentReader.checkAvailable(i);
         }
         catch (EOFException e)
         {
@@ -185,8 +246,7 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
     public String readUTF() throws JMSException
     {
         checkReadable();
-        // we check only for one byte since theoretically the string could be only a
-        // single byte when using UTF-8 encoding
+        inflateUTF();
 
         try
         {
@@ -198,6 +258,40 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
         }
     }
 
+    /**
+     * Reads a string as {@link #readUTF()}, appending it to the given builder rather than creating a String.
+     *
+     * @return the number of characters appended
+     */
+    public int readUTF(StringBuilder destination) throws JMSException
+    {
+        checkReadable();
+        inflateUTF();
+
+        try
+        {
+            return _typedBytesContentReader.readLengthPrefixedUTF(destination);
+        }
+        catch (TypedBytesFormatException e)
+        {
+            throw new MessageFormatException(e.getMessage());
+        }
+    }
+
+    private void inflateUTF() throws JMSException
+    {
+        // we check only for one byte since theoretically the string could be only a
+        // single byte when using UTF-8 encoding
+        if (_compressedData != null)
+        {
+            checkAvailable(2);
+            int windowPosition = _inflateWindowLimit - _typedBytesContentReader.remaining();
+            short length = (short) (((_inflateWindow[windowPosition] & 0xFF) << 8)
+                                    | (_inflateWindow[windowPosition + 1] & 0xFF));
+            inflate(2 + Math.max(length, 0));
+        }
+    }
+
     public int readBytes(byte[] bytes) throws JMSException
     {
         if (bytes == null)
@@ -205,6 +299,10 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
             throw new IllegalArgumentException("byte array must not be null");
         }
         checkReadable();
+        if (_compressedData != null)
+        {
+            return readInflatedBytes(bytes, bytes.length);
+        }
         int count = (_typedBytesContentReader.remaining() >= bytes.length ? bytes.length : _typedBytesContentReader.remaining());
         if (count == 0)
         {
@@ -217,6 +315,33 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
         }
     }
 
+    /**
+     * Reads bytes as {@link #readBytes(byte[])}, into the remaining space of the given buffer.
+     *
+     * @return the number of bytes read, or -1 if the end of the body has been reached
+     */
+    public int readBytesInto(ByteBuffer destination) throws JMSException
+    {
+        if (destination == null)
+        {
+            throw new IllegalArgumentException("byte buffer must not be null");
+        }
+        checkReadable();
+        int count = 0;
+        while (destination.hasRemaining())
+        {
+            inflate(1);
+            int available = Math.min(_typedBytesContentReader.remaining(), destination.remaining());
+            if (available == 0)
+            {
+                break;
+            }
+            _typedBytesContentReader.readRawBytes(destination, available);
+            count += available;
+        }
+        return count == 0 ? -1 : count;
+    }
+
     public int readBytes(byte[] bytes, int maxLength) throws JMSException
     {
         if (bytes == null)
@@ -228,6 +353,10 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
             throw new IllegalArgumentException("maxLength must be <= bytes.length");
         }
         checkReadable();
+        if (_compressedData != null)
+        {
+            return readInflatedBytes(bytes, maxLength);
+        }
         int count = (_typedBytesContentReader.remaining() >= maxLength ? maxLength : _typedBytesContentReader.remaining());
         if (count == 0)
         {
@@ -366,4 +495,111 @@ public class JMSBytesMessage extends AbstractBytesTypedMessage implements BytesM
             throw new MessageFormatException("Only primitives plus byte arrays and String are valid types");
         }
     }
+
+    private int readInflatedBytes(final byte[] bytes, final int maxLength) throws JMSException
+    {
+        int count = 0;
+        while (count < maxLength)
+        {
+            inflate(1);
+            int available = Math.min(_typedBytesContentReader.remaining(), maxLength - count);
+            if (available == 0)
+            {
+                break;
+            }
+            _typedBytesContentReader.readRawBytes(bytes, count, available);
+            count += available;
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    /**
+     * Ensures that, if the body is still compressed, the current window holds at least the given number of
+     * bytes, or all remaining bytes if the body is shorter.
+     */
+    private void inflate(final int length) throws JMSException
+    {
+        if (_compressedData == null || _typedBytesContentReader.remaining() >= length)
+        {
+            return;
+        }
+
+        try
+        {
+            if (_inflaterStream == null)
+            {
+                _inflaterStream = GZIPUtils.uncompressingStream(_compressedData);
+            }
+
+            int remaining = _typedBytesContentReader.remaining();
+            if (_inflateWindow == null || _inflateWindow.length < length)
+            {
+                byte[] window = new byte[Math.max(INFLATE_WINDOW_SIZE, length)];
+                if (remaining != 0)
+                {
+                    System.arraycopy(_inflateWindow, _inflateWindowLimit - remaining, window, 0, remaining);
+                }
+                _inflateWindow = window;
+            }
+            else if (remaining != 0)
+            {
+                System.arraycopy(_inflateWindow, _inflateWindowLimit - remaining, _inflateWindow, 0, remaining);
+            }
+
+            int limit = remaining;
+            int read;
+            while (limit < _inflateWindow.length
+                   && (read = _inflaterStream.read(_inflateWindow, limit, _inflateWindow.length - limit)) != -1)
+            {
+                limit += read;
+            }
+            _inflateWindowLimit = limit;
+            _typedBytesContentReader = new TypedBytesContentReader(ByteBuffer.wrap(_inflateWindow, 0, limit));
+        }
+        catch (IOException e)
+        {
+            throw createInflateException(e);
+        }
+    }
+
+    private long countInflatedBytes() throws JMSException
+    {
+        try (InputStream inflaterStream = GZIPUtils.uncompressingStream(_compressedData))
+        {
+            long count = 0L;
+            byte[] buf = new byte[4096];
+            int read;
+            while ((read = inflaterStream.read(buf)) != -1)
+            {
+                count += read;
+            }
+            return count;
+        }
+        catch (IOException e)
+        {
+            throw createInflateException(e);
+        }
+    }
+
+    private void closeInflaterStream()
+    {
+        if (_inflaterStream != null)
+        {
+            try
+            {
+                _inflaterStream.close();
+            }
+            catch (IOException e)
+            {
+                // ignore - the stream only wraps an in-memory buffer
+            }
+            _inflaterStream = null;
+        }
+    }
+
+    private JMSException createInflateException(final IOException e)
+    {
+        return JMSExceptionHelper.chainJMSException(new MessageFormatException(
+                "Unable to uncompress gzip encoded message body: " + e.getMessage()), e);
+    }
 }
@@ -32,6 +32,19 @@ public class JMSBytesMessageFactory extends AbstractJMSMessageFactory
         return new JMSBytesMessage(delegate, data);
     }
 
+    @Override
+    protected boolean isLazyDecompressionSupported()
+    {
+        return true;
+    }
+
+    @Override
+    protected AbstractJMSMessage createMessageWithCompressedBody(final AbstractAMQMessageDelegate delegate,
+                                                                 final ByteBuffer compressedData) throws QpidException
+    {
+        return new JMSBytesMessage(delegate, compressedData, true);
+    }
+
     // 0_10 specific
 
 }
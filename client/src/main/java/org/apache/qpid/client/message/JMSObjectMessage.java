@@ -23,22 +23,19 @@ package org.apache.qpid.client.message;
 import org.apache.qpid.QpidException;
 import org.apache.qpid.client.util.ClassLoadingAwareObjectInputStream;
 import org.apache.qpid.client.util.JMSExceptionHelper;
-import org.apache.qpid.util.ByteBufferInputStream;
 
 import javax.jms.JMSException;
 import javax.jms.MessageFormatException;
 import javax.jms.ObjectMessage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 
 public class JMSObjectMessage extends AbstractJMSMessage implements ObjectMessage
 {
     public static final String MIME_TYPE = "application/java-object-stream";
-    private static final int DEFAULT_OUTPUT_BUFFER_SIZE = 256;
     private final ClassLoadingAwareObjectInputStream.TrustedClassFilter _trustedClassFilter;
+    private final ObjectMessageSerializer _serializer;
 
     private Serializable _readData;
     private ByteBuffer _data;
@@ -53,19 +50,36 @@ public class JMSObjectMessage extends AbstractJMSMessage implements ObjectMessag
      * @param delegateFactory
      */
     public JMSObjectMessage(final ClassLoadingAwareObjectInputStream.TrustedClassFilter trustedClassFilter, AMQMessageDelegateFactory delegateFactory)
+    {
+        this(trustedClassFilter, ObjectMessageSerializers.getDefault(), delegateFactory);
+    }
+
+    /**
+     * Creates empty, writable message for use by producers, whose object is serialized by the given serializer
+     */
+    public JMSObjectMessage(final ClassLoadingAwareObjectInputStream.TrustedClassFilter trustedClassFilter,
+                            final ObjectMessageSerializer serializer,
+                            AMQMessageDelegateFactory delegateFactory)
     {
         super(delegateFactory, false);
         _trustedClassFilter = trustedClassFilter;
+        _serializer = serializer;
+        setSerializerContentType();
     }
 
     /**
      * Creates read only message for delivery to consumers
      */
 
-      JMSObjectMessage(final ClassLoadingAwareObjectInputStream.TrustedClassFilter trustedClassFilter, AMQMessageDelegate delegate, final ByteBuffer data) throws QpidException
+      JMSObjectMessage(final ClassLoadingAwareObjectInputStream.TrustedClassFilter trustedClassFilter,
+                       final ObjectMessageSerializer serializer,
+                       AMQMessageDelegate delegate,
+                       final ByteBuffer data) throws QpidException
       {
           super(delegate, data!=null);
           _trustedClassFilter = trustedClassFilter;
+          _serializer = serializer;
+          setSerializerContentType();
 
           try
           {
@@ -96,7 +110,16 @@ public class JMSObjectMessage extends AbstractJMSMessage implements ObjectMessag
 
     public String getMimeType()
     {
-        return MIME_TYPE;
+        // called by the superclass constructor before the serializer is set
+        return _serializer == null ? MIME_TYPE : _serializer.getContentType();
+    }
+
+    private void setSerializerContentType()
+    {
+        if (!MIME_TYPE.equals(_serializer.getContentType()))
+        {
+            setContentType(_serializer.getContentType());
+        }
     }
 
     @Override
@@ -116,11 +139,7 @@ public class JMSObjectMessage extends AbstractJMSMessage implements ObjectMessag
         {
             try
             {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream(DEFAULT_OUTPUT_BUFFER_SIZE);
-                ObjectOutputStream oos = new ObjectOutputStream(baos);
-                oos.writeObject(_readData);
-                oos.flush();
-                return ByteBuffer.wrap(baos.toByteArray());
+                return _serializer.serialize(_readData);
             }
             catch (IOException e)
             {
@@ -140,11 +159,7 @@ public class JMSObjectMessage extends AbstractJMSMessage implements ObjectMessag
 
         try
         {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream(DEFAULT_OUTPUT_BUFFER_SIZE);
-            ObjectOutputStream oos = new ObjectOutputStream(baos);
-            oos.writeObject(serializable);
-            oos.flush();
-            _data = ByteBuffer.wrap(baos.toByteArray());
+            _data = _serializer.serialize(serializable);
         }
         catch (IOException e)
         {
@@ -196,11 +211,7 @@ public class JMSObjectMessage extends AbstractJMSMessage implements ObjectMessag
         Serializable result = null;
         if (data != null && data.hasRemaining())
         {
-            try (ClassLoadingAwareObjectInputStream in = new ClassLoadingAwareObjectInputStream(new ByteBufferInputStream(data),
-                                                                                                _trustedClassFilter))
-            {
-                result = (Serializable) in.readObject();
-            }
+            result = _serializer.deserialize(data, _trustedClassFilter);
         }
         return result;
     }
@@ -28,16 +28,24 @@ import java.nio.ByteBuffer;
 public class JMSObjectMessageFactory extends AbstractJMSMessageFactory
 {
     private final ClassLoadingAwareObjectInputStream.TrustedClassFilter _trustedClassFilter;
+    private final ObjectMessageSerializer _serializer;
 
     public JMSObjectMessageFactory(final ClassLoadingAwareObjectInputStream.TrustedClassFilter trustedClassFilter)
+    {
+        this(trustedClassFilter, ObjectMessageSerializers.getDefault());
+    }
+
+    public JMSObjectMessageFactory(final ClassLoadingAwareObjectInputStream.TrustedClassFilter trustedClassFilter,
+                                   final ObjectMessageSerializer serializer)
     {
         _trustedClassFilter = trustedClassFilter;
+        _serializer = serializer;
     }
 
     protected AbstractJMSMessage createMessage(AbstractAMQMessageDelegate delegate, ByteBuffer data) throws
                                                                                                      QpidException
     {
-        return new JMSObjectMessage(_trustedClassFilter, delegate, data);
+        return new JMSObjectMessage(_trustedClassFilter, _serializer, delegate, data);
     }
 
 }
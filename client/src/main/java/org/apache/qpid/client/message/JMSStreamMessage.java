@@ -22,6 +22,7 @@ package org.apache.qpid.client.message;
 
 import java.io.EOFException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import javax.jms.JMSException;
 import javax.jms.MessageEOFException;
 import javax.jms.MessageFormatException;
@@ -257,6 +258,53 @@ public class JMSStreamMessage extends AbstractBytesTypedMessage implements Strea
         }
     }
 
+    /**
+     * Reads a value as {@link #readString()}, appending it to the given builder rather than creating a String, so that
+     * reading a string value does not allocate.
+     *
+     * @return the number of characters appended, or -1 if the value is a null string
+     */
+    public int readString(StringBuilder destination) throws JMSException
+    {
+        checkReadable();
+        try
+        {
+            return _typedBytesContentReader.readString(destination);
+        }
+        catch (EOFException e)
+        {
+            throw new MessageEOFException(e.getMessage());
+        }
+        catch (TypedBytesFormatException e)
+        {
+            throw new MessageFormatException(e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a value as {@link #readString()}, putting it into the given buffer rather than creating a String, so that
+     * reading a string value does not allocate.
+     *
+     * @return the number of characters put, or -1 if the value is a null string
+     * @throws java.nio.BufferOverflowException if the value does not fit in the buffer, in which case it is not read
+     */
+    public int readString(CharBuffer destination) throws JMSException
+    {
+        checkReadable();
+        try
+        {
+            return _typedBytesContentReader.readString(destination);
+        }
+        catch (EOFException e)
+        {
+            throw new MessageEOFException(e.getMessage());
+        }
+        catch (TypedBytesFormatException e)
+        {
+            throw new MessageFormatException(e.getMessage());
+        }
+    }
+
     public int readBytes(byte[] bytes) throws JMSException
     {
         if(bytes == null)
@@ -279,6 +327,33 @@ public class JMSStreamMessage extends AbstractBytesTypedMessage implements Strea
         }
     }
 
+    /**
+     * Reads a byte array value as {@link #readBytes(byte[])}, into the remaining space of the given buffer.
+     *
+     * @return the number of bytes read, or -1 if the value is null or has been read completely
+     */
+    public int readBytesInto(ByteBuffer destination) throws JMSException
+    {
+        if(destination == null)
+        {
+            throw new IllegalArgumentException("Must provide non-null buffer to read into");
+        }
+
+        checkReadable();
+        try
+        {
+            return _typedBytesContentReader.readBytesInto(destination);
+        }
+        catch (EOFException e)
+        {
+            throw new MessageEOFException(e.getMessage());
+        }
+        catch (TypedBytesFormatException e)
+        {
+            throw new MessageFormatException(e.getMessage());
+        }
+    }
+
 
     public Object readObject() throws JMSException
     {
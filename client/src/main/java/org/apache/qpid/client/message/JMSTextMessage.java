@@ -32,6 +32,8 @@ import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 
 public class JMSTextMessage extends AbstractJMSMessage implements javax.jms.TextMessage
 {
@@ -44,10 +46,33 @@ public class JMSTextMessage extends AbstractJMSMessage implements javax.jms.Text
      * This constant represents the name of a property that is set when the message payload is null.
      */
     private static final String PAYLOAD_NULL_PROPERTY = CustomJMSXProperty.JMS_AMQP_NULL.toString();
-    private static final Charset DEFAULT_CHARSET = Charset.forName("UTF-8");
+    private static final Charset DEFAULT_CHARSET = StandardCharsets.UTF_8;
 
-    private CharsetDecoder _decoder = DEFAULT_CHARSET.newDecoder();
-    private CharsetEncoder _encoder = DEFAULT_CHARSET.newEncoder();
+    /**
+     * Strict coders, used only for text the fast paths cannot handle, shared by the messages of each thread rather
+     * than created for every message.
+     */
+    private static final ThreadLocal<CharsetDecoder> DECODER = new ThreadLocal<CharsetDecoder>()
+    {
+        @Override
+        protected CharsetDecoder initialValue()
+        {
+            return DEFAULT_CHARSET.newDecoder()
+                                  .onMalformedInput(CodingErrorAction.REPORT)
+                                  .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+    };
+
+    private static final ThreadLocal<CharsetEncoder> ENCODER = new ThreadLocal<CharsetEncoder>()
+    {
+        @Override
+        protected CharsetEncoder initialValue()
+        {
+            return DEFAULT_CHARSET.newEncoder()
+                                  .onMalformedInput(CodingErrorAction.REPORT)
+                                  .onUnmappableCharacter(CodingErrorAction.REPORT);
+        }
+    };
 
     private static final ByteBuffer EMPTY_BYTE_BUFFER = ByteBuffer.allocate(0);
 
@@ -69,7 +94,7 @@ public class JMSTextMessage extends AbstractJMSMessage implements javax.jms.Text
             }
             else
             {
-                _decodedValue = _decoder.decode(data).toString();
+                _decodedValue = decode(data);
             }
         }
         catch (CharacterCodingException e)
@@ -96,7 +121,6 @@ public class JMSTextMessage extends AbstractJMSMessage implements javax.jms.Text
     @Override
     public ByteBuffer getData() throws JMSException
     {
-        _encoder.reset();
         try
         {
             if(_exception != null)
@@ -110,7 +134,7 @@ public class JMSTextMessage extends AbstractJMSMessage implements javax.jms.Text
             }
             else
             {
-                return _encoder.encode(CharBuffer.wrap(_decodedValue));
+                return encode(_decodedValue);
             }
         }
         catch (CharacterCodingException e)
@@ -120,6 +144,85 @@ public class JMSTextMessage extends AbstractJMSMessage implements javax.jms.Text
         }
     }
 
+    /**
+     * Decodes UTF-8 text, building the string straight from the array backing the data where there is one. Text which
+     * is all ASCII is copied as Latin-1, which needs no decoding. Otherwise malformed input can only have been
+     * replaced by U+FFFD, so only text containing that character is decoded again strictly to find out whether it is
+     * malformed.
+     */
+    static String decode(final ByteBuffer data) throws CharacterCodingException
+    {
+        if (data.hasArray())
+        {
+            final byte[] array = data.array();
+            final int offset = data.arrayOffset() + data.position();
+            final int length = data.remaining();
+
+            final String text;
+            if (isAscii(array, offset, length))
+            {
+                text = new String(array, offset, length, StandardCharsets.ISO_8859_1);
+            }
+            else
+            {
+                text = new String(array, offset, length, DEFAULT_CHARSET);
+                if (text.indexOf('\uFFFD') != -1)
+                {
+                    return strictDecode(data);
+                }
+            }
+            data.position(data.limit());
+            return text;
+        }
+        else
+        {
+            return strictDecode(data);
+        }
+    }
+
+    /**
+     * Encodes text as UTF-8. Text without surrogates cannot be malformed, so it is encoded without a
+     * {@link CharsetEncoder}, and text which is all ASCII is copied byte for byte.
+     */
+    static ByteBuffer encode(final String text) throws CharacterCodingException
+    {
+        boolean ascii = true;
+        for (int i = 0; i < text.length(); i++)
+        {
+            final char c = text.charAt(i);
+            if (Character.isSurrogate(c))
+            {
+                final CharsetEncoder encoder = ENCODER.get();
+                encoder.reset();
+                return encoder.encode(CharBuffer.wrap(text));
+            }
+            else if (c >= 0x80)
+            {
+                ascii = false;
+            }
+        }
+        return ByteBuffer.wrap(text.getBytes(ascii ? StandardCharsets.ISO_8859_1 : DEFAULT_CHARSET));
+    }
+
+    private static boolean isAscii(final byte[] array, final int offset, final int length)
+    {
+        for (int i = offset, end = offset + length; i < end; i++)
+        {
+            if (array[i] < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String strictDecode(final ByteBuffer data) throws CharacterCodingException
+    {
+        final CharsetDecoder decoder = DECODER.get();
+        decoder.reset();
+        return decoder.decode(data).toString();
+    }
+
     @Override
     public void clearBody() throws JMSException
     {
@@ -0,0 +1,132 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.message;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.qpid.client.util.ClassLoadingAwareObjectInputStream;
+import org.apache.qpid.util.ByteBufferInputStream;
+
+/**
+ * Serializes ObjectMessage bodies using Java serialization.
+ * <p>
+ * Objects are written into an output buffer kept by each thread, and copied from it into a body of exactly their
+ * size, rather than into a buffer grown afresh for every message.
+ */
+public class JavaObjectMessageSerializer implements ObjectMessageSerializer
+{
+    private static final int DEFAULT_OUTPUT_BUFFER_SIZE = 256;
+
+    /** Output buffers grown beyond this size are not kept once the object has been written. */
+    private static final int MAX_RETAINED_OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<OutputBuffer> OUTPUT_BUFFER = new ThreadLocal<OutputBuffer>()
+    {
+        @Override
+        protected OutputBuffer initialValue()
+        {
+            return new OutputBuffer();
+        }
+    };
+
+    @Override
+    public String getContentType()
+    {
+        return JMSObjectMessage.MIME_TYPE;
+    }
+
+    @Override
+    public ByteBuffer serialize(final Serializable object) throws IOException
+    {
+        OutputBuffer buffer = OUTPUT_BUFFER.get();
+        if (buffer.isInUse())
+        {
+            // an object serializing an object message whilst it is itself serialized
+            buffer = new OutputBuffer();
+        }
+
+        buffer.acquire();
+        try
+        {
+            ObjectOutputStream oos = new ObjectOutputStream(buffer);
+            oos.writeObject(object);
+            oos.flush();
+            return buffer.toByteBuffer();
+        }
+        finally
+        {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public Serializable deserialize(final ByteBuffer data,
+                                    final ClassLoadingAwareObjectInputStream.TrustedClassFilter trustedClassFilter)
+            throws IOException, ClassNotFoundException
+    {
+        try (ClassLoadingAwareObjectInputStream in = new ClassLoadingAwareObjectInputStream(new ByteBufferInputStream(data),
+                                                                                            trustedClassFilter))
+        {
+            return (Serializable) in.readObject();
+        }
+    }
+
+    private static final class OutputBuffer extends ByteArrayOutputStream
+    {
+        private boolean _inUse;
+
+        private OutputBuffer()
+        {
+            super(DEFAULT_OUTPUT_BUFFER_SIZE);
+        }
+
+        private boolean isInUse()
+        {
+            return _inUse;
+        }
+
+        private void acquire()
+        {
+            _inUse = true;
+            reset();
+        }
+
+        private void release()
+        {
+            _inUse = false;
+            reset();
+            if (buf.length > MAX_RETAINED_OUTPUT_BUFFER_SIZE)
+            {
+                buf = new byte[DEFAULT_OUTPUT_BUFFER_SIZE];
+            }
+        }
+
+        private ByteBuffer toByteBuffer()
+        {
+            return ByteBuffer.wrap(Arrays.copyOf(buf, count));
+        }
+    }
+}
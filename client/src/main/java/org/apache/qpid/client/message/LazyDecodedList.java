@@ -0,0 +1,214 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+package org.apache.qpid.client.message;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.transport.codec.BBDecoder;
+
+/**
+ * A list held in its AMQP 0-10 encoding, decoding only the values which are read.
+ * <p>
+ * The first access indexes the encoded list, recording where each value starts. A value is decoded when it is first
+ * read and then kept. The whole list is decoded when it is modified, after which it behaves as an {@link ArrayList}.
+ * Until then, and unless a value which can be modified in place has been read, {@link #getEncoded()} returns the
+ * encoding the list was created from, so that it need not be encoded again.
+ * <p>
+ * Not thread safe, as the messages holding it are not.
+ */
+class LazyDecodedList extends AbstractList<Object>
+{
+    private static final Object NOT_DECODED = new Object();
+
+    private final ByteBuffer _encoded;
+    private final BBDecoder _decoder = new BBDecoder();
+
+    /** The offset of the type code of each value. */
+    private int[] _offsets;
+    private Object[] _values;
+    private boolean _mutableValueRead;
+
+    /** The whole list, once modified. */
+    private List<Object> _list;
+
+    /**
+     * @param encoded a list encoded with {@link org.apache.qpid.transport.codec.Encoder#writeList(List)}, from its
+     *                position, which must hold at least one value
+     */
+    LazyDecodedList(final ByteBuffer encoded)
+    {
+        final ByteBuffer buffer = encoded.slice();
+        buffer.limit(4 + buffer.getInt(0));
+        _encoded = buffer.slice();
+        _decoder.init(_encoded);
+    }
+
+    /**
+     * @return true if the buffer holds a well formed list with at least one value, as {@link LazyDecodedList} requires
+     */
+    static boolean isLazilyDecodable(final ByteBuffer encoded)
+    {
+        final int position = encoded.position();
+        if (encoded.remaining() < 8
+            || encoded.getInt(position) < 4
+            || encoded.getInt(position) > encoded.remaining() - 4
+            || encoded.getInt(position + 4) <= 0)
+        {
+            return false;
+        }
+
+        // the values are walked without decoding their values, so that a malformed list is decoded eagerly, and fails,
+        // when the message is received rather than when the application reads it
+        final ByteBuffer buffer = encoded.slice();
+        buffer.limit(4 + buffer.getInt(0));
+        buffer.position(8);
+        final BBDecoder decoder = new BBDecoder();
+        decoder.init(buffer);
+        try
+        {
+            for (int i = buffer.getInt(4); i > 0; i--)
+            {
+                decoder.skipTypedValue();
+            }
+            return true;
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return the encoding the list was created from, or null if the list may have been modified since
+     */
+    ByteBuffer getEncoded()
+    {
+        if (_list != null || _mutableValueRead)
+        {
+            return null;
+        }
+        final ByteBuffer encoded = _encoded.duplicate();
+        encoded.rewind();
+        return encoded;
+    }
+
+    @Override
+    public Object get(final int index)
+    {
+        if (_list != null)
+        {
+            return _list.get(index);
+        }
+
+        final int[] offsets = getOffsets();
+        if (index < 0 || index >= offsets.length)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + offsets.length);
+        }
+        Object value = _values[index];
+        if (value == NOT_DECODED)
+        {
+            _encoded.position(offsets[index]);
+            value = _decoder.readTypedValue();
+            if (value instanceof List || value instanceof Map || value instanceof byte[])
+            {
+                _mutableValueRead = true;
+            }
+            _values[index] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public int size()
+    {
+        return _list == null ? getOffsets().length : _list.size();
+    }
+
+    @Override
+    public Object set(final int index, final Object element)
+    {
+        return getList().set(index, element);
+    }
+
+    @Override
+    public void add(final int index, final Object element)
+    {
+        getList().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public Object remove(final int index)
+    {
+        modCount++;
+        return getList().remove(index);
+    }
+
+    @Override
+    public void clear()
+    {
+        _list = new ArrayList<>();
+        _offsets = null;
+        _values = null;
+        modCount++;
+    }
+
+    private int[] getOffsets()
+    {
+        if (_offsets == null)
+        {
+            _encoded.position(4);
+            final int[] offsets = new int[(int) _decoder.readUint32()];
+            for (int i = 0; i < offsets.length; i++)
+            {
+                offsets[i] = _encoded.position();
+                _decoder.skipTypedValue();
+            }
+            _values = new Object[offsets.length];
+            Arrays.fill(_values, NOT_DECODED);
+            _offsets = offsets;
+        }
+        return _offsets;
+    }
+
+    private List<Object> getList()
+    {
+        if (_list == null)
+        {
+            final List<Object> list = new ArrayList<>(size());
+            for (int i = 0; i < size(); i++)
+            {
+                list.add(get(i));
+            }
+            _list = list;
+            _offsets = null;
+            _values = null;
+        }
+        return _list;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+package org.apache.qpid.client.message;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.qpid.transport.codec.BBDecoder;
+
+/**
+ * A map held in its AMQP 0-10 encoding, decoding only the values which are read.
+ * <p>
+ * The first access indexes the encoded map, decoding its keys and recording where each value starts. A value is
+ * decoded when it is first read and then kept. The whole map is decoded when it is iterated or modified, after which
+ * it behaves as a {@link LinkedHashMap}. Until then, and unless a value which can be modified in place has been read,
+ * {@link #getEncoded()} returns the encoding the map was created from, so that it need not be encoded again.
+ * <p>
+ * Not thread safe, as the messages holding it are not.
+ */
+class LazyDecodedMap extends AbstractMap<String, Object>
+{
+    private final ByteBuffer _encoded;
+    private final BBDecoder _decoder = new BBDecoder();
+
+    /** The offset of the type code of each value, in order of the keys. */
+    private Map<String, Integer> _offsets;
+    private Map<String, Object> _values;
+    private boolean _mutableValueRead;
+
+    /** The whole map, once decoded. */
+    private Map<String, Object> _map;
+
+    /**
+     * @param encoded a map encoded with {@link org.apache.qpid.transport.codec.Encoder#writeMap(Map)}, from its
+     *                position, which must hold at least one entry
+     */
+    LazyDecodedMap(final ByteBuffer encoded)
+    {
+        final ByteBuffer buffer = encoded.slice();
+        buffer.limit(4 + buffer.getInt(0));
+        _encoded = buffer.slice();
+        _decoder.init(_encoded);
+    }
+
+    /**
+     * @return true if the buffer holds a well formed map with at least one entry, as {@link LazyDecodedMap} requires
+     */
+    static boolean isLazilyDecodable(final ByteBuffer encoded)
+    {
+        final int position = encoded.position();
+        if (encoded.remaining() < 8
+            || encoded.getInt(position) < 4
+            || encoded.getInt(position) > encoded.remaining() - 4
+            || encoded.getInt(position + 4) <= 0)
+        {
+            return false;
+        }
+
+        // the entries are walked without decoding their values, so that a malformed map is decoded eagerly, and fails,
+        // when the message is received rather than when the application reads it
+        final ByteBuffer buffer = encoded.slice();
+        buffer.limit(4 + buffer.getInt(0));
+        buffer.position(8);
+        final BBDecoder decoder = new BBDecoder();
+        decoder.init(buffer);
+        try
+        {
+            for (int i = buffer.getInt(4); i > 0; i--)
+            {
+                decoder.readStr8();
+                decoder.skipTypedValue();
+            }
+            return true;
+        }
+        catch (BufferUnderflowException | IllegalArgumentException e)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @return the encoding the map was created from, or null if the map may have been modified since
+     */
+    ByteBuffer getEncoded()
+    {
+        if (_map != null || _mutableValueRead)
+        {
+            return null;
+        }
+        final ByteBuffer encoded = _encoded.duplicate();
+        encoded.rewind();
+        return encoded;
+    }
+
+    @Override
+    public Object get(final Object key)
+    {
+        if (_map != null)
+        {
+            return _map.get(key);
+        }
+
+        Object value = _values == null ? null : _values.get(key);
+        if (value == null)
+        {
+            final Integer offset = getOffsets().get(key);
+            if (offset != null)
+            {
+                _encoded.position(offset);
+                value = _decoder.readTypedValue();
+                if (value instanceof List || value instanceof Map || value instanceof byte[])
+                {
+                    _mutableValueRead = true;
+                }
+                if (_values == null)
+                {
+                    _values = new HashMap<>();
+                }
+                _values.put((String) key, value);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        return _map == null ? getOffsets().containsKey(key) : _map.containsKey(key);
+    }
+
+    @Override
+    public int size()
+    {
+        return _map == null ? getOffsets().size() : _map.size();
+    }
+
+    @Override
+    public Set<String> keySet()
+    {
+        return _map == null ? Collections.unmodifiableSet(getOffsets().keySet()) : _map.keySet();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet()
+    {
+        return getMap().entrySet();
+    }
+
+    @Override
+    public Object put(final String key, final Object value)
+    {
+        return getMap().put(key, value);
+    }
+
+    @Override
+    public Object remove(final Object key)
+    {
+        return getMap().remove(key);
+    }
+
+    @Override
+    public void clear()
+    {
+        _map = new LinkedHashMap<>();
+        _offsets = null;
+        _values = null;
+    }
+
+    private Map<String, Integer> getOffsets()
+    {
+        if (_offsets == null)
+        {
+            _encoded.position(4);
+            final long count = _decoder.readUint32();
+            final Map<String, Integer> offsets = new LinkedHashMap<>();
+            for (long i = 0; i < count; i++)
+            {
+                final String key = _decoder.readStr8();
+                offsets.put(key, _encoded.position());
+                _decoder.skipTypedValue();
+            }
+            _offsets = offsets;
+        }
+        return _offsets;
+    }
+
+    private Map<String, Object> getMap()
+    {
+        if (_map == null)
+        {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            for (String key : getOffsets().keySet())
+            {
+                map.put(key, get(key));
+            }
+            _map = map;
+            _offsets = null;
+            _values = null;
+        }
+        return _map;
+    }
+}
@@ -20,14 +20,11 @@
  */
 package org.apache.qpid.client.message;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
-import java.security.InvalidAlgorithmParameterException;
-import java.security.InvalidKeyException;
 import java.security.KeyStore;
-import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.SecureRandom;
 import java.security.cert.Certificate;
@@ -35,21 +32,29 @@ import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.security.spec.AlgorithmParameterSpec;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
-import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.jms.JMSException;
 import javax.security.auth.x500.X500Principal;
 
+import org.apache.qpid.client.AMQConnection;
 import org.apache.qpid.client.AMQSession;
+import org.apache.qpid.configuration.ClientProperties;
 import org.apache.qpid.transport.ConnectionSettings;
 
 public class MessageEncryptionHelper
@@ -64,23 +69,54 @@ public class MessageEncryptionHelper
     public static final int AES_KEY_SIZE_BYTES = AES_KEY_SIZE_BITS / 8;
     public static final String AES_ALGORITHM = "AES";
     public static final String DEFAULT_MESSAGE_ENCRYPTION_CIPHER_NAME = "AES/CBC/PKCS5Padding";
+    public static final String AES_GCM_MESSAGE_ENCRYPTION_CIPHER_NAME = "AES/GCM/NoPadding";
     public static final int AES_INITIALIZATION_VECTOR_LENGTH = 16;
+    public static final int AES_GCM_INITIALIZATION_VECTOR_LENGTH = 12;
+    static final int AES_GCM_TAG_LENGTH_BITS = 128;
     private final AMQSession<?, ?> _session;
 
     private static final int KEY_TRANSPORT_RECIPIENT_INFO_TYPE = 1;
     public static final String DEFAULT_KEY_ENCRYPTION_ALGORITHM = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
 
 
+    private final int _encryptionCacheSize = Integer.getInteger(ClientProperties.ENCRYPTION_CACHE_SIZE,
+                                                                ClientProperties.DEFAULT_ENCRYPTION_CACHE_SIZE);
+
     private final Map<String, X509Certificate> _signingCertificateCache =
             Collections.synchronizedMap(new LinkedHashMap<String, X509Certificate>(16,0.75f,true)
                                         {
                                             @Override
                                             protected boolean removeEldestEntry(final Map.Entry<String, X509Certificate> eldest)
                                             {
-                                                return size() > 128;
+                                                return size() > _encryptionCacheSize;
+                                            }
+                                        });
+
+    private final Map<String, ContentEncryptionKey> _contentEncryptionKeyCache =
+            Collections.synchronizedMap(new LinkedHashMap<String, ContentEncryptionKey>(16,0.75f,true)
+                                        {
+                                            @Override
+                                            protected boolean removeEldestEntry(final Map.Entry<String, ContentEncryptionKey> eldest)
+                                            {
+                                                return size() > _encryptionCacheSize;
+                                            }
+                                        });
+
+    private final int _decryptedKeyCacheSize = Integer.getInteger(ClientProperties.DECRYPTED_KEY_CACHE_SIZE,
+                                                                  ClientProperties.DEFAULT_DECRYPTED_KEY_CACHE_SIZE);
+
+    private final Map<EncryptedKey, byte[]> _decryptedKeyCache =
+            Collections.synchronizedMap(new LinkedHashMap<EncryptedKey, byte[]>(16,0.75f,true)
+                                        {
+                                            @Override
+                                            protected boolean removeEldestEntry(final Map.Entry<EncryptedKey, byte[]> eldest)
+                                            {
+                                                return size() > _decryptedKeyCacheSize;
                                             }
                                         });
 
+    private final ConcurrentMap<String, Queue<Cipher>> _cipherPool = new ConcurrentHashMap<>();
+
     private String _keyEncryptionAlgorithm = DEFAULT_KEY_ENCRYPTION_ALGORITHM;
     private String _messageEncryptionCipherName = DEFAULT_MESSAGE_ENCRYPTION_CIPHER_NAME;
 
@@ -140,6 +176,48 @@ public class MessageEncryptionHelper
         List<Object> asList();
     }
 
+    /**
+     * Returns the content encryption key to use for a message sent to the given recipients, along with the
+     * key encrypted for each recipient.  If the connection allows key reuse (see
+     * {@link AMQConnection#getEncryptionKeyReuseCount()}) the same key is returned for the same set of recipients
+     * until either the reuse count or the reuse interval is exhausted, otherwise a new key is created for each call.
+     */
+    public ContentEncryptionKey getContentEncryptionKey(List<String> recipients)
+            throws GeneralSecurityException, IOException
+    {
+        final AMQConnection connection = _session.getAMQConnection();
+        final int reuseCount = connection == null ? 0 : connection.getEncryptionKeyReuseCount();
+        if (reuseCount <= 1)
+        {
+            SecretKeySpec secretKey = createSecretKey();
+            return new ContentEncryptionKey(secretKey, getKeyTransportRecipientInfo(recipients, secretKey), 0, 0L);
+        }
+
+        final String keyEncryptionAlgorithm = getKeyEncryptionAlgorithm();
+        final StringBuilder cacheKeyBuilder = new StringBuilder(keyEncryptionAlgorithm);
+        for (String recipient : recipients)
+        {
+            cacheKeyBuilder.append(';').append(recipient.trim());
+        }
+        final String cacheKey = cacheKeyBuilder.toString();
+        final long currentTime = System.currentTimeMillis();
+
+        ContentEncryptionKey contentEncryptionKey = _contentEncryptionKeyCache.get(cacheKey);
+        if (contentEncryptionKey == null || !contentEncryptionKey.use(currentTime))
+        {
+            final long reuseInterval = connection.getEncryptionKeyReuseInterval();
+            SecretKeySpec secretKey = createSecretKey();
+            contentEncryptionKey = new ContentEncryptionKey(secretKey,
+                                                            getKeyTransportRecipientInfo(recipients, secretKey),
+                                                            reuseCount - 1,
+                                                            reuseInterval > 0L
+                                                                    ? currentTime + reuseInterval
+                                                                    : Long.MAX_VALUE);
+            _contentEncryptionKeyCache.put(cacheKey, contentEncryptionKey);
+        }
+        return contentEncryptionKey;
+    }
+
     public List<KeyTransportRecipientInfo> getKeyTransportRecipientInfo(List<String> recipients, SecretKeySpec secretKey)
         throws GeneralSecurityException, IOException
     {
@@ -151,9 +229,17 @@ public class MessageEncryptionHelper
             if(cert != null)
             {
 
-                Cipher cipher = Cipher.getInstance(keyEncryptionAlgorithm);
-                cipher.init(Cipher.ENCRYPT_MODE, cert.getPublicKey());
-                final byte[] encryptedKey = cipher.doFinal(secretKey.getEncoded());
+                final byte[] encryptedKey;
+                final Cipher cipher = borrowCipher(keyEncryptionAlgorithm);
+                try
+                {
+                    cipher.init(Cipher.ENCRYPT_MODE, cert.getPublicKey());
+                    encryptedKey = cipher.doFinal(secretKey.getEncoded());
+                }
+                finally
+                {
+                    returnCipher(keyEncryptionAlgorithm, cipher);
+                }
 
                 final String issuePrincipal = cert.getIssuerX500Principal().getName(X500Principal.CANONICAL);
                 final String serialNumber = cert.getSerialNumber().toString();
@@ -281,6 +367,67 @@ public class MessageEncryptionHelper
         return null;
     }
 
+    /**
+     * Decrypts a content encryption key which was encrypted for the recipient identified by the given certificate
+     * issuer and serial number.  Decrypted keys are cached by their encrypted form, so that only the first message
+     * using a given content encryption key pays the cost of the asymmetric decryption.
+     *
+     * @return the decrypted key, or null if no private key matching the issuer and serial number is available
+     */
+    public SecretKeySpec decryptContentEncryptionKey(final String keyEncryptionAlgorithm,
+                                                     final X500Principal issuer,
+                                                     final BigInteger serialNumber,
+                                                     final byte[] encryptedKey,
+                                                     final String secretKeyAlgorithm)
+            throws GeneralSecurityException, IOException
+    {
+        final EncryptedKey cacheKey = new EncryptedKey(keyEncryptionAlgorithm, encryptedKey);
+        byte[] decryptedKey = _decryptedKeyCache.get(cacheKey);
+        if (decryptedKey == null)
+        {
+            final PrivateKey privateKey = getEncryptionPrivateKey(issuer, serialNumber);
+            if (privateKey == null)
+            {
+                return null;
+            }
+
+            final Cipher cipher = borrowCipher(keyEncryptionAlgorithm);
+            try
+            {
+                cipher.init(Cipher.DECRYPT_MODE, privateKey);
+                decryptedKey = cipher.doFinal(encryptedKey);
+            }
+            finally
+            {
+                returnCipher(keyEncryptionAlgorithm, cipher);
+            }
+            _decryptedKeyCache.put(cacheKey, decryptedKey);
+        }
+        return new SecretKeySpec(decryptedKey, secretKeyAlgorithm);
+    }
+
+    private Cipher borrowCipher(final String transformation) throws GeneralSecurityException
+    {
+        final Queue<Cipher> ciphers = _cipherPool.get(transformation);
+        final Cipher cipher = ciphers == null ? null : ciphers.poll();
+        return cipher == null ? Cipher.getInstance(transformation) : cipher;
+    }
+
+    private void returnCipher(final String transformation, final Cipher cipher)
+    {
+        Queue<Cipher> ciphers = _cipherPool.get(transformation);
+        if (ciphers == null)
+        {
+            ciphers = new ConcurrentLinkedQueue<>();
+            final Queue<Cipher> existing = _cipherPool.putIfAbsent(transformation, ciphers);
+            if (existing != null)
+            {
+                ciphers = existing;
+            }
+        }
+        ciphers.offer(cipher);
+    }
+
     private SecureRandom _random;
 
     public SecretKeySpec createSecretKey()
@@ -305,36 +452,43 @@ public class MessageEncryptionHelper
 
     public byte[] getInitialisationVector()
     {
-        byte[] ivbytes = new byte[AES_INITIALIZATION_VECTOR_LENGTH];
+        byte[] ivbytes = new byte[isGCM(getMessageEncryptionCipherName())
+                                          ? AES_GCM_INITIALIZATION_VECTOR_LENGTH
+                                          : AES_INITIALIZATION_VECTOR_LENGTH];
         getRandomBytes(ivbytes);
         return ivbytes;
     }
 
+    /**
+     * Returns the parameters with which a cipher of the given name is initialised for the given initialisation vector.
+     * AES/GCM requires the authentication tag length in addition to the initialisation vector.
+     */
+    public static AlgorithmParameterSpec getAlgorithmParameterSpec(final String cipherName, final byte[] ivbytes)
+    {
+        if (ivbytes == null)
+        {
+            return null;
+        }
+        return isGCM(cipherName) ? new GCMParameterSpec(AES_GCM_TAG_LENGTH_BITS, ivbytes) : new IvParameterSpec(ivbytes);
+    }
+
+    private static boolean isGCM(final String cipherName)
+    {
+        final String[] parts = cipherName.split("/");
+        return parts.length > 1 && "GCM".equalsIgnoreCase(parts[1].trim());
+    }
+
     public byte[] readFromCipherStream(final byte[] unencryptedBytes, int offset, int length, final Cipher cipher)
             throws IOException
     {
-        final byte[] encryptedBytes;
-        try (CipherInputStream cipherInputStream = new CipherInputStream(new ByteArrayInputStream(unencryptedBytes,
-                                                                                                  offset,
-                                                                                                  length), cipher))
-        {
-            byte[] buf = new byte[512];
-            int pos = 0;
-            int read;
-            while ((read = cipherInputStream.read(buf, pos, buf.length - pos)) != -1)
-            {
-                pos += read;
-                if (pos == buf.length)
-                {
-                    byte[] tmp = buf;
-                    buf = new byte[buf.length + 512];
-                    System.arraycopy(tmp, 0, buf, 0, tmp.length);
-                }
-            }
-            encryptedBytes = new byte[pos];
-            System.arraycopy(buf, 0, encryptedBytes, 0, pos);
+        try
+        {
+            return cipher.doFinal(unencryptedBytes, offset, length);
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IOException(e);
         }
-        return encryptedBytes;
     }
 
     public byte[] readFromCipherStream(final byte[] unencryptedBytes, final Cipher cipher, final AMQSession amqSession) throws IOException
@@ -346,13 +500,23 @@ public class MessageEncryptionHelper
                           final byte[] unencryptedBytes,
                           byte[] ivbytes)
     {
+        final String messageEncryptionCipherName = getMessageEncryptionCipherName();
         try
         {
-            Cipher cipher = Cipher.getInstance(getMessageEncryptionCipherName());
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, new IvParameterSpec(ivbytes));
-            return readFromCipherStream(unencryptedBytes, cipher, _session);
+            Cipher cipher = borrowCipher(messageEncryptionCipherName);
+            try
+            {
+                cipher.init(Cipher.ENCRYPT_MODE,
+                            secretKey,
+                            getAlgorithmParameterSpec(messageEncryptionCipherName, ivbytes));
+                return cipher.doFinal(unencryptedBytes);
+            }
+            finally
+            {
+                returnCipher(messageEncryptionCipherName, cipher);
+            }
         }
-        catch (IOException | InvalidAlgorithmParameterException | InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException e)
+        catch (GeneralSecurityException e)
         {
             throw new IllegalArgumentException("Unable to encrypt secret with secret key. Cipher: "
                                                + getMessageEncryptionCipherName()
@@ -361,6 +525,85 @@ public class MessageEncryptionHelper
         }
     }
 
+    /**
+     * Encrypts the concatenation of the given header and body in a single pass into a buffer sized for the cipher
+     * output, so that no intermediate copy of the unencrypted content is made.  The positions of the input buffers
+     * are not altered.
+     *
+     * @param secretKey the content encryption key
+     * @param header the encoded message header
+     * @param body the message body, which may be null
+     * @param ivbytes the initialisation vector
+     * @return a buffer containing the encrypted content
+     */
+    public ByteBuffer encrypt(final SecretKeySpec secretKey,
+                              final ByteBuffer header,
+                              final ByteBuffer body,
+                              final byte[] ivbytes)
+    {
+        final String messageEncryptionCipherName = getMessageEncryptionCipherName();
+        try
+        {
+            final Cipher cipher = borrowCipher(messageEncryptionCipherName);
+            try
+            {
+                cipher.init(Cipher.ENCRYPT_MODE,
+                            secretKey,
+                            getAlgorithmParameterSpec(messageEncryptionCipherName, ivbytes));
+                final ByteBuffer headerInput = header.duplicate();
+                final ByteBuffer bodyInput = body == null ? ByteBuffer.allocate(0) : body.duplicate();
+                final ByteBuffer output =
+                        ByteBuffer.allocate(cipher.getOutputSize(headerInput.remaining() + bodyInput.remaining()));
+                cipher.update(headerInput, output);
+                cipher.doFinal(bodyInput, output);
+                output.flip();
+                return output;
+            }
+            finally
+            {
+                returnCipher(messageEncryptionCipherName, cipher);
+            }
+        }
+        catch (GeneralSecurityException e)
+        {
+            throw new IllegalArgumentException("Unable to encrypt secret with secret key. Cipher: "
+                                               + messageEncryptionCipherName
+                                               + " . Key of type " + secretKey.getAlgorithm()
+                                               + " size " + secretKey.getEncoded().length, e);
+        }
+    }
+
+    /**
+     * Decrypts the given data in a single pass into a buffer sized for the cipher output.  The position of the
+     * input buffer is not altered.
+     *
+     * @param cipherName the cipher with which the data was encrypted
+     * @param secretKey the content encryption key
+     * @param ivbytes the initialisation vector
+     * @param encryptedData the encrypted content
+     * @return a buffer containing the decrypted content
+     */
+    public ByteBuffer decrypt(final String cipherName,
+                              final SecretKeySpec secretKey,
+                              final byte[] ivbytes,
+                              final ByteBuffer encryptedData) throws GeneralSecurityException
+    {
+        final Cipher cipher = borrowCipher(cipherName);
+        try
+        {
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, getAlgorithmParameterSpec(cipherName, ivbytes));
+            final ByteBuffer input = encryptedData.duplicate();
+            final ByteBuffer output = ByteBuffer.allocate(cipher.getOutputSize(input.remaining()));
+            cipher.doFinal(input, output);
+            output.flip();
+            return output;
+        }
+        finally
+        {
+            returnCipher(cipherName, cipher);
+        }
+    }
+
     private static class KeyTransportRecipientInfoImpl implements KeyTransportRecipientInfo
     {
         private final String _keyEncryptionAlgorithm;
@@ -422,4 +665,78 @@ public class MessageEncryptionHelper
             return result;
         }
     }
+
+    /**
+     * A content encryption key together with the key transport recipient info carrying the key encrypted for each
+     * of the intended recipients.
+     */
+    public static final class ContentEncryptionKey
+    {
+        private final SecretKeySpec _secretKey;
+        private final List<KeyTransportRecipientInfo> _keyTransportRecipientInfo;
+        private final AtomicInteger _remainingUses;
+        private final long _expiryTime;
+
+        private ContentEncryptionKey(final SecretKeySpec secretKey,
+                                     final List<KeyTransportRecipientInfo> keyTransportRecipientInfo,
+                                     final int remainingUses,
+                                     final long expiryTime)
+        {
+            _secretKey = secretKey;
+            _keyTransportRecipientInfo = Collections.unmodifiableList(keyTransportRecipientInfo);
+            _remainingUses = new AtomicInteger(remainingUses);
+            _expiryTime = expiryTime;
+        }
+
+        public SecretKeySpec getSecretKey()
+        {
+            return _secretKey;
+        }
+
+        public List<KeyTransportRecipientInfo> getKeyTransportRecipientInfo()
+        {
+            return _keyTransportRecipientInfo;
+        }
+
+        private boolean use(final long currentTime)
+        {
+            return currentTime < _expiryTime && _remainingUses.getAndDecrement() > 0;
+        }
+    }
+
+    private static final class EncryptedKey
+    {
+        private final String _keyEncryptionAlgorithm;
+        private final byte[] _encryptedKey;
+        private final int _hashCode;
+
+        private EncryptedKey(final String keyEncryptionAlgorithm, final byte[] encryptedKey)
+        {
+            _keyEncryptionAlgorithm = keyEncryptionAlgorithm;
+            _encryptedKey = encryptedKey;
+            _hashCode = 31 * keyEncryptionAlgorithm.hashCode() + Arrays.hashCode(encryptedKey);
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass())
+            {
+                return false;
+            }
+            final EncryptedKey that = (EncryptedKey) o;
+            return _keyEncryptionAlgorithm.equals(that._keyEncryptionAlgorithm)
+                   && Arrays.equals(_encryptedKey, that._encryptedKey);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return _hashCode;
+        }
+    }
 }
@@ -37,7 +37,6 @@ import org.apache.qpid.client.AMQTopic;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.BasicContentHeaderProperties;
 import org.apache.qpid.framing.ContentHeaderBody;
-import org.apache.qpid.transport.DeliveryProperties;
 import org.apache.qpid.transport.MessageProperties;
 import org.apache.qpid.transport.MessageTransfer;
 
@@ -71,7 +70,11 @@ public class MessageFactoryRegistry
         mf.registerFactory("text/plain", new JMSTextMessageFactory());
         mf.registerFactory("text/xml", new JMSTextMessageFactory());
         mf.registerFactory(JMSBytesMessage.MIME_TYPE, new JMSBytesMessageFactory());
-        mf.registerFactory(JMSObjectMessage.MIME_TYPE, new JMSObjectMessageFactory(session.getAMQConnection()));
+        for (ObjectMessageSerializer serializer : ObjectMessageSerializers.getSerializers().values())
+        {
+            mf.registerFactory(serializer.getContentType(),
+                               new JMSObjectMessageFactory(session.getAMQConnection(), serializer));
+        }
         mf.registerFactory(JMSStreamMessage.MIME_TYPE, new JMSStreamMessageFactory());
         mf.registerFactory(AMQPEncodedMapMessage.MIME_TYPE, new AMQPEncodedMapMessageFactory());
         mf.registerFactory(AMQPEncodedListMessage.MIME_TYPE, new AMQPEncodedListMessageFactory());
@@ -138,7 +141,16 @@ public class MessageFactoryRegistry
 
     public AbstractJMSMessage createMessage(MessageTransfer transfer) throws QpidException, JMSException
     {
+        return createMessage(new UnprocessedMessage_0_10(transfer));
+    }
 
+    /**
+     * Creates the JMS message for a received 0-10 message, reusing the delegate holding its headers if they have
+     * already been examined.
+     */
+    public AbstractJMSMessage createMessage(UnprocessedMessage_0_10 message) throws QpidException, JMSException
+    {
+        final MessageTransfer transfer = message.getMessageTransfer();
         MessageProperties mprop = transfer.getHeader().getMessageProperties();
         String messageType = "";
         if ( mprop == null || mprop.getContentType() == null)
@@ -152,17 +164,7 @@ public class MessageFactoryRegistry
         }
         AbstractJMSMessageFactory mf = getMessageFactory(messageType);
 
-        boolean redelivered = false;
-        DeliveryProperties deliverProps;
-        if((deliverProps = transfer.getHeader().getDeliveryProperties()) != null)
-        {
-            redelivered = deliverProps.getRedelivered();
-        }
-        return mf.createMessage(transfer.getId(),
-                                redelivered,
-                                mprop == null? new MessageProperties():mprop,
-                                deliverProps == null? new DeliveryProperties():deliverProps,
-                                transfer.getBody());
+        return mf.createMessage(message.getHeaders(), message.isRedelivered(), transfer.getBody());
     }
 
     public AMQSession<?, ?> getSession()
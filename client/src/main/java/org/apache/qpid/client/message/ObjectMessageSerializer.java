@@ -0,0 +1,54 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.message;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.client.util.ClassLoadingAwareObjectInputStream;
+
+/**
+ * Serializes the bodies of ObjectMessages in the format of one content type.
+ * <p>
+ * Implementations are named by the {@value org.apache.qpid.configuration.ClientProperties#OBJECT_MESSAGE_SERIALIZERS}
+ * system property, must have a public no-argument constructor, and are shared by all the sessions of the process.
+ */
+public interface ObjectMessageSerializer
+{
+    /**
+     * @return the content type of the messages whose bodies this serializer reads and writes
+     */
+    String getContentType();
+
+    /**
+     * @return a buffer holding the serialized object, owned by the caller
+     */
+    ByteBuffer serialize(Serializable object) throws IOException;
+
+    /**
+     * Deserializes the remaining bytes of a message body.
+     *
+     * @param trustedClassFilter filter which every class instantiated from the body must pass
+     */
+    Serializable deserialize(ByteBuffer data, ClassLoadingAwareObjectInputStream.TrustedClassFilter trustedClassFilter)
+            throws IOException, ClassNotFoundException;
+}
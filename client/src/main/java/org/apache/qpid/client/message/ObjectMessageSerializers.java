@@ -0,0 +1,106 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.configuration.ClientProperties;
+import org.apache.qpid.util.Strings;
+
+/**
+ * The ObjectMessage serializers of the process, keyed by content type.
+ */
+public final class ObjectMessageSerializers
+{
+    private static final ObjectMessageSerializer JAVA_SERIALIZER = new JavaObjectMessageSerializer();
+
+    private static final ObjectMessageSerializer DEFAULT_SERIALIZER;
+    private static final Map<String, ObjectMessageSerializer> SERIALIZERS;
+
+    static
+    {
+        List<ObjectMessageSerializer> serializers =
+                newSerializers(System.getProperty(ClientProperties.OBJECT_MESSAGE_SERIALIZERS));
+
+        DEFAULT_SERIALIZER = serializers.isEmpty() ? JAVA_SERIALIZER : serializers.get(0);
+
+        Map<String, ObjectMessageSerializer> serializersByContentType = new LinkedHashMap<>();
+        serializersByContentType.put(JAVA_SERIALIZER.getContentType(), JAVA_SERIALIZER);
+        for (ObjectMessageSerializer serializer : serializers)
+        {
+            serializersByContentType.put(serializer.getContentType(), serializer);
+        }
+        SERIALIZERS = Collections.unmodifiableMap(serializersByContentType);
+    }
+
+    private ObjectMessageSerializers()
+    {
+    }
+
+    /**
+     * @return the serializer used for the ObjectMessages sent by the process
+     */
+    public static ObjectMessageSerializer getDefault()
+    {
+        return DEFAULT_SERIALIZER;
+    }
+
+    /**
+     * @return the serializers of the ObjectMessages received by the process, keyed by content type
+     */
+    public static Map<String, ObjectMessageSerializer> getSerializers()
+    {
+        return SERIALIZERS;
+    }
+
+    static List<ObjectMessageSerializer> newSerializers(String classNames)
+    {
+        List<ObjectMessageSerializer> serializers = new ArrayList<>();
+        if (classNames != null)
+        {
+            for (String className : Strings.split(classNames.trim()))
+            {
+                if (!"".equals(className))
+                {
+                    serializers.add(newSerializer(className));
+                }
+            }
+        }
+        return serializers;
+    }
+
+    private static ObjectMessageSerializer newSerializer(String className)
+    {
+        try
+        {
+            Class<?> cls = Class.forName(className);
+            return (ObjectMessageSerializer) cls.newInstance();
+        }
+        catch (InstantiationException | IllegalAccessException | ClassNotFoundException | ClassCastException e)
+        {
+            throw new RuntimeException("Cannot create ObjectMessage serializer " + className, e);
+        }
+    }
+}
@@ -43,6 +43,22 @@ public abstract class UnprocessedMessage implements AMQSession.Dispatchable
 
     abstract public long getDeliveryTag();
 
+    /**
+     * @return the size of the message body, as counted against prefetch byte limits
+     */
+    public long getBodySize()
+    {
+        return 0L;
+    }
+
+    /**
+     * @return the expiration time of the message read from its header, or 0 if it does not expire
+     */
+    public long getExpiration()
+    {
+        return 0L;
+    }
+
 
     public String getConsumerTag()
     {
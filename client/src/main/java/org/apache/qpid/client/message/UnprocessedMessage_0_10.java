@@ -20,6 +20,9 @@
  */
 package org.apache.qpid.client.message;
 
+import org.apache.qpid.transport.DeliveryProperties;
+import org.apache.qpid.transport.Header;
+import org.apache.qpid.transport.MessageProperties;
 import org.apache.qpid.transport.MessageTransfer;
 
 /**
@@ -32,6 +35,7 @@ import org.apache.qpid.transport.MessageTransfer;
 public class UnprocessedMessage_0_10 extends UnprocessedMessage
 {
     private MessageTransfer _transfer;
+    private AMQMessageDelegate_0_10 _headers;
 
     public UnprocessedMessage_0_10(MessageTransfer xfr)
     {
@@ -50,4 +54,45 @@ public class UnprocessedMessage_0_10 extends UnprocessedMessage
     {
         return _transfer;
     }
+
+    /**
+     * Gives the headers of the message, without its body, so that they may be examined before the message itself is
+     * created.  The message is later created around the same delegate.
+     *
+     * @return the delegate holding the headers of the message
+     */
+    public AMQMessageDelegate_0_10 getHeaders()
+    {
+        if (_headers == null)
+        {
+            final Header header = _transfer.getHeader();
+            final MessageProperties messageProperties = header == null ? null : header.getMessageProperties();
+            final DeliveryProperties deliveryProperties = header == null ? null : header.getDeliveryProperties();
+            _headers = new AMQMessageDelegate_0_10(messageProperties == null ? new MessageProperties() : messageProperties,
+                                                   deliveryProperties == null ? new DeliveryProperties() : deliveryProperties,
+                                                   _transfer.getId());
+        }
+        return _headers;
+    }
+
+    public boolean isRedelivered()
+    {
+        final DeliveryProperties deliveryProperties =
+                _transfer.getHeader() == null ? null : _transfer.getHeader().getDeliveryProperties();
+        return deliveryProperties != null && deliveryProperties.getRedelivered();
+    }
+
+    @Override
+    public long getBodySize()
+    {
+        return _transfer.getBodySize();
+    }
+
+    @Override
+    public long getExpiration()
+    {
+        final DeliveryProperties deliveryProperties =
+                _transfer.getHeader() == null ? null : _transfer.getHeader().getDeliveryProperties();
+        return deliveryProperties == null ? 0L : deliveryProperties.getExpiration();
+    }
 }
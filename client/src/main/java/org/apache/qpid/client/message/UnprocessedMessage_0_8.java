@@ -27,6 +27,7 @@ import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.qpid.configuration.ClientProperties;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.BasicDeliverBody;
 import org.apache.qpid.framing.ContentBody;
@@ -44,6 +45,7 @@ public class UnprocessedMessage_0_8 extends UnprocessedMessage
     private long _bytesReceived = 0;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(UnprocessedMessage_0_8.class);
+    private static final boolean SET_EXPIRATION_AS_TTL = Boolean.getBoolean(ClientProperties.SET_EXPIRATION_AS_TTL);
 
     private AMQShortString _exchange;
     private AMQShortString _routingKey;
@@ -126,6 +128,19 @@ public class UnprocessedMessage_0_8 extends UnprocessedMessage
         this._contentHeader = contentHeader;
     }
 
+    @Override
+    public long getBodySize()
+    {
+        return _contentHeader == null ? 0L : _contentHeader.getBodySize();
+    }
+
+    @Override
+    public long getExpiration()
+    {
+        // when producers set the expiration as a time to live it cannot be compared with the clock
+        return _contentHeader == null || SET_EXPIRATION_AS_TTL ? 0L : _contentHeader.getProperties().getExpiration();
+    }
+
     public boolean isAllBodyDataReceived()
     {
         LOGGER.debug("Received {} of {} bytes for message body", _bytesReceived, getContentHeader().getBodySize());
@@ -24,8 +24,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.Proxy;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /**
@@ -44,6 +49,13 @@ public class ClassLoadingAwareObjectInputStream extends ObjectInputStream
 
     /** <p>Maps primitive type names to corresponding class objects.</p> */
     private static final HashMap<String, Class> _primitives = new HashMap<String, Class>(8, 1.0F);
+
+    /**
+     * <p>Classes resolved by name for each primary class loader, so that a class is looked up only once per loader.
+     * Neither the loaders nor the classes are strongly referenced, so that the cache does not keep either loaded.</p>
+     */
+    private static final Map<ClassLoader, Map<String, WeakReference<Class<?>>>> _resolvedClasses =
+            Collections.synchronizedMap(new WeakHashMap<ClassLoader, Map<String, WeakReference<Class<?>>>>());
     private final TrustedClassFilter _securityFilter;
 
     /**
@@ -142,6 +154,30 @@ public class ClassLoadingAwareObjectInputStream extends ObjectInputStream
      */
     private Class load(String className, ClassLoader cl)
             throws ClassNotFoundException
+    {
+        Map<String, WeakReference<Class<?>>> resolved;
+        synchronized (_resolvedClasses)
+        {
+            resolved = _resolvedClasses.get(cl);
+            if (resolved == null)
+            {
+                resolved = new ConcurrentHashMap<>();
+                _resolvedClasses.put(cl, resolved);
+            }
+        }
+
+        WeakReference<Class<?>> reference = resolved.get(className);
+        Class<?> clazz = reference == null ? null : reference.get();
+        if (clazz == null)
+        {
+            clazz = loadUncached(className, cl);
+            resolved.put(className, new WeakReference<Class<?>>(clazz));
+        }
+        return clazz;
+    }
+
+    private Class loadUncached(String className, ClassLoader cl)
+            throws ClassNotFoundException
     {
         try
         {
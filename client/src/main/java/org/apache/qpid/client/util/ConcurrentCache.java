@@ -0,0 +1,164 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cache holding at most about a fixed number of entries, for use by many threads at once.
+ * <p>
+ * The entries are split between a number of stripes by the hash of their key. Lookups do not lock, and only mark the
+ * entry found as used. Adding an entry locks its stripe alone and, once the stripe is full, discards the entry of the
+ * stripe added longest ago which has not been used since it was last passed over, so that entries in use are kept in
+ * the manner of a least recently used cache. Null keys and values are not permitted.
+ * <p>
+ * All methods are thread safe.
+ */
+public class ConcurrentCache<K, V>
+{
+    private static final int STRIPES = 16;
+
+    private final Stripe<K, V>[] _stripes;
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentCache(final int size)
+    {
+        if (size < 1)
+        {
+            throw new IllegalArgumentException("Cache size must be at least 1, not " + size);
+        }
+        final int stripes = Math.min(STRIPES, Integer.highestOneBit(size));
+        final int stripeSize = (size + stripes - 1) / stripes;
+        _stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++)
+        {
+            _stripes[i] = new Stripe<>(stripeSize);
+        }
+    }
+
+    /**
+     * @return the value held for the key, or null if there is none
+     */
+    public V get(final K key)
+    {
+        return getStripe(key).get(key);
+    }
+
+    /**
+     * Holds the value for the key, replacing any value already held for it.
+     */
+    public void put(final K key, final V value)
+    {
+        if (value == null)
+        {
+            throw new NullPointerException("Cache values may not be null");
+        }
+        getStripe(key).put(key, value);
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Stripe<K, V> stripe : _stripes)
+        {
+            size += stripe._entries.size();
+        }
+        return size;
+    }
+
+    private Stripe<K, V> getStripe(final K key)
+    {
+        final int hash = key.hashCode();
+        return _stripes[(hash ^ (hash >>> 16)) & (_stripes.length - 1)];
+    }
+
+    private static final class Entry<V>
+    {
+        private final V _value;
+        private volatile boolean _used;
+
+        private Entry(final V value)
+        {
+            _value = value;
+        }
+    }
+
+    private static final class Stripe<K, V>
+    {
+        private final int _size;
+        private final Map<K, Entry<V>> _entries = new ConcurrentHashMap<>();
+        /** The keys in the order they were added or last passed over, guarded by the stripe. */
+        private final ArrayDeque<K> _order = new ArrayDeque<>();
+
+        private Stripe(final int size)
+        {
+            _size = size;
+        }
+
+        private V get(final K key)
+        {
+            final Entry<V> entry = _entries.get(key);
+            if (entry == null)
+            {
+                return null;
+            }
+            if (!entry._used)
+            {
+                entry._used = true;
+            }
+            return entry._value;
+        }
+
+        private synchronized void put(final K key, final V value)
+        {
+            if (_entries.put(key, new Entry<>(value)) == null)
+            {
+                _order.add(key);
+                if (_order.size() > _size)
+                {
+                    evict();
+                }
+            }
+        }
+
+        private void evict()
+        {
+            while (true)
+            {
+                final K key = _order.poll();
+                final Entry<V> entry = _entries.get(key);
+                if (entry._used)
+                {
+                    // given a second chance, as it has been used since it was added or last passed over
+                    entry._used = false;
+                    _order.add(key);
+                }
+                else
+                {
+                    _entries.remove(key);
+                    return;
+                }
+            }
+        }
+    }
+}
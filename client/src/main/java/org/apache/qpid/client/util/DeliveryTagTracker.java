@@ -0,0 +1,328 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An insertion ordered collection of delivery tags held as primitive longs in a growable ring buffer.
+ * <p>
+ * Adding a tag does not allocate unless the ring has to grow. Removing the oldest tag is O(1). Other tags are
+ * removed by marking their slot, which is found by binary search while the tags have been added in ascending order
+ * (the usual case, as delivery tags increase) and by a linear scan otherwise. Marked slots are reclaimed when they
+ * reach the head of the ring or once they make up half of it.
+ * <p>
+ * All methods are thread safe.
+ */
+public class DeliveryTagTracker
+{
+    private static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    private long[] _tags;
+    /** One bit per slot of {@link #_tags}, set when the tag in the slot has been removed. */
+    private long[] _removed;
+    private int _mask;
+    private int _head;
+    /** The number of occupied slots, including removed ones. */
+    private int _used;
+    /** The number of tags which have not been removed. */
+    private int _size;
+    private long _lastAdded;
+    private boolean _ascending = true;
+
+    public DeliveryTagTracker()
+    {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    public DeliveryTagTracker(final int initialCapacity)
+    {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_INITIAL_CAPACITY, initialCapacity) - 1) << 1;
+        _tags = new long[capacity];
+        _removed = new long[(capacity + 63) >>> 6];
+        _mask = capacity - 1;
+    }
+
+    public synchronized void add(final long tag)
+    {
+        if (_used == _tags.length)
+        {
+            makeRoom();
+        }
+        if (_used > 0 && tag <= _lastAdded)
+        {
+            _ascending = false;
+        }
+        _tags[(_head + _used) & _mask] = tag;
+        _used++;
+        _size++;
+        _lastAdded = tag;
+    }
+
+    public synchronized void addAll(final Collection<Long> tags)
+    {
+        for (Long tag : tags)
+        {
+            add(tag);
+        }
+    }
+
+    public synchronized boolean remove(final long tag)
+    {
+        final int position = find(tag);
+        if (position < 0)
+        {
+            return false;
+        }
+        removeAt(position);
+        return true;
+    }
+
+    public synchronized boolean contains(final long tag)
+    {
+        return find(tag) >= 0;
+    }
+
+    /**
+     * Removes every tag less than or equal to the given tag.
+     *
+     * @return the removed tags, in the order they were added
+     */
+    public synchronized long[] removeUpTo(final long tag)
+    {
+        long[] removed = new long[Math.min(_size, DEFAULT_INITIAL_CAPACITY)];
+        int count = 0;
+        for (int position = 0; position < _used; position++)
+        {
+            final int slot = (_head + position) & _mask;
+            final long value = _tags[slot];
+            if (value > tag)
+            {
+                if (_ascending)
+                {
+                    break;
+                }
+            }
+            else if (!isRemoved(slot))
+            {
+                if (count == removed.length)
+                {
+                    removed = Arrays.copyOf(removed, Math.min(count + _size, count * 2));
+                }
+                removed[count++] = value;
+                markRemoved(slot);
+                _size--;
+            }
+        }
+        reclaim();
+        return count == removed.length ? removed : Arrays.copyOf(removed, count);
+    }
+
+    /**
+     * Removes all tags.
+     *
+     * @return the removed tags, in the order they were added
+     */
+    public synchronized long[] drain()
+    {
+        final long[] tags = toArray();
+        clear();
+        return tags;
+    }
+
+    /**
+     * @return the tags, in the order they were added
+     */
+    public synchronized long[] toArray()
+    {
+        final long[] tags = new long[_size];
+        int count = 0;
+        for (int position = 0; position < _used && count < _size; position++)
+        {
+            final int slot = (_head + position) & _mask;
+            if (!isRemoved(slot))
+            {
+                tags[count++] = _tags[slot];
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Finds the longest run of tags, starting from the oldest, which are all contained in the given ascending array.
+     *
+     * @return the last tag of the run, or -1 if the oldest tag is not contained in the array
+     */
+    public synchronized long lastOfLeadingRun(final long[] sortedTags)
+    {
+        long last = -1L;
+        for (int position = 0; position < _used; position++)
+        {
+            final int slot = (_head + position) & _mask;
+            if (!isRemoved(slot))
+            {
+                final long value = _tags[slot];
+                if (Arrays.binarySearch(sortedTags, value) < 0)
+                {
+                    break;
+                }
+                last = value;
+            }
+        }
+        return last;
+    }
+
+    public synchronized void clear()
+    {
+        Arrays.fill(_removed, 0L);
+        _head = 0;
+        _used = 0;
+        _size = 0;
+        _ascending = true;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return _size == 0;
+    }
+
+    public synchronized int size()
+    {
+        return _size;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return Arrays.toString(toArray());
+    }
+
+    /**
+     * @return the position, relative to the head, of the given tag, or -1 if it is not present
+     */
+    private int find(final long tag)
+    {
+        if (_ascending)
+        {
+            int low = 0;
+            int high = _used - 1;
+            while (low <= high)
+            {
+                final int middle = (low + high) >>> 1;
+                final long value = _tags[(_head + middle) & _mask];
+                if (value < tag)
+                {
+                    low = middle + 1;
+                }
+                else if (value > tag)
+                {
+                    high = middle - 1;
+                }
+                else
+                {
+                    return isRemoved((_head + middle) & _mask) ? -1 : middle;
+                }
+            }
+            return -1;
+        }
+        else
+        {
+            for (int position = 0; position < _used; position++)
+            {
+                final int slot = (_head + position) & _mask;
+                if (_tags[slot] == tag && !isRemoved(slot))
+                {
+                    return position;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private void removeAt(final int position)
+    {
+        markRemoved((_head + position) & _mask);
+        _size--;
+        reclaim();
+    }
+
+    /**
+     * Drops removed slots from the head of the ring, and compacts the ring once most of it is removed slots.
+     */
+    private void reclaim()
+    {
+        if (_size == 0)
+        {
+            clear();
+            return;
+        }
+        while (isRemoved(_head))
+        {
+            unmarkRemoved(_head);
+            _head = (_head + 1) & _mask;
+            _used--;
+        }
+        if (_used > DEFAULT_INITIAL_CAPACITY && _size < _used / 2)
+        {
+            compact(_tags.length);
+        }
+    }
+
+    private void makeRoom()
+    {
+        compact(_size > _used / 2 ? _tags.length << 1 : _tags.length);
+    }
+
+    private void compact(final int capacity)
+    {
+        final long[] tags = new long[capacity];
+        int count = 0;
+        for (int position = 0; position < _used; position++)
+        {
+            final int slot = (_head + position) & _mask;
+            if (!isRemoved(slot))
+            {
+                tags[count++] = _tags[slot];
+            }
+        }
+        _tags = tags;
+        _removed = new long[(capacity + 63) >>> 6];
+        _mask = capacity - 1;
+        _head = 0;
+        _used = count;
+    }
+
+    private boolean isRemoved(final int slot)
+    {
+        return (_removed[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    private void markRemoved(final int slot)
+    {
+        _removed[slot >>> 6] |= 1L << slot;
+    }
+
+    private void unmarkRemoved(final int slot)
+    {
+        _removed[slot >>> 6] &= ~(1L << slot);
+    }
+}
@@ -23,6 +23,8 @@ package org.apache.qpid.client.util;
 import java.util.Iterator;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,26 +34,37 @@ import org.slf4j.LoggerFactory;
  * control) to try to prevent the queue growing (much) further. The underlying queue itself is not bounded therefore the
  * caller is not obliged to react to the events.
  * <p>
- * This implementation is <b>only</b> safe where we have a single
- * thread adding items and a single (different) thread removing items.
+ * Adding and taking items does not take a lock. A thread waiting for an item briefly spins before parking, and is
+ * only unparked by an adding thread when it has registered itself as waiting. The threshold count is maintained
+ * atomically; the listener is only called, under its own monitor, when the count has crossed a threshold since the
+ * last event, so that events are delivered in order.
  * <p>
  * TODO  Make this implement java.util.Queue and hide the implementation. Then different queue types can be substituted.
  */
 public class FlowControllingBlockingQueue<T>
 {
 	private static final Logger _logger = LoggerFactory.getLogger(FlowControllingBlockingQueue.class);
-	
+
+    /** The number of times a thread checks for an item before parking */
+    private static final int SPIN_TRIES = 64;
+
     /** This queue is bounded and is used to store messages before being dispatched to the consumer */
     private final Queue<T> _queue = new ConcurrentLinkedQueue<T>();
 
+    /** Threads parked waiting for an item */
+    private final Queue<Thread> _waiters = new ConcurrentLinkedQueue<Thread>();
+
     private final int _flowControlHighThreshold;
     private final int _flowControlLowThreshold;
 
     private final ThresholdListener _listener;
 
     /** We require a separate count so we can track whether we have reached the threshold */
-    private int _count;
-    
+    private final AtomicInteger _count = new AtomicInteger();
+
+    /** Whether the last event given to the listener was {@link ThresholdListener#aboveThreshold(int)} */
+    private volatile boolean _aboveThreshold;
+
     private boolean disableFlowControl; 
 
     private volatile boolean _closed;
@@ -63,11 +76,8 @@ public class FlowControllingBlockingQueue<T>
 
     public void close()
     {
-        synchronized (this)
-        {
-            _closed = true;
-            notifyAll();
-        }
+        _closed = true;
+        unparkWaiters();
     }
 
 
@@ -111,17 +121,16 @@ public class FlowControllingBlockingQueue<T>
         T o = _queue.peek();
         if (o == null)
         {
-            synchronized (this)
-            {
-                while (!_closed && (o = _queue.peek()) == null)
-                {
-                    wait();
-                }
-            }
+            o = awaitItem(false);
         }
         return o;
     }
 
+    public T peek()
+    {
+        return _queue.peek();
+    }
+
     public T nonBlockingTake() throws InterruptedException
     {
         T o = _queue.poll();
@@ -139,13 +148,7 @@ public class FlowControllingBlockingQueue<T>
         T o = _queue.poll();
         if(o == null)
         {
-            synchronized(this)
-            {
-                while(!_closed && (o = _queue.poll())==null)
-                {
-                    wait();
-                }
-            }
+            o = awaitItem(true);
         }
         if (!_closed && !disableFlowControl && _listener != null)
         {
@@ -157,11 +160,10 @@ public class FlowControllingBlockingQueue<T>
 
     public void add(T o)
     {
-        synchronized(this)
+        _queue.add(o);
+        if (!_waiters.isEmpty())
         {
-            _queue.add(o);
-
-            notifyAll();
+            unparkWaiters();
         }
         if (!disableFlowControl && _listener != null)
         {
@@ -190,38 +192,108 @@ public class FlowControllingBlockingQueue<T>
 
         if (!disableFlowControl && _listener != null)
         {
-            synchronized (_listener)
+            _count.set(0);
+            notifyListenerIfNecessary();
+        }
+    }
+
+    /**
+     * Waits until the queue holds an item or is closed.
+     *
+     * @param remove whether the item should be removed from the queue
+     * @return the item, or null if the queue was closed
+     */
+    private T awaitItem(final boolean remove) throws InterruptedException
+    {
+        for (int i = 0; i < SPIN_TRIES; i++)
+        {
+            if (_closed)
+            {
+                return null;
+            }
+            T o = remove ? _queue.poll() : _queue.peek();
+            if (o != null)
             {
-                int count = _count;
-                _count = 0;
+                return o;
+            }
+            Thread.yield();
+        }
 
-                if (count >= _flowControlLowThreshold)
+        final Thread thread = Thread.currentThread();
+        _waiters.add(thread);
+        try
+        {
+            while (true)
+            {
+                // the queue is checked after registering so that an item added concurrently is never missed
+                T o = remove ? _queue.poll() : _queue.peek();
+                if (o != null || _closed)
                 {
-                    _listener.underThreshold(0);
+                    return o;
+                }
+                LockSupport.park(this);
+                if (Thread.interrupted())
+                {
+                    throw new InterruptedException();
                 }
             }
+        }
+        finally
+        {
+            _waiters.remove(thread);
+        }
+    }
 
+    private void unparkWaiters()
+    {
+        for (Thread waiter : _waiters)
+        {
+            LockSupport.unpark(waiter);
         }
     }
 
     private void reportAboveIfNecessary()
     {
-        synchronized (_listener)
+        if (_count.incrementAndGet() >= _flowControlHighThreshold && !_aboveThreshold)
         {
-            if (++_count == _flowControlHighThreshold)
-            {
-                _listener.aboveThreshold(_count);
-            }
+            notifyListenerIfNecessary();
         }
     }
 
     private void reportBelowIfNecessary()
+    {
+        if (_count.decrementAndGet() < _flowControlLowThreshold && _aboveThreshold)
+        {
+            notifyListenerIfNecessary();
+        }
+    }
+
+    /**
+     * Delivers the events needed to bring the listener up to date with the current count. Every thread which changes
+     * the count and sees a threshold crossed comes here, and the count is re-read after each event, so a crossing made
+     * by another thread while an event is being delivered is not lost.
+     */
+    private void notifyListenerIfNecessary()
     {
         synchronized (_listener)
         {
-            if (_count-- == _flowControlLowThreshold)
+            while (true)
             {
-                _listener.underThreshold(_count);
+                final int count = _count.get();
+                if (!_aboveThreshold && count >= _flowControlHighThreshold)
+                {
+                    _aboveThreshold = true;
+                    _listener.aboveThreshold(count);
+                }
+                else if (_aboveThreshold && count < _flowControlLowThreshold)
+                {
+                    _aboveThreshold = false;
+                    _listener.underThreshold(count);
+                }
+                else
+                {
+                    break;
+                }
             }
         }
     }
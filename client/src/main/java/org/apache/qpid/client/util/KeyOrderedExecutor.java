@@ -0,0 +1,78 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs tasks on a fixed number of single threaded lanes, so that the tasks given the same key run one at a time in
+ * the order they were submitted, whilst tasks with different keys may run concurrently. Tasks without a key are
+ * spread across the lanes in turn.
+ */
+public class KeyOrderedExecutor
+{
+    private final ExecutorService[] _lanes;
+    private final AtomicInteger _nextLane = new AtomicInteger();
+
+    public KeyOrderedExecutor(final int lanes, final ThreadFactory threadFactory)
+    {
+        if (lanes < 1)
+        {
+            throw new IllegalArgumentException("Number of lanes must be at least 1, not " + lanes);
+        }
+        _lanes = new ExecutorService[lanes];
+        for (int i = 0; i < lanes; i++)
+        {
+            _lanes[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+    }
+
+    /**
+     * Runs the task after every task previously submitted with an equal key.
+     *
+     * @param key  the ordering key, or null if the task need not be ordered
+     * @param task the task
+     */
+    public void execute(final Object key, final Runnable task)
+    {
+        final int hash = key == null ? _nextLane.getAndIncrement() : key.hashCode();
+        _lanes[(hash & Integer.MAX_VALUE) % _lanes.length].execute(task);
+    }
+
+    public int getLaneCount()
+    {
+        return _lanes.length;
+    }
+
+    /**
+     * Stops accepting tasks. Those already submitted are still run.
+     */
+    public void shutdown()
+    {
+        for (ExecutorService lane : _lanes)
+        {
+            lane.shutdown();
+        }
+    }
+}
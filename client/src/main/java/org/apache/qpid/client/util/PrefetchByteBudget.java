@@ -0,0 +1,319 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Accounts for the bytes of the messages a session has received but not yet delivered to the application, in total
+ * and per consumer, against a limit for each.
+ * <p>
+ * The session, or a consumer, exceeds its budget as soon as its limit is reached, and becomes available again once it
+ * has fallen to half of its limit, so that flow is not toggled for each message. A limit of zero or less is not
+ * enforced. Releasing a delivery tag which is not held is ignored, so a message may be released both when it is
+ * delivered and when it is settled.
+ * <p>
+ * An optional listener is told of every change to the total, whilst the budget's lock is held.
+ * <p>
+ * All methods are thread safe.
+ */
+public class PrefetchByteBudget
+{
+    public interface Listener
+    {
+        void bytesChanged(long delta);
+    }
+
+    private final long _sessionLimit;
+    private final long _consumerLimit;
+    private final Listener _listener;
+
+    private final Map<Long, Held> _messages = new HashMap<>();
+    private final Map<String, Held> _consumers = new HashMap<>();
+    private long _bytes;
+    private boolean _sessionExceeded;
+    private int _exceededConsumers;
+
+    public PrefetchByteBudget(final long sessionLimit, final long consumerLimit)
+    {
+        this(sessionLimit, consumerLimit, null);
+    }
+
+    public PrefetchByteBudget(final long sessionLimit, final long consumerLimit, final Listener listener)
+    {
+        _sessionLimit = sessionLimit;
+        _consumerLimit = consumerLimit;
+        _listener = listener;
+    }
+
+    /**
+     * Accounts for a received message.
+     *
+     * @return true if this message caused the budget of the session or of its consumer to be exceeded
+     */
+    public synchronized boolean add(final long deliveryTag, final String consumerTag, final long size)
+    {
+        Held consumer = null;
+        if (consumerTag != null)
+        {
+            consumer = _consumers.get(consumerTag);
+            if (consumer == null)
+            {
+                consumer = new Held(consumerTag, null);
+                _consumers.put(consumerTag, consumer);
+            }
+            consumer._bytes += size;
+        }
+        Held message = new Held(consumerTag, consumer);
+        message._bytes = size;
+        Held previous = _messages.put(deliveryTag, message);
+        _bytes += size;
+        notifyListener(size);
+        if (previous != null)
+        {
+            release(previous);
+        }
+
+        boolean exceeded = false;
+        if (!_sessionExceeded && reached(_bytes, _sessionLimit))
+        {
+            _sessionExceeded = true;
+            exceeded = true;
+        }
+        if (consumer != null && !consumer._exceeded && reached(consumer._bytes, _consumerLimit))
+        {
+            consumer._exceeded = true;
+            _exceededConsumers++;
+            exceeded = true;
+        }
+        return exceeded;
+    }
+
+    /**
+     * Releases a message which has been delivered to the application or settled.
+     *
+     * @return true if this release made the budget of the session or of the message's consumer available again
+     */
+    public synchronized boolean release(final long deliveryTag)
+    {
+        Held message = _messages.remove(deliveryTag);
+        if (message != null)
+        {
+            return release(message) | checkSessionAvailable();
+        }
+        return false;
+    }
+
+    /**
+     * Releases several messages, as {@link #release(long)}.
+     *
+     * @return true if these releases made the budget of the session or of a consumer available again
+     */
+    public synchronized boolean release(final long[] deliveryTags)
+    {
+        boolean available = false;
+        for (long deliveryTag : deliveryTags)
+        {
+            Held message = _messages.remove(deliveryTag);
+            if (message != null)
+            {
+                available |= release(message);
+            }
+        }
+        return available | checkSessionAvailable();
+    }
+
+    /**
+     * Releases all the messages held for a consumer which has been closed.
+     *
+     * @return true if this made the budget of the session or of the consumer available again
+     */
+    public synchronized boolean releaseConsumer(final String consumerTag)
+    {
+        Held consumer = _consumers.remove(consumerTag);
+        if (consumer == null)
+        {
+            return false;
+        }
+        Iterator<Held> iterator = _messages.values().iterator();
+        while (iterator.hasNext())
+        {
+            Held message = iterator.next();
+            if (consumerTag.equals(message._consumerTag))
+            {
+                iterator.remove();
+                _bytes -= message._bytes;
+                notifyListener(-message._bytes);
+            }
+        }
+        boolean available = false;
+        if (consumer._exceeded)
+        {
+            consumer._exceeded = false;
+            _exceededConsumers--;
+            available = true;
+        }
+        return available | checkSessionAvailable();
+    }
+
+    /**
+     * Releases all messages.
+     *
+     * @return true if the budget of the session or of any consumer had been exceeded
+     */
+    public synchronized boolean clear()
+    {
+        _messages.clear();
+        _consumers.clear();
+        notifyListener(-_bytes);
+        _bytes = 0L;
+        boolean exceeded = isExceeded();
+        _sessionExceeded = false;
+        _exceededConsumers = 0;
+        return exceeded;
+    }
+
+    /**
+     * @return true if the budget of the session or of any of its consumers is exceeded
+     */
+    public synchronized boolean isExceeded()
+    {
+        return _sessionExceeded || _exceededConsumers > 0;
+    }
+
+    /**
+     * @return true if the budget of the session as a whole is exceeded
+     */
+    public synchronized boolean isSessionExceeded()
+    {
+        return _sessionExceeded;
+    }
+
+    /**
+     * @return true if the budget of any consumer is exceeded
+     */
+    public synchronized boolean isAnyConsumerExceeded()
+    {
+        return _exceededConsumers > 0;
+    }
+
+    /**
+     * @return true if the budget of the given consumer is exceeded
+     */
+    public synchronized boolean isExceeded(final String consumerTag)
+    {
+        Held consumer = _consumers.get(consumerTag);
+        return consumer != null && consumer._exceeded;
+    }
+
+    public synchronized long getBytes()
+    {
+        return _bytes;
+    }
+
+    public synchronized long getBytes(final String consumerTag)
+    {
+        Held consumer = _consumers.get(consumerTag);
+        return consumer == null ? 0L : consumer._bytes;
+    }
+
+    public long getSessionLimit()
+    {
+        return _sessionLimit;
+    }
+
+    public long getConsumerLimit()
+    {
+        return _consumerLimit;
+    }
+
+    /**
+     * @return true if the release made the budget of the message's consumer available again
+     */
+    private boolean release(final Held message)
+    {
+        _bytes -= message._bytes;
+        notifyListener(-message._bytes);
+        Held consumer = message._consumer;
+        boolean available = false;
+        if (consumer != null)
+        {
+            consumer._bytes -= message._bytes;
+            if (consumer._exceeded && belowHalf(consumer._bytes, _consumerLimit))
+            {
+                consumer._exceeded = false;
+                _exceededConsumers--;
+                available = true;
+            }
+            if (consumer._bytes <= 0L)
+            {
+                _consumers.remove(consumer._consumerTag, consumer);
+            }
+        }
+        return available;
+    }
+
+    private void notifyListener(final long delta)
+    {
+        if (_listener != null && delta != 0L)
+        {
+            _listener.bytesChanged(delta);
+        }
+    }
+
+    private boolean checkSessionAvailable()
+    {
+        if (_sessionExceeded && belowHalf(_bytes, _sessionLimit))
+        {
+            _sessionExceeded = false;
+            return true;
+        }
+        return false;
+    }
+
+    private static boolean reached(final long bytes, final long limit)
+    {
+        return limit > 0L && bytes >= limit;
+    }
+
+    private static boolean belowHalf(final long bytes, final long limit)
+    {
+        return limit <= 0L || bytes <= limit / 2;
+    }
+
+    /** The bytes held by a message, or in total by a consumer. */
+    private static final class Held
+    {
+        private final String _consumerTag;
+        private final Held _consumer;
+        private long _bytes;
+        /** Whether a consumer has reached its limit and not yet fallen to half of it. */
+        private boolean _exceeded;
+
+        private Held(final String consumerTag, final Held consumer)
+        {
+            _consumerTag = consumerTag;
+            _consumer = consumer;
+        }
+    }
+}
@@ -258,6 +258,169 @@ public class ClientProperties
     public static final String CONNECTION_OPTION_MESSAGE_COMPRESSION_THRESHOLD_SIZE = "qpid.message_compression_threshold_size";
     public static final int DEFAULT_MESSAGE_COMPRESSION_THRESHOLD_SIZE = 102400;
 
+    /**
+     * System property to set a default value for a connection option 'encryptionKeyReuseCount'.
+     * When greater than one, a content encryption key (and its key transport recipient info) is reused for up to
+     * this many encrypted messages sent to the same set of recipients.
+     */
+    public static final String CONNECTION_OPTION_ENCRYPTION_KEY_REUSE_COUNT = "qpid.encryption_key_reuse_count";
+    public static final int DEFAULT_ENCRYPTION_KEY_REUSE_COUNT = 0;
+
+    /**
+     * System property to set a default value for a connection option 'encryptionKeyReuseInterval'.
+     * The maximum time in milliseconds that a reused content encryption key remains in use.
+     */
+    public static final String CONNECTION_OPTION_ENCRYPTION_KEY_REUSE_INTERVAL = "qpid.encryption_key_reuse_interval";
+    public static final long DEFAULT_ENCRYPTION_KEY_REUSE_INTERVAL = 60000L;
+
+    /**
+     * System property to set the maximum number of decrypted content encryption keys cached per session so that
+     * messages sharing a content encryption key do not each pay the cost of the asymmetric key decryption.
+     */
+    public static final String DECRYPTED_KEY_CACHE_SIZE = "qpid.decrypted_key_cache_size";
+    public static final int DEFAULT_DECRYPTED_KEY_CACHE_SIZE = 128;
+
+    /**
+     * System property to set the maximum number of recipient certificates, and of content encryption keys held for
+     * reuse, cached per session when encrypting messages.
+     */
+    public static final String ENCRYPTION_CACHE_SIZE = "qpid.encryption_cache_size";
+    public static final int DEFAULT_ENCRYPTION_CACHE_SIZE = 128;
+
+    /**
+     * System property to set a default value for a connection option 'messageEncryptionCipherName'.
+     * The cipher used to encrypt the content of encrypted messages, either AES/CBC/PKCS5Padding (the default) or
+     * AES/GCM/NoPadding.
+     */
+    public static final String CONNECTION_OPTION_MESSAGE_ENCRYPTION_CIPHER_NAME = "qpid.message_encryption_cipher_name";
+
+    /**
+     * System property to set a default value for a connection option 'producerPipelineThreads'.
+     * The number of worker threads used to compress, encrypt and write the messages of asynchronous producers.
+     * A value of 0 (the default) disables the producer pipeline.
+     */
+    public static final String CONNECTION_OPTION_PRODUCER_PIPELINE_THREADS = "qpid.producer_pipeline_threads";
+    public static final int DEFAULT_PRODUCER_PIPELINE_THREADS = 0;
+
+    /**
+     * System property to set a default value for a connection option 'producerPipelineDepth'.
+     * The maximum number of messages a single producer may have in the producer pipeline before send blocks.
+     */
+    public static final String CONNECTION_OPTION_PRODUCER_PIPELINE_DEPTH = "qpid.producer_pipeline_depth";
+    public static final int DEFAULT_PRODUCER_PIPELINE_DEPTH = 64;
+
+    /**
+     * System property to set a default value for a connection option 'dispatcherThreads'.
+     * The number of threads shared by the sessions of a connection for delivering messages to their consumers.
+     * A value of 0 (the default) gives each session its own dispatcher thread.
+     */
+    public static final String CONNECTION_OPTION_DISPATCHER_THREADS = "qpid.dispatcher_threads";
+    public static final int DEFAULT_DISPATCHER_THREADS = 0;
+
+    /**
+     * System property to set a default value for a connection option 'adaptivePrefetch'.
+     * When true, sessions size their prefetch window from the measured message processing rate and broker round
+     * trip time, between the 'minprefetch' and 'maxprefetch' bounds.
+     */
+    public static final String CONNECTION_OPTION_ADAPTIVE_PREFETCH = "qpid.adaptive_prefetch";
+    public static final boolean DEFAULT_ADAPTIVE_PREFETCH = false;
+
+    /**
+     * System property to set a default value for a connection option 'minprefetch'.
+     * The smallest prefetch window an adaptive prefetch session may shrink to.
+     */
+    public static final String CONNECTION_OPTION_MIN_PREFETCH = "qpid.min_prefetch";
+    public static final int DEFAULT_MIN_PREFETCH = 1;
+
+    /**
+     * System property to set a default value for a connection option 'maxPrefetchBytes'.
+     * The maximum number of message body bytes a session holds before they are delivered to the application.
+     * A value of 0 (the default) applies no limit.
+     */
+    public static final String CONNECTION_OPTION_MAX_PREFETCH_BYTES = "qpid.max_prefetch_bytes";
+    public static final long DEFAULT_MAX_PREFETCH_BYTES = 0L;
+
+    /**
+     * System property to set a default value for a connection option 'maxConsumerPrefetchBytes'.
+     * The maximum number of message body bytes a session holds for any one consumer before they are delivered to the
+     * application. A value of 0 (the default) applies no limit.
+     */
+    public static final String CONNECTION_OPTION_MAX_CONSUMER_PREFETCH_BYTES = "qpid.max_consumer_prefetch_bytes";
+    public static final long DEFAULT_MAX_CONSUMER_PREFETCH_BYTES = 0L;
+
+    /**
+     * System property to set a default value for a connection option 'listenerThreads'.
+     * The number of threads on which each non-transacted session calls the message listeners of its consumers
+     * concurrently, keeping the order of the messages with the same ordering key. A value of 0 (the default) calls
+     * them serially on the dispatcher thread.
+     */
+    public static final String CONNECTION_OPTION_LISTENER_THREADS = "qpid.listener_threads";
+    public static final int DEFAULT_LISTENER_THREADS = 0;
+
+    /**
+     * System property to set a default value for a connection option 'listenerOrderingKey'.
+     * The message property whose value orders the messages given to concurrent message listeners.
+     */
+    public static final String CONNECTION_OPTION_LISTENER_ORDERING_KEY = "qpid.listener_ordering_key";
+    public static final String DEFAULT_LISTENER_ORDERING_KEY = "JMSXGroupID";
+
+    /**
+     * System property to set a default value for a connection option 'dropExpired'.
+     * If true, sessions discard received messages whose expiration time has passed, acknowledging them rather than
+     * delivering them to the application.
+     */
+    public static final String CONNECTION_OPTION_DROP_EXPIRED = "qpid.drop_expired";
+    public static final boolean DEFAULT_DROP_EXPIRED = false;
+
+    /**
+     * The interval in milliseconds at which a session using adaptive prefetch re-evaluates its prefetch window.
+     */
+    public static final String ADAPTIVE_PREFETCH_INTERVAL = "qpid.adaptive_prefetch_interval";
+    public static final long DEFAULT_ADAPTIVE_PREFETCH_INTERVAL = 1000L;
+
+    /**
+     * The maximum number of message bytes held by all the sessions of the process between their receipt and their
+     * delivery to the application. A value of zero or less applies no limit.
+     */
+    public static final String PREFETCH_MEMORY_LIMIT = "qpid.prefetch_memory_limit";
+    public static final long DEFAULT_PREFETCH_MEMORY_LIMIT = 0L;
+
+    /**
+     * The number of messages a DUPS_OK_ACKNOWLEDGE session on 0-8..0-9-1 consumes before acknowledging them
+     * together. A value of 0 (the default) acknowledges each message as soon as it has been consumed.
+     */
+    public static final String DUPS_OK_ACK_BATCH_SIZE = "qpid.dups_ok_ack_batch_size";
+    public static final int DEFAULT_DUPS_OK_ACK_BATCH_SIZE = 0;
+
+    /**
+     * The maximum time in milliseconds for which a batched DUPS_OK_ACKNOWLEDGE acknowledgement on 0-8..0-9-1 is
+     * deferred before it is sent.
+     */
+    public static final String DUPS_OK_ACK_MAX_DELAY = "qpid.dups_ok_ack_max_delay";
+    public static final long DEFAULT_DUPS_OK_ACK_MAX_DELAY = 1000L;
+
+    /**
+     * System property to set whether message selectors evaluated by the client are compiled into specialised
+     * evaluators (the default) rather than interpreted as parsed.
+     */
+    public static final String COMPILE_SELECTORS = "qpid.compile_selectors";
+    public static final boolean DEFAULT_COMPILE_SELECTORS = true;
+
+    /**
+     * System property to set the number of parsed message selectors cached for the whole process, so that consumers
+     * created with the same selector, or with selectors differing only in the literals they compare, share one.
+     * A size of zero disables the cache.
+     */
+    public static final String SELECTOR_CACHE_SIZE = "qpid.selector_cache_size";
+    public static final int DEFAULT_SELECTOR_CACHE_SIZE = 1000;
+
+    /**
+     * System property to set a comma separated list of the names of classes implementing
+     * {@link org.apache.qpid.client.message.ObjectMessageSerializer}. Object messages are received in the formats of
+     * all of them, and of Java serialization, and are sent in the format of the first.
+     */
+    public static final String OBJECT_MESSAGE_SERIALIZERS = "qpid.object_message_serializers";
+
     public static final String ADDR_SYNTAX_SUPPORTED_IN_0_8 = "qpid.addr_syntax_supported";
     public static final boolean DEFAULT_ADDR_SYNTAX_0_8_SUPPORT = true;
 
@@ -23,6 +23,7 @@ package org.apache.qpid.filter;
 // Based on like named file from r450141 of the Apache ActiveMQ project <http://www.activemq.org/site/home.html>
 //
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -74,10 +75,28 @@ public abstract class ComparisonExpression<T> extends BinaryExpression<T> implem
 
         private Pattern likePattern;
 
+        /**
+         * The literal text between the wildcards of a pattern whose only wildcard is '%', matched without a regular
+         * expression, or null.
+         */
+        private String[] segments;
+
+        /**
+         * The characters of a pattern whose only wildcard is '_', matched without a regular expression unless the value
+         * contains a surrogate pair, or null. A wildcard is marked in {@link #singleWildcards}.
+         */
+        private String singleChars;
+        private boolean[] singleWildcards;
+
         public LikeExpression(Expression<E> right, String like, int escape)
         {
             super(right);
 
+            if (parseSimplePattern(like, escape))
+            {
+                return;
+            }
+
             StringBuilder regexp = new StringBuilder(like.length() * 2);
             regexp.append("\\A"); // The beginning of the input
             for (int i = 0; i < like.length(); i++)
@@ -120,6 +139,129 @@ public abstract class ComparisonExpression<T> extends BinaryExpression<T> implem
             likePattern = Pattern.compile(regexp.toString(), Pattern.DOTALL);
         }
 
+        /**
+         * Recognises a pattern which can be matched with string operations, giving the same result as the regular
+         * expression built for it.
+         *
+         * @return true if the pattern has no wildcard or only '%' wildcards, so that no regular expression is needed
+         */
+        private boolean parseSimplePattern(String like, int escape)
+        {
+            StringBuilder chars = new StringBuilder(like.length());
+            boolean[] wildcards = new boolean[like.length()];
+            List<String> parts = new ArrayList<>();
+            int start = 0;
+            boolean single = false;
+            for (int i = 0; i < like.length(); i++)
+            {
+                char c = like.charAt(i);
+                if (escape == (0xFFFF & c))
+                {
+                    i++;
+                    if (i >= like.length())
+                    {
+                        break;
+                    }
+                    c = like.charAt(i);
+                    if (c < 0x10 || c > 0xFF)
+                    {
+                        // not a single character in the regular expression
+                        return false;
+                    }
+                }
+                else if (c == '%')
+                {
+                    parts.add(chars.substring(start));
+                    start = chars.length();
+                    continue;
+                }
+                else if (c == '_')
+                {
+                    wildcards[chars.length()] = true;
+                    single = true;
+                }
+                if (Character.isSurrogate(c))
+                {
+                    return false;
+                }
+                chars.append(c);
+            }
+
+            if (single)
+            {
+                if (!parts.isEmpty())
+                {
+                    return false;
+                }
+                singleChars = chars.toString();
+                singleWildcards = wildcards;
+                return false;
+            }
+            parts.add(chars.substring(start));
+            segments = parts.toArray(new String[parts.size()]);
+            return true;
+        }
+
+        private boolean matchesSegments(String value)
+        {
+            String first = segments[0];
+            if (segments.length == 1)
+            {
+                return value.equals(first);
+            }
+
+            String last = segments[segments.length - 1];
+            int end = value.length() - last.length();
+            if (end < first.length() || !value.startsWith(first) || !value.endsWith(last))
+            {
+                return false;
+            }
+            int position = first.length();
+            for (int i = 1; i < segments.length - 1; i++)
+            {
+                int index = value.indexOf(segments[i], position);
+                if (index < 0 || index + segments[i].length() > end)
+                {
+                    return false;
+                }
+                position = index + segments[i].length();
+            }
+            return true;
+        }
+
+        private boolean matchesSingleChars(String value)
+        {
+            if (value.length() != singleChars.length())
+            {
+                return hasSurrogate(value) && likePattern.matcher(value).matches();
+            }
+            for (int i = 0; i < value.length(); i++)
+            {
+                char c = value.charAt(i);
+                if (Character.isSurrogate(c))
+                {
+                    return likePattern.matcher(value).matches();
+                }
+                else if (!singleWildcards[i] && c != singleChars.charAt(i))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean hasSurrogate(String value)
+        {
+            for (int i = 0; i < value.length(); i++)
+            {
+                if (Character.isSurrogate(value.charAt(i)))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /**
          *  org.apache.activemq.filter.UnaryExpression#getExpressionSymbol()
          */
@@ -147,7 +289,21 @@ public abstract class ComparisonExpression<T> extends BinaryExpression<T> implem
                     Boolean.FALSE;
             }
 
-            return likePattern.matcher((String) rv).matches() ? Boolean.TRUE : Boolean.FALSE;
+            String value = (String) rv;
+            boolean matches;
+            if (segments != null)
+            {
+                matches = matchesSegments(value);
+            }
+            else if (singleChars != null)
+            {
+                matches = matchesSingleChars(value);
+            }
+            else
+            {
+                matches = likePattern.matcher(value).matches();
+            }
+            return matches ? Boolean.TRUE : Boolean.FALSE;
         }
 
         public boolean matches(E message)
@@ -121,6 +121,14 @@ public class JMSMessagePropertyExpression implements PropertyExpression<Filterab
         return name;
     }
 
+    /**
+     * @return true if the expression refers to an application property rather than a JMS header
+     */
+    boolean isApplicationProperty()
+    {
+        return jmsPropertyExpression == null;
+    }
+
     /**
      * @see Object#toString()
      */
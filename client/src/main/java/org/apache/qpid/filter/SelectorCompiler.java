@@ -0,0 +1,1347 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.qpid.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.qpid.transport.codec.PropertyMap;
+
+/**
+ * Compiles the expression tree produced by the selector parser into a tree of evaluators specialised for the
+ * operations and operand types of the selector, giving the same results as the expressions they replace.
+ * <p>
+ * Sub-expressions which refer to no property are evaluated once, when compiled. Numeric comparisons are made on
+ * primitives, following the same conversions as {@link ComparisonExpression}, and comparisons of the numeric JMS
+ * headers with a literal read the header without boxing it, as do comparisons of application properties with a literal
+ * when the message holds them in a {@link PropertyMap}. Chains of AND and OR are flattened, and when only whether
+ * the selector matches is wanted their operands are evaluated in order of cost and likely outcome, cheap and decisive
+ * operands first. The selector's own order is kept when the difference between false and unknown matters, as under a
+ * NOT, or when an operand could throw. Expressions with no specialised evaluator are evaluated as parsed.
+ */
+public final class SelectorCompiler
+{
+    private static final int TRUE = 1;
+    private static final int FALSE = 0;
+    private static final int UNKNOWN = -1;
+
+    /** Returned by {@link #compare(Comparable, Comparable)} for values which the interpreter treats as unequal. */
+    private static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+    /** Names which a message in strict JMS mode refuses as property names. */
+    private static final Set<String> RESERVED_WORDS = new HashSet<>(Arrays.asList(
+            "NULL", "TRUE", "FALSE", "NOT", "AND", "OR", "BETWEEN", "LIKE", "IN", "IS", "ESCAPE"));
+
+    private final Map<?, ?> _parameters;
+
+    private SelectorCompiler(final Map<?, ?> parameters)
+    {
+        _parameters = parameters;
+    }
+
+    public static BooleanExpression<FilterableMessage> compile(final BooleanExpression<FilterableMessage> expression)
+    {
+        return compile(expression, Collections.emptyMap());
+    }
+
+    /**
+     * Compiles a selector in which some literals stand for parameters, so that the parsed expression can be shared by
+     * selectors differing only in those literals.
+     *
+     * @param parameters the value bound to each parameter, keyed by the value of the literal standing for it
+     */
+    public static BooleanExpression<FilterableMessage> compile(final BooleanExpression<FilterableMessage> expression,
+                                                               final Map<?, ?> parameters)
+    {
+        return new CompiledSelector(new SelectorCompiler(parameters).compilePredicate(expression), expression);
+    }
+
+    private Predicate compilePredicate(final BooleanExpression<FilterableMessage> expression)
+    {
+        if (isConstant(expression))
+        {
+            try
+            {
+                return ConstantPredicate.valueOf(toTruth(expression.evaluate(null)));
+            }
+            catch (RuntimeException e)
+            {
+                // left to fail for each message, as the interpreter would
+                return new InterpretedPredicate(expression, false, 0.5);
+            }
+        }
+
+        if (expression instanceof LogicExpression)
+        {
+            final String symbol = ((LogicExpression<FilterableMessage>) expression).getExpressionSymbol();
+            final List<Predicate> operands = new ArrayList<>();
+            flatten(expression, symbol, operands);
+            return "AND".equals(symbol) ? And.create(operands) : Or.create(operands);
+        }
+        else if (expression instanceof ComparisonExpression)
+        {
+            return compileComparison((ComparisonExpression<FilterableMessage>) expression);
+        }
+        else if (expression instanceof UnaryExpression)
+        {
+            final UnaryExpression<FilterableMessage> unary = (UnaryExpression<FilterableMessage>) expression;
+            final String symbol = unary.getExpressionSymbol();
+            final boolean simpleOperand = isSimple(unary.getRight());
+            if ("NOT".equals(symbol))
+            {
+                return new Not(compilePredicate((BooleanExpression<FilterableMessage>) unary.getRight()));
+            }
+            else if ("".equals(symbol))
+            {
+                return new BooleanCast(compileValue(unary.getRight()));
+            }
+            else if ("LIKE".equals(symbol))
+            {
+                return new InterpretedPredicate(expression, simpleOperand, 0.2);
+            }
+            else if ("IN".equals(symbol))
+            {
+                return new InterpretedPredicate(expression, simpleOperand, 0.3);
+            }
+            else if ("NOT IN".equals(symbol))
+            {
+                return new InterpretedPredicate(expression, simpleOperand, 0.7);
+            }
+        }
+        return new InterpretedPredicate(expression, false, 0.5);
+    }
+
+    private void flatten(final BooleanExpression<FilterableMessage> expression,
+                                final String symbol,
+                                final List<Predicate> operands)
+    {
+        if (expression instanceof LogicExpression
+            && symbol.equals(((LogicExpression<FilterableMessage>) expression).getExpressionSymbol())
+            && !isConstant(expression))
+        {
+            final LogicExpression<FilterableMessage> logic = (LogicExpression<FilterableMessage>) expression;
+            flatten((BooleanExpression<FilterableMessage>) logic.getLeft(), symbol, operands);
+            flatten((BooleanExpression<FilterableMessage>) logic.getRight(), symbol, operands);
+        }
+        else
+        {
+            operands.add(compilePredicate(expression));
+        }
+    }
+
+    private Predicate compileComparison(final ComparisonExpression<FilterableMessage> expression)
+    {
+        final Operator operator = Operator.forSymbol(expression.getExpressionSymbol());
+        if (operator == null)
+        {
+            return new InterpretedPredicate(expression, false, 0.5);
+        }
+
+        if (operator == Operator.EQUAL
+            && expression.getRight() instanceof ConstantExpression
+            && ((ConstantExpression) expression.getRight()).getValue() == null)
+        {
+            return new IsNull(compileValue(expression.getLeft()));
+        }
+
+        final Value left = compileValue(expression.getLeft());
+        final Value right = compileValue(expression.getRight());
+        if (left instanceof NumericHeader && isIntegral(right))
+        {
+            return new HeaderComparison(operator,
+                                        (NumericHeader) left,
+                                        ((Number) ((ConstantValue) right).getValue()).longValue());
+        }
+        else if (right instanceof NumericHeader && isIntegral(left))
+        {
+            return new HeaderComparison(operator.reverse(),
+                                        (NumericHeader) right,
+                                        ((Number) ((ConstantValue) left).getValue()).longValue());
+        }
+        else if (left instanceof ApplicationProperty && isNumeric(right))
+        {
+            // not for a constant on the left, which the interpreter does not always compare numerically
+            return new PropertyComparison(operator,
+                                          ((ApplicationProperty) left).getName(),
+                                          (Number) ((ConstantValue) right).getValue(),
+                                          new Comparison(operator, left, right));
+        }
+        return new Comparison(operator, left, right);
+    }
+
+    private Value compileValue(final Expression<FilterableMessage> expression)
+    {
+        if (isParameter(expression))
+        {
+            return new ConstantValue(_parameters.get(((ConstantExpression) expression).getValue()));
+        }
+        else if (isConstant(expression))
+        {
+            try
+            {
+                return new ConstantValue(expression.evaluate(null));
+            }
+            catch (RuntimeException e)
+            {
+                return new InterpretedValue(expression);
+            }
+        }
+        else if (expression instanceof JMSMessagePropertyExpression)
+        {
+            final String name = ((JMSMessagePropertyExpression) expression).getName();
+            if ("JMSTimestamp".equals(name))
+            {
+                return new NumericHeader(expression, 1)
+                {
+                    @Override
+                    long getLong(final FilterableMessage message)
+                    {
+                        return message.getTimestamp();
+                    }
+                };
+            }
+            else if ("JMSExpiration".equals(name))
+            {
+                return new NumericHeader(expression, 1)
+                {
+                    @Override
+                    long getLong(final FilterableMessage message)
+                    {
+                        return message.getExpiration();
+                    }
+                };
+            }
+            else if ("JMSPriority".equals(name))
+            {
+                return new NumericHeader(expression, 1)
+                {
+                    @Override
+                    long getLong(final FilterableMessage message)
+                    {
+                        return message.getPriority();
+                    }
+                };
+            }
+            else if (((JMSMessagePropertyExpression) expression).isApplicationProperty() && isPlainIdentifier(name))
+            {
+                return new ApplicationProperty(expression, name);
+            }
+            return new PropertyValue(expression);
+        }
+        return new InterpretedValue(expression);
+    }
+
+    /**
+     * @return true if the expression refers to no property, so has the same value for every message
+     */
+    private boolean isConstant(final Expression<FilterableMessage> expression)
+    {
+        if (expression instanceof ConstantExpression)
+        {
+            return !isParameter(expression);
+        }
+        else if (expression instanceof BinaryExpression)
+        {
+            final BinaryExpression<FilterableMessage> binary = (BinaryExpression<FilterableMessage>) expression;
+            return isConstant(binary.getLeft()) && isConstant(binary.getRight());
+        }
+        else if (expression instanceof UnaryExpression)
+        {
+            return isConstant(((UnaryExpression<FilterableMessage>) expression).getRight());
+        }
+        return false;
+    }
+
+    private boolean isParameter(final Expression<FilterableMessage> expression)
+    {
+        return expression instanceof ConstantExpression
+               && _parameters.containsKey(((ConstantExpression) expression).getValue());
+    }
+
+    /**
+     * @return true if evaluating the expression cannot throw
+     */
+    private static boolean isSimple(final Expression<FilterableMessage> expression)
+    {
+        return expression instanceof PropertyExpression || expression instanceof ConstantExpression;
+    }
+
+    /**
+     * @return true if the name is one which a message reads from its application properties without checking it
+     */
+    private static boolean isPlainIdentifier(final String name)
+    {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0)) || RESERVED_WORDS.contains(name))
+        {
+            return false;
+        }
+        for (int i = 1; i < name.length(); i++)
+        {
+            if (!Character.isJavaIdentifierPart(name.charAt(i)))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumeric(final Value value)
+    {
+        if (value instanceof ConstantValue)
+        {
+            final Object constant = ((ConstantValue) value).getValue();
+            return constant instanceof Integer || constant instanceof Long || constant instanceof Double;
+        }
+        return false;
+    }
+
+    private static boolean isIntegral(final Value value)
+    {
+        if (value instanceof ConstantValue)
+        {
+            final Object constant = ((ConstantValue) value).getValue();
+            return constant instanceof Integer || constant instanceof Long;
+        }
+        return false;
+    }
+
+    private static int toTruth(final Object value)
+    {
+        if (value == null)
+        {
+            return UNKNOWN;
+        }
+        return Boolean.TRUE.equals(value) ? TRUE : FALSE;
+    }
+
+    private static int toTruth(final boolean value)
+    {
+        return value ? TRUE : FALSE;
+    }
+
+    private static int equal(final Object lv, final Object rv)
+    {
+        if ((lv == null) ^ (rv == null))
+        {
+            return FALSE;
+        }
+        if (lv == rv || lv.equals(rv))
+        {
+            return TRUE;
+        }
+        if (lv instanceof Comparable && rv instanceof Comparable)
+        {
+            return toTruth(compare((Comparable) lv, (Comparable) rv) == 0);
+        }
+        return FALSE;
+    }
+
+    /**
+     * Compares two values as {@link ComparisonExpression} does, converting numbers to the wider of the two types
+     * without boxing them again.
+     *
+     * @return the sign of the comparison, or {@link #INCOMPARABLE} if the values cannot be compared
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(final Comparable lv, final Comparable rv)
+    {
+        final Class<?> lc = lv.getClass();
+        final Class<?> rc = rv.getClass();
+        if (lc == rc)
+        {
+            return Integer.signum(lv.compareTo(rv));
+        }
+
+        if (lc == Byte.class || lc == Short.class || lc == Integer.class || lc == Long.class)
+        {
+            final long l = ((Number) lv).longValue();
+            if (rc == Long.class
+                || (rc == Integer.class && lc != Integer.class)
+                || (rc == Short.class && lc == Byte.class))
+            {
+                return Long.compare(l, ((Number) rv).longValue());
+            }
+            else if (rc == Float.class)
+            {
+                return Float.compare(((Number) lv).floatValue(), (Float) rv);
+            }
+            else if (rc == Double.class)
+            {
+                return Double.compare(((Number) lv).doubleValue(), (Double) rv);
+            }
+            return INCOMPARABLE;
+        }
+        else if (lc == Float.class)
+        {
+            if (rc == Integer.class || rc == Long.class)
+            {
+                return Float.compare((Float) lv, ((Number) rv).floatValue());
+            }
+            else if (rc == Double.class)
+            {
+                return Double.compare(((Float) lv).doubleValue(), (Double) rv);
+            }
+            return INCOMPARABLE;
+        }
+        else if (lc == Double.class)
+        {
+            if (rc == Integer.class || rc == Long.class || rc == Float.class)
+            {
+                return Double.compare((Double) lv, ((Number) rv).doubleValue());
+            }
+            return INCOMPARABLE;
+        }
+        else if (lv instanceof Enum)
+        {
+            if (rv instanceof String)
+            {
+                try
+                {
+                    return Integer.signum(lv.compareTo(Enum.valueOf((Class) lc, (String) rv)));
+                }
+                catch (IllegalArgumentException e)
+                {
+                    return INCOMPARABLE;
+                }
+            }
+            return INCOMPARABLE;
+        }
+        else if (lv instanceof String && rv instanceof Enum)
+        {
+            return Integer.signum(((Comparable) Enum.valueOf((Class) rc, (String) lv)).compareTo(rv));
+        }
+        return INCOMPARABLE;
+    }
+
+    private enum Operator
+    {
+        EQUAL("=", 0.1)
+        {
+            @Override
+            boolean test(final int comparison)
+            {
+                return comparison == 0;
+            }
+        },
+        GREATER_THAN(">", 0.5)
+        {
+            @Override
+            boolean test(final int comparison)
+            {
+                return comparison > 0;
+            }
+        },
+        GREATER_THAN_EQUAL(">=", 0.5)
+        {
+            @Override
+            boolean test(final int comparison)
+            {
+                return comparison >= 0;
+            }
+        },
+        LESS_THAN("<", 0.5)
+        {
+            @Override
+            boolean test(final int comparison)
+            {
+                return comparison < 0;
+            }
+        },
+        LESS_THAN_EQUAL("<=", 0.5)
+        {
+            @Override
+            boolean test(final int comparison)
+            {
+                return comparison <= 0;
+            }
+        };
+
+        private final String _symbol;
+        private final double _probability;
+
+        Operator(final String symbol, final double probability)
+        {
+            _symbol = symbol;
+            _probability = probability;
+        }
+
+        abstract boolean test(int comparison);
+
+        /**
+         * @return the operator giving the same result with the operands swapped
+         */
+        Operator reverse()
+        {
+            switch (this)
+            {
+                case GREATER_THAN:
+                    return LESS_THAN;
+                case GREATER_THAN_EQUAL:
+                    return LESS_THAN_EQUAL;
+                case LESS_THAN:
+                    return GREATER_THAN;
+                case LESS_THAN_EQUAL:
+                    return GREATER_THAN_EQUAL;
+                default:
+                    return this;
+            }
+        }
+
+        static Operator forSymbol(final String symbol)
+        {
+            for (Operator operator : values())
+            {
+                if (operator._symbol.equals(symbol))
+                {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class CompiledSelector implements BooleanExpression<FilterableMessage>
+    {
+        private final Predicate _predicate;
+        private final BooleanExpression<FilterableMessage> _expression;
+
+        private CompiledSelector(final Predicate predicate, final BooleanExpression<FilterableMessage> expression)
+        {
+            _predicate = predicate;
+            _expression = expression;
+        }
+
+        @Override
+        public boolean matches(final FilterableMessage message)
+        {
+            return _predicate.isTrue(message);
+        }
+
+        @Override
+        public Object evaluate(final FilterableMessage message)
+        {
+            switch (_predicate.evaluate(message))
+            {
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                default:
+                    return null;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return _expression.toString();
+        }
+    }
+
+    /**
+     * Evaluates to true, false or unknown.
+     */
+    private abstract static class Predicate
+    {
+        abstract int evaluate(FilterableMessage message);
+
+        boolean isTrue(final FilterableMessage message)
+        {
+            return evaluate(message) == TRUE;
+        }
+
+        boolean isFalse(final FilterableMessage message)
+        {
+            return evaluate(message) == FALSE;
+        }
+
+        /**
+         * @return a relative estimate of the work of an evaluation
+         */
+        abstract double getCost();
+
+        /**
+         * @return an estimate of the likelihood of evaluating to true
+         */
+        abstract double getProbability();
+
+        /**
+         * @return true if evaluating cannot throw, so that the predicate may be evaluated out of order
+         */
+        abstract boolean isSafe();
+    }
+
+    private static final class ConstantPredicate extends Predicate
+    {
+        private static final ConstantPredicate TRUE_PREDICATE = new ConstantPredicate(TRUE);
+        private static final ConstantPredicate FALSE_PREDICATE = new ConstantPredicate(FALSE);
+        private static final ConstantPredicate UNKNOWN_PREDICATE = new ConstantPredicate(UNKNOWN);
+
+        private final int _value;
+
+        private ConstantPredicate(final int value)
+        {
+            _value = value;
+        }
+
+        static ConstantPredicate valueOf(final int value)
+        {
+            return value == TRUE ? TRUE_PREDICATE : value == FALSE ? FALSE_PREDICATE : UNKNOWN_PREDICATE;
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            return _value;
+        }
+
+        @Override
+        double getCost()
+        {
+            return 0;
+        }
+
+        @Override
+        double getProbability()
+        {
+            return _value == TRUE ? 1 : 0;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return true;
+        }
+    }
+
+    private static final class InterpretedPredicate extends Predicate
+    {
+        private final BooleanExpression<FilterableMessage> _expression;
+        private final boolean _safe;
+        private final double _probability;
+
+        private InterpretedPredicate(final BooleanExpression<FilterableMessage> expression,
+                                     final boolean safe,
+                                     final double probability)
+        {
+            _expression = expression;
+            _safe = safe;
+            _probability = probability;
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            return toTruth(_expression.evaluate(message));
+        }
+
+        @Override
+        double getCost()
+        {
+            return 5;
+        }
+
+        @Override
+        double getProbability()
+        {
+            return _probability;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return _safe;
+        }
+    }
+
+    /**
+     * A chain of ANDs. As parsed, an operand which is not true ends the evaluation with its value.
+     */
+    private static final class And extends Predicate
+    {
+        private final Predicate[] _operands;
+        private final Predicate[] _matchOrder;
+
+        private And(final Predicate[] operands)
+        {
+            _operands = operands;
+            _matchOrder = matchOrder(operands, new Comparator<Predicate>()
+            {
+                @Override
+                public int compare(final Predicate p1, final Predicate p2)
+                {
+                    return Double.compare(p1.getCost() / Math.max(1.0E-6, 1 - p1.getProbability()),
+                                          p2.getCost() / Math.max(1.0E-6, 1 - p2.getProbability()));
+                }
+            });
+        }
+
+        static Predicate create(final List<Predicate> operands)
+        {
+            final List<Predicate> folded = new ArrayList<>();
+            for (Predicate operand : operands)
+            {
+                if (operand != ConstantPredicate.TRUE_PREDICATE)
+                {
+                    folded.add(operand);
+                    if (operand instanceof ConstantPredicate)
+                    {
+                        // nothing after a false or unknown operand is evaluated
+                        break;
+                    }
+                }
+            }
+            if (folded.isEmpty())
+            {
+                return ConstantPredicate.TRUE_PREDICATE;
+            }
+            else if (folded.size() == 1 || folded.get(0) instanceof ConstantPredicate)
+            {
+                return folded.get(0);
+            }
+            return new And(folded.toArray(new Predicate[folded.size()]));
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            for (Predicate operand : _operands)
+            {
+                final int value = operand.evaluate(message);
+                if (value != TRUE)
+                {
+                    return value;
+                }
+            }
+            return TRUE;
+        }
+
+        @Override
+        boolean isTrue(final FilterableMessage message)
+        {
+            for (Predicate operand : _matchOrder)
+            {
+                if (!operand.isTrue(message))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        double getCost()
+        {
+            return totalCost(_operands);
+        }
+
+        @Override
+        double getProbability()
+        {
+            double probability = 1;
+            for (Predicate operand : _operands)
+            {
+                probability *= operand.getProbability();
+            }
+            return probability;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return allSafe(_operands);
+        }
+    }
+
+    /**
+     * A chain of ORs. As parsed, a true operand ends the evaluation, and otherwise the value is that of the last.
+     */
+    private static final class Or extends Predicate
+    {
+        private final Predicate[] _operands;
+        private final Predicate[] _matchOrder;
+
+        private Or(final Predicate[] operands)
+        {
+            _operands = operands;
+            _matchOrder = matchOrder(operands, new Comparator<Predicate>()
+            {
+                @Override
+                public int compare(final Predicate p1, final Predicate p2)
+                {
+                    return Double.compare(p1.getCost() / Math.max(1.0E-6, p1.getProbability()),
+                                          p2.getCost() / Math.max(1.0E-6, p2.getProbability()));
+                }
+            });
+        }
+
+        static Predicate create(final List<Predicate> operands)
+        {
+            final List<Predicate> folded = new ArrayList<>();
+            for (int i = 0; i < operands.size(); i++)
+            {
+                final Predicate operand = operands.get(i);
+                if (operand == ConstantPredicate.TRUE_PREDICATE)
+                {
+                    // nothing after a true operand is evaluated
+                    folded.add(operand);
+                    break;
+                }
+                else if (!(operand instanceof ConstantPredicate) || i == operands.size() - 1)
+                {
+                    folded.add(operand);
+                }
+            }
+            if (folded.size() == 1 || folded.get(0) == ConstantPredicate.TRUE_PREDICATE)
+            {
+                return folded.get(0);
+            }
+            return new Or(folded.toArray(new Predicate[folded.size()]));
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            final int last = _operands.length - 1;
+            for (int i = 0; i < last; i++)
+            {
+                if (_operands[i].evaluate(message) == TRUE)
+                {
+                    return TRUE;
+                }
+            }
+            return _operands[last].evaluate(message);
+        }
+
+        @Override
+        boolean isTrue(final FilterableMessage message)
+        {
+            for (Predicate operand : _matchOrder)
+            {
+                if (operand.isTrue(message))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        double getCost()
+        {
+            return totalCost(_operands);
+        }
+
+        @Override
+        double getProbability()
+        {
+            double probability = 1;
+            for (Predicate operand : _operands)
+            {
+                probability *= 1 - operand.getProbability();
+            }
+            return 1 - probability;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return allSafe(_operands);
+        }
+    }
+
+    private static Predicate[] matchOrder(final Predicate[] operands, final Comparator<Predicate> comparator)
+    {
+        if (!allSafe(operands))
+        {
+            return operands;
+        }
+        final Predicate[] ordered = operands.clone();
+        Arrays.sort(ordered, comparator);
+        return ordered;
+    }
+
+    private static double totalCost(final Predicate[] operands)
+    {
+        double cost = 0;
+        for (Predicate operand : operands)
+        {
+            cost += operand.getCost();
+        }
+        return cost;
+    }
+
+    private static boolean allSafe(final Predicate[] operands)
+    {
+        for (Predicate operand : operands)
+        {
+            if (!operand.isSafe())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Not extends Predicate
+    {
+        private final Predicate _operand;
+
+        private Not(final Predicate operand)
+        {
+            _operand = operand;
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            final int value = _operand.evaluate(message);
+            return value == UNKNOWN ? UNKNOWN : TRUE - value;
+        }
+
+        @Override
+        boolean isTrue(final FilterableMessage message)
+        {
+            return _operand.isFalse(message);
+        }
+
+        @Override
+        boolean isFalse(final FilterableMessage message)
+        {
+            return _operand.isTrue(message);
+        }
+
+        @Override
+        double getCost()
+        {
+            return _operand.getCost();
+        }
+
+        @Override
+        double getProbability()
+        {
+            return 1 - _operand.getProbability();
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return _operand.isSafe();
+        }
+    }
+
+    private static final class BooleanCast extends Predicate
+    {
+        private final Value _operand;
+
+        private BooleanCast(final Value operand)
+        {
+            _operand = operand;
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            final Object value = _operand.evaluate(message);
+            if (value == null)
+            {
+                return UNKNOWN;
+            }
+            return toTruth(value.getClass() == Boolean.class && (Boolean) value);
+        }
+
+        @Override
+        double getCost()
+        {
+            return _operand.getCost();
+        }
+
+        @Override
+        double getProbability()
+        {
+            return 0.5;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return _operand.isSafe();
+        }
+    }
+
+    private static final class IsNull extends Predicate
+    {
+        private final Value _operand;
+
+        private IsNull(final Value operand)
+        {
+            _operand = operand;
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            return toTruth(_operand.evaluate(message) == null);
+        }
+
+        @Override
+        double getCost()
+        {
+            return _operand.getCost();
+        }
+
+        @Override
+        double getProbability()
+        {
+            return 0.3;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return _operand.isSafe();
+        }
+    }
+
+    private static final class Comparison extends Predicate
+    {
+        private final Operator _operator;
+        private final Value _left;
+        private final Value _right;
+
+        private Comparison(final Operator operator, final Value left, final Value right)
+        {
+            _operator = operator;
+            _left = left;
+            _right = right;
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            if (_operator == Operator.EQUAL)
+            {
+                return equal(_left.evaluate(message), _right.evaluate(message));
+            }
+
+            final Comparable lv = (Comparable) _left.evaluate(message);
+            if (lv == null)
+            {
+                return UNKNOWN;
+            }
+            final Comparable rv = (Comparable) _right.evaluate(message);
+            if (rv == null)
+            {
+                return UNKNOWN;
+            }
+            final int comparison = compare(lv, rv);
+            return toTruth(comparison != INCOMPARABLE && _operator.test(comparison));
+        }
+
+        @Override
+        double getCost()
+        {
+            return 1 + _left.getCost() + _right.getCost();
+        }
+
+        @Override
+        double getProbability()
+        {
+            return _operator._probability;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return _left.isSafe() && _right.isSafe();
+        }
+    }
+
+    /**
+     * Compares a numeric JMS header with an integral literal, which the interpreter would compare as longs.
+     */
+    private static final class HeaderComparison extends Predicate
+    {
+        private final Operator _operator;
+        private final NumericHeader _header;
+        private final long _value;
+
+        private HeaderComparison(final Operator operator, final NumericHeader header, final long value)
+        {
+            _operator = operator;
+            _header = header;
+            _value = value;
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            return toTruth(_operator.test(Long.compare(_header.getLong(message), _value)));
+        }
+
+        @Override
+        double getCost()
+        {
+            return 1 + _header.getCost();
+        }
+
+        @Override
+        double getProbability()
+        {
+            return _operator._probability;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * Compares a numeric literal with an application property, reading the property without boxing it when the
+     * message holds its properties in a {@link PropertyMap}. Properties which are not numeric, and messages which do
+     * not hold their properties in a property map, are compared as the interpreter would.
+     */
+    private static final class PropertyComparison extends Predicate
+    {
+        private final Operator _operator;
+        private final String _name;
+        private final boolean _integral;
+        private final long _long;
+        private final double _double;
+        private final Comparison _comparison;
+
+        private PropertyComparison(final Operator operator,
+                                   final String name,
+                                   final Number value,
+                                   final Comparison comparison)
+        {
+            _operator = operator;
+            _name = name;
+            _integral = !(value instanceof Double);
+            _long = value.longValue();
+            _double = value.doubleValue();
+            _comparison = comparison;
+        }
+
+        @Override
+        int evaluate(final FilterableMessage message)
+        {
+            final PropertyMap properties =
+                    message instanceof PropertyMapMessage ? ((PropertyMapMessage) message).getPropertyMap() : null;
+            if (properties == null)
+            {
+                return _comparison.evaluate(message);
+            }
+
+            final int index = properties.indexOf(_name);
+            if (index < 0)
+            {
+                return _operator == Operator.EQUAL ? FALSE : UNKNOWN;
+            }
+
+            final int comparison;
+            switch (properties.getType(index))
+            {
+                case PropertyMap.BYTE:
+                case PropertyMap.SHORT:
+                case PropertyMap.INT:
+                case PropertyMap.LONG:
+                    comparison = _integral
+                            ? Long.compare(properties.getLong(index), _long)
+                            : Double.compare((double) properties.getLong(index), _double);
+                    break;
+                case PropertyMap.FLOAT:
+                    comparison = _integral
+                            ? Float.compare(properties.getFloat(index), (float) _long)
+                            : Double.compare(properties.getDouble(index), _double);
+                    break;
+                case PropertyMap.DOUBLE:
+                    comparison = Double.compare(properties.getDouble(index), _integral ? (double) _long : _double);
+                    break;
+                default:
+                    return _comparison.evaluate(message);
+            }
+            return toTruth(_operator.test(comparison));
+        }
+
+        @Override
+        double getCost()
+        {
+            return 2;
+        }
+
+        @Override
+        double getProbability()
+        {
+            return _operator._probability;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * Evaluates to a value, as an {@link Expression}.
+     */
+    private abstract static class Value
+    {
+        abstract Object evaluate(FilterableMessage message);
+
+        abstract double getCost();
+
+        abstract boolean isSafe();
+    }
+
+    private static final class ConstantValue extends Value
+    {
+        private final Object _value;
+
+        private ConstantValue(final Object value)
+        {
+            _value = value;
+        }
+
+        Object getValue()
+        {
+            return _value;
+        }
+
+        @Override
+        Object evaluate(final FilterableMessage message)
+        {
+            return _value;
+        }
+
+        @Override
+        double getCost()
+        {
+            return 0;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return true;
+        }
+    }
+
+    private static class PropertyValue extends Value
+    {
+        private final Expression<FilterableMessage> _expression;
+        private final double _cost;
+
+        private PropertyValue(final Expression<FilterableMessage> expression)
+        {
+            this(expression, 2);
+        }
+
+        PropertyValue(final Expression<FilterableMessage> expression, final double cost)
+        {
+            _expression = expression;
+            _cost = cost;
+        }
+
+        @Override
+        Object evaluate(final FilterableMessage message)
+        {
+            return _expression.evaluate(message);
+        }
+
+        @Override
+        double getCost()
+        {
+            return _cost;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * An application property, read from the message by name.
+     */
+    private static final class ApplicationProperty extends PropertyValue
+    {
+        private final String _name;
+
+        private ApplicationProperty(final Expression<FilterableMessage> expression, final String name)
+        {
+            super(expression, 2);
+            _name = name;
+        }
+
+        String getName()
+        {
+            return _name;
+        }
+    }
+
+    /**
+     * A numeric JMS header, which can be read without boxing.
+     */
+    private abstract static class NumericHeader extends PropertyValue
+    {
+        NumericHeader(final Expression<FilterableMessage> expression, final double cost)
+        {
+            super(expression, cost);
+        }
+
+        abstract long getLong(FilterableMessage message);
+    }
+
+    private static final class InterpretedValue extends Value
+    {
+        private final Expression<FilterableMessage> _expression;
+
+        private InterpretedValue(final Expression<FilterableMessage> expression)
+        {
+            _expression = expression;
+        }
+
+        @Override
+        Object evaluate(final FilterableMessage message)
+        {
+            return _expression.evaluate(message);
+        }
+
+        @Override
+        double getCost()
+        {
+            return 4;
+        }
+
+        @Override
+        boolean isSafe()
+        {
+            return false;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import java.math.BigDecimal;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * An expression which performs an operation on two expression values
@@ -65,7 +66,22 @@ public abstract class UnaryExpression<T> implements Expression<T>
 
         final Collection<?> inList = t;
 
-        return new InExpression<>(right, inList, not, allowNonJms);
+        // A list of string literals, as the JMS selector grammar allows, is looked up by hash rather than scanned.
+        Set<Object> strings = null;
+        if (elements.size() > 1)
+        {
+            strings = new HashSet<>(elements);
+            for (Object element : strings)
+            {
+                if (!(element instanceof String))
+                {
+                    strings = null;
+                    break;
+                }
+            }
+        }
+
+        return new InExpression<>(right, inList, strings, not, allowNonJms);
     }
 
     abstract static class BooleanUnaryExpression<E> extends UnaryExpression<E> implements BooleanExpression<E>
@@ -212,16 +228,19 @@ public abstract class UnaryExpression<T> implements Expression<T>
     private static class InExpression<E> extends BooleanUnaryExpression<E>
     {
         private final Collection<?> _inList;
+        private final Set<?> _strings;
         private final boolean _not;
         private final boolean _allowNonJms;
 
         public InExpression(final Expression<E> right,
                             final Collection<?> inList,
+                            final Set<?> strings,
                             final boolean not,
                             final boolean allowNonJms)
         {
             super(right);
             _inList = inList;
+            _strings = strings;
             _not = not;
             _allowNonJms = allowNonJms;
         }
@@ -248,6 +267,10 @@ public abstract class UnaryExpression<T> implements Expression<T>
 
         private boolean isInList(final Object rvalue, final E expression)
         {
+            if (_strings != null && rvalue instanceof String)
+            {
+                return _strings.contains(rvalue);
+            }
             for(Object entry : _inList)
             {
                 Object currentRvalue = rvalue;
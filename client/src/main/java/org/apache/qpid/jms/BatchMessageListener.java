@@ -0,0 +1,44 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.jms;
+
+import java.util.List;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+/**
+ * A message listener which is given the messages already prefetched for its consumer together, up to the maximum
+ * batch size of the consumer, rather than one at a time.
+ * <p>
+ * Once set on a consumer, every delivery is made through {@link #onMessages(List)}, even when only one message is
+ * available. The messages of a batch are acknowledged together once it returns, in the auto and dups-ok acknowledge
+ * modes; in the client acknowledge and transacted modes they are settled as any other delivered messages.
+ */
+public interface BatchMessageListener extends MessageListener
+{
+    /**
+     * Passes a batch of messages to the listener.
+     *
+     * @param messages the messages, in the order they were received, which must not be modified
+     */
+    void onMessages(List<Message> messages);
+}
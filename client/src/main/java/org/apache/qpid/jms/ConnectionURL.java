@@ -76,6 +76,22 @@ public interface ConnectionURL
     String OPTIONS_COMPRESS_MESSAGES = "compressMessages";
     String OPTIONS_MESSAGES_COMPRESSION_THRESHOLD_SIZE = "messageCompressionThresholdSize";
 
+    String OPTIONS_ENCRYPTION_KEY_REUSE_COUNT = "encryptionKeyReuseCount";
+    String OPTIONS_ENCRYPTION_KEY_REUSE_INTERVAL = "encryptionKeyReuseInterval";
+    String OPTIONS_MESSAGE_ENCRYPTION_CIPHER_NAME = "messageEncryptionCipherName";
+
+    String OPTIONS_PRODUCER_PIPELINE_THREADS = "producerPipelineThreads";
+    String OPTIONS_PRODUCER_PIPELINE_DEPTH = "producerPipelineDepth";
+
+    String OPTIONS_DISPATCHER_THREADS = "dispatcherThreads";
+    String OPTIONS_ADAPTIVE_PREFETCH = "adaptivePrefetch";
+    String OPTIONS_MIN_PREFETCH = "minprefetch";
+    String OPTIONS_MAX_PREFETCH_BYTES = "maxPrefetchBytes";
+    String OPTIONS_MAX_CONSUMER_PREFETCH_BYTES = "maxConsumerPrefetchBytes";
+    String OPTIONS_LISTENER_THREADS = "listenerThreads";
+    String OPTIONS_LISTENER_ORDERING_KEY = "listenerOrderingKey";
+    String OPTIONS_DROP_EXPIRED = "dropExpired";
+
 
     String OPTIONS_DEFAULT_TOPIC_EXCHANGE = "defaultTopicExchange";
     String OPTIONS_DEFAULT_QUEUE_EXCHANGE = "defaultQueueExchange";
@@ -20,8 +20,30 @@
  */
 package org.apache.qpid.jms;
 
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
 /** 
  */
 public interface MessageConsumer extends javax.jms.MessageConsumer
 {
+    /**
+     * Receives the next message, as {@link #receive(long)}, together with up to <tt>maxMessages - 1</tt> further
+     * messages which have already been prefetched, without waiting for any more to arrive.
+     *
+     * @param maxMessages the maximum number of messages to return, at least 1
+     * @param timeout     the time in milliseconds to wait for the first message, or 0 to wait indefinitely
+     * @return the messages received, which is empty if none arrived within the timeout or the consumer was closed
+     */
+    List<Message> receive(int maxMessages, long timeout) throws JMSException;
+
+    /**
+     * Sets the largest batch of messages given to a {@link BatchMessageListener}, which defaults to the prefetch of
+     * the consumer.
+     */
+    void setMaxBatchSize(int maxBatchSize);
+
+    int getMaxBatchSize();
 }
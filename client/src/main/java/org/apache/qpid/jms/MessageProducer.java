@@ -38,4 +38,35 @@ public interface MessageProducer extends javax.jms.MessageProducer
 
     void setDeliveryDelay(long delay);
 
+    /**
+     * Creates a template for messages sent to the producer's destination. The application properties of the
+     * prototype become the constant properties of every message sent with the template.
+     *
+     * @param prototype message whose application properties are copied into the template
+     * @return the template
+     * @throws JMSException if the template cannot be created
+     */
+    MessageTemplate createMessageTemplate(Message prototype) throws JMSException;
+
+    /**
+     * Creates a template for messages sent to the given destination, for use with a producer created without a
+     * destination.
+     *
+     * @param destination the destination of messages sent with the template
+     * @param prototype message whose application properties are copied into the template
+     * @return the template
+     * @throws JMSException if the template cannot be created
+     */
+    MessageTemplate createMessageTemplate(Destination destination, Message prototype) throws JMSException;
+
+    /**
+     * Sends a message to the destination of the template, using the producer's default delivery mode, priority
+     * and time to live. The message is sent with the properties of the template in addition to its own.
+     *
+     * @param template a template created by this producer
+     * @param message the message to send
+     * @throws JMSException if the message cannot be sent
+     */
+    void send(MessageTemplate template, Message message) throws JMSException;
+
 }
@@ -0,0 +1,37 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.jms;
+
+import javax.jms.Destination;
+
+/**
+ * A message template captures the destination and the constant properties of messages which are published
+ * repeatedly by a {@link MessageProducer}. The protocol encoding of the constant part of the message header is
+ * prepared once, when the template is created, so that sending a message with the template only needs to encode
+ * the properties which vary from message to message.
+ *
+ * @see MessageProducer#createMessageTemplate(javax.jms.Message)
+ * @see MessageProducer#send(MessageTemplate, javax.jms.Message)
+ */
+public interface MessageTemplate
+{
+    Destination getDestination();
+}
@@ -275,6 +275,31 @@ public class Session extends SessionInvoker
         }
     }
 
+    /**
+     * Takes the credit needed to transfer one message ahead of the transfer itself, waiting for it as
+     * {@link #invoke(Method)} would. The transfer must then be sent with {@link #invokeWithAcquiredCredit(Method)},
+     * or the credit returned with {@link #releaseMessageCredit()}.
+     *
+     * @return true if credit was taken, false if the session is not subject to flow control
+     */
+    public boolean acquireMessageCredit()
+    {
+        if (!flowControl)
+        {
+            return false;
+        }
+        acquireCredit();
+        return true;
+    }
+
+    /**
+     * Returns credit taken by {@link #acquireMessageCredit()} for a transfer which will not be sent.
+     */
+    public void releaseMessageCredit()
+    {
+        credit.release();
+    }
+
     private void initReceiver()
     {
         synchronized (processedLock)
@@ -614,10 +639,23 @@ public class Session extends SessionInvoker
     }
 
     public void invoke(Method m, Runnable postIdSettingAction)
+    {
+        invoke(m, postIdSettingAction, false);
+    }
+
+    /**
+     * Sends a message transfer whose credit has already been taken by {@link #acquireMessageCredit()}.
+     */
+    public void invokeWithAcquiredCredit(Method m)
+    {
+        invoke(m, null, true);
+    }
+
+    private void invoke(Method m, Runnable postIdSettingAction, boolean creditAcquired)
     {
         if (m.getEncodedTrack() == Frame.L4)
         {
-            if (m.hasPayload())
+            if (m.hasPayload() && !creditAcquired)
             {
                 acquireCredit();
             }
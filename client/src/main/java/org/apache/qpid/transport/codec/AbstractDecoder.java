@@ -270,6 +270,74 @@ public abstract class AbstractDecoder implements Decoder
         return result;
     }
 
+    public PropertyMap readPropertyMap()
+    {
+        long size = readUint32();
+
+        if (size == 0)
+        {
+            return null;
+        }
+
+        long count = readUint32();
+
+        PropertyMap result = new PropertyMap((int) Math.min(count, 256));
+        for (int i = 0; i < count; i++)
+        {
+            String key = readStr8();
+            byte code = get();
+            Type t = getType(code);
+            switch (t)
+            {
+            case INT8:
+                result.putByte(key, get());
+                break;
+            case CHAR:
+                result.putChar(key, (char) get());
+                break;
+            case BOOLEAN:
+                result.putBoolean(key, get() > 0);
+                break;
+            case BIN8:
+            case UINT8:
+                result.putShort(key, readUint8());
+                break;
+            case INT16:
+                result.putShort(key, (short) readUint16());
+                break;
+            case BIN16:
+            case UINT16:
+                result.putInt(key, readUint16());
+                break;
+            case CHAR_UTF32:
+            case INT32:
+                result.putInt(key, (int) readUint32());
+                break;
+            case BIN32:
+            case UINT32:
+                result.putLong(key, readUint32());
+                break;
+            case BIN64:
+            case UINT64:
+            case INT64:
+            case DATETIME:
+                result.putLong(key, readUint64());
+                break;
+            case FLOAT:
+                result.putFloat(key, Float.intBitsToFloat((int) readUint32()));
+                break;
+            case DOUBLE:
+                result.putDouble(key, Double.longBitsToDouble(readUint64()));
+                break;
+            default:
+                result.put(key, read(t));
+                break;
+            }
+        }
+
+        return result;
+    }
+
     public List<Object> readList()
     {
         long size = readUint32();
@@ -324,6 +392,36 @@ public abstract class AbstractDecoder implements Decoder
         return result;
     }
 
+    /**
+     * Reads a value preceded by its type code, as the values of a map or list are encoded.
+     */
+    public Object readTypedValue()
+    {
+        return read(getType(get()));
+    }
+
+    /**
+     * Skips over a value preceded by its type code, as the values of a map or list are encoded, without decoding it.
+     */
+    public void skipTypedValue()
+    {
+        skip(readSize(getType(get())));
+    }
+
+    protected void skip(long size)
+    {
+        byte[] bytes = new byte[(int) Math.min(size, 1024)];
+        while (size > 0)
+        {
+            if (size < bytes.length)
+            {
+                bytes = new byte[(int) size];
+            }
+            get(bytes);
+            size -= bytes.length;
+        }
+    }
+
     private Type getType(byte code)
     {
         Type type = Type.get(code);
@@ -342,7 +342,14 @@ public abstract class AbstractEncoder implements Encoder
     public void writeMap(Map<String,Object> map)
     {
         int pos = beginSize32();
-        if (map != null)
+        if (map instanceof PreEncodedMap && ((PreEncodedMap) map).isFixedEntriesEncodable())
+        {
+            PreEncodedMap preEncodedMap = (PreEncodedMap) map;
+            writeUint32(preEncodedMap.getFixedEntryCount() + preEncodedMap.getAddedEntries().size());
+            put(preEncodedMap.getEncodedFixedEntries());
+            writeMapEntries(preEncodedMap.getAddedEntries());
+        }
+        else if (map != null)
         {
             writeUint32(map.size());
             writeMapEntries(map);
@@ -352,6 +359,12 @@ public abstract class AbstractEncoder implements Encoder
 
     protected void writeMapEntries(Map<String,Object> map)
     {
+        if (map instanceof PropertyMap)
+        {
+            writePropertyMapEntries((PropertyMap) map);
+            return;
+        }
+
         for (Map.Entry<String,Object> entry : map.entrySet())
         {
             String key = entry.getKey();
@@ -363,6 +376,55 @@ public abstract class AbstractEncoder implements Encoder
         }
     }
 
+    private void writePropertyMapEntries(PropertyMap map)
+    {
+        for (int i = 0; i < map.size(); i++)
+        {
+            writeStr8(map.getKey(i));
+            switch (map.getType(i))
+            {
+            case PropertyMap.BOOLEAN:
+                put(Type.BOOLEAN.getCode());
+                put(map.getBoolean(i) ? (byte) 1 : (byte) 0);
+                break;
+            case PropertyMap.BYTE:
+                put(Type.INT8.getCode());
+                put((byte) map.getLong(i));
+                break;
+            case PropertyMap.SHORT:
+                put(Type.INT16.getCode());
+                writeUint16((short) map.getLong(i));
+                break;
+            case PropertyMap.CHAR:
+                put(Type.CHAR.getCode());
+                put((byte) map.getLong(i));
+                break;
+            case PropertyMap.INT:
+                put(Type.INT32.getCode());
+                writeUint32((int) map.getLong(i));
+                break;
+            case PropertyMap.LONG:
+                put(Type.INT64.getCode());
+                writeUint64(map.getLong(i));
+                break;
+            case PropertyMap.FLOAT:
+                put(Type.FLOAT.getCode());
+                writeUint32(Float.floatToIntBits(map.getFloat(i)));
+                break;
+            case PropertyMap.DOUBLE:
+                put(Type.DOUBLE.getCode());
+                writeUint64(Double.doubleToLongBits(map.getDouble(i)));
+                break;
+            default:
+                Object value = map.getValue(i);
+                Type type = encoding(value);
+                put(type.getCode());
+                write(type, value);
+                break;
+            }
+        }
+    }
+
     public void writeList(List<Object> list)
     {
         int pos = beginSize32();
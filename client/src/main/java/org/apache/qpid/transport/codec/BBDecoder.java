@@ -22,6 +22,7 @@ package org.apache.qpid.transport.codec;
 
 import org.apache.qpid.transport.Binary;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
@@ -71,6 +72,16 @@ public final class BBDecoder extends AbstractDecoder
         }
     }
 
+    @Override
+    protected void skip(long size)
+    {
+        if (size < 0 || size > in.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+        in.position(in.position() + (int) size);
+    }
+
     public boolean hasRemaining()
     {
         return in.hasRemaining();
@@ -172,6 +172,14 @@ public interface Decoder
      * @return the decoded map.
      */
     Map<String,Object> readMap();
+
+    /**
+     * Reads a map as {@link #readMap()} does, into a {@link PropertyMap} which holds its boolean and numeric values
+     * without boxing them. An empty map is read as a new, modifiable map.
+     *
+     * @return the decoded map.
+     */
+    PropertyMap readPropertyMap();
     
     /**
      * A list is an ordered sequence of (type, value) pairs. The (type, value) pair forms an item within the list. 
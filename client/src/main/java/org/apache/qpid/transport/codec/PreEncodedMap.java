@@ -0,0 +1,254 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.codec;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map made up of a fixed set of entries, whose encoded form is computed once, followed by entries which may be
+ * added for each use of the map. When none of the added entries replaces a fixed entry, the encoder writes the
+ * pre-encoded fixed entries directly and only encodes the added entries.
+ * <p>
+ * Fixed entries may be replaced by putting a new value for their key. Removing a fixed entry turns the map into a
+ * plain map holding all its entries, which are then all encoded each time.
+ */
+public class PreEncodedMap extends AbstractMap<String, Object>
+{
+    private Map<String, Object> _fixedEntries;
+    private ByteBuffer _encodedFixedEntries;
+    private Map<String, Object> _entries;
+    private int _replacedFixedEntries;
+
+    private PreEncodedMap(final Map<String, Object> fixedEntries,
+                          final ByteBuffer encodedFixedEntries,
+                          final Map<String, Object> entries)
+    {
+        _fixedEntries = fixedEntries;
+        _encodedFixedEntries = encodedFixedEntries;
+        _entries = entries;
+        for (String key : entries.keySet())
+        {
+            if (fixedEntries.containsKey(key))
+            {
+                _replacedFixedEntries++;
+            }
+        }
+    }
+
+    /**
+     * Creates a map with the given fixed entries, encoding them.
+     */
+    public PreEncodedMap(final Map<String, Object> fixedEntries)
+    {
+        _fixedEntries = Collections.unmodifiableMap(new LinkedHashMap<>(fixedEntries));
+        BBEncoder encoder = new BBEncoder(256);
+        encoder.writeMapEntries(_fixedEntries);
+        ByteBuffer encoded = encoder.buffer();
+        _encodedFixedEntries = ByteBuffer.allocate(encoded.remaining());
+        _encodedFixedEntries.put(encoded);
+        _encodedFixedEntries.flip();
+        _entries = new LinkedHashMap<>();
+    }
+
+    /**
+     * Returns a new map with the fixed entries of this map followed by a copy of the given entries.
+     */
+    public PreEncodedMap withEntries(final Map<String, Object> entries)
+    {
+        return new PreEncodedMap(_fixedEntries, _encodedFixedEntries, copyOf(entries));
+    }
+
+    private static Map<String, Object> copyOf(final Map<String, Object> entries)
+    {
+        if (entries == null)
+        {
+            return new LinkedHashMap<>();
+        }
+        else if (entries instanceof PropertyMap)
+        {
+            return new PropertyMap((PropertyMap) entries);
+        }
+        else
+        {
+            return new LinkedHashMap<>(entries);
+        }
+    }
+
+    boolean isFixedEntriesEncodable()
+    {
+        return _encodedFixedEntries != null && _replacedFixedEntries == 0;
+    }
+
+    ByteBuffer getEncodedFixedEntries()
+    {
+        return _encodedFixedEntries.duplicate();
+    }
+
+    int getFixedEntryCount()
+    {
+        return _fixedEntries.size();
+    }
+
+    Map<String, Object> getAddedEntries()
+    {
+        return _entries;
+    }
+
+    @Override
+    public int size()
+    {
+        return _fixedEntries.size() + _entries.size() - _replacedFixedEntries;
+    }
+
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        return _entries.containsKey(key) || _fixedEntries.containsKey(key);
+    }
+
+    @Override
+    public Object get(final Object key)
+    {
+        return _entries.containsKey(key) ? _entries.get(key) : _fixedEntries.get(key);
+    }
+
+    @Override
+    public Object put(final String key, final Object value)
+    {
+        if (_entries.containsKey(key))
+        {
+            return _entries.put(key, value);
+        }
+        _entries.put(key, value);
+        if (_fixedEntries.containsKey(key))
+        {
+            _replacedFixedEntries++;
+            return _fixedEntries.get(key);
+        }
+        return null;
+    }
+
+    @Override
+    public Object remove(final Object key)
+    {
+        if (_fixedEntries.containsKey(key))
+        {
+            discardFixedEntries();
+        }
+        return _entries.remove(key);
+    }
+
+    @Override
+    public void clear()
+    {
+        _fixedEntries = Collections.emptyMap();
+        _encodedFixedEntries = null;
+        _replacedFixedEntries = 0;
+        _entries.clear();
+    }
+
+    /**
+     * Copies the fixed entries which have not been replaced into the added entries, in the order in which the map
+     * iterates over them, and drops their encoded form.
+     */
+    private void discardFixedEntries()
+    {
+        final Map<String, Object> entries = new LinkedHashMap<>(this);
+        _fixedEntries = Collections.emptyMap();
+        _encodedFixedEntries = null;
+        _replacedFixedEntries = 0;
+        _entries = entries;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet()
+    {
+        return new AbstractSet<Entry<String, Object>>()
+        {
+            @Override
+            public Iterator<Entry<String, Object>> iterator()
+            {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return PreEncodedMap.this.size();
+            }
+        };
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, Object>>
+    {
+        private final Iterator<Entry<String, Object>> _fixedIterator = _fixedEntries.entrySet().iterator();
+        private final Iterator<Entry<String, Object>> _addedIterator = _entries.entrySet().iterator();
+        private Entry<String, Object> _next;
+
+        @Override
+        public boolean hasNext()
+        {
+            if (_next == null)
+            {
+                while (_fixedIterator.hasNext())
+                {
+                    Entry<String, Object> entry = _fixedIterator.next();
+                    if (!_entries.containsKey(entry.getKey()))
+                    {
+                        _next = entry;
+                        return true;
+                    }
+                }
+                if (_addedIterator.hasNext())
+                {
+                    _next = _addedIterator.next();
+                }
+            }
+            return _next != null;
+        }
+
+        @Override
+        public Entry<String, Object> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Object> next = _next;
+            _next = null;
+            return next;
+        }
+
+        @Override
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,490 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.codec;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A map of message properties which holds boolean and numeric values unboxed.
+ * <p>
+ * Entries are kept in insertion order in parallel arrays, and found through an open-addressed table of their
+ * positions. Values put through the typed methods, or decoded by {@link Decoder#readPropertyMap()}, are held as
+ * primitives and can be read through the typed methods, by their position, without boxing. They are boxed only when
+ * read through the {@link Map} methods, which otherwise behave as those of a {@link java.util.LinkedHashMap}.
+ */
+public class PropertyMap extends AbstractMap<String, Object>
+{
+    public static final byte OBJECT = 0;
+    public static final byte BOOLEAN = 1;
+    public static final byte BYTE = 2;
+    public static final byte SHORT = 3;
+    public static final byte CHAR = 4;
+    public static final byte INT = 5;
+    public static final byte LONG = 6;
+    public static final byte FLOAT = 7;
+    public static final byte DOUBLE = 8;
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private String[] _keys;
+    private byte[] _types;
+    private long[] _primitives;
+    private Object[] _objects;
+    private int _size;
+
+    /** Positions of the entries plus one, indexed by the hash of their keys; zero marks an empty slot. */
+    private int[] _table;
+    private int _modCount;
+
+    public PropertyMap()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public PropertyMap(final int capacity)
+    {
+        allocate(Math.max(capacity, 1));
+    }
+
+    public PropertyMap(final PropertyMap map)
+    {
+        _keys = Arrays.copyOf(map._keys, map._keys.length);
+        _types = Arrays.copyOf(map._types, map._types.length);
+        _primitives = Arrays.copyOf(map._primitives, map._primitives.length);
+        _objects = Arrays.copyOf(map._objects, map._objects.length);
+        _table = Arrays.copyOf(map._table, map._table.length);
+        _size = map._size;
+    }
+
+    /**
+     * @return the position of the entry with the given key, or -1 if there is none
+     */
+    public int indexOf(final Object key)
+    {
+        if (key instanceof String)
+        {
+            final int mask = _table.length - 1;
+            for (int i = hash(key) & mask; ; i = (i + 1) & mask)
+            {
+                final int slot = _table[i];
+                if (slot == 0)
+                {
+                    return -1;
+                }
+                else if (key.equals(_keys[slot - 1]))
+                {
+                    return slot - 1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    public String getKey(final int index)
+    {
+        return _keys[index];
+    }
+
+    /**
+     * @return the type of the value at the given position, {@link #OBJECT} if it is not held as a primitive
+     */
+    public byte getType(final int index)
+    {
+        return _types[index];
+    }
+
+    public boolean getBoolean(final int index)
+    {
+        return _primitives[index] != 0L;
+    }
+
+    /**
+     * @return the value at the given position, which must be of one of the integral types or {@link #CHAR}
+     */
+    public long getLong(final int index)
+    {
+        return _primitives[index];
+    }
+
+    /**
+     * @return the value at the given position, which must be a {@link #FLOAT}
+     */
+    public float getFloat(final int index)
+    {
+        return Float.intBitsToFloat((int) _primitives[index]);
+    }
+
+    /**
+     * @return the value at the given position, which must be a {@link #FLOAT} or {@link #DOUBLE}
+     */
+    public double getDouble(final int index)
+    {
+        return _types[index] == FLOAT ? getFloat(index) : Double.longBitsToDouble(_primitives[index]);
+    }
+
+    /**
+     * @return the value at the given position, boxed if it is held as a primitive
+     */
+    public Object getValue(final int index)
+    {
+        final long value = _primitives[index];
+        switch (_types[index])
+        {
+            case BOOLEAN:
+                return value != 0L;
+            case BYTE:
+                return (byte) value;
+            case SHORT:
+                return (short) value;
+            case CHAR:
+                return (char) value;
+            case INT:
+                return (int) value;
+            case LONG:
+                return value;
+            case FLOAT:
+                return getFloat(index);
+            case DOUBLE:
+                return Double.longBitsToDouble(value);
+            default:
+                return _objects[index];
+        }
+    }
+
+    public void putBoolean(final String key, final boolean value)
+    {
+        putPrimitive(key, BOOLEAN, value ? 1L : 0L);
+    }
+
+    public void putByte(final String key, final byte value)
+    {
+        putPrimitive(key, BYTE, value);
+    }
+
+    public void putShort(final String key, final short value)
+    {
+        putPrimitive(key, SHORT, value);
+    }
+
+    public void putChar(final String key, final char value)
+    {
+        putPrimitive(key, CHAR, value);
+    }
+
+    public void putInt(final String key, final int value)
+    {
+        putPrimitive(key, INT, value);
+    }
+
+    public void putLong(final String key, final long value)
+    {
+        putPrimitive(key, LONG, value);
+    }
+
+    public void putFloat(final String key, final float value)
+    {
+        putPrimitive(key, FLOAT, Float.floatToRawIntBits(value));
+    }
+
+    public void putDouble(final String key, final double value)
+    {
+        putPrimitive(key, DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    @Override
+    public int size()
+    {
+        return _size;
+    }
+
+    @Override
+    public boolean containsKey(final Object key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    @Override
+    public Object get(final Object key)
+    {
+        final int index = indexOf(key);
+        return index < 0 ? null : getValue(index);
+    }
+
+    @Override
+    public Object put(final String key, final Object value)
+    {
+        final int index = indexOf(key);
+        final Object previous = index < 0 ? null : getValue(index);
+
+        final Class<?> type = value == null ? null : value.getClass();
+        if (type == Boolean.class)
+        {
+            putBoolean(key, (Boolean) value);
+        }
+        else if (type == Byte.class)
+        {
+            putByte(key, (Byte) value);
+        }
+        else if (type == Short.class)
+        {
+            putShort(key, (Short) value);
+        }
+        else if (type == Character.class)
+        {
+            putChar(key, (Character) value);
+        }
+        else if (type == Integer.class)
+        {
+            putInt(key, (Integer) value);
+        }
+        else if (type == Long.class)
+        {
+            putLong(key, (Long) value);
+        }
+        else if (type == Float.class)
+        {
+            putFloat(key, (Float) value);
+        }
+        else if (type == Double.class)
+        {
+            putDouble(key, (Double) value);
+        }
+        else
+        {
+            final int position = index < 0 ? add(key) : index;
+            _types[position] = OBJECT;
+            _primitives[position] = 0L;
+            _objects[position] = value;
+        }
+        return previous;
+    }
+
+    @Override
+    public Object remove(final Object key)
+    {
+        final int index = indexOf(key);
+        if (index < 0)
+        {
+            return null;
+        }
+        final Object previous = getValue(index);
+        removeAt(index);
+        return previous;
+    }
+
+    @Override
+    public void clear()
+    {
+        if (_size > 0)
+        {
+            Arrays.fill(_keys, 0, _size, null);
+            Arrays.fill(_objects, 0, _size, null);
+            Arrays.fill(_table, 0);
+            _size = 0;
+            _modCount++;
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet()
+    {
+        return new AbstractSet<Entry<String, Object>>()
+        {
+            @Override
+            public Iterator<Entry<String, Object>> iterator()
+            {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size()
+            {
+                return _size;
+            }
+
+            @Override
+            public void clear()
+            {
+                PropertyMap.this.clear();
+            }
+        };
+    }
+
+    private void putPrimitive(final String key, final byte type, final long value)
+    {
+        int index = indexOf(key);
+        if (index < 0)
+        {
+            index = add(key);
+        }
+        _types[index] = type;
+        _primitives[index] = value;
+        _objects[index] = null;
+    }
+
+    private int add(final String key)
+    {
+        if (key == null)
+        {
+            throw new NullPointerException("Property name must not be null");
+        }
+        if (_size == _keys.length)
+        {
+            resize(_size * 2);
+        }
+        final int index = _size++;
+        _keys[index] = key;
+        insert(index);
+        _modCount++;
+        return index;
+    }
+
+    private void removeAt(final int index)
+    {
+        final int moved = _size - index - 1;
+        System.arraycopy(_keys, index + 1, _keys, index, moved);
+        System.arraycopy(_types, index + 1, _types, index, moved);
+        System.arraycopy(_primitives, index + 1, _primitives, index, moved);
+        System.arraycopy(_objects, index + 1, _objects, index, moved);
+        _size--;
+        _keys[_size] = null;
+        _objects[_size] = null;
+        rehash();
+        _modCount++;
+    }
+
+    private void allocate(final int capacity)
+    {
+        _keys = new String[capacity];
+        _types = new byte[capacity];
+        _primitives = new long[capacity];
+        _objects = new Object[capacity];
+        _table = new int[tableSize(capacity)];
+    }
+
+    private void resize(final int capacity)
+    {
+        _keys = Arrays.copyOf(_keys, capacity);
+        _types = Arrays.copyOf(_types, capacity);
+        _primitives = Arrays.copyOf(_primitives, capacity);
+        _objects = Arrays.copyOf(_objects, capacity);
+        _table = new int[tableSize(capacity)];
+        rehash();
+    }
+
+    private void rehash()
+    {
+        Arrays.fill(_table, 0);
+        for (int i = 0; i < _size; i++)
+        {
+            insert(i);
+        }
+    }
+
+    private void insert(final int index)
+    {
+        final int mask = _table.length - 1;
+        int i = hash(_keys[index]) & mask;
+        while (_table[i] != 0)
+        {
+            i = (i + 1) & mask;
+        }
+        _table[i] = index + 1;
+    }
+
+    private static int tableSize(final int capacity)
+    {
+        return Integer.highestOneBit(capacity) << 2;
+    }
+
+    private static int hash(final Object key)
+    {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private class EntryIterator implements Iterator<Entry<String, Object>>
+    {
+        private int _next;
+        private int _last = -1;
+        private int _expectedModCount = _modCount;
+
+        @Override
+        public boolean hasNext()
+        {
+            return _next < _size;
+        }
+
+        @Override
+        public Entry<String, Object> next()
+        {
+            if (_modCount != _expectedModCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+            if (_next >= _size)
+            {
+                throw new NoSuchElementException();
+            }
+            _last = _next++;
+            return new PropertyEntry(_last);
+        }
+
+        @Override
+        public void remove()
+        {
+            if (_last < 0)
+            {
+                throw new IllegalStateException();
+            }
+            if (_modCount != _expectedModCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+            removeAt(_last);
+            _next = _last;
+            _last = -1;
+            _expectedModCount = _modCount;
+        }
+    }
+
+    private class PropertyEntry extends SimpleEntry<String, Object>
+    {
+        private PropertyEntry(final int index)
+        {
+            super(_keys[index], PropertyMap.this.getValue(index));
+        }
+
+        @Override
+        public Object setValue(final Object value)
+        {
+            put(getKey(), value);
+            return super.setValue(value);
+        }
+    }
+}
@@ -22,11 +22,13 @@ package org.apache.qpid.typedmessage;
 
 
 import java.io.EOFException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 
 public class TypedBytesContentReader implements TypedBytesCodes
 {
@@ -38,7 +40,10 @@ public class TypedBytesContentReader implements TypedBytesCodes
 
     private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
 
-    private final CharsetDecoder _charsetDecoder = UTF8_CHARSET.newDecoder();
+    private CharsetDecoder _charsetDecoder;
+
+    /** Reused for decoding strings. */
+    private CharBuffer _chars;
 
     private int _byteArrayRemaining = -1;
 
@@ -447,16 +452,136 @@ public class TypedBytesContentReader implements TypedBytesCodes
 
     public String readStringImpl() throws TypedBytesFormatException
     {
+        return readStringChars().toString();
+    }
+
+    /**
+     * Reads a value as {@link #readString()}, appending it to the given builder rather than creating a String. A
+     * string value is decoded without allocating.
+     *
+     * @return the number of characters appended, or -1 if the value is a null string
+     */
+    public int readString(final StringBuilder destination) throws EOFException, TypedBytesFormatException
+    {
+        int position = _data.position();
+        byte wireType = readWireType();
         try
         {
-            _charsetDecoder.reset();
-            ByteBuffer dup = _data.duplicate();
-            int pos = _data.position();
-            byte b;
-            while((b = _data.get()) != 0) {};
-            dup.limit(_data.position()-1);
-            return _charsetDecoder.decode(dup).toString();
+            switch (wireType)
+            {
+                case STRING_TYPE:
+                    checkAvailable(1);
+                    CharBuffer chars = readStringChars();
+                    destination.append(chars);
+                    return chars.length();
+                case NULL_STRING_TYPE:
+                    return -1;
+                default:
+                    _data.position(position);
+                    String converted = readString();
+                    destination.append(converted);
+                    return converted.length();
+            }
+        }
+        catch (RuntimeException e)
+        {
+            _data.position(position);
+            throw e;
+        }
+    }
 
+    /**
+     * Reads a value as {@link #readString()}, putting it into the given buffer rather than creating a String. A string
+     * value is decoded without allocating.
+     *
+     * @return the number of characters put, or -1 if the value is a null string
+     * @throws BufferOverflowException if the value does not fit in the buffer, in which case nothing is read
+     */
+    public int readString(final CharBuffer destination) throws EOFException, TypedBytesFormatException
+    {
+        int position = _data.position();
+        byte wireType = readWireType();
+        try
+        {
+            CharBuffer chars;
+            switch (wireType)
+            {
+                case STRING_TYPE:
+                    checkAvailable(1);
+                    chars = readStringChars();
+                    break;
+                case NULL_STRING_TYPE:
+                    return -1;
+                default:
+                    _data.position(position);
+                    chars = CharBuffer.wrap(readString());
+                    break;
+            }
+            int length = chars.remaining();
+            if (destination.remaining() < length)
+            {
+                throw new BufferOverflowException();
+            }
+            destination.put(chars);
+            return length;
+        }
+        catch (RuntimeException e)
+        {
+            _data.position(position);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a null terminated string into the buffer this reader reuses, which is valid until the next string is read.
+     */
+    private CharBuffer readStringChars() throws TypedBytesFormatException
+    {
+        int start = _data.position();
+        while (_data.get() != 0)
+        {
+        }
+        int end = _data.position() - 1;
+        _data.position(start);
+        CharBuffer chars = decode(end);
+        _data.position(end + 1);
+        return chars;
+    }
+
+    /**
+     * Decodes UTF-8 from the current position to the given limit into the buffer this reader reuses.
+     */
+    private CharBuffer decode(final int limit) throws TypedBytesFormatException
+    {
+        if (_charsetDecoder == null)
+        {
+            _charsetDecoder = UTF8_CHARSET.newDecoder();
+        }
+        _charsetDecoder.reset();
+
+        // UTF-8 never decodes to more characters than it has bytes
+        int length = limit - _data.position();
+        if (_chars == null || _chars.capacity() < length)
+        {
+            _chars = CharBuffer.allocate(Math.max(length, 64));
+        }
+        _chars.clear();
+
+        int originalLimit = _data.limit();
+        _data.limit(limit);
+        try
+        {
+            CoderResult result = _charsetDecoder.decode(_data, _chars, true);
+            if (result.isUnderflow())
+            {
+                result = _charsetDecoder.flush(_chars);
+            }
+            if (!result.isUnderflow())
+            {
+                result.throwException();
+            }
+            _chars.flip();
+            return _chars;
         }
         catch (CharacterCodingException e)
         {
@@ -464,6 +589,10 @@ public class TypedBytesContentReader implements TypedBytesCodes
             jmse.initCause(e);
             throw jmse;
         }
+        finally
+        {
+            _data.limit(originalLimit);
+        }
     }
 
     public int readBytes(byte[] bytes) throws EOFException, TypedBytesFormatException
@@ -472,6 +601,41 @@ public class TypedBytesContentReader implements TypedBytesCodes
         {
             throw new IllegalArgumentException("byte array must not be null");
         }
+        int count = readByteArrayCount(bytes.length);
+        if (count > 0)
+        {
+            _data.get(bytes, 0, count);
+        }
+        return count;
+    }
+
+    /**
+     * Reads a byte array value as {@link #readBytes(byte[])}, into the remaining space of the given buffer rather than
+     * an array.
+     *
+     * @return the number of bytes read, or -1 if the value is null or has been read completely
+     */
+    public int readBytesInto(ByteBuffer destination) throws EOFException, TypedBytesFormatException
+    {
+        if (destination == null)
+        {
+            throw new IllegalArgumentException("byte buffer must not be null");
+        }
+        int count = readByteArrayCount(destination.remaining());
+        if (count > 0)
+        {
+            readRawBytes(destination, count);
+        }
+        return count;
+    }
+
+    /**
+     * Starts or continues reading a byte array value in pieces of at most the given length.
+     *
+     * @return the length of the next piece, or -1 if the value is null or has been read completely
+     */
+    private int readByteArrayCount(int length) throws EOFException, TypedBytesFormatException
+    {
         // first call
         if (_byteArrayRemaining == -1)
         {
@@ -513,12 +677,13 @@ public class TypedBytesContentReader implements TypedBytesCodes
             return -1;
         }
 
-        int returnedSize = readBytesImpl(bytes);
-        if (returnedSize < bytes.length)
+        int count = (_byteArrayRemaining >= length ? length : _byteArrayRemaining);
+        _byteArrayRemaining -= count;
+        if (count < length)
         {
             _byteArrayRemaining = -1;
         }
-        return returnedSize;
+        return count;
     }
 
     private int readBytesImpl(byte[] bytes)
@@ -640,31 +805,58 @@ public class TypedBytesContentReader implements TypedBytesCodes
         _data.get(bytes, offset, count);
     }
 
+    public void readRawBytes(final ByteBuffer destination, final int count)
+    {
+        int limit = _data.limit();
+        _data.limit(_data.position() + count);
+        destination.put(_data);
+        _data.limit(limit);
+    }
+
     public String readLengthPrefixedUTF() throws TypedBytesFormatException
     {
-        try
+        short length = readShortImpl();
+        if(length == 0)
         {
-            short length = readShortImpl();
-            if(length == 0)
-            {
-                return "";
-            }
-            else
-            {
-                _charsetDecoder.reset();
-                ByteBuffer encodedString = _data.slice();
-                encodedString.limit(length);
-                _data.position(_data.position()+length);
-                CharBuffer string = _charsetDecoder.decode(encodedString);
+            return "";
+        }
+        else
+        {
+            return readUTFChars(length).toString();
+        }
+    }
 
-                return string.toString();
-            }
+    /**
+     * Reads a string as {@link #readLengthPrefixedUTF()}, appending it to the given builder rather than creating a
+     * String.
+     *
+     * @return the number of characters appended
+     */
+    public int readLengthPrefixedUTF(final StringBuilder destination) throws TypedBytesFormatException
+    {
+        short length = readShortImpl();
+        if(length == 0)
+        {
+            return 0;
         }
-        catch(CharacterCodingException e)
+        else
         {
-            TypedBytesFormatException jmse = new TypedBytesFormatException("Error decoding byte stream as a UTF8 string: " + e);
-            jmse.initCause(e);
-            throw jmse;
+            CharBuffer chars = readUTFChars(length);
+            destination.append(chars);
+            return chars.length();
+        }
+    }
+
+    private CharBuffer readUTFChars(final short length) throws TypedBytesFormatException
+    {
+        if (length < 0 || length > _data.remaining())
+        {
+            // as slicing the buffer to this length would
+            throw new IllegalArgumentException("Invalid string length " + length);
         }
+        int limit = _data.position() + length;
+        CharBuffer chars = decode(limit);
+        _data.position(limit);
+        return chars;
     }
 }
@@ -93,6 +93,19 @@ public class GZIPUtils
         }
     }
 
+    /**
+     * Return a stream which inflates the gzip compressed contents of the input buffer on demand.  The position of the
+     * input buffer is not altered.
+     *
+     * @param contentBuffer byte buffer containing the compressed data
+     * @return an input stream over the uncompressed data
+     * @throws IOException if the buffer does not start with a valid gzip header
+     */
+    public static InputStream uncompressingStream(ByteBuffer contentBuffer) throws IOException
+    {
+        return new GZIPInputStream(new ByteBufferInputStream(contentBuffer.duplicate()));
+    }
+
     public static byte[] uncompressStreamToArray(InputStream stream)
     {
         if(stream != null)
@@ -23,22 +23,30 @@ package org.apache.qpid.client;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 
+import javax.jms.Session;
+
 import org.apache.qpid.QpidException;
 import org.apache.qpid.client.message.UnprocessedMessage;
+import org.apache.qpid.client.message.UnprocessedMessage_0_8;
 import org.apache.qpid.client.transport.TestNetworkConnection;
 import org.apache.qpid.configuration.ClientProperties;
 import org.apache.qpid.framing.AMQBody;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.BasicConsumeOkBody;
+import org.apache.qpid.framing.BasicContentHeaderProperties;
 import org.apache.qpid.framing.ChannelFlowOkBody;
+import org.apache.qpid.framing.ContentHeaderBody;
 import org.apache.qpid.framing.ExchangeDeclareOkBody;
 import org.apache.qpid.framing.QueueDeclareOkBody;
 import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.ByteBufferSender;
 import org.apache.qpid.transport.network.NetworkConnection;
 import org.apache.qpid.url.AMQBindingURL;
 
@@ -153,6 +161,124 @@ public class AMQSession_0_8Test extends QpidTestCase
         assertEquals("Unexpected consumers", new HashSet<>(Arrays.asList(consumer1, consumer2)), new HashSet<>(session.getConsumers()));
     }
 
+    public void testAcknowledgeCoalescesOutstandingDeliveryTags() throws Exception
+    {
+        _connection = new MockAMQConnection("amqp://guest:guest@/test?brokerlist='tcp://localhost:5672'&sync_client_ack='false'");
+        AckRecordingSender sender = new AckRecordingSender();
+        _connection.getProtocolHandler().setNetworkConnection(new TestNetworkConnection(), sender);
+
+        AMQSession_0_8 session = new AMQSession_0_8(_connection, 1, false, Session.CLIENT_ACKNOWLEDGE, 10, 5);
+        for (long deliveryTag = 1; deliveryTag <= 5; deliveryTag++)
+        {
+            session.messageReceived(new UnprocessedMessage_0_8(deliveryTag, "1", null, null, false));
+        }
+        // message 4 has not yet been consumed by the application
+        session.addUnacknowledgedMessage(1);
+        session.addUnacknowledgedMessage(2);
+        session.addUnacknowledgedMessage(3);
+        session.addUnacknowledgedMessage(5);
+
+        session.acknowledgeImpl();
+
+        assertEquals("Unexpected acks", Arrays.asList("3 multiple", "5"), sender.getAcks());
+        assertTrue("Unexpected unacknowledged message tags", session.getUnacknowledgedMessageTags().isEmpty());
+
+        session.addUnacknowledgedMessage(4);
+        session.acknowledgeImpl();
+
+        assertEquals("Unexpected acks", Arrays.asList("3 multiple", "5", "4"), sender.getAcks());
+    }
+
+    public void testMultipleAckCoversTagsNoLongerOutstanding() throws Exception
+    {
+        _connection = new MockAMQConnection("amqp://guest:guest@/test?brokerlist='tcp://localhost:5672'&sync_client_ack='false'");
+        AckRecordingSender sender = new AckRecordingSender();
+        _connection.getProtocolHandler().setNetworkConnection(new TestNetworkConnection(), sender);
+
+        AMQSession_0_8 session = new AMQSession_0_8(_connection, 1, false, Session.CLIENT_ACKNOWLEDGE, 10, 5);
+        for (long deliveryTag = 1; deliveryTag <= 6; deliveryTag++)
+        {
+            session.messageReceived(new UnprocessedMessage_0_8(deliveryTag, "1", null, null, false));
+        }
+        session.acknowledgeMessage(2, false);
+        assertEquals("Unexpected acks", Arrays.asList("2"), sender.getAcks());
+
+        // message 2 has already been acknowledged and message 5 has not yet been consumed by the application
+        session.addUnacknowledgedMessage(1);
+        session.addUnacknowledgedMessage(2);
+        session.addUnacknowledgedMessage(3);
+        session.addUnacknowledgedMessage(4);
+        session.addUnacknowledgedMessage(6);
+
+        session.acknowledgeImpl();
+
+        assertEquals("Unexpected acks", Arrays.asList("2", "4 multiple", "6"), sender.getAcks());
+    }
+
+    public void testDupsOkAcknowledgementsAreBatched() throws Exception
+    {
+        setTestSystemProperty(ClientProperties.DUPS_OK_ACK_BATCH_SIZE, "3");
+        setTestSystemProperty(ClientProperties.DUPS_OK_ACK_MAX_DELAY, "0");
+        AckRecordingSender sender = new AckRecordingSender();
+        _connection.getProtocolHandler().setNetworkConnection(new TestNetworkConnection(), sender);
+
+        AMQSession_0_8 session = new AMQSession_0_8(_connection, 1, false, Session.DUPS_OK_ACKNOWLEDGE, 10, 5);
+        for (long deliveryTag = 1; deliveryTag <= 4; deliveryTag++)
+        {
+            session.messageReceived(new UnprocessedMessage_0_8(deliveryTag, "1", null, null, false));
+        }
+
+        session.acknowledgeMessage(1, false);
+        session.acknowledgeMessage(2, false);
+        assertTrue("Unexpected acks " + sender.getAcks(), sender.getAcks().isEmpty());
+
+        session.acknowledgeMessage(3, false);
+        assertEquals("Unexpected acks", Arrays.asList("3 multiple"), sender.getAcks());
+
+        session.acknowledgeMessage(4, false);
+        session.flushAcknowledgments();
+        assertEquals("Unexpected acks", Arrays.asList("3 multiple", "4"), sender.getAcks());
+    }
+
+    public void testExpiredMessagesAreDroppedAndAcknowledged() throws Exception
+    {
+        setTestSystemProperty(ClientProperties.QPID_DECLARE_EXCHANGES_PROP_NAME, "false");
+        setTestSystemProperty(ClientProperties.QPID_DECLARE_QUEUES_PROP_NAME, "false");
+        setTestSystemProperty(ClientProperties.QPID_BIND_QUEUES_PROP_NAME, "false");
+        _connection = new MockAMQConnection("amqp://guest:guest@/test?brokerlist='tcp://localhost:5672'&dropExpired='true'");
+        AckRecordingSender sender = new AckRecordingSender();
+        _connection.getProtocolHandler().setNetworkConnection(new TestNetworkConnection(), sender);
+
+        AMQSession_0_8 session = new AMQSession_0_8(_connection, 1, false, Session.CLIENT_ACKNOWLEDGE, 10, 5);
+        MockReceiveConnectionListener listener = new MockReceiveConnectionListener(_connection, 1,
+                new ChannelFlowOkBody(false), new BasicConsumeOkBody(AMQShortString.valueOf("1")));
+        _connection.setConnectionListener(listener);
+        BasicMessageConsumer_0_8 consumer = (BasicMessageConsumer_0_8) session.createConsumer(
+                new AMQQueue(new AMQBindingURL("direct://amq.direct//test?routingkey='test'")));
+        assertTrue("Not all expected commands have been sent on consumer creation", listener.responsesEmpty());
+        _connection.setConnectionListener(new ConnectionListenerSupport());
+
+        long now = System.currentTimeMillis();
+        session.messageReceived(createMessage(1, consumer.getConsumerTag(), now - 1000));
+        session.messageReceived(createMessage(2, consumer.getConsumerTag(), 0));
+        session.messageReceived(createMessage(3, consumer.getConsumerTag(), now - 1000));
+        session.messageReceived(createMessage(4, consumer.getConsumerTag(), now + 60000));
+        session.acknowledgeDroppedExpiredMessages();
+
+        assertEquals("Unexpected acks", Arrays.asList("1", "3"), sender.getAcks());
+        assertEquals("Unexpected dropped messages", 2, session.getExpiredMessagesDropped());
+        assertEquals("Unexpected dropped messages", 2, _connection.getExpiredMessagesDropped());
+    }
+
+    private UnprocessedMessage_0_8 createMessage(long deliveryTag, String consumerTag, long expiration)
+    {
+        UnprocessedMessage_0_8 message = new UnprocessedMessage_0_8(deliveryTag, consumerTag, null, null, false);
+        BasicContentHeaderProperties properties = new BasicContentHeaderProperties();
+        properties.setExpiration(expiration);
+        message.setContentHeader(new ContentHeaderBody(properties, 0));
+        return message;
+    }
+
     private UnprocessedMessage createMockMessage(long deliveryTag, String consumerTag)
     {
         UnprocessedMessage message = mock(UnprocessedMessage.class);
@@ -193,4 +319,53 @@ public class AMQSession_0_8Test extends QpidTestCase
             return _responses.isEmpty();
         }
     }
+
+    /**
+     * Records the basic.ack methods written to the network.
+     */
+    private static class AckRecordingSender implements ByteBufferSender
+    {
+        private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream();
+
+        @Override
+        public synchronized void send(final ByteBuffer msg)
+        {
+            ByteBuffer duplicate = msg.duplicate();
+            while (duplicate.hasRemaining())
+            {
+                _bytes.write(duplicate.get());
+            }
+        }
+
+        @Override
+        public void flush()
+        {
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        synchronized List<String> getAcks()
+        {
+            List<String> acks = new ArrayList<>();
+            ByteBuffer frames = ByteBuffer.wrap(_bytes.toByteArray());
+            while (frames.remaining() > 7)
+            {
+                byte type = frames.get();
+                frames.getShort();
+                int size = frames.getInt();
+                int payloadStart = frames.position();
+                if (type == 1 && frames.getShort() == 60 && frames.getShort() == 80)
+                {
+                    long deliveryTag = frames.getLong();
+                    boolean multiple = (frames.get() & 1) != 0;
+                    acks.add(deliveryTag + (multiple ? " multiple" : ""));
+                }
+                frames.position(payloadStart + size + 1);
+            }
+            return acks;
+        }
+    }
 }
@@ -20,11 +20,30 @@
  */
 package org.apache.qpid.client;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.client.message.AMQMessageDelegateFactory;
+import org.apache.qpid.client.message.AbstractJMSMessage;
+import org.apache.qpid.client.message.JMSTextMessage;
+import org.apache.qpid.client.message.MessageFactoryRegistry;
+import org.apache.qpid.client.message.UnprocessedMessage_0_8;
+import org.apache.qpid.framing.AMQShortString;
+import org.apache.qpid.framing.BasicContentHeaderProperties;
+import org.apache.qpid.framing.ContentBody;
+import org.apache.qpid.framing.ContentHeaderBody;
+import org.apache.qpid.jms.BatchMessageListener;
 import org.apache.qpid.test.unit.message.TestAMQSession;
 import org.apache.qpid.test.utils.QpidTestCase;
 import org.apache.qpid.url.AMQBindingURL;
 
+import javax.jms.Message;
 import javax.jms.Session;
+import javax.jms.TextMessage;
 
 public class BasicMessageConsumer_0_8_Test extends QpidTestCase
 {
@@ -98,6 +117,132 @@ public class BasicMessageConsumer_0_8_Test extends QpidTestCase
         assertEquals("Reject behaviour was was not as expected", RejectBehaviour.NORMAL, consumer.getRejectBehaviour());
     }
 
+    public void testReceiveBatchReturnsPrefetchedMessages() throws Exception
+    {
+        final BasicMessageConsumer_0_8 consumer = createNoAckConsumer();
+        for (int i = 0; i < 3; i++)
+        {
+            consumer.notifyMessage(new JMSTextMessage(AMQMessageDelegateFactory.FACTORY_0_8));
+        }
+
+        assertEquals("Unexpected number of messages", 2, consumer.receive(2, -1).size());
+        assertEquals("Unexpected number of messages", 1, consumer.receive(5, -1).size());
+        assertTrue("No messages should remain", consumer.receive(5, -1).isEmpty());
+    }
+
+    public void testBatchMessageListener() throws Exception
+    {
+        final BasicMessageConsumer_0_8 consumer = createNoAckConsumer();
+        final List<Integer> batches = new ArrayList<>();
+        consumer.setMessageListener(new BatchMessageListener()
+        {
+            @Override
+            public void onMessages(final List<Message> messages)
+            {
+                batches.add(messages.size());
+            }
+
+            @Override
+            public void onMessage(final Message message)
+            {
+                fail("Messages should be delivered in batches");
+            }
+        });
+        consumer.setMaxBatchSize(2);
+
+        for (int i = 0; i < 3; i++)
+        {
+            consumer.notifyMessage(new JMSTextMessage(AMQMessageDelegateFactory.FACTORY_0_8));
+        }
+        assertEquals("Full batch should be delivered at once", 1, batches.size());
+        assertEquals("Unexpected batch size", Integer.valueOf(2), batches.get(0));
+
+        consumer.deliverPendingBatch();
+        assertEquals("Remaining messages should be delivered", 2, batches.size());
+        assertEquals("Unexpected batch size", Integer.valueOf(1), batches.get(1));
+
+        consumer.deliverPendingBatch();
+        assertEquals("Empty batch should not be delivered", 2, batches.size());
+    }
+
+    public void testMessageCreatedOnlyWhenReceived() throws Exception
+    {
+        final List<Long> rejected = new ArrayList<>();
+        final AtomicInteger created = new AtomicInteger();
+        final AMQConnection conn = new MockAMQConnection("amqp://guest:guest@/test?brokerlist='tcp://localhost:5672'");
+        final AMQDestination queue = new AMQQueue(new AMQBindingURL("direct://amq.direct//Queue"));
+        final TestAMQSession testSession = new TestAMQSession(conn)
+        {
+            @Override
+            boolean isManagingCredit()
+            {
+                return false;
+            }
+
+            @Override
+            public void rejectMessage(final long deliveryTag, final boolean requeue)
+            {
+                rejected.add(deliveryTag);
+            }
+        };
+        final BasicMessageConsumer_0_8 consumer =
+                new BasicMessageConsumer_0_8(0, conn, queue, "", false,
+                                             MessageFactoryRegistry.newDefaultRegistry(testSession), testSession,
+                                             null, 10, 5, false, org.apache.qpid.jms.Session.NO_ACKNOWLEDGE, false,
+                                             false)
+                {
+                    @Override
+                    public AbstractJMSMessage createJMSMessageFromUnprocessedMessage(final AMQMessageDelegateFactory delegateFactory,
+                                                                                     final UnprocessedMessage_0_8 messageFrame)
+                            throws Exception
+                    {
+                        created.incrementAndGet();
+                        return super.createJMSMessageFromUnprocessedMessage(delegateFactory, messageFrame);
+                    }
+                };
+
+        consumer.notifyMessage(createMessageFrame(1L, "first"));
+        consumer.notifyMessage(createMessageFrame(2L, "second"));
+        assertEquals("No message should be created before it is received", 0, created.get());
+
+        final TextMessage message = (TextMessage) consumer.receiveNoWait();
+        assertEquals("Unexpected message", "first", message.getText());
+        assertEquals("Unexpected number of messages created", 1, created.get());
+
+        consumer.releasePendingMessages();
+        assertEquals("Unexpected rejected messages", Collections.singletonList(2L), rejected);
+        assertEquals("Released message should not be created", 1, created.get());
+    }
+
+    private UnprocessedMessage_0_8 createMessageFrame(final long deliveryTag, final String text)
+    {
+        final UnprocessedMessage_0_8 messageFrame = new UnprocessedMessage_0_8(deliveryTag, "",
+                                                                               AMQShortString.valueOf("amq.direct"),
+                                                                               AMQShortString.valueOf("Queue"),
+                                                                               false);
+        final BasicContentHeaderProperties properties = new BasicContentHeaderProperties();
+        properties.setContentType("text/plain");
+        final byte[] body = text.getBytes(StandardCharsets.UTF_8);
+        messageFrame.setContentHeader(new ContentHeaderBody(properties, body.length));
+        messageFrame.receiveBody(new ContentBody(ByteBuffer.wrap(body)));
+        return messageFrame;
+    }
+
+    private BasicMessageConsumer_0_8 createNoAckConsumer() throws Exception
+    {
+        final AMQConnection conn = new MockAMQConnection("amqp://guest:guest@/test?brokerlist='tcp://localhost:5672'");
+        final AMQDestination queue = new AMQQueue(new AMQBindingURL("direct://amq.direct//Queue"));
+        final TestAMQSession testSession = new TestAMQSession(conn)
+        {
+            @Override
+            boolean isManagingCredit()
+            {
+                return false;
+            }
+        };
+        return new BasicMessageConsumer_0_8(0, conn, queue, "", false, null, testSession, null, 10, 5, false,
+                                            org.apache.qpid.jms.Session.NO_ACKNOWLEDGE, false, false);
+    }
 
     protected RejectBehaviour getRejectBehaviour(AMQDestination destination)
     {
@@ -0,0 +1,181 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Message;
+import javax.jms.MessageListener;
+
+import org.apache.qpid.client.message.AMQMessageDelegateFactory;
+import org.apache.qpid.client.message.AbstractJMSMessage;
+import org.apache.qpid.client.message.JMSTextMessage;
+import org.apache.qpid.client.util.KeyOrderedExecutor;
+import org.apache.qpid.test.unit.message.TestAMQSession;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.url.AMQBindingURL;
+
+public class ConcurrentListenerDeliveryTest extends QpidTestCase
+{
+    private static final String ORDERING_KEY = "group";
+
+    private final List<AbstractJMSMessage> _settled = Collections.synchronizedList(new ArrayList<AbstractJMSMessage>());
+    private KeyOrderedExecutor _executor;
+    private ConcurrentListenerDelivery _delivery;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        final AMQConnection conn = new MockAMQConnection("amqp://guest:guest@/test?brokerlist='tcp://localhost:5672'");
+        final AMQDestination queue = new AMQQueue(new AMQBindingURL("direct://amq.direct//Queue"));
+        final BasicMessageConsumer_0_8 consumer =
+                new BasicMessageConsumer_0_8(0, conn, queue, "", false, null, new TestAMQSession(conn), null, 10, 5,
+                                             false, javax.jms.Session.CLIENT_ACKNOWLEDGE, false, false)
+                {
+                    @Override
+                    void settleConcurrentDeliveries(final List<AbstractJMSMessage> messages)
+                    {
+                        _settled.addAll(messages);
+                    }
+                };
+        _executor = new KeyOrderedExecutor(2, Executors.defaultThreadFactory());
+        _delivery = new ConcurrentListenerDelivery(consumer, _executor, ORDERING_KEY);
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _executor.shutdown();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testMessagesAreSettledOnlyWhenThoseBeforeThemAreProcessed() throws Exception
+    {
+        final AbstractJMSMessage slow = createMessage(0);
+        final AbstractJMSMessage fast = createMessage(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastProcessed = new CountDownLatch(1);
+
+        final MessageListener listener = new MessageListener()
+        {
+            @Override
+            public void onMessage(final Message message)
+            {
+                if (message == slow)
+                {
+                    await(release);
+                }
+                else
+                {
+                    fastProcessed.countDown();
+                }
+            }
+        };
+        _delivery.deliver(slow, listener);
+        _delivery.deliver(fast, listener);
+
+        assertTrue("Message with another key should be processed", fastProcessed.await(10, TimeUnit.SECONDS));
+        assertTrue("No message should be settled before the first is processed", _settled.isEmpty());
+
+        release.countDown();
+        _delivery.awaitIdle();
+        assertEquals("Unexpected settled messages", 2, _settled.size());
+        assertSame("Messages should be settled in order", slow, _settled.get(0));
+        assertSame("Messages should be settled in order", fast, _settled.get(1));
+    }
+
+    public void testMessagesWithSameKeyAreProcessedInOrder() throws Exception
+    {
+        final List<Message> processed = Collections.synchronizedList(new ArrayList<Message>());
+        final MessageListener listener = new MessageListener()
+        {
+            @Override
+            public void onMessage(final Message message)
+            {
+                processed.add(message);
+            }
+        };
+        final List<AbstractJMSMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+        {
+            final AbstractJMSMessage message = createMessage(7);
+            messages.add(message);
+            _delivery.deliver(message, listener);
+        }
+
+        _delivery.awaitIdle();
+        assertEquals("Messages processed out of order", messages, processed);
+        assertEquals("Messages settled out of order", messages, _settled);
+    }
+
+    public void testFailedMessageIsNotSettled() throws Exception
+    {
+        final AbstractJMSMessage failing = createMessage(0);
+        final AbstractJMSMessage succeeding = createMessage(0);
+        final MessageListener listener = new MessageListener()
+        {
+            @Override
+            public void onMessage(final Message message)
+            {
+                if (message == failing)
+                {
+                    throw new RuntimeException("Test");
+                }
+            }
+        };
+        _delivery.deliver(failing, listener);
+        _delivery.deliver(succeeding, listener);
+
+        _delivery.awaitIdle();
+        assertEquals("Only the processed message should be settled", Collections.singletonList(succeeding), _settled);
+    }
+
+    private AbstractJMSMessage createMessage(final int key) throws Exception
+    {
+        final JMSTextMessage message = new JMSTextMessage(AMQMessageDelegateFactory.FACTORY_0_8);
+        message.setIntProperty(ORDERING_KEY, key);
+        return message;
+    }
+
+    private static void await(final CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
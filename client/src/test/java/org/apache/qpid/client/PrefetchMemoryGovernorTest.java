@@ -0,0 +1,145 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.qpid.client.util.PrefetchByteBudget;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class PrefetchMemoryGovernorTest extends QpidTestCase
+{
+    private final AtomicInteger _changesA = new AtomicInteger();
+    private final AtomicInteger _changesB = new AtomicInteger();
+    private PrefetchMemoryGovernor _governor;
+    private PrefetchMemoryGovernor.Usage _usageA;
+    private PrefetchMemoryGovernor.Usage _usageB;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _governor = new PrefetchMemoryGovernor(1000);
+        _usageA = _governor.register(new Counter(_changesA));
+        _usageB = _governor.register(new Counter(_changesB));
+    }
+
+    public void testOnlySessionAboveFairShareIsThrottled()
+    {
+        _usageB.bytesChanged(100);
+        _usageA.bytesChanged(800);
+        assertFalse("Limit not yet reached", _usageA.isThrottled());
+
+        _usageB.bytesChanged(100);
+        assertEquals("Unexpected total", 1000, _governor.getBytes());
+        assertFalse("Session below its fair share should not be throttled", _usageB.isThrottled());
+        assertEquals("Unexpected throttle changes", 0, _changesB.get());
+
+        _usageA.bytesChanged(10);
+        assertTrue("Session above its fair share should be throttled", _usageA.isThrottled());
+        assertEquals("Unexpected throttle changes", 1, _changesA.get());
+        assertEquals("Unexpected session bytes", 810, _usageA.getBytes());
+    }
+
+    public void testThrottledSessionResumes()
+    {
+        _usageA.bytesChanged(1000);
+        assertTrue("Session should be throttled", _usageA.isThrottled());
+
+        _usageA.bytesChanged(-400);
+        assertTrue("Session should remain throttled above half the limit", _usageA.isThrottled());
+
+        _usageA.bytesChanged(-100);
+        assertFalse("Session should resume at half the limit", _usageA.isThrottled());
+        assertEquals("Unexpected throttle changes", 2, _changesA.get());
+    }
+
+    public void testThrottledSessionResumesWhenOtherSessionReleases()
+    {
+        _usageB.bytesChanged(500);
+        _usageA.bytesChanged(500);
+        assertTrue("Session should be throttled", _usageA.isThrottled());
+
+        _usageB.bytesChanged(-50);
+        assertTrue("Session should remain throttled above half the limit", _usageA.isThrottled());
+
+        _usageB.bytesChanged(-450);
+        assertEquals("Unexpected total", 500, _governor.getBytes());
+        assertFalse("Session should resume once the total falls to half the limit", _usageA.isThrottled());
+        assertEquals("Unexpected throttle changes", 2, _changesA.get());
+        assertEquals("Unexpected throttle changes", 0, _changesB.get());
+    }
+
+    public void testThrottledSessionResumesWhenOtherSessionCloses()
+    {
+        _usageB.bytesChanged(500);
+        _usageA.bytesChanged(500);
+        assertTrue("Session should be throttled", _usageA.isThrottled());
+
+        _usageB.close();
+        assertFalse("Session should resume once the total falls to half the limit", _usageA.isThrottled());
+        assertEquals("Unexpected throttle changes", 2, _changesA.get());
+    }
+
+    public void testClosedSessionGivesUpItsBytes()
+    {
+        _usageA.bytesChanged(300);
+        _usageB.bytesChanged(200);
+
+        _usageA.close();
+        assertEquals("Unexpected total", 200, _governor.getBytes());
+
+        _usageA.bytesChanged(-300);
+        assertEquals("Closed session should be ignored", 200, _governor.getBytes());
+    }
+
+    public void testBudgetReportsToUsage()
+    {
+        PrefetchByteBudget budget = new PrefetchByteBudget(0, 0, _usageA);
+        budget.add(1, "a", 600);
+        budget.add(2, "b", 400);
+        assertTrue("Session should be throttled", _usageA.isThrottled());
+        assertFalse("Budget without limits is never exceeded", budget.isExceeded());
+
+        budget.release(1);
+        assertEquals("Unexpected session bytes", 400, _usageA.getBytes());
+        assertFalse("Session should resume", _usageA.isThrottled());
+
+        budget.clear();
+        assertEquals("Unexpected total", 0, _governor.getBytes());
+    }
+
+    private static class Counter implements Runnable
+    {
+        private final AtomicInteger _count;
+
+        private Counter(final AtomicInteger count)
+        {
+            _count = count;
+        }
+
+        @Override
+        public void run()
+        {
+            _count.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.jms.JMSException;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ProducerPipelineTest extends QpidTestCase
+{
+    private ExecutorService _executor;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _executor = Executors.newFixedThreadPool(4);
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _executor.shutdownNow();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testWritesPreserveSendOrder() throws Exception
+    {
+        ProducerPipeline pipeline = new ProducerPipeline(_executor, 8, new Object());
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+        final int count = 100;
+        for (int i = 0; i < count; i++)
+        {
+            final int sequence = i;
+            pipeline.submit(new ProducerPipeline.PipelinedSend()
+            {
+                @Override
+                void encode() throws JMSException
+                {
+                    // earlier sends take longer to encode so that later sends would overtake them if allowed
+                    try
+                    {
+                        Thread.sleep((count - sequence) % 4);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+
+                @Override
+                void write() throws JMSException
+                {
+                    written.add(sequence);
+                }
+            });
+        }
+        pipeline.await();
+
+        assertEquals("Unexpected number of writes", count, written.size());
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals("Unexpected write order", Integer.valueOf(i), written.get(i));
+        }
+    }
+
+    public void testWritesHoldWriteLockWhichWaitingSenderReleases() throws Exception
+    {
+        final Object writeLock = new Object();
+        ProducerPipeline pipeline = new ProducerPipeline(_executor, 1, writeLock);
+        final List<Boolean> writeLockHeld = Collections.synchronizedList(new ArrayList<Boolean>());
+        final int count = 10;
+
+        // a sender holds the write lock, as it holds the failover mutex, so it must release it while the pipeline is
+        // full for the writes to proceed
+        synchronized (writeLock)
+        {
+            for (int i = 0; i < count; i++)
+            {
+                pipeline.submit(new ProducerPipeline.PipelinedSend()
+                {
+                    @Override
+                    void encode()
+                    {
+                    }
+
+                    @Override
+                    void write()
+                    {
+                        writeLockHeld.add(Thread.holdsLock(writeLock));
+                    }
+                });
+            }
+            pipeline.await();
+        }
+
+        assertEquals("Unexpected number of writes", count, writeLockHeld.size());
+        assertFalse("Write performed without holding the write lock", writeLockHeld.contains(false));
+    }
+
+    public void testEncodeFailureDiscardsSend() throws Exception
+    {
+        ProducerPipeline pipeline = new ProducerPipeline(_executor, 1, new Object());
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        pipeline.submit(new ProducerPipeline.PipelinedSend()
+        {
+            @Override
+            void encode() throws JMSException
+            {
+                throw new JMSException("encode failed");
+            }
+
+            @Override
+            void write()
+            {
+                events.add("write");
+            }
+
+            @Override
+            void discard()
+            {
+                events.add("discard");
+            }
+        });
+
+        try
+        {
+            pipeline.await();
+            fail("Exception not thrown");
+        }
+        catch (JMSException e)
+        {
+            // pass
+        }
+        assertEquals("Unexpected events", Collections.singletonList("discard"), events);
+    }
+
+    public void testFailureIsReportedOnceAndLaterSendsAreWritten() throws Exception
+    {
+        ProducerPipeline pipeline = new ProducerPipeline(_executor, 2, new Object());
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+
+        pipeline.submit(new ProducerPipeline.PipelinedSend()
+        {
+            @Override
+            void encode() throws JMSException
+            {
+                throw new JMSException("encode failed");
+            }
+
+            @Override
+            void write() throws JMSException
+            {
+                written.add(0);
+            }
+        });
+
+        try
+        {
+            pipeline.await();
+            fail("Exception not thrown");
+        }
+        catch (JMSException e)
+        {
+            assertTrue("Unexpected exception message " + e.getMessage(), e.getMessage().contains("encode failed"));
+        }
+        pipeline.checkFailure();
+
+        pipeline.submit(new ProducerPipeline.PipelinedSend()
+        {
+            @Override
+            void encode()
+            {
+            }
+
+            @Override
+            void write() throws JMSException
+            {
+                written.add(1);
+            }
+        });
+        pipeline.await();
+
+        assertEquals("Unexpected writes", Collections.singletonList(1), written);
+    }
+
+    public void testSubmitAfterShutdownFails() throws Exception
+    {
+        ProducerPipeline pipeline = new ProducerPipeline(_executor, 1, new Object());
+        _executor.shutdown();
+        try
+        {
+            pipeline.submit(new ProducerPipeline.PipelinedSend()
+            {
+                @Override
+                void encode()
+                {
+                }
+
+                @Override
+                void write()
+                {
+                }
+            });
+            fail("Exception not thrown");
+        }
+        catch (JMSException e)
+        {
+            // pass
+        }
+        pipeline.await();
+    }
+}
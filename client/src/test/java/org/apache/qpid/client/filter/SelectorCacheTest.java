@@ -0,0 +1,187 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.qpid.filter.BooleanExpression;
+import org.apache.qpid.filter.FilterableMessage;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class SelectorCacheTest extends QpidTestCase
+{
+    public void testSelectorsDifferingInComparedLiteralsShareKey()
+    {
+        final Map<String, String> first = new HashMap<>();
+        final Map<String, String> second = new HashMap<>();
+        final String key = SelectorCache.normalise("JMSCorrelationID = 'abc'", first);
+
+        assertEquals("Unexpected key", key, SelectorCache.normalise(" JMSCorrelationID  =\t'it''s' ", second));
+        assertEquals("Unexpected parameters", 1, first.size());
+        assertEquals("Unexpected parameter", "abc", first.values().iterator().next());
+        assertEquals("Unexpected parameter", "it's", second.values().iterator().next());
+    }
+
+    public void testLiteralsNotComparedForEqualityAreKept()
+    {
+        assertUnparameterised("a LIKE 'x%' ESCAPE '\\'");
+        assertUnparameterised("a IN ('x', 'y')");
+        assertUnparameterised("a = ('x')");
+        assertUnparameterised("a = 'x' + b");
+        assertUnparameterised("a = 'x' -- comment\n");
+        assertUnparameterised("a = 'x''");
+    }
+
+    public void testWhiteSpaceIsCollapsed()
+    {
+        assertEquals("Unexpected key", "a = 1 AND b <> 'x y'", SelectorCache.normalise("  a =\n1  AND b <> 'x y'  ", null));
+        assertEquals("Unexpected key", "a=1", SelectorCache.normalise("a=1", null));
+    }
+
+    public void testParameterisedSelectorsShareParsedExpression() throws Exception
+    {
+        final SelectorCache cache = new SelectorCache(10, true);
+        final BooleanExpression<FilterableMessage> abc = cache.getExpression("JMSCorrelationID = 'abc' AND a <> 'x'");
+        final BooleanExpression<FilterableMessage> def = cache.getExpression("JMSCorrelationID = 'def' AND a <> 'x'");
+        assertEquals("Unexpected cache size", 1, cache.getSize());
+
+        final TestMessage message = new TestMessage("def", "y");
+        assertFalse("Selector should not match", abc.matches(message));
+        assertTrue("Selector should match", def.matches(message));
+        assertFalse("Selector should not match", def.matches(new TestMessage("def", "x")));
+        assertTrue("Selector should match", cache.getExpression("'abc' = JMSCorrelationID AND a <> 'z'")
+                                                 .matches(new TestMessage("abc", "y")));
+    }
+
+    public void testUnparameterisedSelectorIsShared() throws Exception
+    {
+        final SelectorCache cache = new SelectorCache(10, true);
+        assertSame("Expression should be shared", cache.getExpression("a LIKE 'x%'"), cache.getExpression("a  LIKE 'x%'"));
+    }
+
+    public void testInterpretedSelectorsAreNotParameterised() throws Exception
+    {
+        final SelectorCache cache = new SelectorCache(10, false);
+        final BooleanExpression<FilterableMessage> abc = cache.getExpression("JMSCorrelationID = 'abc'");
+        cache.getExpression("JMSCorrelationID = 'def'");
+        assertEquals("Unexpected cache size", 2, cache.getSize());
+        assertSame("Expression should be shared", abc, cache.getExpression("JMSCorrelationID = 'abc'"));
+        assertTrue("Selector should match", abc.matches(new TestMessage("abc", null)));
+    }
+
+    public void testLeastRecentlyUsedSelectorIsEvicted() throws Exception
+    {
+        final SelectorCache cache = new SelectorCache(2, true);
+        final BooleanExpression<FilterableMessage> a = cache.getExpression("a IS NULL");
+        cache.getExpression("b IS NULL");
+        cache.getExpression("a IS NULL");
+        cache.getExpression("c IS NULL");
+        assertEquals("Unexpected cache size", 2, cache.getSize());
+        assertSame("Recently used expression should be kept", a, cache.getExpression("a IS NULL"));
+    }
+
+    public void testCacheCanBeDisabled() throws Exception
+    {
+        final SelectorCache cache = new SelectorCache(0, true);
+        assertTrue("Selector should match", cache.getExpression("a = 'x'").matches(new TestMessage(null, "x")));
+        assertEquals("Unexpected cache size", 0, cache.getSize());
+    }
+
+    private static void assertUnparameterised(final String selector)
+    {
+        final Map<String, String> parameters = new HashMap<>();
+        SelectorCache.normalise(selector, parameters);
+        assertTrue("Unexpected parameters for " + selector, parameters.isEmpty());
+    }
+
+    private static class TestMessage implements FilterableMessage
+    {
+        private final String _correlationId;
+        private final String _a;
+
+        private TestMessage(final String correlationId, final String a)
+        {
+            _correlationId = correlationId;
+            _a = a;
+        }
+
+        @Override
+        public boolean isPersistent()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean isRedelivered()
+        {
+            return false;
+        }
+
+        @Override
+        public Object getHeader(final String name)
+        {
+            return "a".equals(name) ? _a : null;
+        }
+
+        @Override
+        public String getReplyTo()
+        {
+            return null;
+        }
+
+        @Override
+        public String getType()
+        {
+            return null;
+        }
+
+        @Override
+        public byte getPriority()
+        {
+            return 4;
+        }
+
+        @Override
+        public String getMessageId()
+        {
+            return null;
+        }
+
+        @Override
+        public long getTimestamp()
+        {
+            return 0;
+        }
+
+        @Override
+        public String getCorrelationId()
+        {
+            return _correlationId;
+        }
+
+        @Override
+        public long getExpiration()
+        {
+            return 0;
+        }
+    }
+}
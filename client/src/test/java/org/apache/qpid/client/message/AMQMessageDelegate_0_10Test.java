@@ -20,17 +20,23 @@
  */
 package org.apache.qpid.client.message;
 
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import javax.jms.Destination;
+import javax.jms.JMSException;
 
 import org.apache.qpid.client.AMQDestination;
 import org.apache.qpid.test.utils.QpidTestCase;
 import org.apache.qpid.transport.DeliveryProperties;
 import org.apache.qpid.transport.MessageProperties;
 import org.apache.qpid.transport.ReplyTo;
+import org.apache.qpid.transport.codec.BBDecoder;
+import org.apache.qpid.transport.codec.BBEncoder;
+import org.apache.qpid.transport.codec.PropertyMap;
 
 public class AMQMessageDelegate_0_10Test extends QpidTestCase
 {
@@ -107,6 +113,77 @@ public class AMQMessageDelegate_0_10Test extends QpidTestCase
         assertEquals("Min short value not retrieved successfully", Short.MIN_VALUE, delegate.getShortProperty(MIN_SHORT));
     }
 
+    public void testTypedPropertiesHeldInPropertyMap() throws Exception
+    {
+        AMQMessageDelegate_0_10 delegate = new AMQMessageDelegate_0_10();
+        delegate.setBooleanProperty("boolean", true);
+        delegate.setByteProperty("byte", (byte) 1);
+        delegate.setShortProperty("short", (short) 2);
+        delegate.setIntProperty("int", 3);
+        delegate.setLongProperty("long", 4L);
+        delegate.setFloatProperty("float", 5.5f);
+        delegate.setDoubleProperty("double", 6.5d);
+        delegate.setStringProperty("string", "7");
+        delegate.setObjectProperty("char", 'c');
+        assertTrue("Properties should be held in a property map",
+                   delegate.getMessageProperties().getApplicationHeaders() instanceof PropertyMap);
+
+        BBEncoder encoder = new BBEncoder(256);
+        encoder.writeMap(delegate.getMessageProperties().getApplicationHeaders());
+        BBDecoder decoder = new BBDecoder();
+        decoder.init(encoder.buffer());
+        Map<String, Object> decoded = decoder.readMap();
+
+        MessageProperties received = new MessageProperties();
+        received.setApplicationHeaders(new LinkedHashMap<>(decoded));
+        AMQMessageDelegate_0_10 boxed = new AMQMessageDelegate_0_10(received, new DeliveryProperties(), 1L);
+
+        String[] getters = { "boolean", "byte", "short", "int", "long", "float", "double", "string" };
+        for (String name : decoded.keySet())
+        {
+            for (String getter : getters)
+            {
+                assertEquals("Unexpected " + getter + " value of " + name,
+                             getProperty(boxed, getter, name),
+                             getProperty(delegate, getter, name));
+            }
+        }
+        assertEquals("Unexpected property names",
+                     Collections.list(boxed.getPropertyNames()), Collections.list(delegate.getPropertyNames()));
+        assertEquals("Unexpected property map", delegate.getPropertyMap(), boxed.getMessageProperties().getApplicationHeaders());
+        assertNull("Boxed properties should not be presented as a property map", boxed.getPropertyMap());
+    }
+
+    private static Object getProperty(final AMQMessageDelegate_0_10 delegate, final String getter, final String name)
+    {
+        try
+        {
+            switch (getter)
+            {
+                case "boolean":
+                    return delegate.getBooleanProperty(name);
+                case "byte":
+                    return delegate.getByteProperty(name);
+                case "short":
+                    return delegate.getShortProperty(name);
+                case "int":
+                    return delegate.getIntProperty(name);
+                case "long":
+                    return delegate.getLongProperty(name);
+                case "float":
+                    return delegate.getFloatProperty(name);
+                case "double":
+                    return delegate.getDoubleProperty(name);
+                default:
+                    return delegate.getStringProperty(name);
+            }
+        }
+        catch (JMSException | RuntimeException e)
+        {
+            return e.getClass();
+        }
+    }
+
     // See QPID_3838
     public void testJMSComplainceForQpidProviderProperties() throws Exception
     {
@@ -60,6 +60,7 @@ public class Encrypted091MessageFactoryTest extends QpidTestCase
     private SecretKeySpec _secretKeySpec;
     private KeyStore _keyStore;
     private MessageFactoryRegistry _messageFactoryRegistry;
+    private AMQConnection _connection;
 
     @Override
     public void setUp() throws Exception
@@ -92,11 +93,11 @@ public class Encrypted091MessageFactoryTest extends QpidTestCase
             _keyStore.load(getClass().getClassLoader().getResourceAsStream(TestSSLConstants.KEYSTORE),
                            TestSSLConstants.KEYSTORE_PASSWORD.toCharArray());
 
-            final AMQConnection connection = mock(AMQConnection.class);
+            _connection = mock(AMQConnection.class);
             final ConnectionSettings settings = mock(ConnectionSettings.class);
 
-            when(session.getAMQConnection()).thenReturn(connection);
-            when(connection.getConnectionSettings()).thenReturn(settings);
+            when(session.getAMQConnection()).thenReturn(_connection);
+            when(_connection.getConnectionSettings()).thenReturn(settings);
             when(settings.getEncryptionTrustStore(any(ConnectionSettings.RemoteStoreFinder.class))).thenReturn(_keyStore);
             when(settings.getEncryptionKeyStore()).thenReturn(_keyStore);
             when(settings.getEncryptionKeyStorePassword()).thenReturn(TestSSLConstants.KEYSTORE_PASSWORD);
@@ -138,6 +139,75 @@ public class Encrypted091MessageFactoryTest extends QpidTestCase
         }
     }
 
+    public void testContentEncryptionKeyReusedForSameRecipients() throws Exception
+    {
+        if(isStrongEncryptionEnabled())
+        {
+            when(_connection.getEncryptionKeyReuseCount()).thenReturn(2);
+            when(_connection.getEncryptionKeyReuseInterval()).thenReturn(60000L);
+
+            final List<String> recipients = Collections.singletonList(getRecipient());
+            final MessageEncryptionHelper.ContentEncryptionKey first = _encryptionHelper.getContentEncryptionKey(recipients);
+            final MessageEncryptionHelper.ContentEncryptionKey second = _encryptionHelper.getContentEncryptionKey(recipients);
+            final MessageEncryptionHelper.ContentEncryptionKey third = _encryptionHelper.getContentEncryptionKey(recipients);
+
+            assertSame("Key should be reused", first, second);
+            assertNotSame("Key should be rotated once the reuse count is exhausted", second, third);
+        }
+    }
+
+    public void testContentEncryptionKeyNotReusedByDefault() throws Exception
+    {
+        if(isStrongEncryptionEnabled())
+        {
+            final List<String> recipients = Collections.singletonList(getRecipient());
+            final MessageEncryptionHelper.ContentEncryptionKey first = _encryptionHelper.getContentEncryptionKey(recipients);
+            final MessageEncryptionHelper.ContentEncryptionKey second = _encryptionHelper.getContentEncryptionKey(recipients);
+
+            assertNotSame("Key should not be reused", first, second);
+        }
+    }
+
+    public void testDecryptsMessagesSharingContentEncryptionKey() throws Exception
+    {
+        if(isStrongEncryptionEnabled())
+        {
+            final List<MessageEncryptionHelper.KeyTransportRecipientInfo> recipientInfo =
+                    _encryptionHelper.getKeyTransportRecipientInfo(Collections.singletonList(getRecipient()),
+                                                                   _secretKeySpec);
+
+            List<List<Object>> recipientHeader = new ArrayList<>();
+            for (MessageEncryptionHelper.KeyTransportRecipientInfo info : recipientInfo)
+            {
+                recipientHeader.add(info.asList());
+            }
+
+            for (int i = 0; i < 2; i++)
+            {
+                BasicContentHeaderProperties props = new BasicContentHeaderProperties();
+                props.getHeaders().setObject(MessageEncryptionHelper.ENCRYPTION_ALGORITHM_PROPERTY,
+                                             MessageEncryptionHelper.DEFAULT_MESSAGE_ENCRYPTION_CIPHER_NAME);
+                props.getHeaders().setObject(MessageEncryptionHelper.ENCRYPTED_KEYS_PROPERTY, recipientHeader);
+                props.getHeaders().setObject(MessageEncryptionHelper.KEY_INIT_VECTOR_PROPERTY, _initializeVector);
+
+                final AbstractJMSMessage message =
+                        _messageFactory.createMessage(new AMQMessageDelegate_0_8(props, 1l + i),
+                                                      ByteBuffer.wrap(_encryptedMessage));
+
+                assertTrue("message is not a text message", message instanceof JMSTextMessage);
+                assertEquals("Message content not as expected",
+                             TEXT_MESSAGE_CONTENT,
+                             ((JMSTextMessage) message).getText());
+            }
+        }
+    }
+
+    private String getRecipient() throws Exception
+    {
+        return ((X509Certificate) _keyStore.getCertificate(TestSSLConstants.CERT_ALIAS_APP1)).getSubjectX500Principal()
+                                                                                              .getName(X500Principal.CANONICAL);
+    }
+
     private boolean isStrongEncryptionEnabled() throws NoSuchAlgorithmException
     {
         return Cipher.getMaxAllowedKeyLength("AES")>=256;
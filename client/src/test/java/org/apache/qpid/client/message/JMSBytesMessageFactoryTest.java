@@ -0,0 +1,199 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+package org.apache.qpid.client.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.jms.BytesMessage;
+import javax.jms.MessageEOFException;
+import javax.jms.TextMessage;
+
+import org.apache.qpid.framing.BasicContentHeaderProperties;
+import org.apache.qpid.framing.ContentBody;
+import org.apache.qpid.framing.ContentHeaderBody;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.DeliveryProperties;
+import org.apache.qpid.transport.MessageProperties;
+import org.apache.qpid.util.GZIPUtils;
+
+public class JMSBytesMessageFactoryTest extends QpidTestCase
+{
+    private final JMSBytesMessageFactory _factory = new JMSBytesMessageFactory();
+
+    public void testCompressed010BodyIsInflatedOnRead() throws Exception
+    {
+        final byte[] body = createBody(200000);
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(JMSBytesMessage.MIME_TYPE);
+        messageProperties.setContentEncoding(GZIPUtils.GZIP_CONTENT_ENCODING);
+
+        final BytesMessage message = (BytesMessage) _factory.createMessage(1L,
+                                                                           false,
+                                                                           messageProperties,
+                                                                           new DeliveryProperties(),
+                                                                           compress(body));
+
+        assertNull("Content encoding should be removed", messageProperties.getContentEncoding());
+        assertEquals("Unexpected body length", body.length, message.getBodyLength());
+        assertBodyContent(body, message);
+
+        message.reset();
+        assertBodyContent(body, message);
+    }
+
+    public void testCompressed08BodyIsInflatedOnRead() throws Exception
+    {
+        final byte[] body = createBody(1000);
+        final ContentHeaderBody contentHeader = new ContentHeaderBody(new BasicContentHeaderProperties());
+        contentHeader.getProperties().setContentType(JMSBytesMessage.MIME_TYPE);
+        contentHeader.getProperties().setEncoding(GZIPUtils.GZIP_CONTENT_ENCODING);
+        final ByteBuffer compressed = compress(body);
+        contentHeader.setBodySize(compressed.remaining());
+
+        final BytesMessage message = (BytesMessage) _factory.createMessage(1L,
+                                                                           false,
+                                                                           contentHeader,
+                                                                           "amq.direct",
+                                                                           "routingKey",
+                                                                           Collections.singletonList(new ContentBody(compressed)),
+                                                                           null,
+                                                                           null,
+                                                                           0);
+
+        assertNull("Content encoding should be removed", contentHeader.getProperties().getEncodingAsString());
+        assertBodyContent(body, message);
+    }
+
+    public void testTypedReadsFromCompressedBody() throws Exception
+    {
+        final JMSBytesMessage source = TestMessageHelper.newJMSBytesMessage();
+        final byte[] padding = createBody(70000);
+        source.writeInt(42);
+        source.writeBytes(padding);
+        source.writeUTF("hello");
+        source.writeLong(Long.MAX_VALUE);
+        source.writeDouble(1.5d);
+
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentEncoding(GZIPUtils.GZIP_CONTENT_ENCODING);
+        final BytesMessage message = (BytesMessage) _factory.createMessage(1L,
+                                                                           false,
+                                                                           messageProperties,
+                                                                           new DeliveryProperties(),
+                                                                           compress(source.getData()));
+
+        assertEquals(42, message.readInt());
+        final byte[] readPadding = new byte[padding.length];
+        assertEquals(padding.length, message.readBytes(readPadding));
+        assertTrue("Unexpected content", Arrays.equals(padding, readPadding));
+        assertEquals("hello", message.readUTF());
+        assertEquals(Long.MAX_VALUE, message.readLong());
+        assertEquals(1.5d, message.readDouble());
+        try
+        {
+            message.readByte();
+            fail("Exception not thrown");
+        }
+        catch (MessageEOFException e)
+        {
+            // pass
+        }
+    }
+
+    public void testInvalidCompressedBodyIsDeliveredUnchanged() throws Exception
+    {
+        final byte[] body = createBody(100);
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentEncoding(GZIPUtils.GZIP_CONTENT_ENCODING);
+
+        final BytesMessage message = (BytesMessage) _factory.createMessage(1L,
+                                                                           false,
+                                                                           messageProperties,
+                                                                           new DeliveryProperties(),
+                                                                           ByteBuffer.wrap(body));
+
+        assertEquals(GZIPUtils.GZIP_CONTENT_ENCODING, messageProperties.getContentEncoding());
+        assertBodyContent(body, message);
+    }
+
+    public void testCompressedBodyIsInflatedEagerlyByDefault() throws Exception
+    {
+        final AbstractJMSMessageFactory factory = new JMSTextMessageFactory()
+        {
+            @Override
+            protected boolean isLazyDecompressionSupported()
+            {
+                return true;
+            }
+        };
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType("text/plain");
+        messageProperties.setContentEncoding(GZIPUtils.GZIP_CONTENT_ENCODING);
+
+        final TextMessage message = (TextMessage) factory.createMessage(1L,
+                                                                        false,
+                                                                        messageProperties,
+                                                                        new DeliveryProperties(),
+                                                                        compress("hello".getBytes(StandardCharsets.UTF_8)));
+
+        assertNull("Content encoding should be removed", messageProperties.getContentEncoding());
+        assertEquals("Unexpected text", "hello", message.getText());
+    }
+
+    private void assertBodyContent(final byte[] expected, final BytesMessage message) throws Exception
+    {
+        final byte[] actual = new byte[expected.length];
+        final byte[] chunk = new byte[4096];
+        int position = 0;
+        int read;
+        while ((read = message.readBytes(chunk)) != -1)
+        {
+            assertTrue("Body is longer than expected", position + read <= actual.length);
+            System.arraycopy(chunk, 0, actual, position, read);
+            position += read;
+        }
+        assertEquals("Unexpected number of bytes read", expected.length, position);
+        assertTrue("Unexpected body content", Arrays.equals(expected, actual));
+    }
+
+    private byte[] createBody(final int size)
+    {
+        final byte[] body = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            body[i] = (byte) (i % 31);
+        }
+        return body;
+    }
+
+    private ByteBuffer compress(final byte[] data)
+    {
+        return compress(ByteBuffer.wrap(data));
+    }
+
+    private ByteBuffer compress(final ByteBuffer data)
+    {
+        return ByteBuffer.wrap(GZIPUtils.compressBufferToArray(data));
+    }
+}
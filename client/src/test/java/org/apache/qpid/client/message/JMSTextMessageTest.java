@@ -0,0 +1,121 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class JMSTextMessageTest extends QpidTestCase
+{
+    public void testRoundTrip() throws Exception
+    {
+        String[] texts = { "", "pies", "caf\u00E9", "\u65E5\u672C\u8A9E", "smile \uD83D\uDE00", "\uFFFD replaced",
+                           repeat("0123456789", 10), repeat("abc\u00E9\u20AC", 2048), repeat("x", 1024 * 1024) };
+        for (String text : texts)
+        {
+            byte[] expected = text.getBytes(StandardCharsets.UTF_8);
+
+            JMSTextMessage message = TestMessageHelper.newJMSTextMessage();
+            message.setText(text);
+            assertTrue("Unexpected encoding of " + abbreviate(text), Arrays.equals(expected, toArray(message.getData())));
+
+            JMSTextMessage received = receive(expected, 0);
+            assertEquals("Unexpected decoding", text, received.getText());
+
+            received = receive(expected, 3);
+            assertEquals("Unexpected decoding of a slice", text, received.getText());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(expected.length);
+            direct.put(expected).flip();
+            received = new JMSTextMessage(new AMQMessageDelegate_0_10(), direct);
+            assertEquals("Unexpected decoding of a direct buffer", text, received.getText());
+        }
+    }
+
+    public void testMalformedBody() throws Exception
+    {
+        JMSTextMessage received = receive(new byte[] { 'a', (byte) 0xC3 }, 0);
+        assertNull("Malformed text should not be decoded", received.getText());
+        try
+        {
+            received.getData();
+            fail("Exception not thrown");
+        }
+        catch (MessageFormatException e)
+        {
+            // pass
+        }
+
+        received = receive(new byte[] { (byte) 0xED, (byte) 0xA0, (byte) 0x80 }, 0);
+        assertNull("Encoded surrogate should not be decoded", received.getText());
+    }
+
+    public void testUnpairedSurrogateNotEncoded() throws Exception
+    {
+        JMSTextMessage message = TestMessageHelper.newJMSTextMessage();
+        message.setText("a\uD83D");
+        try
+        {
+            message.getData();
+            fail("Exception not thrown");
+        }
+        catch (JMSException e)
+        {
+            // pass
+        }
+    }
+
+    private JMSTextMessage receive(final byte[] body, final int padding) throws Exception
+    {
+        byte[] array = new byte[body.length + 2 * padding];
+        System.arraycopy(body, 0, array, padding, body.length);
+        ByteBuffer data = ByteBuffer.wrap(array, padding, body.length).slice();
+        return new JMSTextMessage(new AMQMessageDelegate_0_10(), data);
+    }
+
+    private static byte[] toArray(final ByteBuffer buffer)
+    {
+        byte[] array = new byte[buffer.remaining()];
+        buffer.duplicate().get(array);
+        return array;
+    }
+
+    private static String repeat(final String text, final int count)
+    {
+        StringBuilder builder = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++)
+        {
+            builder.append(text);
+        }
+        return builder.toString();
+    }
+
+    private static String abbreviate(final String text)
+    {
+        return text.length() > 20 ? text.substring(0, 20) + "..." : text;
+    }
+}
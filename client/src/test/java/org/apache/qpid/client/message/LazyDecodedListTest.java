@@ -0,0 +1,129 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.message;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.codec.BBDecoder;
+import org.apache.qpid.transport.codec.BBEncoder;
+
+public class LazyDecodedListTest extends QpidTestCase
+{
+    private final List<Object> _expected = new ArrayList<>();
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _expected.add("value");
+        _expected.add(1);
+        _expected.add(null);
+        _expected.add(UUID.randomUUID());
+        _expected.add(Collections.<String, Object>singletonMap("key", 2L));
+        for (int i = 0; i < 100; i++)
+        {
+            _expected.add(i);
+        }
+    }
+
+    public void testValuesAreDecodedOnRead()
+    {
+        final LazyDecodedList list = new LazyDecodedList(encode(_expected));
+
+        assertEquals("Unexpected size", _expected.size(), list.size());
+        assertEquals("Unexpected value", 99, list.get(104));
+        assertEquals("Unexpected value", _expected.get(3), list.get(3));
+        assertNull("Unexpected value", list.get(2));
+        assertEquals("Unexpected list", _expected, list);
+        assertEquals("Unexpected index", 5, list.indexOf(0));
+        try
+        {
+            list.get(105);
+            fail("Exception not thrown");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+            // pass
+        }
+    }
+
+    public void testUnmodifiedListKeepsEncoding()
+    {
+        final ByteBuffer encoded = encode(_expected);
+        final LazyDecodedList list = new LazyDecodedList(encoded);
+        list.get(0);
+
+        assertEquals("Unexpected encoding", encoded.rewind(), list.getEncoded());
+        assertEquals("Encoding should decode to the same list", _expected, decode(list.getEncoded()));
+
+        list.get(4);
+        assertNull("List whose mutable value was read should be encoded again", list.getEncoded());
+    }
+
+    public void testModifiedListIsDecoded()
+    {
+        final LazyDecodedList list = new LazyDecodedList(encode(Arrays.<Object>asList(1, 2, 3)));
+        list.add("four");
+        list.set(0, "one");
+        list.remove(1);
+
+        assertNull("Modified list should be encoded again", list.getEncoded());
+        assertEquals("Unexpected list", Arrays.<Object>asList("one", 3, "four"), decode(encode(list)));
+
+        list.clear();
+        assertTrue("List should be empty", list.isEmpty());
+    }
+
+    public void testMalformedListIsNotLazilyDecoded()
+    {
+        final ByteBuffer encoded = encode(Arrays.<Object>asList(new byte[] { 1, 2, 3 }, 4));
+        // the size of the first value, following its type code, is beyond the end of the list
+        encoded.putInt(9, 100);
+        assertFalse("List whose value overruns it should not be lazily decoded",
+                    LazyDecodedList.isLazilyDecodable(encoded));
+        // and, read as an unsigned integer, the size wraps to a negative int
+        encoded.putInt(9, -1);
+        assertFalse("List whose value has a negative size should not be lazily decoded",
+                    LazyDecodedList.isLazilyDecodable(encoded));
+        encoded.putInt(9, 3);
+        assertTrue("List should be lazily decoded", LazyDecodedList.isLazilyDecodable(encoded));
+    }
+
+    private static ByteBuffer encode(final List<Object> list)
+    {
+        final BBEncoder encoder = new BBEncoder(1024);
+        encoder.writeList(list);
+        return encoder.segment();
+    }
+
+    private static List<Object> decode(final ByteBuffer encoded)
+    {
+        final BBDecoder decoder = new BBDecoder();
+        decoder.init(encoded);
+        return decoder.readList();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.message;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.codec.BBDecoder;
+import org.apache.qpid.transport.codec.BBEncoder;
+
+public class LazyDecodedMapTest extends QpidTestCase
+{
+    private final Map<String, Object> _expected = new LinkedHashMap<>();
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _expected.put("string", "value");
+        _expected.put("int", 1);
+        _expected.put("long", Long.MAX_VALUE);
+        _expected.put("double", 1.5d);
+        _expected.put("boolean", true);
+        _expected.put("null", null);
+        _expected.put("list", Arrays.<Object>asList(1, "two"));
+        _expected.put("bytes", new byte[] { 1, 2, 3 });
+        for (int i = 0; i < 100; i++)
+        {
+            _expected.put("key" + i, "value" + i);
+        }
+    }
+
+    public void testValuesAreDecodedOnRead()
+    {
+        final LazyDecodedMap map = new LazyDecodedMap(encode(_expected));
+
+        assertEquals("Unexpected size", _expected.size(), map.size());
+        assertEquals("Unexpected value", "value", map.get("string"));
+        assertEquals("Unexpected value", 1, map.get("int"));
+        assertEquals("Unexpected value", Long.MAX_VALUE, map.get("long"));
+        assertEquals("Unexpected value", 1.5d, map.get("double"));
+        assertEquals("Unexpected value", Boolean.TRUE, map.get("boolean"));
+        assertEquals("Unexpected value", "value99", map.get("key99"));
+        assertNull("Unexpected value", map.get("null"));
+        assertTrue("Key should be present", map.containsKey("null"));
+        assertFalse("Key should not be present", map.containsKey("missing"));
+        assertNull("Unexpected value", map.get("missing"));
+        assertSame("Value should be decoded once", map.get("list"), map.get("list"));
+        assertEquals("Unexpected keys", new ArrayList<>(_expected.keySet()), new ArrayList<>(map.keySet()));
+    }
+
+    public void testUnmodifiedMapKeepsEncoding()
+    {
+        final ByteBuffer encoded = encode(_expected);
+        final LazyDecodedMap map = new LazyDecodedMap(encoded);
+        map.get("string");
+
+        assertEquals("Unexpected encoding", encoded.rewind(), map.getEncoded());
+        assertEquals("Encoding should decode to the same map",
+                     decode(encode(_expected)).keySet(), decode(map.getEncoded()).keySet());
+
+        map.get("bytes");
+        assertNull("Map whose mutable value was read should be encoded again", map.getEncoded());
+    }
+
+    public void testModifiedMapIsDecoded()
+    {
+        final LazyDecodedMap map = new LazyDecodedMap(encode(_expected));
+        map.get("string");
+        map.put("added", 2);
+        map.remove("int");
+
+        assertNull("Modified map should be encoded again", map.getEncoded());
+        assertEquals("Unexpected value", "value", map.get("string"));
+        assertEquals("Unexpected value", 2, map.get("added"));
+        assertFalse("Key should have been removed", map.containsKey("int"));
+        assertEquals("Unexpected size", _expected.size(), map.size());
+
+        final Map<String, Object> decoded = decode(encode(map));
+        assertEquals("Unexpected value after encoding", "value5", decoded.get("key5"));
+
+        map.clear();
+        assertTrue("Map should be empty", map.isEmpty());
+    }
+
+    public void testEmptyMapIsNotLazilyDecoded()
+    {
+        assertFalse("Empty map should not be lazily decoded",
+                    LazyDecodedMap.isLazilyDecodable(encode(new LinkedHashMap<String, Object>())));
+        assertTrue("Map should be lazily decoded", LazyDecodedMap.isLazilyDecodable(encode(_expected)));
+    }
+
+    public void testMalformedMapIsNotLazilyDecoded()
+    {
+        final Map<String, Object> map = new LinkedHashMap<>();
+        map.put("k", new byte[] { 1, 2, 3 });
+        final ByteBuffer encoded = encode(map);
+        // the size of the value, following the key and the type code, is beyond the end of the map
+        encoded.putInt(11, 4);
+        assertFalse("Map whose value overruns it should not be lazily decoded",
+                    LazyDecodedMap.isLazilyDecodable(encoded));
+        // and, read as an unsigned integer, the size wraps to a negative int
+        encoded.putInt(11, -1);
+        assertFalse("Map whose value has a negative size should not be lazily decoded",
+                    LazyDecodedMap.isLazilyDecodable(encoded));
+        encoded.putInt(11, 3);
+        assertTrue("Map should be lazily decoded", LazyDecodedMap.isLazilyDecodable(encoded));
+    }
+
+    private static ByteBuffer encode(final Map<String, Object> map)
+    {
+        final BBEncoder encoder = new BBEncoder(1024);
+        encoder.writeMap(map);
+        return encoder.segment();
+    }
+
+    private static Map<String, Object> decode(final ByteBuffer encoded)
+    {
+        final BBDecoder decoder = new BBDecoder();
+        decoder.init(encoded);
+        return decoder.readMap();
+    }
+}
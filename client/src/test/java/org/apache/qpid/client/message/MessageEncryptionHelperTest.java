@@ -0,0 +1,150 @@
+/*
+ * 
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * 
+ */
+package org.apache.qpid.client.message;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class MessageEncryptionHelperTest extends QpidTestCase
+{
+    private final byte[] _header = "header".getBytes(StandardCharsets.US_ASCII);
+    private MessageEncryptionHelper _encryptionHelper;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _encryptionHelper = new MessageEncryptionHelper(null);
+    }
+
+    public void testEncryptDecryptWithDefaultCipher() throws Exception
+    {
+        if (isStrongEncryptionEnabled())
+        {
+            doRoundTripTest(MessageEncryptionHelper.DEFAULT_MESSAGE_ENCRYPTION_CIPHER_NAME, 0);
+            doRoundTripTest(MessageEncryptionHelper.DEFAULT_MESSAGE_ENCRYPTION_CIPHER_NAME, 1000);
+            doRoundTripTest(MessageEncryptionHelper.DEFAULT_MESSAGE_ENCRYPTION_CIPHER_NAME, 65536);
+        }
+    }
+
+    public void testEncryptDecryptWithGCM() throws Exception
+    {
+        if (isStrongEncryptionEnabled())
+        {
+            doRoundTripTest(MessageEncryptionHelper.AES_GCM_MESSAGE_ENCRYPTION_CIPHER_NAME, 0);
+            doRoundTripTest(MessageEncryptionHelper.AES_GCM_MESSAGE_ENCRYPTION_CIPHER_NAME, 1000);
+            doRoundTripTest(MessageEncryptionHelper.AES_GCM_MESSAGE_ENCRYPTION_CIPHER_NAME, 65536);
+        }
+    }
+
+    public void testGCMDetectsTampering() throws Exception
+    {
+        if (isStrongEncryptionEnabled())
+        {
+            _encryptionHelper.setMessageEncryptionCipherName(MessageEncryptionHelper.AES_GCM_MESSAGE_ENCRYPTION_CIPHER_NAME);
+            final SecretKeySpec secretKey = _encryptionHelper.createSecretKey();
+            final byte[] ivbytes = _encryptionHelper.getInitialisationVector();
+            final ByteBuffer encrypted =
+                    _encryptionHelper.encrypt(secretKey, ByteBuffer.wrap(_header), ByteBuffer.wrap(createBody(100)), ivbytes);
+            encrypted.put(encrypted.limit() - 1, (byte) (encrypted.get(encrypted.limit() - 1) ^ 0xFF));
+
+            try
+            {
+                _encryptionHelper.decrypt(MessageEncryptionHelper.AES_GCM_MESSAGE_ENCRYPTION_CIPHER_NAME,
+                                          secretKey,
+                                          ivbytes,
+                                          encrypted);
+                fail("Exception not thrown");
+            }
+            catch (AEADBadTagException e)
+            {
+                // pass
+            }
+        }
+    }
+
+    public void testBufferEncryptionMatchesArrayEncryption() throws Exception
+    {
+        if (isStrongEncryptionEnabled())
+        {
+            final SecretKeySpec secretKey = _encryptionHelper.createSecretKey();
+            final byte[] ivbytes = _encryptionHelper.getInitialisationVector();
+            final byte[] body = createBody(5000);
+            final byte[] unencrypted = new byte[_header.length + body.length];
+            System.arraycopy(_header, 0, unencrypted, 0, _header.length);
+            System.arraycopy(body, 0, unencrypted, _header.length, body.length);
+
+            final byte[] expected = _encryptionHelper.encrypt(secretKey, unencrypted, ivbytes);
+            final ByteBuffer actual =
+                    _encryptionHelper.encrypt(secretKey, ByteBuffer.wrap(_header), ByteBuffer.wrap(body), ivbytes);
+
+            assertEquals("Unexpected encrypted content", ByteBuffer.wrap(expected), actual);
+        }
+    }
+
+    private void doRoundTripTest(final String cipherName, final int bodySize) throws Exception
+    {
+        _encryptionHelper.setMessageEncryptionCipherName(cipherName);
+        final SecretKeySpec secretKey = _encryptionHelper.createSecretKey();
+        final byte[] ivbytes = _encryptionHelper.getInitialisationVector();
+        final byte[] body = createBody(bodySize);
+
+        final ByteBuffer headerBuffer = ByteBuffer.wrap(_header);
+        final ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+        final ByteBuffer encrypted = _encryptionHelper.encrypt(secretKey, headerBuffer, bodyBuffer, ivbytes);
+
+        assertEquals("Header buffer position should not change", 0, headerBuffer.position());
+        assertEquals("Body buffer position should not change", 0, bodyBuffer.position());
+
+        final ByteBuffer decrypted = _encryptionHelper.decrypt(cipherName, secretKey, ivbytes, encrypted);
+
+        assertEquals("Unexpected decrypted length", _header.length + body.length, decrypted.remaining());
+        final byte[] decryptedHeader = new byte[_header.length];
+        decrypted.get(decryptedHeader);
+        final byte[] decryptedBody = new byte[body.length];
+        decrypted.get(decryptedBody);
+        assertTrue("Unexpected header", Arrays.equals(_header, decryptedHeader));
+        assertTrue("Unexpected body", Arrays.equals(body, decryptedBody));
+    }
+
+    private byte[] createBody(final int size)
+    {
+        final byte[] body = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+    private boolean isStrongEncryptionEnabled() throws NoSuchAlgorithmException
+    {
+        return Cipher.getMaxAllowedKeyLength("AES")>=256;
+    }
+}
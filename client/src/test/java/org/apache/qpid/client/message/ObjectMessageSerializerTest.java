@@ -0,0 +1,170 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.message;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.qpid.client.util.ClassLoadingAwareObjectInputStream;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ObjectMessageSerializerTest extends QpidTestCase
+{
+    private static final ClassLoadingAwareObjectInputStream.TrustedClassFilter TRUST_ALL =
+            new ClassLoadingAwareObjectInputStream.TrustedClassFilter()
+            {
+                @Override
+                public boolean isTrusted(final Class<?> clazz)
+                {
+                    return true;
+                }
+            };
+
+    public void testJavaSerializerRoundTrip() throws Exception
+    {
+        JavaObjectMessageSerializer serializer = new JavaObjectMessageSerializer();
+        char[] large = new char[100000];
+        Arrays.fill(large, 'x');
+
+        List<Serializable> objects = new ArrayList<>();
+        objects.add("small");
+        objects.add(new String(large));
+        objects.add(new ArrayList<>(Arrays.asList(1, 2, 3)));
+        objects.add("small again");
+        for (Serializable object : objects)
+        {
+            ByteBuffer data = serializer.serialize(object);
+            assertEquals("Body should be exactly the size of the object", data.capacity(), data.remaining());
+            assertEquals("Unexpected object", object, serializer.deserialize(data, TRUST_ALL));
+        }
+    }
+
+    public void testSerializedBodiesAreIndependent() throws Exception
+    {
+        JavaObjectMessageSerializer serializer = new JavaObjectMessageSerializer();
+        ByteBuffer first = serializer.serialize("first");
+        ByteBuffer second = serializer.serialize("second");
+        assertEquals("Unexpected first object", "first", serializer.deserialize(first, TRUST_ALL));
+        assertEquals("Unexpected second object", "second", serializer.deserialize(second, TRUST_ALL));
+    }
+
+    public void testUntrustedClassRejected() throws Exception
+    {
+        JavaObjectMessageSerializer serializer = new JavaObjectMessageSerializer();
+        ByteBuffer data = serializer.serialize(new ArrayList<>(Arrays.asList(1)));
+        try
+        {
+            serializer.deserialize(data, new ClassLoadingAwareObjectInputStream.TrustedClassFilter()
+            {
+                @Override
+                public boolean isTrusted(final Class<?> clazz)
+                {
+                    return !clazz.equals(ArrayList.class);
+                }
+            });
+            fail("Exception not thrown");
+        }
+        catch (ClassNotFoundException e)
+        {
+            // pass
+        }
+    }
+
+    public void testMessageUsesSerializer() throws Exception
+    {
+        JMSObjectMessage message = new JMSObjectMessage(TRUST_ALL,
+                                                        new StringSerializer(),
+                                                        AMQMessageDelegateFactory.FACTORY_0_8);
+        assertEquals("Unexpected content type", StringSerializer.CONTENT_TYPE, message.getContentType());
+
+        message.setObject("hello");
+        ByteBuffer data = message.getData();
+        assertEquals("Unexpected body", "hello", StandardCharsets.UTF_8.decode(data.duplicate()).toString());
+
+        JMSObjectMessage received = new JMSObjectMessage(TRUST_ALL,
+                                                         new StringSerializer(),
+                                                         new AMQMessageDelegate_0_10(),
+                                                         data);
+        assertEquals("Unexpected content type", StringSerializer.CONTENT_TYPE, received.getContentType());
+        assertEquals("Unexpected object", "hello", received.getObject());
+    }
+
+    public void testDefaultMessageUsesJavaSerialization() throws Exception
+    {
+        JMSObjectMessage message = TestMessageHelper.newJMSObjectMessage();
+        assertEquals("Unexpected content type", JMSObjectMessage.MIME_TYPE, message.getContentType());
+        assertTrue("Java serialization should always be registered",
+                   ObjectMessageSerializers.getSerializers().get(JMSObjectMessage.MIME_TYPE)
+                           instanceof JavaObjectMessageSerializer);
+    }
+
+    public void testNewSerializers() throws Exception
+    {
+        assertTrue("Unexpected serializers", ObjectMessageSerializers.newSerializers(null).isEmpty());
+        assertTrue("Unexpected serializers", ObjectMessageSerializers.newSerializers(" ").isEmpty());
+
+        List<ObjectMessageSerializer> serializers =
+                ObjectMessageSerializers.newSerializers(StringSerializer.class.getName() + ", "
+                                                        + JavaObjectMessageSerializer.class.getName());
+        assertEquals("Unexpected number of serializers", 2, serializers.size());
+        assertTrue("Unexpected first serializer", serializers.get(0) instanceof StringSerializer);
+        assertTrue("Unexpected second serializer", serializers.get(1) instanceof JavaObjectMessageSerializer);
+
+        try
+        {
+            ObjectMessageSerializers.newSerializers(String.class.getName());
+            fail("Exception not thrown");
+        }
+        catch (RuntimeException e)
+        {
+            // pass
+        }
+    }
+
+    public static class StringSerializer implements ObjectMessageSerializer
+    {
+        static final String CONTENT_TYPE = "application/x-test-string";
+
+        @Override
+        public String getContentType()
+        {
+            return CONTENT_TYPE;
+        }
+
+        @Override
+        public ByteBuffer serialize(final Serializable object) throws IOException
+        {
+            return ByteBuffer.wrap(((String) object).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Serializable deserialize(final ByteBuffer data,
+                                        final ClassLoadingAwareObjectInputStream.TrustedClassFilter trustedClassFilter)
+        {
+            return StandardCharsets.UTF_8.decode(data).toString();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ConcurrentCacheTest extends QpidTestCase
+{
+    public void testGetAndPut()
+    {
+        ConcurrentCache<String, String> cache = new ConcurrentCache<>(10);
+        assertNull("Unexpected value", cache.get("a"));
+
+        cache.put("a", "1");
+        cache.put("a", "2");
+        assertEquals("Unexpected value", "2", cache.get("a"));
+        assertEquals("Unexpected size", 1, cache.size());
+    }
+
+    public void testSizeIsBounded()
+    {
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<>(64);
+        for (int i = 0; i < 1000; i++)
+        {
+            cache.put(i, i);
+        }
+        assertTrue("Cache holds too many entries: " + cache.size(), cache.size() <= 64);
+    }
+
+    public void testUsedEntryIsKept()
+    {
+        ConcurrentCache<Integer, Integer> cache = new ConcurrentCache<>(1);
+        cache.put(1, 1);
+        cache.get(1);
+        cache.put(2, 2);
+        assertNull("Unused entry should be discarded", cache.get(2));
+
+        cache.put(3, 3);
+        assertNull("Entry passed over should be discarded once unused", cache.get(1));
+        assertEquals("Unexpected value", Integer.valueOf(3), cache.get(3));
+    }
+}
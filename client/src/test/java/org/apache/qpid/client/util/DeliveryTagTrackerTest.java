@@ -0,0 +1,151 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class DeliveryTagTrackerTest extends QpidTestCase
+{
+    private DeliveryTagTracker _tracker = new DeliveryTagTracker();
+
+    public void testAddAndDrainPreserveOrder()
+    {
+        _tracker.add(3);
+        _tracker.add(1);
+        _tracker.add(2);
+
+        assertEquals("Unexpected size", 3, _tracker.size());
+        assertTrue("Unexpected tags", Arrays.equals(new long[]{3, 1, 2}, _tracker.drain()));
+        assertTrue("Tracker should be empty after drain", _tracker.isEmpty());
+    }
+
+    public void testRemove()
+    {
+        for (long tag = 1; tag <= 100; tag++)
+        {
+            _tracker.add(tag);
+        }
+
+        assertTrue("Tag not removed", _tracker.remove(50));
+        assertFalse("Tag removed twice", _tracker.remove(50));
+        assertTrue("Head tag not removed", _tracker.remove(1));
+        assertFalse("Unknown tag removed", _tracker.remove(101));
+        assertFalse("Removed tag still present", _tracker.contains(50));
+        assertTrue("Tag missing", _tracker.contains(51));
+        assertEquals("Unexpected size", 98, _tracker.size());
+
+        long[] tags = _tracker.toArray();
+        assertEquals("Unexpected first tag", 2, tags[0]);
+        assertEquals("Unexpected tag after removed tag", 51, tags[48]);
+    }
+
+    public void testRemoveWhenNotAscending()
+    {
+        _tracker.add(5);
+        _tracker.add(2);
+        _tracker.add(9);
+        _tracker.add(7);
+
+        assertTrue("Tag not removed", _tracker.remove(9));
+        assertFalse("Tag removed twice", _tracker.remove(9));
+        assertTrue("Unexpected tags", Arrays.equals(new long[]{5, 2, 7}, _tracker.toArray()));
+        assertTrue("Unexpected removed tags", Arrays.equals(new long[]{5, 2}, _tracker.removeUpTo(5)));
+        assertTrue("Unexpected remaining tags", Arrays.equals(new long[]{7}, _tracker.toArray()));
+    }
+
+    public void testRemoveUpTo()
+    {
+        for (long tag = 1; tag <= 40; tag++)
+        {
+            _tracker.add(tag);
+        }
+        _tracker.remove(10);
+
+        long[] removed = _tracker.removeUpTo(20);
+
+        assertEquals("Unexpected number of removed tags", 19, removed.length);
+        assertEquals("Unexpected first removed tag", 1, removed[0]);
+        assertEquals("Unexpected last removed tag", 20, removed[18]);
+        assertEquals("Unexpected size", 20, _tracker.size());
+        assertFalse("Removed tag still present", _tracker.contains(20));
+        assertTrue("Tag missing", _tracker.contains(21));
+    }
+
+    public void testGrowAndWrapAround()
+    {
+        List<Long> expected = new ArrayList<>();
+        Random random = new Random(1);
+        long next = 0;
+        for (int round = 0; round < 50; round++)
+        {
+            for (int i = 0; i < 37; i++)
+            {
+                expected.add(next);
+                _tracker.add(next++);
+            }
+            // remove mostly the oldest tags, as acknowledgements do, and some from elsewhere to exercise compaction
+            for (int i = 0; i < 30; i++)
+            {
+                Long tag = expected.remove(random.nextInt(4) == 0 ? random.nextInt(expected.size()) : 0);
+                assertTrue("Tag " + tag + " not removed", _tracker.remove(tag));
+            }
+        }
+
+        long[] tags = _tracker.toArray();
+        assertEquals("Unexpected size", expected.size(), _tracker.size());
+        for (int i = 0; i < tags.length; i++)
+        {
+            assertEquals("Unexpected tag", (long) expected.get(i), tags[i]);
+            assertTrue("Tag missing " + tags[i], _tracker.contains(tags[i]));
+        }
+    }
+
+    public void testLastOfLeadingRun()
+    {
+        for (long tag = 1; tag <= 6; tag++)
+        {
+            _tracker.add(tag);
+        }
+        _tracker.remove(3);
+
+        assertEquals("Unexpected end of run", 4, _tracker.lastOfLeadingRun(new long[]{1, 2, 4, 6}));
+        assertEquals("Unexpected end of run", -1, _tracker.lastOfLeadingRun(new long[]{2, 4}));
+    }
+
+    public void testClear()
+    {
+        _tracker.add(10);
+        _tracker.add(5);
+        _tracker.clear();
+
+        assertTrue("Tracker should be empty", _tracker.isEmpty());
+        assertEquals("Unexpected tags", 0, _tracker.toArray().length);
+
+        _tracker.add(1);
+        _tracker.add(2);
+        assertTrue("Tag not found by binary search after clear", _tracker.remove(2));
+    }
+}
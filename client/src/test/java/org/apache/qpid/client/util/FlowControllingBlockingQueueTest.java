@@ -0,0 +1,228 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class FlowControllingBlockingQueueTest extends QpidTestCase
+{
+    public void testThresholdEvents() throws Exception
+    {
+        RecordingListener listener = new RecordingListener();
+        FlowControllingBlockingQueue<Integer> queue = new FlowControllingBlockingQueue<>(3, 2, listener);
+
+        queue.add(1);
+        queue.add(2);
+        assertTrue("Unexpected events " + listener.getEvents(), listener.getEvents().isEmpty());
+        queue.add(3);
+        assertEquals("Unexpected events", Collections.singletonList("above 3"), listener.getEvents());
+        queue.add(4);
+        queue.take();
+        queue.take();
+        assertEquals("Unexpected events", Collections.singletonList("above 3"), listener.getEvents());
+        queue.take();
+        assertEquals("Unexpected events", Arrays.asList("above 3", "under 1"), listener.getEvents());
+    }
+
+    public void testClearReportsUnderThreshold() throws Exception
+    {
+        RecordingListener listener = new RecordingListener();
+        FlowControllingBlockingQueue<Integer> queue = new FlowControllingBlockingQueue<>(2, listener);
+
+        queue.add(1);
+        queue.add(2);
+        queue.clear();
+
+        assertEquals("Unexpected events", Arrays.asList("above 2", "under 0"), listener.getEvents());
+        assertTrue("Queue should be empty", queue.isEmpty());
+    }
+
+    public void testThresholdEventsAlternateWithConcurrentProducerAndConsumer() throws Exception
+    {
+        final RecordingListener listener = new RecordingListener();
+        final FlowControllingBlockingQueue<Integer> queue = new FlowControllingBlockingQueue<>(10, 5, listener);
+        final int count = 100000;
+
+        Thread consumer = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    for (int i = 0; i < count; i++)
+                    {
+                        queue.take();
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < count; i++)
+        {
+            queue.add(i);
+        }
+        consumer.join(10000);
+        assertFalse("Consumer did not finish", consumer.isAlive());
+        assertTrue("Queue should be empty", queue.isEmpty());
+
+        List<String> events = listener.getEvents();
+        for (int i = 0; i < events.size(); i++)
+        {
+            assertTrue("Events out of order " + events, events.get(i).startsWith(i % 2 == 0 ? "above" : "under"));
+        }
+        assertTrue("Last event should be under threshold " + events,
+                   events.isEmpty() || events.get(events.size() - 1).startsWith("under"));
+    }
+
+    public void testTakeWaitsForItem() throws Exception
+    {
+        final FlowControllingBlockingQueue<Integer> queue = new FlowControllingBlockingQueue<>(0, null);
+        final AtomicReference<Integer> taken = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread taker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    taken.set(queue.take());
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }
+        });
+        taker.start();
+
+        assertFalse("Take should block while the queue is empty", done.await(100, TimeUnit.MILLISECONDS));
+        queue.add(42);
+        assertTrue("Take did not return", done.await(5, TimeUnit.SECONDS));
+        assertEquals("Unexpected item", Integer.valueOf(42), taken.get());
+    }
+
+    public void testCloseReleasesWaiter() throws Exception
+    {
+        final FlowControllingBlockingQueue<Integer> queue = new FlowControllingBlockingQueue<>(0, null);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Object> peeked = new AtomicReference<Object>("unset");
+
+        Thread peeker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    peeked.set(queue.blockingPeek());
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }
+        });
+        peeker.start();
+
+        assertFalse("Peek should block while the queue is empty", done.await(100, TimeUnit.MILLISECONDS));
+        queue.close();
+        assertTrue("Peek did not return", done.await(5, TimeUnit.SECONDS));
+        assertNull("Unexpected item", peeked.get());
+    }
+
+    public void testInterruptWhileWaiting() throws Exception
+    {
+        final FlowControllingBlockingQueue<Integer> queue = new FlowControllingBlockingQueue<>(0, null);
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicReference<Exception> exception = new AtomicReference<>();
+
+        Thread taker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    queue.take();
+                }
+                catch (InterruptedException e)
+                {
+                    exception.set(e);
+                }
+                finally
+                {
+                    done.countDown();
+                }
+            }
+        });
+        taker.start();
+
+        assertFalse("Take should block while the queue is empty", done.await(100, TimeUnit.MILLISECONDS));
+        taker.interrupt();
+        assertTrue("Take did not return", done.await(5, TimeUnit.SECONDS));
+        assertTrue("Unexpected exception " + exception.get(), exception.get() instanceof InterruptedException);
+    }
+
+    private static class RecordingListener implements FlowControllingBlockingQueue.ThresholdListener
+    {
+        private final List<String> _events = new ArrayList<>();
+
+        @Override
+        public synchronized void aboveThreshold(final int currentValue)
+        {
+            _events.add("above " + currentValue);
+        }
+
+        @Override
+        public synchronized void underThreshold(final int currentValue)
+        {
+            _events.add("under " + currentValue);
+        }
+
+        synchronized List<String> getEvents()
+        {
+            return new ArrayList<>(_events);
+        }
+    }
+}
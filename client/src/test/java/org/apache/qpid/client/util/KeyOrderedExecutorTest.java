@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class KeyOrderedExecutorTest extends QpidTestCase
+{
+    private KeyOrderedExecutor _executor;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _executor = new KeyOrderedExecutor(4, Executors.defaultThreadFactory());
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _executor.shutdown();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testTasksWithSameKeyRunInOrder() throws Exception
+    {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++)
+        {
+            final int value = i;
+            _executor.execute("key", new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    order.add(value);
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue("Tasks did not complete", done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++)
+        {
+            assertEquals("Tasks ran out of order", Integer.valueOf(i), order.get(i));
+        }
+    }
+
+    public void testTasksWithDifferentKeysRunConcurrently() throws Exception
+    {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch ran = new CountDownLatch(1);
+
+        // keys chosen to fall in different lanes
+        _executor.execute(0, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    blocked.await(10, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        _executor.execute(1, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ran.countDown();
+            }
+        });
+
+        assertTrue("Task with another key should not wait", ran.await(10, TimeUnit.SECONDS));
+        blocked.countDown();
+    }
+
+    public void testInvalidLaneCount()
+    {
+        try
+        {
+            new KeyOrderedExecutor(0, Executors.defaultThreadFactory());
+            fail("Exception not thrown");
+        }
+        catch (IllegalArgumentException e)
+        {
+            // pass
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.client.util;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class PrefetchByteBudgetTest extends QpidTestCase
+{
+    public void testSessionLimit()
+    {
+        PrefetchByteBudget budget = new PrefetchByteBudget(1000, 0);
+
+        assertFalse("Budget should not be exceeded", budget.add(1, "a", 600));
+        assertTrue("Budget should be exceeded", budget.add(2, "b", 400));
+        assertFalse("Budget should only report being exceeded once", budget.add(3, "b", 50 * 1024 * 1024));
+        assertTrue("Budget should be exceeded", budget.isExceeded());
+
+        assertFalse("Budget is not yet below half its limit", budget.release(3));
+        assertFalse("Budget is not yet below half its limit", budget.release(2));
+        assertEquals("Unexpected bytes", 600, budget.getBytes());
+        assertTrue("Budget should be available", budget.release(1));
+        assertFalse("Budget should be available", budget.isExceeded());
+        assertEquals("Unexpected bytes", 0, budget.getBytes());
+    }
+
+    public void testConsumerLimit()
+    {
+        PrefetchByteBudget budget = new PrefetchByteBudget(0, 100);
+
+        assertFalse("Budget should not be exceeded", budget.add(1, "a", 60));
+        assertFalse("Budget should not be exceeded", budget.add(2, "b", 60));
+        assertTrue("Consumer budget should be exceeded", budget.add(3, "a", 60));
+        assertEquals("Unexpected consumer bytes", 120, budget.getBytes("a"));
+        assertEquals("Unexpected consumer bytes", 60, budget.getBytes("b"));
+
+        assertFalse("Consumers are above half their limit", budget.release(1));
+        assertFalse("Consumer a is above half its limit", budget.release(2));
+        assertTrue("Budget should be available", budget.release(3));
+    }
+
+    public void testConsumerExceededSeparatelyFromSession()
+    {
+        PrefetchByteBudget budget = new PrefetchByteBudget(1000, 100);
+
+        assertTrue("Consumer budget should be exceeded", budget.add(1, "a", 100));
+        assertTrue("Budget should be exceeded", budget.isExceeded());
+        assertFalse("Session budget should not be exceeded", budget.isSessionExceeded());
+        assertTrue("Consumer a should be exceeded", budget.isExceeded("a"));
+        assertFalse("Consumer b should not be exceeded", budget.isExceeded("b"));
+
+        assertTrue("Session budget should be exceeded", budget.add(2, "b", 900));
+        assertTrue("Session budget should be exceeded", budget.isSessionExceeded());
+        assertTrue("Consumer b should be exceeded", budget.isExceeded("b"));
+
+        assertTrue("Consumer a should be available", budget.release(1));
+        assertFalse("Consumer a should be available", budget.isExceeded("a"));
+        assertTrue("Session budget should still be exceeded", budget.isSessionExceeded());
+
+        assertTrue("Budget should be available", budget.release(2));
+        assertFalse("Budget should be available", budget.isExceeded());
+    }
+
+    public void testReleaseIsIdempotent()
+    {
+        PrefetchByteBudget budget = new PrefetchByteBudget(100, 0);
+        budget.add(1, "a", 100);
+
+        assertTrue("Budget should be available", budget.release(1));
+        assertFalse("Second release should be ignored", budget.release(1));
+        assertFalse("Unknown tag should be ignored", budget.release(new long[]{1, 2}));
+        assertEquals("Unexpected bytes", 0, budget.getBytes());
+    }
+
+    public void testReleaseSeveral()
+    {
+        PrefetchByteBudget budget = new PrefetchByteBudget(100, 0);
+        budget.add(1, "a", 50);
+        budget.add(2, "a", 50);
+        budget.add(3, "a", 10);
+
+        assertTrue("Budget should be available", budget.release(new long[]{1, 2}));
+        assertEquals("Unexpected bytes", 10, budget.getBytes());
+    }
+
+    public void testReleaseConsumer()
+    {
+        PrefetchByteBudget budget = new PrefetchByteBudget(100, 0);
+        budget.add(1, "a", 40);
+        budget.add(2, "b", 30);
+        budget.add(3, "a", 40);
+
+        assertTrue("Budget should be available", budget.releaseConsumer("a"));
+        assertEquals("Unexpected bytes", 30, budget.getBytes());
+        assertEquals("Unexpected consumer bytes", 0, budget.getBytes("a"));
+        assertFalse("Released message should be ignored", budget.release(3));
+    }
+
+    public void testClear()
+    {
+        PrefetchByteBudget budget = new PrefetchByteBudget(100, 0);
+        budget.add(1, "a", 100);
+
+        assertTrue("Clear should report the budget was exceeded", budget.clear());
+        assertEquals("Unexpected bytes", 0, budget.getBytes());
+        assertFalse("Clear should report the budget was not exceeded", budget.clear());
+    }
+}
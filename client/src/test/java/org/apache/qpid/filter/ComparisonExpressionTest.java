@@ -0,0 +1,137 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.filter;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class ComparisonExpressionTest extends QpidTestCase
+{
+    private static final String[] PATTERNS = {
+            "", "%", "%%", "abc", "abc%", "%abc", "%abc%", "a%c", "ab%bc", "a%b%c", "%a%b%", "a_c", "___", "_b_",
+            "a_%", "%_", "a.c%", "a\\%%", "a!%%", "!_b%", "a!!c", "a!", "%a!_%", "a(b)%", "%[x]%", "a\nb%"
+    };
+
+    private static final String[] VALUES = {
+            "", "a", "abc", "abcabc", "abbc", "aXc", "xabcx", "ab", "abbbc", "a.c", "aXc.", "a%c", "a%", "_b_", "abc_",
+            "a!c", "a_b", "a(b)", "x[x]x", "a\nbc", "\nabc", "a\uD83D\uDE00c", "\uD83D\uDE00bc", "\uD83D\uDE00"
+    };
+
+    public void testLikeMatchesAsRegularExpression()
+    {
+        for (String pattern : PATTERNS)
+        {
+            for (String escape : new String[] { null, "!" })
+            {
+                final BooleanExpression<String> like = ComparisonExpression.createLike(new Value(), pattern, escape);
+                final Pattern regex = toRegularExpression(pattern, escape == null ? -1 : escape.charAt(0));
+                for (String value : VALUES)
+                {
+                    assertEquals("Unexpected match of '" + value + "' LIKE '" + pattern + "' ESCAPE " + escape,
+                                 regex.matcher(value).matches(), like.matches(value));
+                }
+            }
+        }
+    }
+
+    public void testLikeOfNonStringValue()
+    {
+        final BooleanExpression<Object> like =
+                ComparisonExpression.createLike(new ConstantExpression<Object>(1), "1%", null);
+        assertEquals("Unexpected value", Boolean.FALSE, like.evaluate(null));
+
+        final BooleanExpression<Object> likeNull =
+                ComparisonExpression.createLike(new ConstantExpression<Object>(null), "%", null);
+        assertNull("Unexpected value", likeNull.evaluate(null));
+    }
+
+    public void testInListOfStrings()
+    {
+        final BooleanExpression<String> in =
+                ComparisonExpression.createInFilter(new Value(), Arrays.asList("a", "b", "c", "d", "e", "f"), true);
+        final BooleanExpression<String> notIn =
+                ComparisonExpression.createNotInFilter(new Value(), Arrays.asList("a", "b"), true);
+
+        assertTrue("Value should be in list", in.matches("f"));
+        assertFalse("Value should not be in list", in.matches("g"));
+        assertFalse("Value should be in list", notIn.matches("a"));
+        assertTrue("Value should not be in list", notIn.matches("abc"));
+        assertNull("Unexpected value", in.evaluate(null));
+    }
+
+    public void testInListOfNonStrings()
+    {
+        final BooleanExpression<Object> in =
+                ComparisonExpression.createInFilter(new ConstantExpression<Object>(1L), Arrays.asList(2, 1, "1"), true);
+        assertTrue("Numerically equal value should be in list", in.matches(null));
+    }
+
+    /**
+     * The regular expression originally built for a LIKE pattern.
+     */
+    private static Pattern toRegularExpression(final String like, final int escape)
+    {
+        final String controlChars = ".\\[]^$?*+{}|():&<>=!";
+        final StringBuilder regexp = new StringBuilder("\\A");
+        for (int i = 0; i < like.length(); i++)
+        {
+            char c = like.charAt(i);
+            if (escape == (0xFFFF & c))
+            {
+                i++;
+                if (i >= like.length())
+                {
+                    break;
+                }
+                regexp.append("\\x").append(Integer.toHexString(0xFFFF & like.charAt(i)));
+            }
+            else if (c == '%')
+            {
+                regexp.append(".*?");
+            }
+            else if (c == '_')
+            {
+                regexp.append(".");
+            }
+            else if (controlChars.indexOf(c) >= 0)
+            {
+                regexp.append("\\x").append(Integer.toHexString(0xFFFF & c));
+            }
+            else
+            {
+                regexp.append(c);
+            }
+        }
+        regexp.append("\\z");
+        return Pattern.compile(regexp.toString(), Pattern.DOTALL);
+    }
+
+    private static class Value implements PropertyExpression<String>
+    {
+        @Override
+        public Object evaluate(final String message)
+        {
+            return message;
+        }
+    }
+}
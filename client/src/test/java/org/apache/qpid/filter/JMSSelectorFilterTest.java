@@ -20,12 +20,24 @@
  */
 package org.apache.qpid.filter;
 
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+
 import org.apache.qpid.AMQInternalException;
 import org.apache.qpid.client.filter.JMSSelectorFilter;
 import org.apache.qpid.client.filter.MessageFilter;
 import org.apache.qpid.client.message.JMSTextMessage;
 import org.apache.qpid.client.message.TestMessageHelper;
+import org.apache.qpid.client.message.UnprocessedMessage_0_10;
 import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.DeliveryProperties;
+import org.apache.qpid.transport.Header;
+import org.apache.qpid.transport.MessageAcceptMode;
+import org.apache.qpid.transport.MessageAcquireMode;
+import org.apache.qpid.transport.MessageDeliveryPriority;
+import org.apache.qpid.transport.MessageProperties;
+import org.apache.qpid.transport.MessageTransfer;
 
 public class JMSSelectorFilterTest extends QpidTestCase
 {
@@ -106,4 +118,23 @@ public class JMSSelectorFilterTest extends QpidTestCase
         message.setBooleanProperty("select", false);
         assertFalse("Selector matched when not expected", simpleSelectorFilter.matches(message));
     }
+
+    public void testMatchingFromHeaders() throws Exception
+    {
+        MessageFilter selectorFilter = new JMSSelectorFilter("select=5 AND JMSRedelivered=TRUE AND JMSPriority=7");
+
+        final MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setApplicationHeaders(new HashMap<String, Object>(Collections.singletonMap("select", 5)));
+        final DeliveryProperties deliveryProperties = new DeliveryProperties();
+        deliveryProperties.setPriority(MessageDeliveryPriority.get((short) 7));
+        deliveryProperties.setRedelivered(true);
+        final MessageTransfer transfer = new MessageTransfer("", MessageAcceptMode.NONE, MessageAcquireMode.PRE_ACQUIRED,
+                                                             new Header(deliveryProperties, messageProperties),
+                                                             ByteBuffer.allocate(0));
+        final UnprocessedMessage_0_10 messageFrame = new UnprocessedMessage_0_10(transfer);
+
+        assertTrue("Selector didnt match when expected",
+                   selectorFilter.matches(messageFrame.getHeaders(), messageFrame.isRedelivered()));
+        assertFalse("Selector did match when not expected", selectorFilter.matches(messageFrame.getHeaders(), false));
+    }
 }
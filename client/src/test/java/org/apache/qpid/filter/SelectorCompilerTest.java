@@ -0,0 +1,309 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.filter.selector.SelectorParser;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.codec.PropertyMap;
+
+public class SelectorCompilerTest extends QpidTestCase
+{
+    private static final String[] SELECTORS = {
+            "a = 1",
+            "a <> 1",
+            "a > 1",
+            "a >= 1.5",
+            "a = 1.5",
+            "a < 2",
+            "1 < a",
+            "a <= 2147483648",
+            "a = b",
+            "a < b",
+            "a = 'x'",
+            "a <> 'x'",
+            "a IS NULL",
+            "a IS NOT NULL",
+            "a BETWEEN 1 AND 3",
+            "a NOT BETWEEN 1 AND 3",
+            "a = 1 AND b = 2",
+            "a = 1 OR b = 2",
+            "NOT (a = 1 AND b = 2)",
+            "NOT (a = 1 OR b = 2)",
+            "a = 1 AND b = 2 AND c = 'x' AND d IS NULL",
+            "a = 1 OR b > 2 OR c LIKE 'x%' OR d IN ('x', 'y')",
+            "NOT (a > 1 AND b IS NULL)",
+            "flag",
+            "NOT flag",
+            "flag AND a = 1",
+            "1 = 1 AND a = 1",
+            "1 = 2 OR a = 1",
+            "1 = 2 AND a = 1",
+            "a = 1 AND 1 = 2",
+            "NOT (a = 1 AND 1 = 2)",
+            "a + 1 > 2",
+            "a + 1 > 2 OR b = 2",
+            "b = 2 OR a - 1 > 2",
+            "-a < 0",
+            "JMSPriority > 4",
+            "JMSPriority = 4",
+            "5 > JMSPriority",
+            "JMSTimestamp > 1000",
+            "JMSTimestamp >= 1000.5",
+            "JMSExpiration = 0",
+            "JMSType = 'type'",
+            "JMSDeliveryMode = 'PERSISTENT'",
+            "JMSRedelivered = TRUE",
+            "JMSCorrelationID IS NULL AND JMSMessageID IS NOT NULL"
+    };
+
+    private static final Object[] VALUES = {
+            null, (byte) 1, (short) 1, 1, 2, 3, 1L, 2147483648L, 1.0f, 1.5f, 1.5d, 2.0d, "1", "x", "xy", true, false
+    };
+
+    public void testCompiledSelectorsAgreeWithInterpreter() throws Exception
+    {
+        assertCompiledSelectorsAgreeWithInterpreter(false);
+    }
+
+    public void testCompiledSelectorsAgreeWithInterpreterForPropertyMaps() throws Exception
+    {
+        assertCompiledSelectorsAgreeWithInterpreter(true);
+    }
+
+    public void testNumericPropertyInPropertyMapIsNotBoxed() throws Exception
+    {
+        final BooleanExpression<FilterableMessage> compiled = SelectorCompiler.compile(parse("a > 1 AND b <= 2.5"));
+        final TestMessage message = new TestMessage(true);
+        ((PropertyMap) message.getProperties()).putInt("a", 2);
+        ((PropertyMap) message.getProperties()).putDouble("b", 2.5d);
+
+        assertTrue("Selector should match", compiled.matches(message));
+        assertEquals("Unexpected property reads", 0, message.getPropertyReads());
+    }
+
+    private void assertCompiledSelectorsAgreeWithInterpreter(final boolean propertyMap) throws Exception
+    {
+        for (String selector : SELECTORS)
+        {
+            final BooleanExpression<FilterableMessage> interpreted = parse(selector);
+            final BooleanExpression<FilterableMessage> compiled = SelectorCompiler.compile(interpreted);
+            for (TestMessage message : createMessages(propertyMap))
+            {
+                final String description = "selector " + selector + " for " + message;
+                assertEquals("Unexpected value of " + description,
+                             evaluate(interpreted, message), evaluate(compiled, message));
+                assertEquals("Unexpected match of " + description,
+                             matches(interpreted, message), matches(compiled, message));
+            }
+        }
+    }
+
+    public void testConstantSubexpressionsAreNotEvaluatedPerMessage() throws Exception
+    {
+        final BooleanExpression<FilterableMessage> compiled = SelectorCompiler.compile(parse("1 + 2 = 3 AND a = 1"));
+        final TestMessage message = new TestMessage();
+        message.getProperties().put("a", 1);
+
+        assertTrue("Selector should match", compiled.matches(message));
+        assertEquals("Unexpected property reads", 1, message.getPropertyReads());
+    }
+
+    public void testCheapOperandIsEvaluatedFirstWhenMatching() throws Exception
+    {
+        final BooleanExpression<FilterableMessage> compiled =
+                SelectorCompiler.compile(parse("a LIKE '%x%' AND JMSPriority = 9"));
+        final TestMessage message = new TestMessage();
+        message.getProperties().put("a", "x");
+
+        assertFalse("Selector should not match", compiled.matches(message));
+        assertEquals("LIKE should not have been evaluated", 0, message.getPropertyReads());
+        assertEquals("Unexpected value", Boolean.FALSE, compiled.evaluate(message));
+        assertEquals("LIKE should be evaluated first when the value is wanted", 1, message.getPropertyReads());
+    }
+
+    private static BooleanExpression<FilterableMessage> parse(final String selector) throws Exception
+    {
+        final SelectorParser<FilterableMessage> parser = new SelectorParser<>();
+        parser.setPropertyExpressionFactory(JMSMessagePropertyExpression.FACTORY);
+        return parser.parse(selector);
+    }
+
+    private static List<TestMessage> createMessages(final boolean propertyMap)
+    {
+        final List<TestMessage> messages = new ArrayList<>();
+        for (Object a : VALUES)
+        {
+            for (Object b : VALUES)
+            {
+                final TestMessage message = new TestMessage(propertyMap);
+                message.getProperties().put("a", a);
+                message.getProperties().put("b", b);
+                message.getProperties().put("c", b instanceof String ? b : "y");
+                message.getProperties().put("flag", a instanceof Boolean ? a : b);
+                messages.add(message);
+            }
+        }
+        final TestMessage headers = new TestMessage(propertyMap);
+        headers._priority = 4;
+        headers._timestamp = 1000L;
+        headers._type = "type";
+        headers._persistent = true;
+        headers._redelivered = true;
+        headers._messageId = "ID:1";
+        messages.add(headers);
+        return messages;
+    }
+
+    private static Object evaluate(final BooleanExpression<FilterableMessage> expression, final TestMessage message)
+    {
+        try
+        {
+            return expression.evaluate(message);
+        }
+        catch (RuntimeException e)
+        {
+            return e.getClass();
+        }
+    }
+
+    private static Object matches(final BooleanExpression<FilterableMessage> expression, final TestMessage message)
+    {
+        try
+        {
+            return expression.matches(message);
+        }
+        catch (RuntimeException e)
+        {
+            return e.getClass();
+        }
+    }
+
+    private static class TestMessage implements PropertyMapMessage
+    {
+        private final Map<String, Object> _properties;
+        private int _propertyReads;
+        private boolean _persistent;
+        private boolean _redelivered;
+        private String _type;
+        private byte _priority;
+        private String _messageId;
+        private long _timestamp;
+        private long _expiration;
+
+        TestMessage()
+        {
+            this(false);
+        }
+
+        TestMessage(final boolean propertyMap)
+        {
+            _properties = propertyMap ? new PropertyMap() : new HashMap<String, Object>();
+        }
+
+        Map<String, Object> getProperties()
+        {
+            return _properties;
+        }
+
+        @Override
+        public PropertyMap getPropertyMap()
+        {
+            return _properties instanceof PropertyMap ? (PropertyMap) _properties : null;
+        }
+
+        int getPropertyReads()
+        {
+            return _propertyReads;
+        }
+
+        @Override
+        public boolean isPersistent()
+        {
+            return _persistent;
+        }
+
+        @Override
+        public boolean isRedelivered()
+        {
+            return _redelivered;
+        }
+
+        @Override
+        public Object getHeader(final String name)
+        {
+            _propertyReads++;
+            return _properties.get(name);
+        }
+
+        @Override
+        public String getReplyTo()
+        {
+            return null;
+        }
+
+        @Override
+        public String getType()
+        {
+            return _type;
+        }
+
+        @Override
+        public byte getPriority()
+        {
+            return _priority;
+        }
+
+        @Override
+        public String getMessageId()
+        {
+            return _messageId;
+        }
+
+        @Override
+        public long getTimestamp()
+        {
+            return _timestamp;
+        }
+
+        @Override
+        public String getCorrelationId()
+        {
+            return null;
+        }
+
+        @Override
+        public long getExpiration()
+        {
+            return _expiration;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "message with properties " + _properties;
+        }
+    }
+}
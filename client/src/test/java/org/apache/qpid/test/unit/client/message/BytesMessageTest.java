@@ -28,6 +28,7 @@ import javax.jms.MessageEOFException;
 import javax.jms.MessageFormatException;
 import javax.jms.MessageNotReadableException;
 import javax.jms.MessageNotWriteableException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 
 public class BytesMessageTest extends QpidTestCase
@@ -552,6 +553,36 @@ public class BytesMessageTest extends QpidTestCase
         assertEquals((byte)0, result[2]);
     }
 
+    public void testReadBytesIntoBuffer() throws Exception
+    {
+        JMSBytesMessage bm = TestMessageHelper.newJMSBytesMessage();
+        bm.writeByte((byte)3);
+        bm.writeByte((byte)4);
+        bm.writeByte((byte)5);
+        bm.reset();
+        ByteBuffer result = ByteBuffer.allocate(2);
+        assertEquals(2, bm.readBytesInto(result));
+        assertEquals((byte)4, result.get(1));
+        result.clear();
+        assertEquals(1, bm.readBytesInto(result));
+        assertEquals((byte)5, result.get(0));
+        assertEquals(-1, bm.readBytesInto(result));
+    }
+
+    public void testReadUTFIntoBuilder() throws Exception
+    {
+        JMSBytesMessage bm = TestMessageHelper.newJMSBytesMessage();
+        bm.writeUTF("Foo\u00e9");
+        bm.writeUTF("");
+        bm.writeUTF("bar");
+        bm.reset();
+        StringBuilder result = new StringBuilder();
+        assertEquals(4, bm.readUTF(result));
+        assertEquals(0, bm.readUTF(result));
+        assertEquals(3, bm.readUTF(result));
+        assertEquals("Foo\u00e9bar", result.toString());
+    }
+
     public void testToBodyStringWithNull() throws Exception
     {
         JMSBytesMessage bm = TestMessageHelper.newJMSBytesMessage();
@@ -30,6 +30,9 @@ import javax.jms.MessageFormatException;
 import javax.jms.MessageNotReadableException;
 import javax.jms.MessageNotWriteableException;
 import javax.jms.StreamMessage;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.HashMap;
 
 /**
@@ -614,6 +617,64 @@ public class StreamMessageTest extends QpidTestCase
         assertNull(bm.readObject());
     }
 
+    public void testReadIntoCallerBuffers() throws Exception
+    {
+        JMSStreamMessage bm = TestMessageHelper.newJMSStreamMessage();
+        for (int i = 0; i < 100; i++)
+        {
+            bm.writeString("field \u00e9" + i);
+        }
+        bm.writeInt(42);
+        bm.writeString(null);
+        bm.writeBytes(new byte[] { 1, 2, 3, 4, 5 });
+        bm.writeString("too long");
+        bm.reset();
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+        {
+            builder.setLength(0);
+            assertEquals("Unexpected length", ("field \u00e9" + i).length(), bm.readString(builder));
+            assertEquals("Unexpected string", "field \u00e9" + i, builder.toString());
+        }
+        builder.setLength(0);
+        assertEquals("Unexpected length", 2, bm.readString(builder));
+        assertEquals("Unexpected converted string", "42", builder.toString());
+        assertEquals("Null string should not be appended", -1, bm.readString(builder));
+
+        ByteBuffer buffer = ByteBuffer.allocate(3);
+        assertEquals("Unexpected count", 3, bm.readBytesInto(buffer));
+        buffer.clear();
+        assertEquals("Unexpected count", 2, bm.readBytesInto(buffer));
+        assertEquals("Unexpected byte", 5, buffer.get(1));
+
+        CharBuffer chars = CharBuffer.allocate(3);
+        try
+        {
+            bm.readString(chars);
+            fail("Expected exception not thrown");
+        }
+        catch (BufferOverflowException e)
+        {
+            // pass
+        }
+        assertEquals("String should not have been read", "too long", bm.readString());
+    }
+
+    public void testReadStringIntoCharBuffer() throws Exception
+    {
+        JMSStreamMessage bm = TestMessageHelper.newJMSStreamMessage();
+        bm.writeString("first");
+        bm.writeDouble(1.5d);
+        bm.reset();
+
+        CharBuffer chars = CharBuffer.allocate(16);
+        assertEquals("Unexpected length", 5, bm.readString(chars));
+        assertEquals("Unexpected length", 3, bm.readString(chars));
+        chars.flip();
+        assertEquals("Unexpected strings", "first1.5", chars.toString());
+    }
+
     public static junit.framework.Test suite()
     {
         return new junit.framework.TestSuite(StreamMessageTest.class);
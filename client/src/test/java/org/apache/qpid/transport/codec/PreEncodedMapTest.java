@@ -0,0 +1,125 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class PreEncodedMapTest extends QpidTestCase
+{
+    private PreEncodedMap _template;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        Map<String, Object> fixedEntries = new LinkedHashMap<>();
+        fixedEntries.put("feed", "equities");
+        fixedEntries.put("venue", 42);
+        _template = new PreEncodedMap(fixedEntries);
+    }
+
+    public void testEncodingWithAddedEntries()
+    {
+        Map<String, Object> entries = new LinkedHashMap<>();
+        entries.put("symbol", "ABC");
+        PreEncodedMap map = _template.withEntries(entries);
+        map.put("sequence", 7L);
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("feed", "equities");
+        expected.put("venue", 42);
+        expected.put("symbol", "ABC");
+        expected.put("sequence", 7L);
+
+        assertEquals("Unexpected map contents", expected, map);
+        assertEquals("Unexpected decoded map", expected, roundTrip(map));
+        assertEquals("Unexpected encoding", encode(expected), encode(map));
+    }
+
+    public void testEncodingWithReplacedFixedEntry()
+    {
+        PreEncodedMap map = _template.withEntries(null);
+        assertEquals("Unexpected previous value", 42, map.put("venue", 43));
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("feed", "equities");
+        expected.put("venue", 43);
+
+        assertEquals("Unexpected size", 2, map.size());
+        assertEquals("Unexpected decoded map", expected, roundTrip(map));
+    }
+
+    public void testFixedEntriesCanBeRemoved()
+    {
+        PreEncodedMap map = _template.withEntries(null);
+        map.put("symbol", "ABC");
+        map.put("venue", 43);
+        assertEquals("Unexpected removed value", "ABC", map.remove("symbol"));
+        assertEquals("Unexpected removed value", "equities", map.remove("feed"));
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("venue", 43);
+
+        assertEquals("Unexpected map contents", expected, map);
+        assertEquals("Unexpected size", 1, map.size());
+        assertEquals("Unexpected decoded map", expected, roundTrip(map));
+        assertEquals("Template should be unchanged", 2, _template.size());
+    }
+
+    public void testClear()
+    {
+        PreEncodedMap map = _template.withEntries(null);
+        map.put("symbol", "ABC");
+        map.clear();
+        assertTrue("Map should be empty", map.isEmpty());
+        assertTrue("Unexpected decoded map", roundTrip(map).isEmpty());
+
+        map.put("feed", "bonds");
+        assertEquals("Unexpected decoded map", Collections.singletonMap("feed", "bonds"), roundTrip(map));
+    }
+
+    public void testWithEntriesDoesNotShareAddedEntries()
+    {
+        PreEncodedMap first = _template.withEntries(null);
+        first.put("symbol", "ABC");
+        PreEncodedMap second = _template.withEntries(null);
+        assertFalse("Added entry leaked into another map", second.containsKey("symbol"));
+    }
+
+    private ByteBuffer encode(Map<String, Object> map)
+    {
+        BBEncoder encoder = new BBEncoder(64);
+        encoder.writeMap(map);
+        return encoder.buffer();
+    }
+
+    private Map<String, Object> roundTrip(Map<String, Object> map)
+    {
+        BBDecoder decoder = new BBDecoder();
+        decoder.init(encode(map));
+        return decoder.readMap();
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.codec;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class PropertyMapTest extends QpidTestCase
+{
+    private static final Object[] VALUES = {
+            true, false, (byte) -1, (short) -300, 'c', -70000, 1L << 40, 1.5f, Float.NaN, -0.0d, 2.5d,
+            "value", null, new byte[] { 1, 2 }, UUID.randomUUID(), Collections.singletonMap("nested", 1)
+    };
+
+    public void testTypedValues()
+    {
+        PropertyMap map = new PropertyMap();
+        map.putBoolean("boolean", true);
+        map.putByte("byte", (byte) -1);
+        map.putShort("short", (short) -300);
+        map.putChar("char", 'c');
+        map.putInt("int", -70000);
+        map.putLong("long", 1L << 40);
+        map.putFloat("float", 1.5f);
+        map.putDouble("double", 2.5d);
+        map.put("string", "value");
+
+        assertEquals("Unexpected type", PropertyMap.BOOLEAN, map.getType(map.indexOf("boolean")));
+        assertTrue("Unexpected value", map.getBoolean(map.indexOf("boolean")));
+        assertEquals("Unexpected type", PropertyMap.SHORT, map.getType(map.indexOf("short")));
+        assertEquals("Unexpected value", -300L, map.getLong(map.indexOf("short")));
+        assertEquals("Unexpected type", PropertyMap.INT, map.getType(map.indexOf("int")));
+        assertEquals("Unexpected value", -70000L, map.getLong(map.indexOf("int")));
+        assertEquals("Unexpected value", 1.5d, map.getDouble(map.indexOf("float")));
+        assertEquals("Unexpected value", 2.5d, map.getDouble(map.indexOf("double")));
+        assertEquals("Unexpected type", PropertyMap.OBJECT, map.getType(map.indexOf("string")));
+        assertEquals("Unexpected index", -1, map.indexOf("missing"));
+
+        assertEquals("Unexpected value", Boolean.TRUE, map.get("boolean"));
+        assertEquals("Unexpected value", Byte.valueOf((byte) -1), map.get("byte"));
+        assertEquals("Unexpected value", Short.valueOf((short) -300), map.get("short"));
+        assertEquals("Unexpected value", Character.valueOf('c'), map.get("char"));
+        assertEquals("Unexpected value", Integer.valueOf(-70000), map.get("int"));
+        assertEquals("Unexpected value", Long.valueOf(1L << 40), map.get("long"));
+        assertEquals("Unexpected value", Float.valueOf(1.5f), map.get("float"));
+        assertEquals("Unexpected value", Double.valueOf(2.5d), map.get("double"));
+        assertEquals("Unexpected value", "value", map.get("string"));
+
+        map.putInt("string", 1);
+        assertEquals("Replaced value should keep its position", 8, map.indexOf("string"));
+        assertEquals("Unexpected value", Integer.valueOf(1), map.get("string"));
+    }
+
+    public void testBehavesAsLinkedHashMap()
+    {
+        Random random = new Random(0);
+        PropertyMap map = new PropertyMap(1);
+        Map<String, Object> expected = new LinkedHashMap<>();
+        for (int i = 0; i < 10000; i++)
+        {
+            String key = "key" + random.nextInt(40);
+            int operation = random.nextInt(10);
+            if (operation < 6)
+            {
+                Object value = VALUES[random.nextInt(VALUES.length)];
+                assertEquals("Unexpected previous value", expected.put(key, value), map.put(key, value));
+            }
+            else if (operation < 8)
+            {
+                assertEquals("Unexpected removed value", expected.remove(key), map.remove(key));
+            }
+            else if (operation < 9)
+            {
+                removeWithIterator(expected, key);
+                removeWithIterator(map, key);
+            }
+            else if (random.nextInt(50) == 0)
+            {
+                expected.clear();
+                map.clear();
+            }
+            assertEquals("Unexpected size", expected.size(), map.size());
+            assertEquals("Unexpected contains", expected.containsKey(key), map.containsKey(key));
+        }
+        assertEquals("Unexpected contents", expected, map);
+        assertEquals("Unexpected order", new ArrayList<>(expected.keySet()), new ArrayList<>(map.keySet()));
+        assertEquals("Unexpected copy", expected, new PropertyMap(map));
+    }
+
+    public void testEncodingMatchesBoxedMap()
+    {
+        PropertyMap map = new PropertyMap();
+        Map<String, Object> expected = new LinkedHashMap<>();
+        for (int i = 0; i < VALUES.length; i++)
+        {
+            map.put("key" + i, VALUES[i]);
+            expected.put("key" + i, VALUES[i]);
+        }
+        assertEquals("Unexpected encoding", encode(expected), encode(map));
+    }
+
+    public void testDecodingMatchesBoxedMap()
+    {
+        Map<String, Object> original = new LinkedHashMap<>();
+        for (int i = 0; i < VALUES.length; i++)
+        {
+            if (!(VALUES[i] instanceof byte[]))
+            {
+                original.put("key" + i, VALUES[i]);
+            }
+        }
+        ByteBuffer encoded = encode(original);
+
+        BBDecoder decoder = new BBDecoder();
+        decoder.init(encoded.duplicate());
+        Map<String, Object> expected = decoder.readMap();
+
+        decoder.init(encoded.duplicate());
+        PropertyMap map = decoder.readPropertyMap();
+
+        assertEquals("Unexpected contents", expected, map);
+        for (Map.Entry<String, Object> entry : expected.entrySet())
+        {
+            Object value = map.get(entry.getKey());
+            assertEquals("Unexpected class for " + entry.getKey(),
+                         entry.getValue() == null ? null : entry.getValue().getClass(),
+                         value == null ? null : value.getClass());
+        }
+        assertEquals("Integer should be held unboxed", PropertyMap.INT, map.getType(map.indexOf("key5")));
+    }
+
+    public void testDecodingEmptyMap()
+    {
+        BBDecoder decoder = new BBDecoder();
+        decoder.init(encode(Collections.<String, Object>emptyMap()));
+        PropertyMap map = decoder.readPropertyMap();
+        assertTrue("Map should be empty", map.isEmpty());
+        map.putInt("a", 1);
+        assertEquals("Unexpected size", 1, map.size());
+    }
+
+    private static void removeWithIterator(final Map<String, Object> map, final String key)
+    {
+        for (Iterator<String> iterator = map.keySet().iterator(); iterator.hasNext(); )
+        {
+            if (iterator.next().equals(key))
+            {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static ByteBuffer encode(final Map<String, Object> map)
+    {
+        BBEncoder encoder = new BBEncoder(64);
+        encoder.writeMap(map);
+        return encoder.buffer();
+    }
+}